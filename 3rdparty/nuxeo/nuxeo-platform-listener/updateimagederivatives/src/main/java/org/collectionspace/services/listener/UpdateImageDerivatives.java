@@ -5,6 +5,7 @@ import java.io.Serializable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.collectionspace.services.common.api.CommonAPI;
+import org.collectionspace.services.common.imaging.nuxeo.ImageDerivativeTracker;
 import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
 import org.collectionspace.services.nuxeo.client.java.CoreSessionWrapper;
 import org.collectionspace.services.nuxeo.util.NuxeoUtils;
@@ -41,6 +42,7 @@ public class UpdateImageDerivatives implements EventListener {
 		if (shouldProcessEvent(event) == true) {
 			DocumentEventContext docEventContext = (DocumentEventContext) event.getContext();
 			DocumentModel docModel = docEventContext.getSourceDocument();
+			ImageDerivativeTracker.setReady(docModel.getId()); // The derivatives are done, so stop serving placeholders for them
 
 			String eventType = event.getName();
 			if (logger.isTraceEnabled()) {
@@ -17,7 +17,6 @@ import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
-import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.EventListener;
@@ -55,6 +54,9 @@ public abstract class AbstractUpdateObjectLocationValues implements EventListene
             "AND (ecm:currentLifeCycleState <> 'deleted') "
             + NONVERSIONED_NONPROXY_DOCUMENT_WHERE_CLAUSE_FRAGMENT;
     
+    // Shared by all the events this listener handles
+    private final DeferredObjectLocationUpdates deferredUpdates = new DeferredObjectLocationUpdates(this);
+
     public enum EventNotificationDocumentType {
         // Document type about which we've received a notification
 
@@ -64,8 +66,6 @@ public abstract class AbstractUpdateObjectLocationValues implements EventListene
     @Override
     public void handleEvent(Event event) throws ClientException {
     
-        boolean isAboutToBeRemovedEvent = false;
-        String movementCsidToFilter = "";
         String eventType = "";
 
         logger.trace("In handleEvent in UpdateObjectLocationOnMove ...");
@@ -85,9 +85,6 @@ public abstract class AbstractUpdateObjectLocationValues implements EventListene
         if (logger.isTraceEnabled()) {
             logger.trace("A(n) " + eventType + " event was received by UpdateObjectLocationOnMove ...");
         }
-        if (eventType.equals(DocumentEventTypes.ABOUT_TO_REMOVE)) {
-            isAboutToBeRemovedEvent = true;
-        }
 
         // If this document event involves a Relation record, does this pertain to
         // a relationship between a Movement record and a CollectionObject record?
@@ -116,13 +113,6 @@ public abstract class AbstractUpdateObjectLocationValues implements EventListene
                 logger.warn(NO_FURTHER_PROCESSING_MESSAGE);
                 return;
             }
-            // If this Relation record is about to be (hard) deleted, set aside
-            // the CSID for the Movement record to which it pertains, so it can
-            // be filtered out in all subsequent processing of the pertinent
-            // Cataloging record's computed current location.
-            if (isAboutToBeRemovedEvent) {
-                movementCsidToFilter = movementCsid;
-            }
             notificationDocumentType = EventNotificationDocumentType.RELATION;
         } else if (documentMatchesType(docModel, MOVEMENT_DOCTYPE)) {
             // Otherwise, get a Movement CSID directly from the Movement record.
@@ -139,12 +129,6 @@ public abstract class AbstractUpdateObjectLocationValues implements EventListene
                 logger.warn(NO_FURTHER_PROCESSING_MESSAGE);
                 return;
             }
-            // If this Movement record is about to be (hard) deleted, set aside
-            // its CSID so it can be filtered out in all subsequent processing
-            // of the pertinent Cataloging record's computed current location.
-            if (isAboutToBeRemovedEvent) {
-                movementCsidToFilter = movementCsid;
-            }
             notificationDocumentType = EventNotificationDocumentType.MOVEMENT;
         } else {
             if (logger.isTraceEnabled()) {
@@ -198,45 +182,57 @@ public abstract class AbstractUpdateObjectLocationValues implements EventListene
                 logger.trace("Found " + collectionObjectCsids.size() + " CSID(s) of related CollectionObject records.");
             }
         }
-        // Iterate through the list of CollectionObject CSIDs found.
-        // For each CollectionObject, obtain its most recent, related Movement,
-        // and update relevant field(s) with values from that Movement record.
-        DocumentModel collectionObjectDocModel;
-        DocumentModel mostRecentMovementDocModel;
-        for (String collectionObjectCsid : collectionObjectCsids) {
+        // Update the CollectionObjects once this transaction commits, rather than
+        // holding it open while we do; by then, Movements and Relations that are
+        // about to be removed will be gone.
+        deferredUpdates.add(docEventContext.getRepositoryName(), collectionObjectCsids);
+    }
+
+    /**
+     * Updates a CollectionObject with values from its most recent, related
+     * Movement, if it is active and has one.  Called after the transactions that
+     * changed the CollectionObject's Movements, or its relations to them, commit.
+     *
+     * @param coreSession a repository session.
+     * @param collectionObjectCsid the CSID of a CollectionObject record.
+     * @throws ClientException
+     */
+    protected void updateCollectionObject(CoreSessionInterface coreSession, String collectionObjectCsid)
+            throws ClientException {
+        if (logger.isTraceEnabled()) {
+            logger.trace("CollectionObject CSID=" + collectionObjectCsid);
+        }
+        // Verify that the CollectionObject is both retrievable and active.
+        DocumentModel collectionObjectDocModel = getCurrentDocModelFromCsid(coreSession, collectionObjectCsid);
+        if (collectionObjectDocModel == null) {
             if (logger.isTraceEnabled()) {
-                logger.trace("CollectionObject CSID=" + collectionObjectCsid);
-            }
-            // Verify that the CollectionObject is both retrievable and active.
-            collectionObjectDocModel = getCurrentDocModelFromCsid(coreSession, collectionObjectCsid);
-            if (collectionObjectDocModel == null) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("CollectionObject is not current (i.e. is a non-current version), is a proxy, or is unretrievable.");
-                }
-                continue;
-            }
-            // Verify that the CollectionObject record is active.
-            if (!isActiveDocument(collectionObjectDocModel)) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("CollectionObject is inactive (i.e. deleted or in an otherwise inactive lifestyle state).");
-                }
-                continue;
-            }
-            // Get the CollectionObject's most recent, related Movement.
-            mostRecentMovementDocModel = getMostRecentMovement(coreSession, collectionObjectCsid,
-                    isAboutToBeRemovedEvent, movementCsidToFilter);
-            if (mostRecentMovementDocModel == null) {
-                continue;
+                logger.trace("CollectionObject is not current (i.e. is a non-current version), is a proxy, or is unretrievable.");
             }
-            // Update the CollectionObject with values from that Movement.
-            collectionObjectDocModel =
-                    updateCollectionObjectValuesFromMovement(collectionObjectDocModel, mostRecentMovementDocModel);
+            return;
+        }
+        // Verify that the CollectionObject record is active.
+        if (!isActiveDocument(collectionObjectDocModel)) {
             if (logger.isTraceEnabled()) {
-                String computedCurrentLocationRefName =
-                        (String) collectionObjectDocModel.getProperty(COLLECTIONOBJECTS_COMMON_SCHEMA,
-                        COMPUTED_CURRENT_LOCATION_PROPERTY);
-                logger.trace("computedCurrentLocation refName after value update=" + computedCurrentLocationRefName);
+                logger.trace("CollectionObject is inactive (i.e. deleted or in an otherwise inactive lifestyle state).");
             }
+            return;
+        }
+        // Get the CollectionObject's most recent, related Movement.
+        DocumentModel mostRecentMovementDocModel = getMostRecentMovement(coreSession, collectionObjectCsid, false, "");
+        if (mostRecentMovementDocModel == null) {
+            return;
+        }
+        // Update the CollectionObject with values from that Movement.
+        collectionObjectDocModel =
+                updateCollectionObjectValuesFromMovement(collectionObjectDocModel, mostRecentMovementDocModel);
+        if (logger.isTraceEnabled()) {
+            String computedCurrentLocationRefName =
+                    (String) collectionObjectDocModel.getProperty(COLLECTIONOBJECTS_COMMON_SCHEMA,
+                    COMPUTED_CURRENT_LOCATION_PROPERTY);
+            logger.trace("computedCurrentLocation refName after value update=" + computedCurrentLocationRefName);
+        }
+        // Only save the CollectionObject if a value changed
+        if (collectionObjectDocModel.isDirty()) {
             coreSession.saveDocument(collectionObjectDocModel);
         }
     }
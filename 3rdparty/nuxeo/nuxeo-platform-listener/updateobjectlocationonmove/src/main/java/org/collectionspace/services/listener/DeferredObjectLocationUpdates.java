@@ -0,0 +1,348 @@
+package org.collectionspace.services.listener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.client.java.NuxeoClientEmbedded;
+import org.collectionspace.services.nuxeo.client.java.NuxeoConnectorEmbedded;
+
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Updates CollectionObjects with values from their most recent Movements after, rather than
+ * during, the transactions that changed the Movements or their relations.
+ *
+ * As the listener handles events, it records the CSIDs of the CollectionObjects they affect;
+ * a CSID recorded more than once in a transaction is recorded once.  When the transaction
+ * commits, the CSIDs are queued, unless they're already queued -waiting to be updated- in
+ * which case they're only updated once.  If the transaction rolls back, they're dropped.
+ *
+ * Up to THREADS_PROP worker threads (2 by default) take the queued CSIDs, BATCH_SIZE at a
+ * time, and update each batch in its own transaction.  If a batch fails, its CollectionObjects
+ * are updated again one at a time, each in its own transaction, so one bad record doesn't hold
+ * back the rest; those that still fail are queued again, up to MAX_RETRIES times, and then
+ * given up on and counted as failed.
+ *
+ * The queue is only held in memory, so the updates still queued when the server stops are
+ * lost; running the UpdateObjectLocationBatchJob with no context afterwards recomputes every
+ * CollectionObject's location.
+ *
+ * The depth of the queue, and the lag between when a CSID is queued and when it's updated, are
+ * logged at debug level after each batch.  They, and the numbers of updated and failed
+ * CollectionObjects, can be read from the instances returned by getInstances().
+ */
+public class DeferredObjectLocationUpdates {
+
+    private final static Log logger = LogFactory.getLog(DeferredObjectLocationUpdates.class);
+    final public static String THREADS_PROP = "org.collectionspace.services.listener.objectLocationThreads";
+    private final static int DEFAULT_THREADS = 2;
+    private final static int BATCH_SIZE = 100;
+    private final static int MAX_RETRIES = 3;
+    private final static char KEY_SEPARATOR = '|';
+
+    // One for each listener
+    private final static List<DeferredObjectLocationUpdates> instances = new CopyOnWriteArrayList<DeferredObjectLocationUpdates>();
+
+    private final AbstractUpdateObjectLocationValues listener;
+    private final int maxWorkers = Math.max(1, Integer.getInteger(THREADS_PROP, DEFAULT_THREADS));
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "object-location-updates-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // The queued CollectionObjects, as "repositoryName|csid", and when they were queued
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+    private final ConcurrentMap<String, Long> queuedAt = new ConcurrentHashMap<String, Long>();
+    // The CollectionObjects that have failed to update, and how many times
+    private final ConcurrentMap<String, Integer> retries = new ConcurrentHashMap<String, Integer>();
+    // The CollectionObjects affected so far by the current thread's transaction
+    private final ThreadLocal<PendingUpdates> pendingUpdates = new ThreadLocal<PendingUpdates>();
+
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    DeferredObjectLocationUpdates(AbstractUpdateObjectLocationValues listener) {
+        this.listener = listener;
+        instances.add(this);
+    }
+
+    /**
+     * Returns the deferred updates of each listener, to read their metrics.
+     */
+    public static List<DeferredObjectLocationUpdates> getInstances() {
+        return Collections.unmodifiableList(instances);
+    }
+
+    /**
+     * Records CollectionObjects to be updated once the current transaction commits, or
+     * queues them now if there's no transaction.
+     */
+    void add(String repositoryName, Collection<String> collectionObjectCsids) {
+        Set<String> keys = new LinkedHashSet<String>();
+        for (String csid : collectionObjectCsids) {
+            if (Tools.notBlank(csid)) {
+                keys.add(repositoryName + KEY_SEPARATOR + csid);
+            }
+        }
+        PendingUpdates pending = getPendingUpdates();
+        if (pending != null) {
+            pending.keys.addAll(keys);
+        } else {
+            queue(keys);
+        }
+    }
+
+    public String getListenerName() {
+        return listener.getClass().getSimpleName();
+    }
+
+    public int getQueueDepth() {
+        return queuedAt.size();
+    }
+
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    public long getUpdatedCount() {
+        return updated.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getAverageLagMillis() {
+        long count = updated.get();
+        return count > 0 ? totalLagMillis.get() / count : 0;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Deferred object location updates of " + getListenerName() + ": queueDepth=" + getQueueDepth()
+                + " activeWorkers=" + getActiveWorkers() + " updated=" + getUpdatedCount() + " failed=" + getFailedCount()
+                + " avgLagMillis=" + getAverageLagMillis() + " maxLagMillis=" + getMaxLagMillis();
+    }
+
+    private PendingUpdates getPendingUpdates() {
+        PendingUpdates result = null;
+        try {
+            Transaction transaction = TransactionHelper.lookupTransactionManager().getTransaction();
+            if (transaction != null && transaction.getStatus() == Status.STATUS_ACTIVE) {
+                result = pendingUpdates.get();
+                // The transaction may have ended on another thread, without clearing ours
+                if (result == null || result.transaction.equals(transaction) == false) {
+                    result = new PendingUpdates(transaction);
+                    transaction.registerSynchronization(result);
+                    pendingUpdates.set(result);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Could not wait for the current transaction to commit before updating CollectionObjects: " + e.getMessage());
+            result = null;
+        }
+        return result;
+    }
+
+    private class PendingUpdates implements Synchronization {
+        final Transaction transaction;
+        final Set<String> keys = new LinkedHashSet<String>();
+
+        PendingUpdates(Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (pendingUpdates.get() == this) {
+                pendingUpdates.remove();
+            }
+            if (status == Status.STATUS_COMMITTED) {
+                queue(keys);
+            } else if (logger.isDebugEnabled() == true) {
+                logger.debug("Dropped the updates of " + keys.size() + " CollectionObject(s) after a rollback.");
+            }
+        }
+    }
+
+    private void queue(Collection<String> keys) {
+        Long now = System.currentTimeMillis();
+        for (String key : keys) {
+            if (queuedAt.putIfAbsent(key, now) == null) {
+                queue.add(key);
+            }
+        }
+        startWorkers();
+    }
+
+    private void startWorkers() {
+        // One worker per batch, up to the maximum
+        int wanted = Math.min(maxWorkers, (queuedAt.size() + BATCH_SIZE - 1) / BATCH_SIZE);
+        int active = activeWorkers.get();
+        while (active < wanted) {
+            if (activeWorkers.compareAndSet(active, active + 1) == true) {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                });
+            }
+            active = activeWorkers.get();
+        }
+    }
+
+    private void work() {
+        try {
+            Map<String, List<String>> batch = takeBatch();
+            while (batch.isEmpty() == false) {
+                for (Map.Entry<String, List<String>> entry : batch.entrySet()) {
+                    update(entry.getKey(), entry.getValue());
+                }
+                if (logger.isDebugEnabled() == true) {
+                    logger.debug(this.toString());
+                }
+                batch = takeBatch();
+            }
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+        // Something may have been queued after we found the queue empty
+        if (queue.isEmpty() == false) {
+            startWorkers();
+        }
+    }
+
+    /*
+     * Takes up to BATCH_SIZE CollectionObjects off the queue, by repository.
+     */
+    private Map<String, List<String>> takeBatch() {
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String key = queue.poll();
+            if (key == null) {
+                break;
+            }
+            // From here on, a new change to the CollectionObject queues it again
+            Long queuedTime = queuedAt.remove(key);
+            if (queuedTime != null) {
+                long lag = now - queuedTime;
+                totalLagMillis.addAndGet(lag);
+                long maxLag = maxLagMillis.get();
+                while (lag > maxLag && maxLagMillis.compareAndSet(maxLag, lag) == false) {
+                    maxLag = maxLagMillis.get();
+                }
+            }
+            int separator = key.indexOf(KEY_SEPARATOR);
+            String repositoryName = key.substring(0, separator);
+            List<String> csids = result.get(repositoryName);
+            if (csids == null) {
+                csids = new ArrayList<String>();
+                result.put(repositoryName, csids);
+            }
+            csids.add(key.substring(separator + 1));
+        }
+        return result;
+    }
+
+    /*
+     * Updates a batch of CollectionObjects in one transaction or, if that fails, one at a time.
+     */
+    private void update(String repositoryName, List<String> collectionObjectCsids) {
+        try {
+            updateInTransaction(repositoryName, collectionObjectCsids);
+            updated.addAndGet(collectionObjectCsids.size());
+            if (retries.isEmpty() == false) {
+                for (String collectionObjectCsid : collectionObjectCsids) {
+                    retries.remove(repositoryName + KEY_SEPARATOR + collectionObjectCsid);
+                }
+            }
+        } catch (Exception e) {
+            if (collectionObjectCsids.size() > 1) {
+                logger.warn("Could not update the location values of a batch of " + collectionObjectCsids.size()
+                        + " CollectionObjects, so updating them one at a time: " + e.getMessage());
+                for (String collectionObjectCsid : collectionObjectCsids) {
+                    update(repositoryName, Collections.singletonList(collectionObjectCsid));
+                }
+            } else {
+                retryLater(repositoryName, collectionObjectCsids.get(0), e);
+            }
+        }
+    }
+
+    private void retryLater(String repositoryName, String collectionObjectCsid, Exception e) {
+        String key = repositoryName + KEY_SEPARATOR + collectionObjectCsid;
+        Integer previousRetries = retries.get(key);
+        int nRetries = previousRetries != null ? previousRetries + 1 : 1;
+        if (nRetries <= MAX_RETRIES) {
+            retries.put(key, nRetries);
+            logger.warn("Could not update the location values of CollectionObject " + collectionObjectCsid
+                    + "; queued it to try again: " + e.getMessage());
+            queue(Collections.singletonList(key));
+        } else {
+            retries.remove(key);
+            failed.incrementAndGet();
+            logger.error("Gave up updating the location values of CollectionObject " + collectionObjectCsid
+                    + " after " + nRetries + " attempts", e);
+        }
+    }
+
+    private void updateInTransaction(String repositoryName, List<String> collectionObjectCsids) throws Exception {
+        NuxeoClientEmbedded client = NuxeoConnectorEmbedded.getInstance().getClient();
+        CoreSessionInterface coreSession = client.openRepository(repositoryName);
+        try {
+            for (String collectionObjectCsid : collectionObjectCsids) {
+                listener.updateCollectionObject(coreSession, collectionObjectCsid);
+            }
+        } catch (Exception e) {
+            if (TransactionHelper.isTransactionActiveOrMarkedRollback() == true) {
+                TransactionHelper.setTransactionRollbackOnly();
+            }
+            throw e;
+        } finally {
+            client.releaseRepository(coreSession); // Commits, or rolls back, the batch
+        }
+    }
+}
@@ -4,6 +4,7 @@ import javax.servlet.ServletContextEvent;
 
 import org.jboss.resteasy.core.Dispatcher;
 import org.jboss.resteasy.plugins.server.servlet.ResteasyBootstrap;
+import org.collectionspace.services.batch.AsyncBatchJob;
 import org.collectionspace.services.common.ResourceMap;
 
 public class CSpaceResteasyBootstrap extends ResteasyBootstrap {
@@ -29,7 +30,7 @@ public class CSpaceResteasyBootstrap extends ResteasyBootstrap {
     @Override
     public void contextDestroyed(ServletContextEvent event) {
     	System.out.println("[INFO] Shutting down the CollectionSpace Services' JAX-RS application.");
-    	//Do something if needed.
+    	AsyncBatchJob.shutdown(); // Stop the background batch jobs
     	System.out.println("[INFO] CollectionSpace Services' JAX-RS application stopped.");
     }	
 
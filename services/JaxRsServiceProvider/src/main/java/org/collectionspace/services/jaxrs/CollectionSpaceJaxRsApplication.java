@@ -69,6 +69,7 @@ import org.collectionspace.services.common.ResourceMapHolder;
 import org.collectionspace.services.common.ResourceMapImpl;
 import org.collectionspace.services.common.publicitem.PublicItemResource;
 import org.collectionspace.services.common.relation.RelationResource;
+import org.collectionspace.services.common.security.ResourceRouteTable;
 import org.collectionspace.services.common.security.SecurityInterceptor;
 
 /**
@@ -136,6 +137,11 @@ public class CollectionSpaceJaxRsApplication extends Application
         */
 //        singletons.add(new DomainIdentifierResource());
 //        singletons.add(new PingResource());
+
+        //
+        // Build the security interceptor's routes for our resources up front, rather than on each request
+        //
+        ResourceRouteTable.register(singletons);
     }
     
     private void addResourceToMapAndSingletons(NuxeoBasedResource resource) {
@@ -0,0 +1,209 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.jaxrs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.collectionspace.services.account.AccountResource;
+import org.collectionspace.services.account.TenantResource;
+import org.collectionspace.services.acquisition.AcquisitionResource;
+import org.collectionspace.services.authorization.PermissionResource;
+import org.collectionspace.services.authorization.RoleResource;
+import org.collectionspace.services.batch.BatchResource;
+import org.collectionspace.services.blob.BlobResource;
+import org.collectionspace.services.citation.CitationAuthorityResource;
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.collectionobject.CollectionObjectResource;
+import org.collectionspace.services.common.CollectionSpaceResource;
+import org.collectionspace.services.common.publicitem.PublicItemResource;
+import org.collectionspace.services.common.relation.RelationResource;
+import org.collectionspace.services.common.security.ResourceRouteTable;
+import org.collectionspace.services.common.security.SecurityUtils;
+import org.collectionspace.services.concept.ConceptAuthorityResource;
+import org.collectionspace.services.conditioncheck.ConditioncheckResource;
+import org.collectionspace.services.contact.ContactResource;
+import org.collectionspace.services.dimension.DimensionResource;
+import org.collectionspace.services.exhibition.ExhibitionResource;
+import org.collectionspace.services.group.GroupResource;
+import org.collectionspace.services.id.IDResource;
+import org.collectionspace.services.imports.ImportsResource;
+import org.collectionspace.services.intake.IntakeResource;
+import org.collectionspace.services.loanin.LoaninResource;
+import org.collectionspace.services.loanout.LoanoutResource;
+import org.collectionspace.services.location.LocationAuthorityResource;
+import org.collectionspace.services.media.MediaResource;
+import org.collectionspace.services.movement.MovementResource;
+import org.collectionspace.services.objectexit.ObjectExitResource;
+import org.collectionspace.services.organization.OrgAuthorityResource;
+import org.collectionspace.services.person.PersonAuthorityResource;
+import org.collectionspace.services.place.PlaceAuthorityResource;
+import org.collectionspace.services.report.ReportResource;
+import org.collectionspace.services.servicegroup.ServiceGroupResource;
+import org.collectionspace.services.taxonomy.TaxonomyAuthorityResource;
+import org.collectionspace.services.valuationcontrol.ValuationcontrolResource;
+import org.collectionspace.services.vocabulary.VocabularyResource;
+import org.collectionspace.services.work.WorkAuthorityResource;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks, for every route of the resources that CollectionSpaceJaxRsApplication registers,
+ * that ResourceRouteTable names the resource requested exactly as SecurityUtils does by
+ * parsing the request's path.  The resources are listed by class, since making instances
+ * of them needs a running server.
+ */
+public class ResourceRouteTableTest {
+
+    // The resources registered by CollectionSpaceJaxRsApplication
+    private static final Class<?>[] RESOURCE_CLASSES = {
+        AccountResource.class,
+        TenantResource.class,
+        RoleResource.class,
+        PermissionResource.class,
+        ServiceGroupResource.class,
+        ImportsResource.class,
+        VocabularyResource.class,
+        PersonAuthorityResource.class,
+        CitationAuthorityResource.class,
+        OrgAuthorityResource.class,
+        LocationAuthorityResource.class,
+        ConceptAuthorityResource.class,
+        TaxonomyAuthorityResource.class,
+        PlaceAuthorityResource.class,
+        WorkAuthorityResource.class,
+        AcquisitionResource.class,
+        ContactResource.class,
+        CollectionObjectResource.class,
+        GroupResource.class,
+        IntakeResource.class,
+        DimensionResource.class,
+        RelationResource.class,
+        LoaninResource.class,
+        LoanoutResource.class,
+        ExhibitionResource.class,
+        ConditioncheckResource.class,
+        ValuationcontrolResource.class,
+        ObjectExitResource.class,
+        BatchResource.class,
+        MediaResource.class,
+        BlobResource.class,
+        MovementResource.class,
+        ReportResource.class,
+        PublicItemResource.class,
+        IDResource.class
+    };
+
+    private static final Pattern PATH_PARAM = Pattern.compile("\\{\\s*([^}:\\s]+)\\s*(:[^}]*)?\\}");
+
+    @DataProvider(name = "routes")
+    public Object[][] routes() {
+        List<Object[]> result = new ArrayList<Object[]>();
+        for (Class<?> resourceClass : RESOURCE_CLASSES) {
+            if (CollectionSpaceResource.class.isAssignableFrom(resourceClass) == false) {
+                continue;
+            }
+            for (Map.Entry<Method, ResourceRouteTable.Route> entry : ResourceRouteTable.buildRoutes(resourceClass).entrySet()) {
+                result.add(new Object[] {resourceClass.getSimpleName() + "." + entry.getKey().getName(), entry.getValue()});
+            }
+        }
+        Assert.assertFalse(result.isEmpty(), "No resource routes were built.");
+        return result.toArray(new Object[result.size()][]);
+    }
+
+    @Test(dataProvider = "routes")
+    public void testResourceNamesMatchPathParsing(String methodName, ResourceRouteTable.Route route) {
+        String template = route.getTemplate();
+        Assert.assertNotNull(template, methodName + " has no path template.");
+
+        // Make a request that matches the route, with a distinct value for each path parameter
+        MultivaluedMap<String, String> pathParams = new MultivaluedMapImpl<String, String>();
+        StringBuffer path = new StringBuffer();
+        Matcher matcher = PATH_PARAM.matcher(template);
+        int nParams = 0;
+        while (matcher.find() == true) {
+            nParams++;
+            String value = String.format("%08d-0000-4000-8000-%012d", nParams, nParams);
+            pathParams.add(matcher.group(1), value);
+            matcher.appendReplacement(path, value);
+        }
+        matcher.appendTail(path);
+        String requestPath = path.toString().replaceAll("/+", "/");
+        if (requestPath.length() > 1 && requestPath.endsWith("/")) {
+            requestPath = requestPath.substring(0, requestPath.length() - 1);
+        }
+        UriInfo uriInfo = createUriInfo(requestPath, pathParams);
+
+        String oldName = SecurityUtils.getResourceName(uriInfo);
+        String newName = route.getResourceName(uriInfo);
+        Assert.assertEquals(newName, oldName, methodName + " " + template + ": resource name");
+        Assert.assertEquals(route.getResourceEntity(newName), SecurityUtils.getResourceEntity(oldName),
+                methodName + " " + template + ": resource entity");
+        boolean oldWorkflow = requestPath.contains(WorkflowClient.SERVICE_PATH);
+        Assert.assertEquals(route.isWorkflow(uriInfo), oldWorkflow, methodName + " " + template + ": workflow");
+        if (oldWorkflow == true) {
+            Assert.assertEquals(route.getWorkflowResourceName(uriInfo, route.getResourceEntity(newName)),
+                    SecurityUtils.getWorkflowResourceName(createHttpRequest(uriInfo)),
+                    methodName + " " + template + ": workflow resource name");
+        }
+    }
+
+    private static UriInfo createUriInfo(final String path, final MultivaluedMap<String, String> pathParams) {
+        return (UriInfo) Proxy.newProxyInstance(UriInfo.class.getClassLoader(), new Class<?>[] {UriInfo.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getPath") == true) {
+                            return path;
+                        } else if (method.getName().equals("getPathParameters") == true) {
+                            return pathParams;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static HttpRequest createHttpRequest(final UriInfo uriInfo) {
+        return (HttpRequest) Proxy.newProxyInstance(HttpRequest.class.getClassLoader(), new Class<?>[] {HttpRequest.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getUri") == true) {
+                            return uriInfo;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -99,6 +99,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             account.setCreatedAtItem(new Date());
             em.persist(account);
             em.getTransaction().commit();
+            invalidateAccountCache();
             handler.complete(Action.CREATE, wrapDoc);
             return (String) JaxbUtils.getValue(account, "getCsid");
         } catch (BadRequestException bre) {
@@ -126,7 +127,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (em != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -177,7 +178,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -217,6 +218,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
                     new DocumentWrapperImpl<AccountsCommon>(accountFound);
             handler.handle(Action.UPDATE, wrapDoc);
             em.getTransaction().commit();
+            invalidateAccountCache();
             handler.complete(Action.UPDATE, wrapDoc);
         } catch (BadRequestException bre) {
             if (em != null && em.getTransaction().isActive()) {
@@ -235,7 +237,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -265,6 +267,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             userStorageClient.delete(em, accountFound.getUserId());
             em.remove(accountFound);
             em.getTransaction().commit();
+            invalidateAccountCache();
 
         } catch (DocumentException de) {
             if (em != null && em.getTransaction().isActive()) {
@@ -281,7 +284,7 @@ public class AccountStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
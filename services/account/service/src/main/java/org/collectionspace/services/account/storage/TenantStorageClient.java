@@ -118,7 +118,7 @@ public class TenantStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (em != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -170,7 +170,7 @@ public class TenantStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -221,7 +221,7 @@ public class TenantStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -266,7 +266,7 @@ public class TenantStorageClient extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
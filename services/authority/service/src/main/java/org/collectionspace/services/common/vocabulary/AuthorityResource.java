@@ -38,8 +38,10 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import javax.xml.stream.XMLStreamException;
 
 import org.collectionspace.services.client.IClientQueryParams;
 import org.collectionspace.services.client.IQueryManager;
@@ -385,13 +387,11 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
      * 
      * @return the authority
      */
-    @GET
-    @Path("{csid}")
     @Override
-    public byte[] get(
-            @Context Request request,
-            @Context UriInfo ui,
-            @PathParam("csid") String specifier) {
+    public PoxPayloadOut getPayload(
+            Request request,
+            UriInfo ui,
+            String specifier) {
         PoxPayloadOut result = null;
         try {
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(ui);
@@ -422,7 +422,7 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
             throw new CSWebApplicationException(response);
         }
 
-        return result.getBytes();
+        return result;
     }
 
     /**
@@ -626,7 +626,7 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
      */
     @GET
     @Path("{csid}/items/{itemcsid}")
-    public byte[] getAuthorityItem(
+    public StreamingOutput getAuthorityItem(
             @Context Request request,
             @Context UriInfo uriInfo,
     		@Context ResourceMap resourceMap,            
@@ -668,7 +668,11 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
             throw new CSWebApplicationException(response);
         }
         
-        return result.getBytes();
+        try {
+            return toStreamingOutput(result);
+        } catch (XMLStreamException e) {
+            throw bigReThrow(e, ServiceMessages.GET_FAILED);
+        }
     }
 
     /*
@@ -927,12 +931,36 @@ public abstract class AuthorityResource<AuthCommon, AuthItemHandler>
             throw bigReThrow(e, ServiceMessages.DELETE_FAILED + "  itemcsid: " + itemcsid + " parentcsid:" + parentcsid);
         }
     }
+    public final static String refNameUpdates = "refNameUpdates";
+
+    /**
+     * Returns the progress of the most recent background updates of the records that
+     * reference the item, after changes to its refName.
+     */
+    @GET
+    @Path("{csid}/items/{itemcsid}/" + refNameUpdates)
+    @Produces("application/xml")
+    public String getRefNameUpdates(@PathParam("csid") String csid,
+            @PathParam("itemcsid") String itemcsid,
+            @Context UriInfo ui) {
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext(getItemServiceName(), ui);
+            return RefNameUpdateJob.getStatusXml(ctx, itemcsid);
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.GET_FAILED, itemcsid);
+        }
+    }
+
     public final static String hierarchy = "hierarchy";
 
+    /**
+     * Returns the broader/narrower hierarchy below the item, or with the "direction=parents"
+     * query parameter, above it.  The "depth" and "maxNodes" query parameters limit its size.
+     */
     @GET
     @Path("{csid}/items/{itemcsid}/" + hierarchy)
     @Produces("application/xml")
-    public String getHierarchy(@PathParam("csid") String csid,
+    public StreamingOutput getHierarchy(@PathParam("csid") String csid,
             @PathParam("itemcsid") String itemcsid,
             @Context UriInfo ui) throws Exception {
         try {
@@ -36,11 +36,11 @@ import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.document.DocumentException;
 import org.collectionspace.services.common.document.DocumentFilter;
 import org.collectionspace.services.common.document.DocumentWrapper;
-import org.collectionspace.services.common.repository.RepositoryClient;
 import org.collectionspace.services.common.vocabulary.AuthorityJAXBSchema;
 import org.collectionspace.services.common.vocabulary.AuthorityItemJAXBSchema;
 import org.collectionspace.services.common.vocabulary.AuthorityResource;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils;
+import org.collectionspace.services.common.vocabulary.RefNameUpdateJob;
 import org.collectionspace.services.config.service.ListResultField;
 import org.collectionspace.services.config.service.ObjectPartType;
 import org.collectionspace.services.nuxeo.client.java.NuxeoDocumentModelHandler;
@@ -354,16 +354,16 @@ public abstract class AuthorityItemDocumentModelHandler<AICommon>
                         + "   New refName" + newRefNameOnUpdate);
             }
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = getServiceContext();
-            RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient = getRepositoryClient(ctx);
-            CoreSessionInterface repoSession = this.getRepositorySession();
+            String itemCsid = NuxeoUtils.getCsid(wrapDoc.getWrappedObject());
             
-            // Update all the existing records that have a field with the old refName in it
-            int nUpdated = RefNameServiceUtils.updateAuthorityRefDocs(ctx, repoClient, repoSession,
+            // Update all the existing records that have a field with the old refName in it.  This
+            // can take a long time, so it's done in the background; its progress can be followed
+            // via the item's refNameUpdates sub-resource.
+            String jobId = RefNameUpdateJob.submit(ctx, itemCsid,
                     oldRefNameOnUpdate, newRefNameOnUpdate, getRefPropName());
             
-            // Finished so log a message.
             if (logger.isDebugEnabled()) {
-                logger.debug("Updated " + nUpdated + " instances of oldRefName to newRefName");
+                logger.debug("Queued refName update job " + jobId + " to replace oldRefName with newRefName");
             }
         }
     }
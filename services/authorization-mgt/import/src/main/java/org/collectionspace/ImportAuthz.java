@@ -35,6 +35,7 @@ import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.collectionspace.services.authorization.driver.AuthorizationSeedDriver;
+import org.collectionspace.services.common.storage.jpa.JpaStorageUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -168,6 +169,7 @@ public class ImportAuthz {
             //
             if (generateOnly(generate_only) == false) {
             	driver.seed();
+            	JpaStorageUtils.closeEntityManagerFactories();
             } else {
             	logError("WARNING: '-g' was set to 'true' so AuthZ tables were ***NOT*** seeded.");
             }
@@ -248,7 +248,7 @@ public class AuthorizationSeedDriver {
             throw e;
         } finally {
             if (em != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -25,6 +25,7 @@
 package org.collectionspace.services.authorization;
 
 import java.util.HashSet;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -104,6 +105,19 @@ public class AuthZ {
         provider.clearAclCache();
     }
 
+    /**
+     * addPermissions add permission for given principals to invoke the action of
+     * each given resource on it, in one transaction
+     * @param resources
+     * @param principals
+     * @param grant true to grant false to deny
+     */
+    public void addPermissions(List<CSpaceResource> resources, String[] principals, boolean grant)
+            throws PermissionException {
+        provider.getPermissionManager().addPermissions(resources, principals, grant);
+        provider.clearAclCache();
+    }
+
     /**
      * deletePermissions delete permission(s) for given resource involving given
      * principals
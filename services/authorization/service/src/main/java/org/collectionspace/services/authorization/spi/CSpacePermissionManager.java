@@ -23,6 +23,8 @@
  */
 package org.collectionspace.services.authorization.spi;
 
+import java.util.List;
+
 import org.collectionspace.services.authorization.CSpaceResource;
 import org.collectionspace.services.authorization.CSpaceAction;
 import org.collectionspace.services.authorization.PermissionException;
@@ -47,6 +49,19 @@ public interface CSpacePermissionManager {
     public void addPermissions(CSpaceResource res, CSpaceAction action, String[] principals, boolean grant)
             throws PermissionException;
 
+    /**
+     * addPermissions adds permission for the action of each given resource for given principals,
+     * all in one transaction.  Use this rather than adding the permissions one at a time when
+     * there are many to add, e.g. when generating the default permissions for a tenant.
+     * @param resources resources, each with the action to permit
+     * @param principals an array of principal names
+     * @grant true to grant, false to deny
+     * @throws PermissionException
+     * @see CSpaceResource
+     */
+    public void addPermissions(List<CSpaceResource> resources, String[] principals, boolean grant)
+            throws PermissionException;
+
     /**
      * removePermission removes permission(s) for given action on given resource involving given principals
      * @param res
@@ -0,0 +1,176 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.authorization.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * PermissionDecisionCache remembers the permission decisions made by the SpringPermissionEvaluator,
+ * keyed by tenant, principal and granted authorities (roles), resource, and action.  Each decision
+ * belongs to a generation of the permissions, and the generation is bumped -making all the decisions
+ * made before it stale- whenever the ACLs change, i.e. whenever the provider's ACL cache is cleared.
+ *
+ * It also keeps counts of hits and misses and the time spent evaluating the misses.
+ * @author
+ */
+public class PermissionDecisionCache {
+
+    final Log log = LogFactory.getLog(PermissionDecisionCache.class);
+    // When the cache gets this big, we start over rather than keep track of which decisions were used last.
+    private static final int MAX_DECISIONS = 50000;
+    // Log the statistics once every this many lookups, if debug logging is on
+    private static final long STATISTICS_LOG_INTERVAL = 10000;
+    private static final char KEY_SEPARATOR = '|';
+
+    private final ConcurrentMap<String, Decision> decisions = new ConcurrentHashMap<String, Decision>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evaluationNanos = new AtomicLong();
+
+    private static class Decision {
+        final long generation;
+        final boolean allowed;
+
+        Decision(long generation, boolean allowed) {
+            this.generation = generation;
+            this.allowed = allowed;
+        }
+    }
+
+    /**
+     * Returns the key of a decision, or null if it can't be cached.
+     */
+    String getKey(String tenantId, Authentication authToken, String objectIdType, Object objectIdId, int permissionMask) {
+        if (authToken == null || authToken.getName() == null) {
+            return null;
+        }
+        // The roles may come in any order, so sort them so that the same set makes the same key.
+        List<String> authorities = new ArrayList<String>();
+        for (GrantedAuthority authority : authToken.getAuthorities()) {
+            authorities.add(authority.getAuthority());
+        }
+        Collections.sort(authorities);
+
+        StringBuilder key = new StringBuilder();
+        key.append(tenantId).append(KEY_SEPARATOR)
+            .append(authToken.getName()).append(KEY_SEPARATOR)
+            .append(authorities).append(KEY_SEPARATOR)
+            .append(objectIdType).append(KEY_SEPARATOR)
+            .append(objectIdId).append(KEY_SEPARATOR)
+            .append(permissionMask);
+        return key.toString();
+    }
+
+    /**
+     * Returns the current generation, to be read before a decision is evaluated and passed to put().
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the decision for the key, or null if there isn't a current one.
+     */
+    Boolean get(String key) {
+        Boolean result = null;
+        Decision decision = decisions.get(key);
+        if (decision != null && decision.generation == generation.get()) {
+            result = decision.allowed;
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Remembers a decision evaluated in the given generation, along with how long it took.
+     */
+    void put(String key, long decisionGeneration, boolean allowed, long nanos) {
+        evaluationNanos.addAndGet(nanos);
+        if (decisions.size() >= MAX_DECISIONS) {
+            decisions.clear();
+        }
+        decisions.put(key, new Decision(decisionGeneration, allowed));
+
+        if (log.isDebugEnabled() == true && (hits.get() + misses.get()) % STATISTICS_LOG_INTERVAL == 0) {
+            log.debug(this.toString());
+        }
+    }
+
+    /**
+     * Makes all the decisions made so far stale, since the permissions have changed.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+        decisions.clear();
+        if (log.isDebugEnabled()) {
+            log.debug("Permission decisions invalidated. " + this.toString());
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the fraction of lookups that found a current decision.
+     */
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups > 0 ? (double) hits.get() / lookups : 0.0;
+    }
+
+    /**
+     * Returns the average time, in milliseconds, taken to evaluate the decisions that weren't cached.
+     */
+    public double getAverageEvaluationMillis() {
+        long evaluated = misses.get();
+        return evaluated > 0 ? evaluationNanos.get() / (evaluated * 1000000.0) : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "Permission decision cache: hits=" + getHits() + " misses=" + getMisses()
+                + " hitRate=" + String.format("%.3f", getHitRate())
+                + " avgEvaluationMillis=" + String.format("%.3f", getAverageEvaluationMillis())
+                + " size=" + decisions.size() + " generation=" + generation.get();
+    }
+}
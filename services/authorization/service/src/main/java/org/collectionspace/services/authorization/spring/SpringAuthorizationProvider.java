@@ -63,6 +63,7 @@ public class SpringAuthorizationProvider implements CSpaceAuthorizationProvider
 		private EhCacheBasedAclCache providerAclCache;
     private SpringPermissionEvaluator permissionEvaluator;
     private SpringPermissionManager permissionManager;
+    private PermissionDecisionCache decisionCache = new PermissionDecisionCache();
     private String version = "1.0";
 
     public SpringAuthorizationProvider() {
@@ -180,7 +181,15 @@ public class SpringAuthorizationProvider implements CSpaceAuthorizationProvider
     }
 
     /**
-     * clear the ACL Cache associated with the provider
+     * @return the cache of the permission evaluator's decisions
+     */
+    public PermissionDecisionCache getDecisionCache() {
+        return decisionCache;
+    }
+
+    /**
+     * clear the ACL Cache associated with the provider, and make the permission decisions
+     * made so far stale
      */
     public void clearAclCache() {
     	if(providerAclCache != null) {
@@ -191,6 +200,8 @@ public class SpringAuthorizationProvider implements CSpaceAuthorizationProvider
     	} else {
             log.error("providerAclCache is NULL!");
     	}
+    	// Only after the ACL cache is cleared, so that no decision made from the old ACLs outlives it
+    	decisionCache.invalidate();
     }
 
     TransactionStatus beginTransaction(String name) {
@@ -59,11 +59,28 @@ public class SpringPermissionEvaluator implements CSpacePermissionEvaluator {
 	        Authentication authToken = SecurityContextHolder.getContext().getAuthentication();
 	        Serializable objectIdId = SpringAuthorizationProvider.getObjectIdentityIdentifier(res);
 	        String objectIdType = SpringAuthorizationProvider.getObjectIdentityType(res);
+	        //
+	        // Look for a decision made since the permissions last changed
+	        //
+	        PermissionDecisionCache decisionCache = provider.getDecisionCache();
+	        String key = decisionCache.getKey(res.getTenantId(), authToken, objectIdType, objectIdId, perm.getMask());
+	        if (key != null) {
+	        	Boolean decision = decisionCache.get(key);
+	        	if (decision != null) {
+	        		return decision;
+	        	}
+	        }
+	        
+	        long generation = decisionCache.getGeneration();
+	        long start = System.nanoTime();
 	        PermissionEvaluator eval = provider.getProviderPermissionEvaluator();
 	        
 	        debug(res, authToken, objectIdId, objectIdType, perm);
 	        result = eval.hasPermission(authToken,
 	                objectIdId, objectIdType, perm);
+	        if (key != null) {
+	        	decisionCache.put(key, generation, result, System.nanoTime() - start);
+	        }
     	} catch (Throwable e) {
     		if (exceptionChainContainsNetworkError(e) == true) {
         		//
@@ -24,8 +24,11 @@
 package org.collectionspace.services.authorization.spring;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -132,6 +135,62 @@ public class SpringPermissionManager implements CSpacePermissionManager {
         }
     }
 
+    /**
+     * addPermissions adds permissions according to the given grant for the
+     * resource#action of each given resource for each given principal, in one
+     * transaction.  The ACL of each object identity is read and updated just once,
+     * however many of its permissions are added.
+     * @param resources
+     * @param principals
+     * @param grant
+     * @throws PermissionException
+     */
+    @Override
+    public void addPermissions(List<CSpaceResource> resources, String[] principals, boolean grant)
+            throws PermissionException {
+        Sid[] sids = SpringAuthorizationProvider.getSids(principals);
+        Map<ObjectIdentity, List<Permission>> permsByOid = new LinkedHashMap<ObjectIdentity, List<Permission>>();
+        for (CSpaceResource res : resources) {
+            ObjectIdentity oid = SpringAuthorizationProvider.getObjectIdentity(res);
+            List<Permission> perms = permsByOid.get(oid);
+            if (perms == null) {
+                perms = new ArrayList<Permission>();
+                permsByOid.put(oid, perms);
+            }
+            Permission p = SpringAuthorizationProvider.getPermission(res.getAction());
+            if (perms.contains(p) == false) {
+                perms.add(p);
+            }
+        }
+
+        TransactionStatus status = provider.beginTransaction("addPermssions");
+        for (Map.Entry<ObjectIdentity, List<Permission>> entry : permsByOid.entrySet()) {
+            try {
+                addPermissions(entry.getKey(), entry.getValue(), sids, grant);
+            } catch (Exception ex) {
+                String msg = "addpermissions(res[],prin[], grant) failed,"
+                        + " oid=" + entry.getKey().toString()
+                        + " perms=" + entry.getValue().toString()
+                        + " grant=" + grant;
+                if (log.isDebugEnabled()) {
+                    log.debug(msg, ex);
+                }
+                provider.rollbackTransaction(status);
+                if (ex instanceof PermissionException) {
+                    throw (PermissionException) ex;
+                }
+                throw new PermissionException(msg, ex);
+            }
+        }
+        provider.commitTransaction(status);
+        if (log.isDebugEnabled()) {
+            log.debug("addpermissions(res[],prin[], grant), success for "
+                    + permsByOid.size() + " oids"
+                    + " grant=" + grant
+                    + " sids=" + Arrays.toString(sids));
+        }
+    }
+
     /**
      * deletePermissions removes permisions for given resource#action for each given principal
      * @param res
@@ -344,6 +403,41 @@ public class SpringPermissionManager implements CSpacePermissionManager {
         }
     }
     
+    /**
+     * addPermissions adds the given permissions on given object id for each given sid,
+     * updating the acl once if any of them are new
+     * @param oid
+     * @param permissions
+     * @param sids
+     * @param grant
+     */
+    private void addPermissions(ObjectIdentity oid, List<Permission> permissions,
+            Sid[] sids, boolean grant) throws PermissionException {
+        MutableAcl acl;
+
+        try {
+            acl = getAcl(oid);
+        } catch (NotFoundException nfe) {
+            if (log.isDebugEnabled()) {
+                log.debug("addPermissions: acl not found for oid=" + oid.toString()
+                        + " adding...");
+            }
+            acl = provider.getProviderAclService().createAcl(oid);
+        }
+        boolean changed = false;
+        for (Permission permission : permissions) {
+            for (Sid sid : sids) {
+                if (aceListHasEntry(acl.getEntries(), permission, sid, grant) == false) {
+                    acl.insertAce(acl.getEntries().size(), permission, sid, grant);
+                    changed = true;
+                }
+            }
+        }
+        if (changed == true) {
+            provider.getProviderAclService().updateAcl(acl);
+        }
+    }
+
     private boolean aceListHasEntry(List<AccessControlEntry> aceEntries, Permission permission,
             Sid sid, boolean grant) {
     	for(AccessControlEntry entry : aceEntries) {
@@ -28,6 +28,9 @@ public class BatchClient extends AbstractCommonListPoxServiceClientImpl<BatchPro
 	public static final String SERVICE_PATH_COMPONENT = SERVICE_NAME;	
 	public static final String SERVICE_PATH = "/" + SERVICE_PATH_COMPONENT;
 	public static final String SERVICE_PAYLOAD_NAME = SERVICE_NAME;	
+	// Invoking a batch job with "?async=true" queues it, and returns the URI of the job at ".../jobs/{jobcsid}"
+	public static final String ASYNC_PARAM = "async";
+	public static final String JOBS_PATH_COMPONENT = "jobs";
 
 	@Override
 	public String getServiceName() {
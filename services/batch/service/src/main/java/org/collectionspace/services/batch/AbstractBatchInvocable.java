@@ -38,6 +38,7 @@ public abstract class AbstractBatchInvocable implements BatchInvocable {
     private int completionStatus;
     private InvocationResults results;
     private InvocationError errorInfo;
+    private volatile boolean cancelled;
     final Logger logger = LoggerFactory.getLogger(AbstractBatchInvocable.class);
 
     public AbstractBatchInvocable() {
@@ -51,6 +52,7 @@ public abstract class AbstractBatchInvocable implements BatchInvocable {
         this.completionStatus = STATUS_UNSTARTED;
         this.results = new InvocationResults();
         this.errorInfo = null;
+        this.cancelled = false;
     }
 
     @Override
@@ -107,6 +109,33 @@ public abstract class AbstractBatchInvocable implements BatchInvocable {
         this.errorInfo = errorInfo;
     }
 
+    /**
+     * Sets the completion status to reflect that 'done' of 'total' items have been processed,
+     * as a value between STATUS_MIN_PROGRESS and STATUS_COMPLETE.  The progress of a job that
+     * was invoked asynchronously is reported to clients that ask for its status.
+     */
+    protected void setProgress(long done, long total) {
+        int progress = STATUS_MIN_PROGRESS;
+        if (total > 0 && done > 0) {
+            progress = (int) Math.min(STATUS_COMPLETE - 1, STATUS_MIN_PROGRESS + (done * (STATUS_COMPLETE - STATUS_MIN_PROGRESS)) / total);
+        }
+        setCompletionStatus(progress);
+    }
+
+    /**
+     * Asks the job to stop.  Long-running jobs should check isCancelled() between units of
+     * work (e.g. records) and return early when it's set; whatever they've already saved stays
+     * saved, since, when invoked asynchronously, each update made through a resource is
+     * committed on its own.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     protected boolean requestIsForInvocationModeSingle() {
         return (INVOCATION_MODE_SINGLE.equalsIgnoreCase(getInvocationContext().getMode()) ? true : false);
     }
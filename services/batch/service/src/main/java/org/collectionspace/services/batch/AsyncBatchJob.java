@@ -0,0 +1,736 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.batch;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.Response;
+
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.ResourceMap;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.api.GregorianCalendarDateTimeUtils;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.document.DocumentException;
+import org.collectionspace.services.common.document.DocumentNotFoundException;
+import org.collectionspace.services.common.invocable.Invocable;
+import org.collectionspace.services.common.invocable.Invocable.InvocationError;
+import org.collectionspace.services.common.invocable.InvocationContext;
+import org.collectionspace.services.common.invocable.InvocationResults;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+/**
+ * Runs a batch job in the background, for invocations made with the "async" query parameter,
+ * rather than on the thread of the request that invoked it.
+ *
+ * Each tenant has its own pool of THREADS_PER_TENANT_PROP threads (2 by default) and a queue
+ * of up to QUEUED_JOBS_PER_TENANT_PROP jobs (20 by default) waiting for them; when the queue
+ * is full, invocations are refused with a 503 (Service Unavailable).  The job runs as the user
+ * who invoked it.
+ *
+ * Each job is recorded in a table in the repository's database, along with its state and, when
+ * it ends, its results or error, so that clients can poll for them.  While a job is running, its
+ * progress is that reported by the batch job itself (see AbstractBatchInvocable.setProgress).
+ * The server that runs a job -its owner- writes a heartbeat to the job's row every
+ * HEARTBEAT_INTERVAL_MILLIS while the job is queued or running.  Jobs can't be resumed after
+ * a restart, or taken over from another server, so a job whose heartbeat is more than
+ * ORPHAN_TIMEOUT_MILLIS old when its status is asked for, on any server, is reported as failed.
+ * The executors are shut down, and their queued jobs failed, when the webapp stops.
+ *
+ * A queued job can be cancelled outright; a running one is asked to stop (see
+ * AbstractBatchInvocable.cancel), and ends as cancelled if it does.
+ */
+public class AsyncBatchJob {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncBatchJob.class);
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    final public static String THREADS_PER_TENANT_PROP = "org.collectionspace.services.batch.threadsPerTenant";
+    final public static String QUEUED_JOBS_PER_TENANT_PROP = "org.collectionspace.services.batch.queuedJobsPerTenant";
+    private static final int DEFAULT_THREADS_PER_TENANT = 2;
+    private static final int DEFAULT_QUEUED_JOBS_PER_TENANT = 20;
+
+    private static final String JOBS_TABLE = "cs_batch_jobs";
+    private static final int MAX_LISTED_JOBS = 20;
+    private static final int MAX_TEXT_LENGTH = 2000;
+    private static final String INTERRUPTED_ERROR = "The server stopped before the job finished.";
+    static final long HEARTBEAT_INTERVAL_MILLIS = 30 * 1000;
+    static final long ORPHAN_TIMEOUT_MILLIS = 4 * HEARTBEAT_INTERVAL_MILLIS;
+    // Identifies this server as the owner of the jobs it runs
+    static final String SERVER_ID = UUID.randomUUID().toString();
+
+    /**
+     * Opens connections to the database of a repository, which holds its jobs table.
+     */
+    interface ConnectionFactory {
+        Connection getConnection(String repositoryName) throws Exception;
+    }
+
+    // Replaced by tests
+    static ConnectionFactory connectionFactory = new ConnectionFactory() {
+        @Override
+        public Connection getConnection(String repositoryName) throws Exception {
+            String cspaceInstanceId = ServiceMain.getInstance().getCspaceInstanceId();
+            return JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId);
+        }
+    };
+
+    // Repositories in which we've created, or found, the jobs table
+    private static final Set<String> initializedRepositories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // The executors of each tenant, created when the tenant's first job is submitted
+    private static final ConcurrentMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<String, ThreadPoolExecutor>();
+    // The jobs that are queued or running on this server, by ID
+    private static final ConcurrentMap<String, AsyncBatchJob> activeJobs = new ConcurrentHashMap<String, AsyncBatchJob>();
+    private static ScheduledExecutorService heartbeat = null;
+    private static volatile boolean shutDown = false;
+
+    private final String id;
+    private final String repositoryName;
+    private final String tenantId;
+    private final String batchCsid;
+    private final String invocationMode;
+    private final String docType;
+    private volatile State state;
+    private int progress;
+    private String primaryURICreated;
+    private String userNote;
+    private long numAffected;
+    private long createdAt;
+    private long updatedAt;
+    private long finishedAt;
+    private long heartbeatAt;
+    private String error;
+
+    // Only set for the jobs that are active on this server
+    private BatchInvocable batchInstance;
+    private ResourceMap resourceMap;
+    private SecurityContext securityContext;
+    private Future<?> future;
+    private volatile boolean cancelRequested;
+
+    private AsyncBatchJob(String id, String repositoryName, String tenantId, String batchCsid,
+            String invocationMode, String docType) {
+        this.id = id;
+        this.repositoryName = repositoryName;
+        this.tenantId = tenantId;
+        this.batchCsid = batchCsid;
+        this.invocationMode = invocationMode;
+        this.docType = docType;
+    }
+
+    /**
+     * Records a job to run a batch instance, and queues it on the tenant's executor.
+     *
+     * @param ctx the context of the batch invocation.
+     * @param batchCsid the CSID of the batch record.
+     * @param batchInstance the batch job to run, with its invocation context and resource map set.
+     * @return the job's ID.
+     */
+    public static String submit(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String batchCsid,
+            InvocationContext invContext, BatchInvocable batchInstance, ResourceMap resourceMap) throws Exception {
+        ThreadPoolExecutor executor = getExecutor(ctx.getTenantId());
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new DocumentException(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                    "Too many batch jobs are waiting to run; try again later.");
+        }
+
+        final AsyncBatchJob job = new AsyncBatchJob(UUID.randomUUID().toString(), ctx.getRepositoryName(), ctx.getTenantId(),
+                batchCsid, invContext.getMode(), invContext.getDocType());
+        job.batchInstance = batchInstance;
+        job.resourceMap = resourceMap;
+        // The request's context is cleared when it ends, so the job gets its own copy
+        job.securityContext = new SecurityContextImpl();
+        job.securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        job.state = State.QUEUED;
+        job.createdAt = System.currentTimeMillis();
+        job.updatedAt = job.createdAt;
+        job.heartbeatAt = job.createdAt;
+        // Active before it's recorded, so no one can read it as an orphan
+        activeJobs.put(job.id, job);
+        try {
+            job.insert();
+        } catch (Exception e) {
+            activeJobs.remove(job.id);
+            throw e;
+        }
+        startHeartbeat();
+
+        try {
+            job.future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    job.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(job.id);
+            job.finish(State.FAILED, "The job could not be queued: " + e.getMessage());
+            throw new DocumentException(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                    "Too many batch jobs are waiting to run; try again later.");
+        }
+        return job.id;
+    }
+
+    /**
+     * Returns the status of a job as a <batchJob> element.
+     */
+    public static String getStatusXml(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String batchCsid, String jobId) throws Exception {
+        StringBuilder result = new StringBuilder("<?xml version=\"1.0\"?>");
+        find(ctx, batchCsid, jobId).toXml(result);
+        return result.toString();
+    }
+
+    /**
+     * Returns the status of the most recent jobs for a batch record, most recent first, as
+     * the content of a <batchJobs> element.
+     */
+    public static String getJobsXml(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String batchCsid) throws Exception {
+        StringBuilder result = new StringBuilder("<?xml version=\"1.0\"?><batchJobs>");
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(ctx.getRepositoryName());
+            ps = conn.prepareStatement("SELECT * FROM " + JOBS_TABLE
+                    + " WHERE tenantid = ? AND batchcsid = ? ORDER BY createdat DESC");
+            ps.setString(1, ctx.getTenantId());
+            ps.setString(2, batchCsid);
+            ps.setMaxRows(MAX_LISTED_JOBS);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    current(fromResultSet(ctx.getRepositoryName(), rs)).toXml(result);
+                }
+            }
+        } finally {
+            close(ps, conn);
+        }
+        result.append("</batchJobs>");
+        return result.toString();
+    }
+
+    /**
+     * Cancels a job, if it hasn't already ended, and returns its status as a <batchJob> element.
+     */
+    public static String cancel(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String batchCsid, String jobId) throws Exception {
+        AsyncBatchJob job = find(ctx, batchCsid, jobId);
+        if (job.batchInstance != null) { // It's active on this server
+            job.cancelRequested = true;
+            if (job.future != null && job.future.cancel(false) == true) {
+                // It hadn't started, and now it won't
+                activeJobs.remove(job.id);
+                job.finish(State.CANCELLED, null);
+            } else if (job.batchInstance instanceof AbstractBatchInvocable) {
+                ((AbstractBatchInvocable) job.batchInstance).cancel();
+            } else {
+                logger.warn(String.format("Batch job %s (%s) can't be stopped while it's running.",
+                        job.id, job.batchInstance.getClass().getName()));
+            }
+        }
+        StringBuilder result = new StringBuilder("<?xml version=\"1.0\"?>");
+        job.toXml(result);
+        return result.toString();
+    }
+
+    private static AsyncBatchJob find(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String batchCsid, String jobId) throws Exception {
+        AsyncBatchJob result = null;
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(ctx.getRepositoryName());
+            ps = conn.prepareStatement("SELECT * FROM " + JOBS_TABLE
+                    + " WHERE id = ? AND tenantid = ? AND batchcsid = ?");
+            ps.setString(1, jobId);
+            ps.setString(2, ctx.getTenantId());
+            ps.setString(3, batchCsid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    result = fromResultSet(ctx.getRepositoryName(), rs);
+                }
+            }
+        } finally {
+            close(ps, conn);
+        }
+        if (result == null) {
+            throw new DocumentNotFoundException("Could not find batch job " + jobId);
+        }
+        return current(result);
+    }
+
+    /*
+     * Returns the active job in place of the one read from the table, since it knows the job's progress,
+     * or, if the job's owner has stopped writing its heartbeat, marks it failed.
+     */
+    private static AsyncBatchJob current(AsyncBatchJob job) {
+        AsyncBatchJob result = job;
+        AsyncBatchJob activeJob = activeJobs.get(job.id);
+        if (activeJob != null) {
+            result = activeJob;
+        } else if (job.state == State.QUEUED || job.state == State.RUNNING) {
+            long now = System.currentTimeMillis();
+            if (now - job.heartbeatAt > ORPHAN_TIMEOUT_MILLIS) {
+                job.failIfOrphaned(now);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops running jobs: the queued ones are marked failed, and the running ones are asked to stop.
+     * Those that don't stop are failed by the heartbeat timeout.
+     */
+    public static void shutdown() {
+        shutDown = true;
+        synchronized (AsyncBatchJob.class) {
+            if (heartbeat != null) {
+                heartbeat.shutdownNow();
+                heartbeat = null;
+            }
+        }
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdownNow();
+        }
+        for (AsyncBatchJob job : activeJobs.values()) {
+            if (job.future != null && job.future.cancel(false) == true) {
+                activeJobs.remove(job.id);
+                job.finish(State.FAILED, INTERRUPTED_ERROR);
+            } else if (job.batchInstance instanceof AbstractBatchInvocable) {
+                ((AbstractBatchInvocable) job.batchInstance).cancel();
+            }
+        }
+    }
+
+    private static synchronized void startHeartbeat() {
+        if (heartbeat == null && shutDown == false) {
+            heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "batch-jobs-heartbeat");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            heartbeat.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    beat(System.currentTimeMillis());
+                }
+            }, HEARTBEAT_INTERVAL_MILLIS, HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Writes the heartbeat of every job that's queued or running on this server.
+     */
+    static void beat(long now) {
+        List<AsyncBatchJob> jobs = new ArrayList<AsyncBatchJob>(activeJobs.values());
+        for (String repositoryName : initializedRepositories) {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                int nJobs = 0;
+                for (AsyncBatchJob job : jobs) {
+                    if (job.repositoryName.equals(repositoryName) == true) {
+                        if (ps == null) {
+                            conn = getConnection(repositoryName);
+                            ps = conn.prepareStatement("UPDATE " + JOBS_TABLE + " SET heartbeat = ? WHERE id = ? AND owner = ?");
+                        }
+                        ps.setLong(1, now);
+                        ps.setString(2, job.id);
+                        ps.setString(3, SERVER_ID);
+                        ps.addBatch();
+                        job.heartbeatAt = now;
+                        nJobs++;
+                    }
+                }
+                if (nJobs > 0) {
+                    ps.executeBatch();
+                }
+            } catch (Throwable t) {
+                logger.error("Could not write the heartbeat of the batch jobs in repository " + repositoryName, t);
+            } finally {
+                close(ps, conn);
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor getExecutor(final String tenantId) {
+        ThreadPoolExecutor result = executors.get(tenantId);
+        if (result == null) {
+            int nThreads = Math.max(1, Integer.getInteger(THREADS_PER_TENANT_PROP, DEFAULT_THREADS_PER_TENANT));
+            int nQueued = Math.max(1, Integer.getInteger(QUEUED_JOBS_PER_TENANT_PROP, DEFAULT_QUEUED_JOBS_PER_TENANT));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(nThreads, nThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(nQueued), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "batch-jobs-" + tenantId + "-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true); // Idle tenants don't keep threads around
+            result = executors.putIfAbsent(tenantId, executor);
+            if (result == null) {
+                result = executor;
+            } else {
+                executor.shutdown();
+            }
+        }
+        return result;
+    }
+
+    private void run() {
+        long start = System.currentTimeMillis();
+        SecurityContextHolder.setContext(securityContext);
+        ResteasyProviderFactory.pushContext(ResourceMap.class, resourceMap);
+        try {
+            state = State.RUNNING;
+            updatedAt = start;
+            saveProgress();
+
+            batchInstance.run();
+
+            InvocationResults results = batchInstance.getResults();
+            if (results != null) {
+                primaryURICreated = results.getPrimaryURICreated();
+                userNote = results.getUserNote();
+                numAffected = results.getNumAffected();
+            }
+            if (batchInstance.getCompletionStatus() == Invocable.STATUS_ERROR) {
+                InvocationError errorInfo = batchInstance.getErrorInfo();
+                finish(State.FAILED, errorInfo != null ? errorInfo.getMessage() : "The batch job reported an error.");
+            } else if (cancelRequested == true) {
+                finish(State.CANCELLED, null);
+            } else if (shutDown == true) {
+                // It was asked to stop, so it may not have finished its work
+                finish(State.FAILED, INTERRUPTED_ERROR);
+            } else {
+                finish(State.COMPLETED, null);
+            }
+            logger.info(String.format("Batch job %s, of batch %s, ended %s in %d ms.",
+                    id, batchCsid, state, System.currentTimeMillis() - start));
+        } catch (Throwable t) {
+            logger.error(String.format("Batch job %s, of batch %s, failed.", id, batchCsid), t);
+            finish(State.FAILED, t.getMessage() != null ? t.getMessage() : t.toString());
+        } finally {
+            activeJobs.remove(id);
+            ResteasyProviderFactory.clearContextData();
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private int getProgress() {
+        if (state == State.RUNNING && batchInstance != null) {
+            int status = batchInstance.getCompletionStatus();
+            if (status > progress && status < Invocable.STATUS_COMPLETE) {
+                progress = status;
+            }
+        }
+        return progress;
+    }
+
+    private void finish(State finalState, String finalError) {
+        if (finalState == State.COMPLETED) {
+            progress = Invocable.STATUS_COMPLETE;
+        } else {
+            progress = getProgress();
+        }
+        error = truncate(finalError);
+        updatedAt = System.currentTimeMillis();
+        finishedAt = updatedAt;
+        state = finalState;
+        try {
+            saveProgress();
+        } catch (Exception e) {
+            logger.error("Could not record the end of batch job " + id, e);
+        }
+    }
+
+    private void insert() throws Exception {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(repositoryName);
+            ps = conn.prepareStatement("INSERT INTO " + JOBS_TABLE
+                    + " (id, tenantid, batchcsid, invocationmode, doctype, state, progress, numaffected, createdat, updatedat, finishedat,"
+                    + " owner, heartbeat) VALUES (?, ?, ?, ?, ?, ?, 0, 0, ?, ?, 0, ?, ?)");
+            ps.setString(1, id);
+            ps.setString(2, tenantId);
+            ps.setString(3, batchCsid);
+            ps.setString(4, invocationMode);
+            ps.setString(5, docType);
+            ps.setString(6, state.name());
+            ps.setLong(7, createdAt);
+            ps.setLong(8, updatedAt);
+            ps.setString(9, SERVER_ID);
+            ps.setLong(10, heartbeatAt);
+            ps.executeUpdate();
+        } finally {
+            close(ps, conn);
+        }
+    }
+
+    private void saveProgress() throws Exception {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(repositoryName);
+            ps = conn.prepareStatement("UPDATE " + JOBS_TABLE
+                    + " SET state = ?, progress = ?, primaryuricreated = ?, usernote = ?, numaffected = ?,"
+                    + " updatedat = ?, finishedat = ?, error = ?, heartbeat = ? WHERE id = ?");
+            ps.setString(1, state.name());
+            ps.setInt(2, progress);
+            ps.setString(3, truncate(primaryURICreated));
+            ps.setString(4, truncate(userNote));
+            ps.setLong(5, numAffected);
+            ps.setLong(6, updatedAt);
+            ps.setLong(7, finishedAt);
+            ps.setString(8, error);
+            ps.setLong(9, updatedAt);
+            ps.setString(10, id);
+            ps.executeUpdate();
+            heartbeatAt = updatedAt;
+        } finally {
+            close(ps, conn);
+        }
+    }
+
+    /*
+     * Marks the job failed if it still hasn't ended and its heartbeat is still too old, which any
+     * server may do, then reads it again.
+     */
+    private void failIfOrphaned(long now) {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(repositoryName);
+            ps = conn.prepareStatement("UPDATE " + JOBS_TABLE
+                    + " SET state = ?, updatedat = ?, finishedat = ?, error = ?"
+                    + " WHERE id = ? AND state IN (?, ?) AND heartbeat < ?");
+            ps.setString(1, State.FAILED.name());
+            ps.setLong(2, now);
+            ps.setLong(3, now);
+            ps.setString(4, INTERRUPTED_ERROR);
+            ps.setString(5, id);
+            ps.setString(6, State.QUEUED.name());
+            ps.setString(7, State.RUNNING.name());
+            ps.setLong(8, now - ORPHAN_TIMEOUT_MILLIS);
+            if (ps.executeUpdate() > 0) {
+                logger.warn(String.format("Batch job %s, of batch %s, stopped writing its heartbeat, so it's marked failed.",
+                        id, batchCsid));
+            }
+        } catch (Exception e) {
+            logger.error("Could not mark orphaned batch job " + id + " failed", e);
+        } finally {
+            close(ps, conn);
+        }
+        reread();
+    }
+
+    /*
+     * Reads the job's state again, returning true if it has ended.
+     */
+    private boolean reread() {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(repositoryName);
+            ps = conn.prepareStatement("SELECT * FROM " + JOBS_TABLE + " WHERE id = ?");
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    readResults(rs);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Could not read the state of batch job " + id, e);
+        } finally {
+            close(ps, conn);
+        }
+        return state != State.QUEUED && state != State.RUNNING;
+    }
+
+    private static AsyncBatchJob fromResultSet(String repositoryName, ResultSet rs) throws SQLException {
+        AsyncBatchJob result = new AsyncBatchJob(rs.getString("id"), repositoryName, rs.getString("tenantid"),
+                rs.getString("batchcsid"), rs.getString("invocationmode"), rs.getString("doctype"));
+        result.readResults(rs);
+        return result;
+    }
+
+    private void readResults(ResultSet rs) throws SQLException {
+        state = State.valueOf(rs.getString("state"));
+        progress = rs.getInt("progress");
+        primaryURICreated = rs.getString("primaryuricreated");
+        userNote = rs.getString("usernote");
+        numAffected = rs.getLong("numaffected");
+        createdAt = rs.getLong("createdat");
+        updatedAt = rs.getLong("updatedat");
+        finishedAt = rs.getLong("finishedat");
+        heartbeatAt = rs.getLong("heartbeat");
+        error = rs.getString("error");
+    }
+
+    private void toXml(StringBuilder dump) {
+        dump.append("<batchJob>");
+        dump.append("<jobId>" + id + "</jobId>");
+        dump.append("<batchCsid>" + batchCsid + "</batchCsid>");
+        dump.append("<state>" + state + "</state>");
+        dump.append("<mode>" + escape(invocationMode) + "</mode>");
+        if (docType != null) {
+            dump.append("<docType>" + escape(docType) + "</docType>");
+        }
+        dump.append("<progress>" + getProgress() + "</progress>");
+        dump.append("<createdAt>" + formatTime(createdAt) + "</createdAt>");
+        dump.append("<updatedAt>" + formatTime(updatedAt) + "</updatedAt>");
+        if (finishedAt > 0) {
+            dump.append("<finishedAt>" + formatTime(finishedAt) + "</finishedAt>");
+            dump.append("<invocationResults>");
+            dump.append("<primaryURICreated>" + escape(primaryURICreated) + "</primaryURICreated>");
+            dump.append("<userNote>" + escape(userNote) + "</userNote>");
+            dump.append("<numAffected>" + numAffected + "</numAffected>");
+            dump.append("</invocationResults>");
+        }
+        if (error != null) {
+            dump.append("<error>" + escape(error) + "</error>");
+        }
+        dump.append("</batchJob>");
+    }
+
+    private static String formatTime(long millis) {
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(millis);
+        return GregorianCalendarDateTimeUtils.formatAsISO8601Timestamp(calendar);
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String truncate(String text) {
+        return text != null && text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+    }
+
+    private static Connection getConnection(String repositoryName) throws Exception {
+        Connection result = connectionFactory.getConnection(repositoryName);
+        if (initializedRepositories.contains(repositoryName) == false) {
+            createTable(result);
+            initializedRepositories.add(repositoryName);
+        }
+        return result;
+    }
+
+    private static void createTable(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        if (exists(metaData.getTables(null, null, JOBS_TABLE, null)) == true
+                || exists(metaData.getTables(null, null, JOBS_TABLE.toUpperCase(), null)) == true) {
+            // Tables made before jobs had owners need the columns added
+            if (exists(metaData.getColumns(null, null, JOBS_TABLE, "heartbeat")) == false
+                    && exists(metaData.getColumns(null, null, JOBS_TABLE.toUpperCase(), "HEARTBEAT")) == false) {
+                logger.info("Adding the owner and heartbeat columns to the batch jobs table.");
+                Statement stmt = conn.createStatement();
+                try {
+                    stmt.executeUpdate("ALTER TABLE " + JOBS_TABLE + " ADD COLUMN owner VARCHAR(36)");
+                    stmt.executeUpdate("ALTER TABLE " + JOBS_TABLE + " ADD COLUMN heartbeat BIGINT DEFAULT 0 NOT NULL");
+                } finally {
+                    stmt.close();
+                }
+            }
+            return;
+        }
+        logger.info("Creating the batch jobs table.");
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("CREATE TABLE " + JOBS_TABLE + " ("
+                    + "id VARCHAR(36) NOT NULL PRIMARY KEY, "
+                    + "tenantid VARCHAR(255) NOT NULL, "
+                    + "batchcsid VARCHAR(36) NOT NULL, "
+                    + "invocationmode VARCHAR(32), "
+                    + "doctype VARCHAR(255), "
+                    + "state VARCHAR(16) NOT NULL, "
+                    + "progress INTEGER NOT NULL, "
+                    + "primaryuricreated VARCHAR(" + MAX_TEXT_LENGTH + "), "
+                    + "usernote VARCHAR(" + MAX_TEXT_LENGTH + "), "
+                    + "numaffected BIGINT NOT NULL, "
+                    + "createdat BIGINT NOT NULL, "
+                    + "updatedat BIGINT NOT NULL, "
+                    + "finishedat BIGINT NOT NULL, "
+                    + "owner VARCHAR(36), "
+                    + "heartbeat BIGINT DEFAULT 0 NOT NULL, "
+                    + "error VARCHAR(" + MAX_TEXT_LENGTH + "))");
+            stmt.executeUpdate("CREATE INDEX " + JOBS_TABLE + "_batch_idx ON " + JOBS_TABLE + " (tenantid, batchcsid)");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static boolean exists(ResultSet rs) throws SQLException {
+        try {
+            return rs.next();
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static void close(Statement stmt, Connection conn) {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+            if (conn != null) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            logger.debug("SQL Exception closing statement/connection in AsyncBatchJob: " + e.getLocalizedMessage());
+        }
+    }
+}
@@ -53,6 +53,7 @@ import org.collectionspace.services.jaxb.AbstractCommonList;
 
 import javax.management.BadAttributeValueExpException;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -64,6 +65,7 @@ import javax.ws.rs.core.Application;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
 @Path(BatchClient.SERVICE_PATH)
@@ -177,19 +179,83 @@ public class BatchResource extends NuxeoBasedResource {
 
 
     
+    /**
+     * Invokes a batch job.  With the "async" query parameter set to true, the job is queued
+     * to run in the background, and the response is a 202 (Accepted) whose location is that
+     * of the job's status (see getBatchJobStatus); otherwise the job runs before the response,
+     * which holds its results.
+     */
     @POST
     @Path("{csid}")
-    public InvocationResults invokeBatchJob(
+    public Response invokeBatchJob(
     		@Context ResourceMap resourceMap, 
     		@PathParam("csid") String csid,
+    		@QueryParam(BatchClient.ASYNC_PARAM) boolean async,
     		InvocationContext invContext) {
         try {
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext();
             BatchDocumentModelHandler handler = (BatchDocumentModelHandler)createDocumentHandler(ctx);
             
-            return handler.invokeBatchJob(ctx, csid, resourceMap, invContext);
+            if (async == false) {
+                InvocationResults results = handler.invokeBatchJob(ctx, csid, resourceMap, invContext);
+                return Response.ok(results).build();
+            }
+
+            BatchInvocable batchInstance = handler.createBatchInstance(ctx, csid, resourceMap, invContext);
+            String jobId = AsyncBatchJob.submit(ctx, csid, invContext, batchInstance, resourceMap);
+            UriBuilder path = UriBuilder.fromResource(BatchResource.class);
+            path.path(csid).path(BatchClient.JOBS_PATH_COMPONENT).path(jobId);
+            return Response.status(Response.Status.ACCEPTED).location(path.build())
+                    .entity(AsyncBatchJob.getStatusXml(ctx, csid, jobId)).build();
         } catch (Exception e) {
             throw bigReThrow(e, ServiceMessages.POST_FAILED);
         }
     }
+
+    /**
+     * Returns the status of the most recent asynchronous invocations of a batch job.
+     */
+    @GET
+    @Path("{csid}/" + BatchClient.JOBS_PATH_COMPONENT)
+    public String getBatchJobs(
+    		@PathParam("csid") String csid) {
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext();
+            return AsyncBatchJob.getJobsXml(ctx, csid);
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.GET_FAILED, csid);
+        }
+    }
+
+    /**
+     * Returns the status, progress, and -once it has ended- results of an asynchronous invocation.
+     */
+    @GET
+    @Path("{csid}/" + BatchClient.JOBS_PATH_COMPONENT + "/{jobcsid}")
+    public String getBatchJobStatus(
+    		@PathParam("csid") String csid,
+    		@PathParam("jobcsid") String jobCsid) {
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext();
+            return AsyncBatchJob.getStatusXml(ctx, csid, jobCsid);
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.GET_FAILED, jobCsid);
+        }
+    }
+
+    /**
+     * Cancels an asynchronous invocation, if it hasn't ended, and returns its status.
+     */
+    @DELETE
+    @Path("{csid}/" + BatchClient.JOBS_PATH_COMPONENT + "/{jobcsid}")
+    public String cancelBatchJob(
+    		@PathParam("csid") String csid,
+    		@PathParam("jobcsid") String jobCsid) {
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext();
+            return AsyncBatchJob.cancel(ctx, csid, jobCsid);
+        } catch (Exception e) {
+            throw bigReThrow(e, ServiceMessages.DELETE_FAILED, jobCsid);
+        }
+    }
 }
@@ -59,6 +59,16 @@ public class BatchDocumentModelHandler extends NuxeoDocumentModelHandler<BatchCo
 
 	public InvocationResults invokeBatchJob(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid,
 			ResourceMap resourceMap, InvocationContext invContext) throws Exception {
+		BatchInvocable batchInstance = createBatchInstance(ctx, csid, resourceMap, invContext);
+		batchInstance.run();
+		return getBatchResults(batchInstance);
+	}
+
+	/*
+	 * Checks that the batch job supports the invocation, and returns a new instance of its class, ready to run.
+	 */
+	public BatchInvocable createBatchInstance(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid,
+			ResourceMap resourceMap, InvocationContext invContext) throws Exception {
 
 		CoreSessionInterface repoSession = null;
 		boolean releaseRepoSession = false;
@@ -153,7 +163,13 @@ public class BatchDocumentModelHandler extends NuxeoDocumentModelHandler<BatchCo
 			}
 		}
 
-		batchInstance.run();
+		return batchInstance;
+	}
+
+	/*
+	 * Returns the results of a batch job that has run, or throws an exception if it failed.
+	 */
+	public InvocationResults getBatchResults(BatchInvocable batchInstance) throws Exception {
 		int status = batchInstance.getCompletionStatus();
 		if (status == Invocable.STATUS_ERROR) {
 			InvocationError error = batchInstance.getErrorInfo();
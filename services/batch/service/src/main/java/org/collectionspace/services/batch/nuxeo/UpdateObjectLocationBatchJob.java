@@ -3,12 +3,21 @@ package org.collectionspace.services.batch.nuxeo;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.ws.rs.core.PathSegment;
 import javax.ws.rs.core.UriInfo;
 import org.collectionspace.services.batch.AbstractBatchInvocable;
@@ -16,20 +25,33 @@ import org.collectionspace.services.client.AbstractCommonListUtils;
 import org.collectionspace.services.client.CollectionObjectClient;
 import org.collectionspace.services.client.IQueryManager;
 import org.collectionspace.services.client.MovementClient;
+import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.ResourceMap;
+import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.api.RefNameUtils;
 import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.common.context.MultipartServiceContextFactory;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.invocable.InvocationContext;
 import org.collectionspace.services.common.invocable.InvocationResults;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.common.vocabulary.RefObjsIndex;
 import org.collectionspace.services.jaxb.AbstractCommonList;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.client.java.NuxeoClientEmbedded;
+import org.collectionspace.services.nuxeo.client.java.NuxeoConnectorEmbedded;
 import org.dom4j.DocumentException;
 import org.jboss.resteasy.specimpl.UriInfoImpl;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
 import org.jdom.input.SAXBuilder;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.runtime.transaction.TransactionHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +82,44 @@ public class UpdateObjectLocationBatchJob extends AbstractBatchInvocable {
             COLLECTIONOBJECTS_COMMON_NAMESPACE_PREFIX,
             COLLECTIONOBJECTS_COMMON_NAMESPACE_URI);
     private final boolean EXCLUDE_DELETED = true;
+    // Set-based recomputation, for the no-context invocation mode
+    private final static String UPDATE_THREADS_PARAM = "threads";
+    private final static String UPDATE_BATCH_SIZE_PARAM = "batchSize";
+    private final static int DEFAULT_UPDATE_THREADS = 4;
+    private final static int MAX_UPDATE_THREADS = 16;
+    private final static int DEFAULT_UPDATE_BATCH_SIZE = 100;
+    private final static int MAX_UPDATE_BATCH_SIZE = 1000;
+    private final static int RECOMPUTE_FETCH_SIZE = 1000;
+    private final static int RECOMPUTE_PROGRESS_INTERVAL = 1000;
+    private final static String DELETED_STATE = "'" + WorkflowClient.WORKFLOWSTATE_DELETED + "'";
+    // The Movements related to each active CollectionObject, via active relations in either direction
+    private final static String RELATED_MOVEMENTS_SELECT =
+            "SELECT oh.id, co.computedcurrentlocation, co.objectnumber, m.currentlocation, m.locationdate, mcore.updatedat, mh.name"
+            + " FROM relations_common r"
+            + " INNER JOIN collectionspace_core rcore ON rcore.id = r.id"
+            + " INNER JOIN misc rmisc ON rmisc.id = r.id"
+            + " INNER JOIN hierarchy mh ON mh.name = r.%1$scsid"
+            + " INNER JOIN movements_common m ON m.id = mh.id"
+            + " INNER JOIN collectionspace_core mcore ON mcore.id = mh.id"
+            + " INNER JOIN misc mmisc ON mmisc.id = mh.id"
+            + " INNER JOIN hierarchy oh ON oh.name = r.%2$scsid"
+            + " INNER JOIN collectionobjects_common co ON co.id = oh.id"
+            + " INNER JOIN misc omisc ON omisc.id = oh.id"
+            + " WHERE rcore.tenantid = ?"
+            + " AND r.%1$sdocumenttype LIKE 'Movement%%' AND r.%2$sdocumenttype LIKE 'CollectionObject%%'"
+            + " AND rmisc.lifecyclestate <> " + DELETED_STATE
+            + " AND mmisc.lifecyclestate <> " + DELETED_STATE + " AND mh.isversion IS NULL"
+            + " AND omisc.lifecyclestate <> " + DELETED_STATE + " AND oh.isversion IS NULL"
+            + " AND m.locationdate IS NOT NULL AND m.currentlocation IS NOT NULL";
+    private final static String RELATED_MOVEMENTS_QUERY =
+            String.format(RELATED_MOVEMENTS_SELECT, "subject", "object")
+            + " UNION ALL "
+            + String.format(RELATED_MOVEMENTS_SELECT, "object", "subject");
+    // By CollectionObject, then Movement CSID, so that ties between Movements are always broken the same way
+    private final static String MOST_RECENT_MOVEMENTS_QUERY = RELATED_MOVEMENTS_QUERY + " ORDER BY 1, 7";
+    // The CollectionObjects the query above returns, which are those whose progress is reported
+    private final static String COLLECTIONOBJECTS_WITH_MOVEMENTS_COUNT_QUERY =
+            "SELECT COUNT(DISTINCT movements.id) FROM (" + RELATED_MOVEMENTS_QUERY + ") movements";
     private final String CLASSNAME = this.getClass().getSimpleName();
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -106,6 +166,13 @@ public class UpdateObjectLocationBatchJob extends AbstractBatchInvocable {
                     throw new Exception(CSID_VALUES_NOT_PROVIDED_IN_INVOCATION_CONTEXT);
                 }
                 csids.addAll(groupMemberCsids);
+            } else if (requestIsForInvocationModeNoContext() && getClass() == UpdateObjectLocationBatchJob.class) {
+                // Recompute the locations of all CollectionObjects with set-based queries.
+                // (Subclasses may update other values, in updateCollectionObjectValues(),
+                // so they go through the resources record by record, below.)
+                setResults(recomputeAllComputedCurrentLocations());
+                setCompletionStatus(STATUS_COMPLETE);
+                return;
             } else if (requestIsForInvocationModeNoContext()) {
                 List<String> noContextCsids = getNoContextCsids();
                 if (noContextCsids.isEmpty()) {
@@ -138,10 +205,16 @@ public class UpdateObjectLocationBatchJob extends AbstractBatchInvocable {
         try {
 
             // For each CollectionObject record
+            int numProcessed = 0;
             for (String collectionObjectCsid : csids) {
 
-                // FIXME: Optionally set competition status here to
-                // indicate what percentage of records have been processed.
+                // Report the percentage of records that have been processed,
+                // and stop early if the job has been cancelled
+                setProgress(numProcessed++, csids.size());
+                if (isCancelled()) {
+                    logger.info(CLASSNAME + " was cancelled after processing " + (numProcessed - 1) + " of " + csids.size() + " CollectionObject record(s).");
+                    break;
+                }
 
                 // Skip over soft-deleted CollectionObject records
                 //
@@ -196,6 +269,254 @@ public class UpdateObjectLocationBatchJob extends AbstractBatchInvocable {
         return getResults();
     }
 
+    /**
+     * Recomputes the computed current location of every active CollectionObject
+     * in the tenant, working in the repository rather than through the resources.
+     *
+     * A single query returns, for each CollectionObject, its current computed
+     * location and the location date, update date and current location of each
+     * of its active related Movements, ordered by CollectionObject. The rows are
+     * read as they arrive, the most recent Movement of each CollectionObject is
+     * picked by the same rules as getMostRecentMovement(), and the CollectionObjects
+     * whose locations change are updated in batches, each in its own transaction,
+     * by a pool of worker threads.
+     *
+     * The "threads" and "batchSize" invocation parameters set the number of worker
+     * threads and the number of CollectionObjects updated per transaction.
+     */
+    private InvocationResults recomputeAllComputedCurrentLocations() throws Exception {
+        NuxeoBasedResource collectionObjectResource = getResourceMap().get(CollectionObjectClient.SERVICE_NAME);
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = MultipartServiceContextFactory.get().createServiceContext(
+                collectionObjectResource.getServiceName(), createUriInfo());
+        final String tenantId = ctx.getTenantId();
+        final String repositoryName = ctx.getRepositoryName();
+        String cspaceInstanceId = ServiceMain.getInstance().getCspaceInstanceId();
+        int nThreads = getIntParam(UPDATE_THREADS_PARAM, DEFAULT_UPDATE_THREADS, MAX_UPDATE_THREADS);
+        int batchSize = getIntParam(UPDATE_BATCH_SIZE_PARAM, DEFAULT_UPDATE_BATCH_SIZE, MAX_UPDATE_BATCH_SIZE);
+
+        final AtomicInteger numUpdated = new AtomicInteger();
+        final AtomicReference<Exception> updateError = new AtomicReference<Exception>();
+        // The queue is short, so that, when the workers fall behind, the reader
+        // updates a batch itself rather than holding on to more of them
+        ThreadPoolExecutor updaters = new ThreadPoolExecutor(nThreads, nThreads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(nThreads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        int numScanned = 0;
+        int numChanged = 0;
+        long start = System.currentTimeMillis();
+
+        Connection conn = JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId);
+        try {
+            int numObjects = countCollectionObjectsWithMovements(conn, ctx.getTenantId());
+            // Without auto-commit, the rows are fetched a page at a time rather than all at once
+            conn.setAutoCommit(false);
+            PreparedStatement ps = conn.prepareStatement(MOST_RECENT_MOVEMENTS_QUERY);
+            try {
+                ps.setString(1, ctx.getTenantId());
+                ps.setString(2, ctx.getTenantId());
+                ps.setFetchSize(RECOMPUTE_FETCH_SIZE);
+                ResultSet rs = ps.executeQuery();
+                try {
+                    List<String[]> batch = new ArrayList<String[]>();
+                    String objectId = null;
+                    String previousLocation = null;
+                    String objectNumber = null;
+                    MostRecentMovement mostRecentMovement = new MostRecentMovement();
+                    boolean moreRows = rs.next();
+                    while (objectId != null || moreRows) {
+                        String rowObjectId = moreRows ? rs.getString(1) : null;
+                        if (objectId != null && objectId.equals(rowObjectId) == false) {
+                            // We've seen all the Movements of the previous CollectionObject
+                            numScanned++;
+                            String mostRecentLocation = mostRecentMovement.getLocation();
+                            if (mostRecentLocation != null && Tools.notBlank(objectNumber)
+                                    && shouldUpdateLocation(previousLocation, mostRecentLocation)) {
+                                numChanged++;
+                                batch.add(new String[] {objectId, mostRecentLocation});
+                                if (batch.size() >= batchSize) {
+                                    submitLocationUpdates(updaters, tenantId, repositoryName, batch, numUpdated, updateError);
+                                    batch = new ArrayList<String[]>();
+                                }
+                            }
+                            if (numScanned % RECOMPUTE_PROGRESS_INTERVAL == 0) {
+                                setProgress(numScanned, numObjects);
+                                if (isCancelled() || updateError.get() != null) {
+                                    break;
+                                }
+                            }
+                            mostRecentMovement = new MostRecentMovement();
+                        }
+                        if (moreRows == false) {
+                            break;
+                        }
+                        objectId = rowObjectId;
+                        previousLocation = rs.getString(2);
+                        objectNumber = rs.getString(3);
+                        String location = rs.getString(4);
+                        if (mostRecentMovement.add(rs.getString(7), location, rs.getTimestamp(5), rs.getTimestamp(6)) == false
+                                && logger.isTraceEnabled()) {
+                            logger.trace(String.format("Skipping a Movement of CollectionObject %s with current location '%s'",
+                                    objectId, location));
+                        }
+                        moreRows = rs.next();
+                    }
+                    if (batch.isEmpty() == false && isCancelled() == false) {
+                        submitLocationUpdates(updaters, tenantId, repositoryName, batch, numUpdated, updateError);
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+        } finally {
+            try {
+                conn.rollback(); // We only read
+                conn.setAutoCommit(true);
+            } finally {
+                conn.close();
+            }
+            updaters.shutdown();
+            updaters.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        if (updateError.get() != null) {
+            throw new Exception("Successfully updated " + numUpdated.get() + " CollectionObject record(s) prior to error: "
+                    + updateError.get().getLocalizedMessage(), updateError.get());
+        }
+        logger.info(String.format("Updated computedCurrentLocation values in %d of %d changed CollectionObject record(s),"
+                + " of %d with Movements, in %d ms.", numUpdated.get(), numChanged, numScanned, System.currentTimeMillis() - start));
+        getResults().setNumAffected(numUpdated.get());
+        return getResults();
+    }
+
+    private void submitLocationUpdates(ThreadPoolExecutor updaters, final String tenantId, final String repositoryName,
+            final List<String[]> batch, final AtomicInteger numUpdated, final AtomicReference<Exception> updateError) {
+        updaters.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (updateError.get() != null) {
+                    return;
+                }
+                try {
+                    numUpdated.addAndGet(updateComputedCurrentLocations(tenantId, repositoryName, batch));
+                } catch (Exception e) {
+                    logger.error("Error encountered in " + CLASSNAME + " while updating a batch of CollectionObject records", e);
+                    updateError.compareAndSet(null, e);
+                }
+            }
+        });
+    }
+
+    /*
+     * Sets the computed current locations of a batch of CollectionObjects, given as
+     * pairs of repository IDs and locations, in one transaction.  The computed current
+     * location is an authRef, so the refObjs index is updated once the batch commits.
+     */
+    private int updateComputedCurrentLocations(String tenantId, String repositoryName, List<String[]> batch) throws Exception {
+        NuxeoClientEmbedded client = NuxeoConnectorEmbedded.getInstance().getClient();
+        CoreSessionInterface repoSession = client.openRepository(repositoryName);
+        try {
+            for (String[] update : batch) {
+                DocumentModel collectionObjectDocModel = repoSession.getDocument(new IdRef(update[0]));
+                collectionObjectDocModel.setProperty(COLLECTIONOBJECTS_COMMON_SCHEMA_NAME,
+                        COMPUTED_CURRENT_LOCATION_ELEMENT_NAME, update[1]);
+                repoSession.saveDocument(collectionObjectDocModel);
+                RefObjsIndex.update(tenantId, repositoryName, collectionObjectDocModel);
+            }
+            repoSession.save();
+        } catch (Exception e) {
+            if (TransactionHelper.isTransactionActiveOrMarkedRollback() == true) {
+                TransactionHelper.setTransactionRollbackOnly();
+            }
+            throw e;
+        } finally {
+            client.releaseRepository(repoSession); // Commits, or rolls back, the batch
+        }
+        return batch.size();
+    }
+
+    private int countCollectionObjectsWithMovements(Connection conn, String tenantId) throws Exception {
+        int result = 0;
+        PreparedStatement ps = conn.prepareStatement(COLLECTIONOBJECTS_WITH_MOVEMENTS_COUNT_QUERY);
+        try {
+            ps.setString(1, tenantId);
+            ps.setString(2, tenantId);
+            ResultSet rs = ps.executeQuery();
+            try {
+                if (rs.next()) {
+                    result = rs.getInt(1);
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+        return result;
+    }
+
+    private int getIntParam(String key, int defaultValue, int maxValue) {
+        int result = defaultValue;
+        for (InvocationContext.Params.Param param : getParams()) {
+            if (key.equals(param.getKey()) && Tools.notBlank(param.getValue())) {
+                try {
+                    result = Math.min(maxValue, Math.max(1, Integer.parseInt(param.getValue().trim())));
+                } catch (NumberFormatException e) {
+                    logger.warn(String.format("Ignoring the invalid value '%s' of the %s parameter", param.getValue(), key));
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Picks the most recent of the Movements of one CollectionObject as they're read, by the rules of
+     * getMostRecentMovement(): a Movement appearing more than once (e.g. through reciprocal relations)
+     * counts once, Movements without a location date, update date or item refName as their current
+     * location are skipped, the latest location date wins, and ties go to the latest update date.  When
+     * both dates tie, the first Movement read is kept.
+     */
+    static class MostRecentMovement {
+        private final Set<String> movementCsids = new HashSet<String>();
+        private String location = null;
+        private Timestamp locationDate = null;
+        private Timestamp updateDate = null;
+
+        /**
+         * Considers a Movement, returning false if it's skipped.
+         */
+        boolean add(String movementCsid, String currentLocation, Timestamp movementLocationDate, Timestamp movementUpdateDate) {
+            if (movementCsids.add(movementCsid) == false) {
+                return true; // Already considered
+            }
+            if (movementLocationDate == null || movementUpdateDate == null || isItemRefName(currentLocation) == false) {
+                return false;
+            }
+            if (locationDate == null || movementLocationDate.after(locationDate)
+                    || (movementLocationDate.equals(locationDate) && movementUpdateDate.after(updateDate))) {
+                location = currentLocation;
+                locationDate = movementLocationDate;
+                updateDate = movementUpdateDate;
+            }
+            return true;
+        }
+
+        /**
+         * Returns the current location of the most recent Movement, or null if there is none.
+         */
+        String getLocation() {
+            return location;
+        }
+
+        private static boolean isItemRefName(String refName) {
+            try {
+                return Tools.notBlank(refName) && RefNameUtils.parseAuthorityTermInfo(refName) != null;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+    }
+
     private AbstractCommonList.ListItem getMostRecentMovement(AbstractCommonList relatedMovements) {
         Set<String> alreadyProcessedMovementCsids = new HashSet<String>();
         AbstractCommonList.ListItem mostRecentMovement = null;
@@ -236,7 +557,7 @@ public class UpdateObjectLocationBatchJob extends AbstractBatchInvocable {
             //
             // TODO: Consider making this optional validation, in turn dependent on the
             // value of a parameter passed in during batch job invocation.
-            if (RefNameUtils.parseAuthorityTermInfo(currentLocation) == null) {
+            if (MostRecentMovement.isItemRefName(currentLocation) == false) {
                 logger.warn(String.format("Could not parse current location refName '%s' in Movement record",
                     currentLocation));
                  continue;
@@ -382,8 +703,7 @@ public class UpdateObjectLocationBatchJob extends AbstractBatchInvocable {
     }
 
     protected PoxPayloadOut findByCsid(NuxeoBasedResource resource, String csid) throws URISyntaxException, DocumentException {
-        byte[] response = resource.get(null, createUriInfo(), csid);
-        PoxPayloadOut payload = new PoxPayloadOut(response);
+        PoxPayloadOut payload = resource.getPayload(null, createUriInfo(), csid);
         return payload;
     }
 
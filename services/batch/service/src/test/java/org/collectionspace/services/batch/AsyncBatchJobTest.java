@@ -0,0 +1,248 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.batch;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.ResourceMapImpl;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.invocable.InvocationContext;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests submitting, cancelling and getting the status of asynchronous batch jobs, with their
+ * table in an in-memory database.
+ */
+public class AsyncBatchJobTest {
+
+    private static final String DB_URL = "jdbc:h2:mem:batchjobs;DB_CLOSE_DELAY=-1";
+    private static final String REPOSITORY = "default";
+    private static final String BATCH_CSID = "0a1b2c3d-0000-4000-8000-000000000001";
+    private static final long WAIT_MILLIS = 10000;
+
+    private AsyncBatchJob.ConnectionFactory defaultConnectionFactory;
+
+    /*
+     * A batch job that runs until it's released or cancelled.
+     */
+    private static class WaitingBatchJob extends AbstractBatchInvocable {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            setProgress(0, 2);
+            started.countDown();
+            try {
+                while (isCancelled() == false) {
+                    if (released.await(10, TimeUnit.MILLISECONDS) == true) {
+                        setCompletionStatus(STATUS_COMPLETE);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                setErrorResult("Interrupted");
+            }
+        }
+    }
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        defaultConnectionFactory = AsyncBatchJob.connectionFactory;
+        AsyncBatchJob.connectionFactory = new AsyncBatchJob.ConnectionFactory() {
+            @Override
+            public Connection getConnection(String repositoryName) throws Exception {
+                return DriverManager.getConnection(DB_URL);
+            }
+        };
+    }
+
+    @AfterClass
+    public void tearDown() {
+        AsyncBatchJob.connectionFactory = defaultConnectionFactory;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceContext<PoxPayloadIn, PoxPayloadOut> createContext(final String tenantId) {
+        return (ServiceContext<PoxPayloadIn, PoxPayloadOut>) Proxy.newProxyInstance(ServiceContext.class.getClassLoader(),
+                new Class<?>[] {ServiceContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getTenantId") == true) {
+                            return tenantId;
+                        } else if (method.getName().equals("getRepositoryName") == true) {
+                            return REPOSITORY;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static String submit(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, BatchInvocable batchJob) throws Exception {
+        InvocationContext invContext = new InvocationContext();
+        invContext.setMode("nocontext");
+        return AsyncBatchJob.submit(ctx, BATCH_CSID, invContext, batchJob, new ResourceMapImpl());
+    }
+
+    private static String getState(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String jobId) throws Exception {
+        String status = AsyncBatchJob.getStatusXml(ctx, BATCH_CSID, jobId);
+        return status.substring(status.indexOf("<state>") + "<state>".length(), status.indexOf("</state>"));
+    }
+
+    private static void waitForState(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String jobId, String state) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (getState(ctx, jobId).equals(state) == false) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline, "Job " + jobId + " never became " + state);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSubmitAndComplete() throws Exception {
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createContext("submit");
+        WaitingBatchJob batchJob = new WaitingBatchJob();
+        String jobId = submit(ctx, batchJob);
+
+        Assert.assertTrue(batchJob.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(getState(ctx, jobId), AsyncBatchJob.State.RUNNING.name());
+        Assert.assertTrue(AsyncBatchJob.getJobsXml(ctx, BATCH_CSID).contains("<jobId>" + jobId + "</jobId>"));
+
+        batchJob.released.countDown();
+        waitForState(ctx, jobId, AsyncBatchJob.State.COMPLETED.name());
+        String status = AsyncBatchJob.getStatusXml(ctx, BATCH_CSID, jobId);
+        Assert.assertTrue(status.contains("<progress>100</progress>"), status);
+        Assert.assertTrue(status.contains("<finishedAt>"), status);
+    }
+
+    @Test
+    public void testCancelQueued() throws Exception {
+        System.setProperty(AsyncBatchJob.THREADS_PER_TENANT_PROP, "1");
+        try {
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createContext("cancelQueued");
+            WaitingBatchJob running = new WaitingBatchJob();
+            String runningId = submit(ctx, running);
+            Assert.assertTrue(running.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+            // The tenant's only thread is busy, so this one waits
+            WaitingBatchJob queued = new WaitingBatchJob();
+            String queuedId = submit(ctx, queued);
+            Assert.assertEquals(getState(ctx, queuedId), AsyncBatchJob.State.QUEUED.name());
+
+            String status = AsyncBatchJob.cancel(ctx, BATCH_CSID, queuedId);
+            Assert.assertTrue(status.contains("<state>CANCELLED</state>"), status);
+
+            running.released.countDown();
+            waitForState(ctx, runningId, AsyncBatchJob.State.COMPLETED.name());
+            Assert.assertEquals(queued.started.getCount(), 1, "A cancelled job was run");
+            Assert.assertEquals(getState(ctx, queuedId), AsyncBatchJob.State.CANCELLED.name());
+        } finally {
+            System.clearProperty(AsyncBatchJob.THREADS_PER_TENANT_PROP);
+        }
+    }
+
+    @Test
+    public void testCancelRunning() throws Exception {
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createContext("cancelRunning");
+        WaitingBatchJob batchJob = new WaitingBatchJob();
+        String jobId = submit(ctx, batchJob);
+        Assert.assertTrue(batchJob.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        AsyncBatchJob.cancel(ctx, BATCH_CSID, jobId);
+        Assert.assertTrue(batchJob.isCancelled());
+        waitForState(ctx, jobId, AsyncBatchJob.State.CANCELLED.name());
+    }
+
+    @Test
+    public void testOrphanedJobFails() throws Exception {
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createContext("orphans");
+        AsyncBatchJob.getJobsXml(ctx, BATCH_CSID); // Creates the table
+        long now = System.currentTimeMillis();
+        insertJob("orphaned", "orphans", AsyncBatchJob.State.RUNNING, now - AsyncBatchJob.ORPHAN_TIMEOUT_MILLIS - 1000);
+        insertJob("alive", "orphans", AsyncBatchJob.State.RUNNING, now);
+
+        // Another server owns them; only the one that stopped writing its heartbeat has failed
+        String status = AsyncBatchJob.getStatusXml(ctx, BATCH_CSID, "orphaned");
+        Assert.assertTrue(status.contains("<state>FAILED</state>"), status);
+        Assert.assertTrue(status.contains("<error>"), status);
+        Assert.assertEquals(getState(ctx, "alive"), AsyncBatchJob.State.RUNNING.name());
+    }
+
+    @Test
+    public void testHeartbeatKeepsActiveJobs() throws Exception {
+        ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createContext("heartbeat");
+        WaitingBatchJob batchJob = new WaitingBatchJob();
+        String jobId = submit(ctx, batchJob);
+        Assert.assertTrue(batchJob.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        long later = System.currentTimeMillis() + AsyncBatchJob.ORPHAN_TIMEOUT_MILLIS;
+        AsyncBatchJob.beat(later);
+        Connection conn = DriverManager.getConnection(DB_URL);
+        try {
+            PreparedStatement ps = conn.prepareStatement("SELECT heartbeat, owner FROM cs_batch_jobs WHERE id = ?");
+            ps.setString(1, jobId);
+            ResultSet rs = ps.executeQuery();
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(rs.getLong(1), later);
+            Assert.assertEquals(rs.getString(2), AsyncBatchJob.SERVER_ID);
+            ps.close();
+        } finally {
+            conn.close();
+        }
+
+        batchJob.released.countDown();
+        waitForState(ctx, jobId, AsyncBatchJob.State.COMPLETED.name());
+    }
+
+    private static void insertJob(String id, String tenantId, AsyncBatchJob.State state, long heartbeat) throws Exception {
+        Connection conn = DriverManager.getConnection(DB_URL);
+        try {
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO cs_batch_jobs"
+                    + " (id, tenantid, batchcsid, invocationmode, state, progress, numaffected, createdat, updatedat, finishedat, owner, heartbeat)"
+                    + " VALUES (?, ?, ?, 'nocontext', ?, 0, 0, ?, ?, 0, 'another-server', ?)");
+            ps.setString(1, id);
+            ps.setString(2, tenantId);
+            ps.setString(3, BATCH_CSID);
+            ps.setString(4, state.name());
+            ps.setLong(5, heartbeat);
+            ps.setLong(6, heartbeat);
+            ps.setLong(7, heartbeat);
+            ps.executeUpdate();
+            ps.close();
+        } finally {
+            conn.close();
+        }
+    }
+}
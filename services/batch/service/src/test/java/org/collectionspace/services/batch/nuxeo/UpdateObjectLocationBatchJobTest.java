@@ -0,0 +1,107 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.batch.nuxeo;
+
+import java.sql.Timestamp;
+
+import org.collectionspace.services.batch.nuxeo.UpdateObjectLocationBatchJob.MostRecentMovement;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests how UpdateObjectLocationBatchJob picks the most recent of a CollectionObject's Movements
+ * when it recomputes all the locations at once.
+ */
+public class UpdateObjectLocationBatchJobTest {
+
+    private static final String SHELF_1 = location("shelf1", "Shelf 1");
+    private static final String SHELF_2 = location("shelf2", "Shelf 2");
+    private static final String SHELF_3 = location("shelf3", "Shelf 3");
+
+    private static String location(String shortId, String displayName) {
+        return "urn:cspace:core.collectionspace.org:locationauthorities:name(location):item:name(" + shortId + ")'"
+                + displayName + "'";
+    }
+
+    private static Timestamp time(String dateTime) {
+        return Timestamp.valueOf(dateTime);
+    }
+
+    @Test
+    public void testNoMovements() {
+        Assert.assertNull(new MostRecentMovement().getLocation());
+    }
+
+    @Test
+    public void testLatestLocationDateWins() {
+        MostRecentMovement mostRecent = new MostRecentMovement();
+        mostRecent.add("m1", SHELF_1, time("2016-01-01 00:00:00"), time("2016-03-01 00:00:00"));
+        mostRecent.add("m2", SHELF_2, time("2016-02-01 00:00:00"), time("2016-02-01 00:00:00"));
+        mostRecent.add("m3", SHELF_3, time("2015-12-01 00:00:00"), time("2016-04-01 00:00:00"));
+        Assert.assertEquals(mostRecent.getLocation(), SHELF_2);
+    }
+
+    @Test
+    public void testLocationDateTieGoesToLatestUpdate() {
+        MostRecentMovement mostRecent = new MostRecentMovement();
+        mostRecent.add("m1", SHELF_1, time("2016-01-01 00:00:00"), time("2016-01-05 00:00:00"));
+        mostRecent.add("m2", SHELF_2, time("2016-01-01 00:00:00"), time("2016-01-06 00:00:00"));
+        mostRecent.add("m3", SHELF_3, time("2016-01-01 00:00:00"), time("2016-01-04 00:00:00"));
+        Assert.assertEquals(mostRecent.getLocation(), SHELF_2);
+    }
+
+    @Test
+    public void testFullTieKeepsFirst() {
+        MostRecentMovement mostRecent = new MostRecentMovement();
+        mostRecent.add("m1", SHELF_1, time("2016-01-01 00:00:00"), time("2016-01-05 00:00:00"));
+        mostRecent.add("m2", SHELF_2, time("2016-01-01 00:00:00"), time("2016-01-05 00:00:00"));
+        Assert.assertEquals(mostRecent.getLocation(), SHELF_1);
+    }
+
+    @Test
+    public void testReciprocalRelationsCountOnce() {
+        // Related in both directions, so the query returns m1 twice
+        MostRecentMovement mostRecent = new MostRecentMovement();
+        Assert.assertTrue(mostRecent.add("m1", SHELF_1, time("2016-01-01 00:00:00"), time("2016-01-05 00:00:00")));
+        Assert.assertTrue(mostRecent.add("m2", SHELF_2, time("2016-01-01 00:00:00"), time("2016-01-05 00:00:00")));
+        Assert.assertTrue(mostRecent.add("m1", SHELF_1, time("2016-01-01 00:00:00"), time("2016-01-05 00:00:00")));
+        Assert.assertEquals(mostRecent.getLocation(), SHELF_1);
+    }
+
+    @Test
+    public void testNonRefNameLocationsSkipped() {
+        MostRecentMovement mostRecent = new MostRecentMovement();
+        Assert.assertTrue(mostRecent.add("m1", SHELF_1, time("2016-01-01 00:00:00"), time("2016-01-01 00:00:00")));
+        Assert.assertFalse(mostRecent.add("m2", "Shelf 2", time("2016-02-01 00:00:00"), time("2016-02-01 00:00:00")));
+        Assert.assertFalse(mostRecent.add("m3", "urn:cspace:not-a-refname", time("2016-03-01 00:00:00"), time("2016-03-01 00:00:00")));
+        Assert.assertFalse(mostRecent.add("m4", "", time("2016-04-01 00:00:00"), time("2016-04-01 00:00:00")));
+        Assert.assertEquals(mostRecent.getLocation(), SHELF_1);
+    }
+
+    @Test
+    public void testMovementsWithoutDatesSkipped() {
+        MostRecentMovement mostRecent = new MostRecentMovement();
+        Assert.assertFalse(mostRecent.add("m1", SHELF_1, null, time("2016-01-01 00:00:00")));
+        Assert.assertFalse(mostRecent.add("m2", SHELF_2, time("2016-01-01 00:00:00"), null));
+        Assert.assertNull(mostRecent.getLocation());
+    }
+}
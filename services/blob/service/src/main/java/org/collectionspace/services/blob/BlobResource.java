@@ -25,13 +25,13 @@ package org.collectionspace.services.blob;
 
 import org.collectionspace.services.publicitem.PublicitemsCommon;
 import org.collectionspace.services.client.BlobClient;
-import org.collectionspace.services.client.PayloadPart;
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.common.FileUtils;
 import org.collectionspace.services.common.NuxeoBasedResource;
 import org.collectionspace.services.common.ResourceMap;
 import org.collectionspace.services.common.ServiceMessages;
+import org.collectionspace.services.common.blob.BlobContentOutput;
 import org.collectionspace.services.common.blob.BlobInput;
 import org.collectionspace.services.common.blob.BlobUtil;
 import org.collectionspace.services.common.context.ServiceContext;
@@ -41,6 +41,7 @@ import org.collectionspace.services.common.CSWebApplicationException;
 
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
+import org.jboss.resteasy.util.HttpResponseCodes;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -51,15 +52,24 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 
 //FIXME: REM - We should not have Nuxeo dependencies in our resource classes.
 
@@ -68,6 +78,14 @@ import java.util.Map;
 @Produces("application/xml")
 public class BlobResource extends NuxeoBasedResource {
 
+	// HTTP headers for range requests, which JAX-RS doesn't have constants for
+	private static final String RANGE_HEADER = "Range";
+	private static final String IF_RANGE_HEADER = "If-Range";
+	private static final String CONTENT_RANGE_HEADER = "Content-Range";
+	private static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
+	private static final String BYTES_UNIT = "bytes=";
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
 	@Override
     public String getServiceName(){
         return BlobClient.SERVICE_NAME;
@@ -115,36 +133,31 @@ public class BlobResource extends NuxeoBasedResource {
     	return result;
     }
     
-    private InputStream getBlobContent(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    /*
+     * Gets the content of a blob or one of its derivatives, along with what we know about it -its name, length, digest, etc.
+     * The doc handler reads just the blob record and its Nuxeo blob document; it doesn't build a payload.
+     */
+    private BlobInput getBlobContentInput(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
     		String csid, 
-    		String derivativeTerm, 
-    		StringBuffer outMimeType) throws CSWebApplicationException {
-    	InputStream result = null;
+    		String derivativeTerm) throws CSWebApplicationException {
+    	BlobInput result = null;
     	
     	try {
 	    	BlobInput blobInput = BlobUtil.getBlobInput(ctx);
 	    	blobInput.setDerivativeTerm(derivativeTerm);
 	    	blobInput.setContentRequested(true);
 	    	
-	    	PoxPayloadOut response = this.get(csid, ctx);
-	    	if (logger.isDebugEnabled() == true) {
-	    		logger.debug(response.toString());
-	    	}
+	    	this.get(csid, ctx);
 	    	//
 	    	// The result of a successful get should have put the results in the
 	    	// blobInput instance
 	    	//
-	    	
-	    	String mimeType = blobInput.getMimeType();
-	    	if (mimeType != null) {
-	    		outMimeType.append(mimeType); // blobInput's mime type was set on call to "get" above by the doc handler
-	    	}
-	    	result = BlobUtil.getBlobInput(ctx).getContentStream();
+	    	result = BlobUtil.getBlobInput(ctx);
     	} catch (Exception e) {
     		throw bigReThrow(e, ServiceMessages.CREATE_FAILED);
     	}
     	
-    	if (result == null) {
+    	if (result.getContentFile() == null && result.getContentStream() == null) {
     		String errMsg = String.format("Index failed. Could not get the contents for the Blob with CSID = '%s'.",
     				csid);
 	        Response response = Response.status(
@@ -155,6 +168,153 @@ public class BlobResource extends NuxeoBasedResource {
     	return result;
     }
     
+    /*
+     * Builds the response to a request for blob content, honoring the request's conditional headers -If-None-Match,
+     * If-Modified-Since, etc.- and a Range header for a single range of bytes, so that clients can cache the content
+     * and fetch just the parts of it they need.
+     */
+    private Response buildContentResponse(Request request, HttpHeaders headers, BlobInput blobInput) {
+    	String digest = blobInput.getContentDigest();
+    	EntityTag eTag = digest != null ? new EntityTag(digest) : null;
+    	Date lastModified = blobInput.getContentLastModified();
+    	if (lastModified != null) {
+    		lastModified = new Date(lastModified.getTime() / 1000 * 1000); // HTTP dates are to the second
+    	}
+    	long contentLength = blobInput.getContentLength();
+    	
+    	ResponseBuilder responseBuilder = evaluatePreconditions(request, lastModified, eTag);
+    	if (responseBuilder != null) {
+    		closeContent(blobInput); // The client's copy is current (304), or it's changed since the client last saw it (412)
+    	} else {
+    		long[] range = null;
+    		if (contentLength >= 0 && isRangeCurrent(headers, eTag, lastModified) == true) {
+    			range = parseRange(headers.getRequestHeaders().getFirst(RANGE_HEADER), contentLength);
+    		}
+    		
+    		if (range == null) {
+    			responseBuilder = Response.ok(new BlobContentOutput(blobInput), blobInput.getMimeType());
+    			if (contentLength >= 0) {
+    				responseBuilder.header(HttpHeaders.CONTENT_LENGTH, contentLength);
+    			}
+    		} else if (range.length == 0) {
+    			closeContent(blobInput);
+    			responseBuilder = Response.status(HttpResponseCodes.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+    					.header(CONTENT_RANGE_HEADER, "bytes */" + contentLength);
+    		} else {
+    			long rangeLength = range[1] - range[0] + 1;
+    			responseBuilder = Response.status(HttpResponseCodes.SC_PARTIAL_CONTENT)
+    					.entity(new BlobContentOutput(blobInput, range[0], rangeLength))
+    					.type(blobInput.getMimeType())
+    					.header(CONTENT_RANGE_HEADER, "bytes " + range[0] + "-" + range[1] + "/" + contentLength)
+    					.header(HttpHeaders.CONTENT_LENGTH, rangeLength);
+    		}
+    		responseBuilder.header("Content-Disposition", "inline;filename=\""
+    				+ blobInput.getContentName() + "\"");
+    	}
+    	
+    	if (contentLength >= 0) {
+    		responseBuilder.header(ACCEPT_RANGES_HEADER, "bytes");
+    	}
+    	if (eTag != null) {
+    		responseBuilder.tag(eTag);
+    	}
+    	if (lastModified != null) {
+    		responseBuilder.lastModified(lastModified);
+    	}
+    	
+    	return responseBuilder.build();
+    }
+    
+    private ResponseBuilder evaluatePreconditions(Request request, Date lastModified, EntityTag eTag) {
+    	ResponseBuilder result = null;
+    	
+    	if (lastModified != null && eTag != null) {
+    		result = request.evaluatePreconditions(lastModified, eTag);
+    	} else if (eTag != null) {
+    		result = request.evaluatePreconditions(eTag);
+    	} else if (lastModified != null) {
+    		result = request.evaluatePreconditions(lastModified);
+    	}
+    	
+    	return result;
+    }
+    
+    /*
+     * A Range header is only honored if there is no If-Range header, or if the If-Range header has the current
+     * (strong) entity tag or modification date of the content.  Otherwise, the client gets all of the content.
+     */
+    private boolean isRangeCurrent(HttpHeaders headers, EntityTag eTag, Date lastModified) {
+    	boolean result = true;
+    	
+    	String ifRange = headers.getRequestHeaders().getFirst(IF_RANGE_HEADER);
+    	if (ifRange != null) {
+    		ifRange = ifRange.trim();
+    		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+    			result = eTag != null && ifRange.equals("\"" + eTag.getValue() + "\"");
+    		} else {
+    			SimpleDateFormat httpDateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+    			httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    			try {
+    				result = lastModified != null && httpDateFormat.parse(ifRange).getTime() == lastModified.getTime();
+    			} catch (ParseException e) {
+    				result = false;
+    			}
+    		}
+    	}
+    	
+    	return result;
+    }
+    
+    /*
+     * Parses a Range header for a single range of bytes -e.g., "bytes=0-499", "bytes=500-", or "bytes=-500".  Returns
+     * the first and last byte positions of the range, an empty array if the range starts past the end of the content,
+     * or null if there's no Range header or we don't support it.  Requests for more than one range get all of the
+     * content, as RFC 7233 allows.
+     */
+    private long[] parseRange(String rangeHeader, long contentLength) {
+    	long[] result = null;
+    	
+    	if (rangeHeader != null && rangeHeader.startsWith(BYTES_UNIT)) {
+    		String rangeSpec = rangeHeader.substring(BYTES_UNIT.length()).trim();
+    		int dashIndex = rangeSpec.indexOf('-');
+    		if (rangeSpec.indexOf(',') < 0 && dashIndex > -1) {
+    			String firstPos = rangeSpec.substring(0, dashIndex).trim();
+    			String lastPos = rangeSpec.substring(dashIndex + 1).trim();
+	    		try {
+	    			if (firstPos.isEmpty() == true) {
+	    				// The last so many bytes
+	    				long suffixLength = Long.parseLong(lastPos);
+	    				result = suffixLength > 0 && contentLength > 0
+	    						? new long[] {Math.max(0, contentLength - suffixLength), contentLength - 1}
+	    						: new long[0];
+	    			} else {
+	    				long first = Long.parseLong(firstPos);
+	    				long last = lastPos.isEmpty() ? contentLength - 1 : Long.parseLong(lastPos);
+	    				if (first >= contentLength) {
+	    					result = new long[0];
+	    				} else if (last >= first) {
+	    					result = new long[] {first, Math.min(last, contentLength - 1)};
+	    				}
+	    			}
+	    		} catch (NumberFormatException e) {
+	    			result = null; // Not a valid range, so we'll ignore it
+	    		}
+    		}
+    	}
+    	
+    	return result;
+    }
+    
+    private void closeContent(BlobInput blobInput) {
+    	if (blobInput.getContentFile() == null && blobInput.getContentStream() != null) {
+    		try {
+    			blobInput.getContentStream().close();
+    		} catch (IOException e) {
+    			logger.debug("Could not close the content stream of blob: " + blobInput.getContentName(), e);
+    		}
+    	}
+    }
+    
     /*
      * This method can replace the 'createBlob' -specifically, this JAX-RS technique can replace the call to
      * the BlobInput.createBlobFile() method.  In theory, this should reduce by 1 the number of time we need to copy
@@ -242,20 +402,17 @@ public class BlobResource extends NuxeoBasedResource {
     
     @GET
     @Path("{csid}/content")
-    public Response getBlobContent(	@PathParam("csid") String csid) {
+    public Response getBlobContent(
+    		@Context Request request,
+    		@Context HttpHeaders headers,
+    		@PathParam("csid") String csid) {
     	Response result = null;
     	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = null;
     	
     	try {
 	    	ctx = createServiceContext();
-			BlobsCommon blobsCommon = getBlobsCommon(csid);
-	    	StringBuffer mimeType = new StringBuffer();
-	    	InputStream contentStream = getBlobContent(ctx, csid, null /*derivative term*/, mimeType /*will get set*/);
-		    
-	    	Response.ResponseBuilder responseBuilder = Response.ok(contentStream, mimeType.toString());
-	    	responseBuilder = responseBuilder.header("Content-Disposition","inline;filename=\""
-	    			+ blobsCommon.getName() +"\"");
-	    	result = responseBuilder.build();
+	    	BlobInput blobInput = getBlobContentInput(ctx, csid, null /*derivative term*/);
+	    	result = buildContentResponse(request, headers, blobInput);
     	} catch (Exception e) {
     		throw bigReThrow(e, ServiceMessages.CREATE_FAILED);
     	}
@@ -263,17 +420,6 @@ public class BlobResource extends NuxeoBasedResource {
     	return result;
     }
     
-    private BlobsCommon getBlobsCommon(String csid) throws Exception {
-    	BlobsCommon result = null;
-    	
-    	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext();
-		PoxPayloadOut ppo = this.get(csid, ctx);
-		PayloadPart blobsCommonPart = ppo.getPart(BlobClient.SERVICE_COMMON_PART_NAME);
-		result = (BlobsCommon)blobsCommonPart.getBody();
-		
-    	return result;
-    }
-    
     /*
      * Publish the blob content.
      */
@@ -288,11 +434,9 @@ public class BlobResource extends NuxeoBasedResource {
     	
     	try {
 			ctx = createServiceContext();			
-			BlobsCommon blobsCommon = getBlobsCommon(csid);
-	    	StringBuffer mimeType = new StringBuffer();
-	    	InputStream contentStream = getBlobContent(ctx, csid, null /*derivative term*/, mimeType /*will get set*/);	    	
+	    	BlobInput blobInput = getBlobContentInput(ctx, csid, null /*derivative term*/);
 	    	result = PublicItemUtil.publishToRepository((PublicitemsCommon)null, resourceMap, uriInfo, 
-	    			getRepositoryClient(ctx), ctx, contentStream, blobsCommon.getName());
+	    			getRepositoryClient(ctx), ctx, blobInput.getContentStream(), blobInput.getContentName());
     	} catch (Exception e) {
     		throw bigReThrow(e, ServiceMessages.PUT_FAILED);
     	}
@@ -312,11 +456,9 @@ public class BlobResource extends NuxeoBasedResource {
     	
 	    	try {
 		    	ctx = createServiceContext();
-				BlobsCommon blobsCommon = getBlobsCommon(csid);
-		    	StringBuffer mimeType = new StringBuffer();
-		    	InputStream contentStream = getBlobContent(ctx, csid, derivativeTerm, mimeType);
+		    	BlobInput blobInput = getBlobContentInput(ctx, csid, derivativeTerm);
 		    	result = PublicItemUtil.publishToRepository((PublicitemsCommon)null, resourceMap, uriInfo, 
-		    			getRepositoryClient(ctx), ctx, contentStream, blobsCommon.getName());
+		    			getRepositoryClient(ctx), ctx, blobInput.getContentStream(), blobInput.getContentName());
 	    	} catch (Exception e) {
 	    		throw bigReThrow(e, ServiceMessages.CREATE_FAILED);
 	    	}
@@ -327,6 +469,8 @@ public class BlobResource extends NuxeoBasedResource {
     @GET
     @Path("{csid}/derivatives/{derivativeTerm}/content")
     public Response getDerivativeContent(
+    		@Context Request request,
+    		@Context HttpHeaders headers,
     		@PathParam("csid") String csid,
     		@PathParam("derivativeTerm") String derivativeTerm) {
     	Response result = null;
@@ -334,13 +478,8 @@ public class BlobResource extends NuxeoBasedResource {
     	
 	    	try {
 		    	ctx = createServiceContext();
-				BlobsCommon blobsCommon = getBlobsCommon(csid);
-		    	StringBuffer mimeType = new StringBuffer();
-		    	InputStream contentStream = getBlobContent(ctx, csid, derivativeTerm, mimeType);
-			    Response.ResponseBuilder responseBuilder = Response.ok(contentStream, mimeType.toString());
-		    	responseBuilder = responseBuilder.header("Content-Disposition","inline;filename=\""
-		    			+ blobsCommon.getName() +"\"");
-		    	result = responseBuilder.build();
+		    	BlobInput blobInput = getBlobContentInput(ctx, csid, derivativeTerm);
+		    	result = buildContentResponse(request, headers, blobInput);
 	    	} catch (Exception e) {
 	    		throw bigReThrow(e, ServiceMessages.CREATE_FAILED);
 	    	}
@@ -164,10 +164,27 @@ extends NuxeoDocumentModelHandler<BlobsCommon> {
 					blobRepositoryId, derivativeTerm, getContentFlag, mimeTypeBuffer);
 			if (getContentFlag == true) {
 				if (blobOutput != null) {
-					blobInput.setContentStream(blobOutput.getBlobInputStream());
+					//
+					// We're being asked for just the content, so we hand back the content (as a file if we can) and what we know
+					// about it, and return without building the payload -see BlobResource.getBlobContent().
+					//
+					blobInput.setContentFile(blobOutput.getBlobFile());
+					blobInput.setContentStream(blobOutput.getBlobFile() == null ? blobOutput.getBlobInputStream() : null);
+					blobInput.setContentName(blobsCommon.getName());
+					blobInput.setContentDigest(blobOutput.getDigest());
+					blobInput.setContentLastModified(blobOutput.getLastModified());
+					if (blobOutput.getBlobFile() != null) {
+						blobInput.setContentLength(blobOutput.getBlobFile().length());
+					} else if (blobOutput.getDigest() != null && blobOutput.getBlobsCommon().getLength() != null) {
+						// Only the blob's own bits have a digest -a placeholder image for a non-image derivative doesn't.
+						blobInput.setContentLength(Long.parseLong(blobOutput.getBlobsCommon().getLength()));
+					}
+					String mimeType = mimeTypeBuffer.toString();
+					blobInput.setMimeType(mimeType.isEmpty() == false ? mimeType : blobsCommon.getMimeType());
 				} else {
 					blobInput.setContentStream(null);
 				}
+				return;  // Like the derivative list request above, a content request doesn't need a payload
 			}
 	
 			if (derivativeTerm != null) {
@@ -1,5 +1,11 @@
 package org.collectionspace.services.client;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
 import javax.ws.rs.core.Response;
 import org.jboss.resteasy.client.ClientResponse;
 
@@ -57,4 +63,83 @@ public abstract class AbstractPoxServiceClientImpl<CLT extends AbstractCommonLis
         return proxy.advancedSearchIncludeDeleted(whereClause, includeDeleted.toString());
     }
 
+    //
+    // Asynchronous and batched requests, for tools that make many requests -e.g., imports.  The requests run
+    // on a shared pool of threads, using the shared pool of HTTP connections, so no more of them are in
+    // progress at once than there are connections to a host.  As with any request, the caller must call
+    // releaseConnection() on each response it gets, or the pool will run out of connections.
+    //
+
+    /**
+     * Creates a record asynchronously.
+     */
+    public Future<ClientResponse<Response>> createAsync(final PoxPayloadOut xmlPayload) {
+        return submit(new Callable<ClientResponse<Response>>() {
+            @Override
+            public ClientResponse<Response> call() {
+                return create(xmlPayload);
+            }
+        });
+    }
+
+    /**
+     * Reads a record asynchronously.
+     */
+    public Future<ClientResponse<String>> readAsync(final String csid) {
+        return submit(new Callable<ClientResponse<String>>() {
+            @Override
+            public ClientResponse<String> call() {
+                return read(csid);
+            }
+        });
+    }
+
+    /**
+     * Updates a record asynchronously.
+     */
+    public Future<ClientResponse<String>> updateAsync(final String csid, final PoxPayloadOut xmlPayload) {
+        return submit(new Callable<ClientResponse<String>>() {
+            @Override
+            public ClientResponse<String> call() {
+                return update(csid, xmlPayload);
+            }
+        });
+    }
+
+    /**
+     * Creates records asynchronously.
+     * @return the future responses, in the same order as the payloads
+     */
+    public List<Future<ClientResponse<Response>>> createAll(List<PoxPayloadOut> xmlPayloads) {
+        List<Future<ClientResponse<Response>>> result = new ArrayList<Future<ClientResponse<Response>>>(xmlPayloads.size());
+        for (PoxPayloadOut xmlPayload : xmlPayloads) {
+            result.add(createAsync(xmlPayload));
+        }
+        return result;
+    }
+
+    /**
+     * Reads records asynchronously.
+     * @return the future responses, in the same order as the CSIDs
+     */
+    public List<Future<ClientResponse<String>>> readAll(List<String> csids) {
+        List<Future<ClientResponse<String>>> result = new ArrayList<Future<ClientResponse<String>>>(csids.size());
+        for (String csid : csids) {
+            result.add(readAsync(csid));
+        }
+        return result;
+    }
+
+    /**
+     * Updates records asynchronously.
+     * @param xmlPayloads the payloads, keyed by the CSIDs of the records to update
+     * @return the future responses, in the iteration order of the map
+     */
+    public List<Future<ClientResponse<String>>> updateAll(Map<String, PoxPayloadOut> xmlPayloads) {
+        List<Future<ClientResponse<String>>> result = new ArrayList<Future<ClientResponse<String>>>(xmlPayloads.size());
+        for (Map.Entry<String, PoxPayloadOut> entry : xmlPayloads.entrySet()) {
+            result.add(updateAsync(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
 }
@@ -23,17 +23,26 @@
  */
 package org.collectionspace.services.client;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Response;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope; //import org.collectionspace.services.collectionobject.CollectionobjectsCommonList;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 
 import org.collectionspace.services.common.authorityref.AuthorityRefList;
 import org.collectionspace.services.jaxb.AbstractCommonList;
@@ -71,6 +80,21 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
     public static final String PART_COMMON_LABEL = "common";
     /** The properties. */
     private Properties properties = new Properties();
+    //
+    // The properties from the class path are read just once, and each client gets its own copy of them.
+    // All clients share one pool of HTTP connections, so that connections are kept alive and reused
+    // across clients, and clients can be used from several threads at once.
+    //
+    private static final String CLIENT_PROPERTIES_FILE = "collectionspace-client.properties";
+    private static final int DEFAULT_MAX_CONNECTIONS = 100;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    private static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
+    private static final int DEFAULT_SOCKET_TIMEOUT = 300000;
+    private static final int DEFAULT_CONNECTION_WAIT_TIMEOUT = 60000;
+    private static Properties classPathProperties = null;
+    private static MultiThreadedHttpConnectionManager connectionManager = null;
+    private static ExecutorService asyncExecutor = null;
+    private static boolean builtinProvidersRegistered = false;
     /** The url. */
     private URL url;
     /** The http client. */
@@ -147,11 +171,18 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
     protected AbstractServiceClientImpl() {
         readProperties();
         setupHttpClient();
-        ResteasyProviderFactory factory = ResteasyProviderFactory.getInstance();
-        RegisterBuiltin.register(factory);
+        registerBuiltinProviders();
         setProxy();        
     }
 
+    private static synchronized void registerBuiltinProviders() {
+        if (builtinProvidersRegistered == false) {
+            ResteasyProviderFactory factory = ResteasyProviderFactory.getInstance();
+            RegisterBuiltin.register(factory);
+            builtinProvidersRegistered = true;
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -251,11 +282,8 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
      */
     private void readProperties() {
 
-        ClassLoader cl = Thread.currentThread().getContextClassLoader();
-        InputStream is = null;
         try {
-            is = cl.getResourceAsStream("collectionspace-client.properties");
-            properties.load(is);
+            properties.putAll(getClassPathProperties());
             if (logger.isDebugEnabled()) {
                 printProperties();
             }
@@ -294,17 +322,85 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
         } catch (Exception e) {
             logger.debug("Caught exception while reading properties", e);
             throw new RuntimeException(e);
-        } finally {
-            if (is != null) {
-                try {
+        }
+    }
+
+    /*
+     * Reads the client properties file from the class path, the first time it's called.
+     */
+    private static synchronized Properties getClassPathProperties() throws IOException {
+        if (classPathProperties == null) {
+            Properties result = new Properties();
+            ClassLoader cl = Thread.currentThread().getContextClassLoader();
+            InputStream is = cl.getResourceAsStream(CLIENT_PROPERTIES_FILE);
+            try {
+                result.load(is);
+            } finally {
+                if (is != null) {
                     is.close();
-                } catch (Exception e) {
-                    if (logger.isDebugEnabled() == true) {
-                        e.printStackTrace();
-                    }
                 }
             }
+            classPathProperties = result;
         }
+        return classPathProperties;
+    }
+
+    private static int getIntProperty(Properties props, String propName, int defaultValue) {
+        String value = System.getProperty(propName, props.getProperty(propName));
+        return (value != null && !"".equals(value.trim())) ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    /*
+     * Returns the pool of HTTP connections that all clients share, creating it the first time.
+     * Its settings come from the properties of the first client, i.e. from the client properties
+     * file and the system properties.
+     */
+    private static synchronized MultiThreadedHttpConnectionManager getConnectionManager(Properties props) {
+        if (connectionManager == null) {
+            connectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setMaxTotalConnections(getIntProperty(props, MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+            params.setDefaultMaxConnectionsPerHost(getIntProperty(props, MAX_CONNECTIONS_PER_HOST_PROPERTY,
+                    DEFAULT_MAX_CONNECTIONS_PER_HOST));
+            params.setConnectionTimeout(getIntProperty(props, CONNECTION_TIMEOUT_PROPERTY, DEFAULT_CONNECTION_TIMEOUT));
+            params.setSoTimeout(getIntProperty(props, SOCKET_TIMEOUT_PROPERTY, DEFAULT_SOCKET_TIMEOUT));
+            params.setStaleCheckingEnabled(true);
+        }
+        return connectionManager;
+    }
+
+    /*
+     * Returns the thread pool that runs the asynchronous requests of all clients, creating it the
+     * first time.  It has as many threads as there may be connections to a host.
+     */
+    private static synchronized ExecutorService getAsyncExecutor(Properties props) {
+        if (asyncExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            asyncExecutor = Executors.newFixedThreadPool(
+                    getIntProperty(props, MAX_CONNECTIONS_PER_HOST_PROPERTY, DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "cspace-client-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true); // so an unfinished request doesn't keep a tool from exiting
+                            return thread;
+                        }
+                    });
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Runs a request on another thread, using a connection from the shared pool.  This lets a
+     * caller have many requests in progress at once -as many as the pool allows connections to
+     * a host- e.g., when importing records.  The caller must release the connection of each
+     * response it gets, as with any other request.
+     *
+     * @param request the request, e.g. a call to one of this client's methods
+     * @return the future response
+     */
+    public <T> Future<T> submit(Callable<T> request) {
+        return getAsyncExecutor(properties).submit(request);
     }
 
     /**
@@ -315,7 +411,10 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
     @Override
     public void setupHttpClient() {
     	try {
-	        this.httpClient = new HttpClient();
+	        this.httpClient = new HttpClient(getConnectionManager(properties));
+	        // Wait this long for a free connection, rather than forever, if responses are never released
+	        httpClient.getParams().setConnectionManagerTimeout(
+	        		getIntProperty(properties, CONNECTION_WAIT_TIMEOUT_PROPERTY, DEFAULT_CONNECTION_WAIT_TIMEOUT));
 	        if (useAuth()) {
 	            String user = properties.getProperty(USER_PROPERTY);
 	            String password = properties.getProperty(PASSWORD_PROPERTY);
@@ -366,13 +465,9 @@ public abstract class AbstractServiceClientImpl<CLT, REQUEST_PT, RESPONSE_PT, P
     @Override
 	public void setProxy() {
     	Class<P> proxyClass = this.getProxyClass();
-        if (useAuth()) {
-            proxy = ProxyFactory.create(proxyClass,
-                    getBaseURL(), new ApacheHttpClientExecutor(getHttpClient()));
-        } else {
-        	proxy = ProxyFactory.create(proxyClass,
-                    getBaseURL());
-        }
+    	// Always use our HTTP client, with or without credentials, so requests use the shared connections
+        proxy = ProxyFactory.create(proxyClass,
+                getBaseURL(), new ApacheHttpClientExecutor(getHttpClient()));
     }
 
     @Override
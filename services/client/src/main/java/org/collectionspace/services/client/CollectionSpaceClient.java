@@ -69,6 +69,14 @@ public interface CollectionSpaceClient<CLT, REQUEST_TYPE, RESPONSE_TYPE, P exten
     public static final String URL_PROPERTY = "cspace.url";
     public static final String USER_PROPERTY = "cspace.user";
     public static final String TENANT_PROPERTY = "cspace.tenant";
+    //
+    // Settings for the HTTP connections that all clients share -see AbstractServiceClientImpl
+    //
+    public static final String MAX_CONNECTIONS_PROPERTY = "cspace.client.maxConnections";
+    public static final String MAX_CONNECTIONS_PER_HOST_PROPERTY = "cspace.client.maxConnectionsPerHost";
+    public static final String CONNECTION_TIMEOUT_PROPERTY = "cspace.client.connectionTimeout";
+    public static final String SOCKET_TIMEOUT_PROPERTY = "cspace.client.socketTimeout";
+    public static final String CONNECTION_WAIT_TIMEOUT_PROPERTY = "cspace.client.connectionWaitTimeout";
 
     /**
      * Gets the proxy.
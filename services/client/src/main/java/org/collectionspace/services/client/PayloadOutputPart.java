@@ -1,48 +1,196 @@
 package org.collectionspace.services.client;
 
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.dom4j.Attribute;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.Node;
 
 public class PayloadOutputPart extends PayloadPart {
-	
+
+	// Writes the part's XML when it is neither a DOM4j element nor a JAXB object
+	private PayloadPartWriter partWriter;
+
 	//
 	// Constructors
 	//
 	public PayloadOutputPart(String label, Object body) {
 		super(label, body);
 	}
-	
+
+	/**
+	 * Instantiates a part whose XML is written straight to the output stream by 'partWriter',
+	 * without building a DOM4j element -unless one is asked for with asElement().
+	 */
+	public PayloadOutputPart(String label, PayloadPartWriter partWriter) {
+		super(label);
+		this.partWriter = partWriter;
+	}
+
 	PayloadOutputPart(String label, Element elementBody) {
 		super(label, elementBody);
 	}
-	
+
 	PayloadOutputPart(String label, String xmlBody) throws DocumentException {
 		super(label, xmlBody);
-	}	
-	
+	}
+
 	PayloadOutputPart(String label, Object body, Element elementBody) {
 		super(label, body, elementBody);
 	}
-	
+
 	//
 	// Utility Methods
 	//
-	
+
 	@Override
 	public String asXML() {
 		String result = null;
-				
+
+		Element element = asElement();
+		if (element != null) {
+			result = element.asXML();
+		}
+
+		return result;
+	}
+
+	@Override
+	public Element asElement() {
+		// Once a caller needs the DOM4j element for a streamed part, we keep it, since the caller may change it.
+		if (getElementBody() == null && partWriter != null) {
+			try {
+				StringWriter stringWriter = new StringWriter();
+				XMLStreamWriter writer = PoxPayloadOut.getXMLOutputFactory().createXMLStreamWriter(stringWriter);
+				partWriter.write(writer);
+				writer.flush();
+				setElementBody(PoxPayload.toElement(stringWriter.toString()));
+			} catch (Exception e) {
+				logger.error("Could not create the XML for the output part: " + getLabel(), e);
+			}
+		}
+		return super.asElement();
+	}
+
+	@Override
+	public Object getBody() {
+		if (getElementBody() == null && partWriter != null) {
+			asElement();
+		}
+		return super.getBody();
+	}
+
+	/**
+	 * Writes the part's XML to a stream: from its DOM4j element if it has one, or else
+	 * straight from its part writer or JAXB object.
+	 */
+	public void writeTo(XMLStreamWriter writer) throws XMLStreamException {
 		Element elementBody = getElementBody();
 		if (elementBody != null) {
-			result = elementBody.asXML();
-		} else { 
+			writeElement(writer, elementBody);
+		} else if (partWriter != null) {
+			partWriter.write(writer);
+		} else {
 			Object body = getBody();
 			if (body != null) {
-				result = PoxPayload.toElement(body).asXML();
+				PoxPayload.writeObject(body, writer);
+			}
+		}
+	}
+
+	private static void writeElement(XMLStreamWriter writer, Element element) throws XMLStreamException {
+		Map<String, String> noNamespaces = new HashMap<String, String>();
+		noNamespaces.put("", "");
+		writeElement(writer, element, noNamespaces);
+	}
+
+	/*
+	 * Writes a DOM4j element, declaring the namespaces it uses that aren't among the
+	 * prefix-to-URI bindings 'inScope' from its ancestors.
+	 */
+	private static void writeElement(XMLStreamWriter writer, Element element, Map<String, String> inScope)
+			throws XMLStreamException {
+		Map<String, String> scope = inScope;
+		String prefix = element.getNamespacePrefix();
+		String namespaceURI = element.getNamespaceURI();
+		writer.writeStartElement(prefix, element.getName(), namespaceURI);
+		scope = writeNamespace(writer, prefix, namespaceURI, scope, inScope);
+
+		List<Namespace> declaredNamespaces = element.declaredNamespaces();
+		for (Namespace namespace : declaredNamespaces) {
+			scope = writeNamespace(writer, namespace.getPrefix(), namespace.getURI(), scope, inScope);
+		}
+
+		Iterator<Attribute> attributes = element.attributeIterator();
+		while (attributes.hasNext() == true) {
+			Attribute attribute = attributes.next();
+			String attributeNamespaceURI = attribute.getNamespaceURI();
+			if (attributeNamespaceURI == null || attributeNamespaceURI.isEmpty()) {
+				writer.writeAttribute(attribute.getName(), attribute.getValue());
+			} else {
+				scope = writeNamespace(writer, attribute.getNamespacePrefix(), attributeNamespaceURI, scope, inScope);
+				writer.writeAttribute(attribute.getNamespacePrefix(), attributeNamespaceURI,
+						attribute.getName(), attribute.getValue());
+			}
+		}
+
+		Iterator<Node> nodes = element.nodeIterator();
+		while (nodes.hasNext() == true) {
+			Node node = nodes.next();
+			switch (node.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				writeElement(writer, (Element) node, scope);
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+			case Node.ENTITY_REFERENCE_NODE:
+				writer.writeCharacters(node.getText());
+				break;
+			case Node.COMMENT_NODE:
+				writer.writeComment(node.getText());
+				break;
+			default:
+				// Namespaces are written with their element; nothing else belongs in a part
+				break;
+			}
+		}
+
+		writer.writeEndElement();
+	}
+
+	/*
+	 * Declares a namespace on the element just started, unless it is already in scope.  Returns
+	 * the bindings in scope for the element's content, copying the parent's before changing them.
+	 */
+	private static Map<String, String> writeNamespace(XMLStreamWriter writer, String prefix, String namespaceURI,
+			Map<String, String> scope, Map<String, String> parentScope) throws XMLStreamException {
+		Map<String, String> result = scope;
+		if (prefix == null) {
+			prefix = "";
+		}
+		if (namespaceURI == null) {
+			namespaceURI = "";
+		}
+		if (namespaceURI.equals(scope.get(prefix)) == false) {
+			if (prefix.isEmpty() == true) {
+				writer.writeDefaultNamespace(namespaceURI);
+			} else {
+				writer.writeNamespace(prefix, namespaceURI);
+			}
+			if (result == parentScope) {
+				result = new HashMap<String, String>(parentScope);
 			}
+			result.put(prefix, namespaceURI);
 		}
-		
 		return result;
 	}
-	
 }
@@ -72,6 +72,10 @@ public abstract class PayloadPart {
 		return elementBody;
 	}
 
+	protected void setElementBody(Element elementBody) {
+		this.elementBody = elementBody;
+	}
+
 	public void setLabel(String label) {
 		this.label = label;
 	}
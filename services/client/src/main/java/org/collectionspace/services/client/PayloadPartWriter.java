@@ -0,0 +1,16 @@
+package org.collectionspace.services.client;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes the XML of a payload part straight to a stream, for parts whose content
+ * isn't held as a DOM4j element or a JAXB object -see PayloadOutputPart.
+ */
+public interface PayloadPartWriter {
+
+	/**
+	 * Writes the part's root element and its content.
+	 */
+	public void write(XMLStreamWriter writer) throws XMLStreamException;
+}
@@ -5,14 +5,21 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
-import javax.xml.transform.stream.StreamSource;
+import javax.xml.bind.UnmarshallerHandler;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import com.sun.xml.bind.api.impl.NameConverter;
 import org.apache.commons.io.FileUtils;
@@ -23,6 +30,7 @@ import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.dom4j.Namespace;
 import org.dom4j.io.SAXReader;
+import org.dom4j.io.SAXWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +45,25 @@ public abstract class PoxPayload<PT extends PayloadPart> {
 	/** The Constant logger. */
 	protected static final Logger logger = LoggerFactory.getLogger(PayloadPart.class);	
 	
+	/** JAXB contexts are expensive to create and thread-safe, so we keep one per Java package. */
+	private static final ConcurrentMap<String, JAXBContext> jaxbContextCache = new ConcurrentHashMap<String, JAXBContext>();
+	
+	/**
+	 * Packages (derived from part namespaces) for which no JAXB context could be created, and when we
+	 * last tried.  We try again once UNMAPPED_PACKAGE_RETRY_MILLIS have passed, since a failure may
+	 * have been transient (e.g., a class not yet loadable while the server was starting).
+	 */
+	private static final ConcurrentMap<String, Long> unmappedPackages = new ConcurrentHashMap<String, Long>();
+	private static final long UNMAPPED_PACKAGE_RETRY_MILLIS = 60 * 1000;
+	
+	/** Unmarshallers are not thread-safe, so each thread keeps its own per-package instances. */
+	private static final ThreadLocal<Map<String, Unmarshaller>> unmarshallerCache = new ThreadLocal<Map<String, Unmarshaller>>() {
+		@Override
+		protected Map<String, Unmarshaller> initialValue() {
+			return new HashMap<String, Unmarshaller>();
+		}
+	};
+	
 	/** The xml text. */
 	private String xmlPayload;
 	
@@ -236,7 +263,68 @@ public abstract class PoxPayload<PT extends PayloadPart> {
     }
       
     /**
-     * Attempts to marshal a DOM4j element (for a part) into an instance of a JAXB object
+     * Returns the (shared, thread-safe) JAXBContext for a Java package, creating and caching it on first use.
+     * Returns null if the package recently failed to yield a context.
+     *
+     * @param thePackage the Java package name
+     * @return the JAXB context or null
+     */
+    private static JAXBContext getJAXBContext(String thePackage) throws JAXBException {
+    	JAXBContext result = jaxbContextCache.get(thePackage);
+    	if (result == null && isRecentlyUnmapped(thePackage) == false) {
+    		try {
+    			result = JAXBContext.newInstance(thePackage);
+    		} catch (JAXBException e) {
+    			// Remember this so we don't pay for the failed lookup again for a while
+    			unmappedPackages.put(thePackage, System.currentTimeMillis());
+    			throw e;
+    		}
+    		unmappedPackages.remove(thePackage);
+    		JAXBContext existing = jaxbContextCache.putIfAbsent(thePackage, result);
+    		if (existing != null) {
+    			result = existing;
+    		}
+    	}
+    	return result;
+    }
+    
+    private static boolean isRecentlyUnmapped(String thePackage) {
+    	boolean result = false;
+    	Long failedAt = unmappedPackages.get(thePackage);
+    	if (failedAt != null) {
+    		if (System.currentTimeMillis() - failedAt < UNMAPPED_PACKAGE_RETRY_MILLIS) {
+    			result = true;
+    		} else {
+    			unmappedPackages.remove(thePackage, failedAt);
+    		}
+    	}
+    	return result;
+    }
+    
+    /**
+     * Returns an Unmarshaller for a Java package.  Unmarshallers are not thread-safe, so each thread
+     * keeps its own per-package instance.
+     *
+     * @param thePackage the Java package name
+     * @return the unmarshaller or null
+     */
+    private static Unmarshaller getUnmarshaller(String thePackage) throws JAXBException {
+    	Map<String, Unmarshaller> threadUnmarshallers = unmarshallerCache.get();
+    	Unmarshaller result = threadUnmarshallers.get(thePackage);
+    	if (result == null) {
+    		JAXBContext jc = getJAXBContext(thePackage);
+    		if (jc != null) {
+    			result = jc.createUnmarshaller();
+    			threadUnmarshallers.put(thePackage, result);
+    		}
+    	}
+    	return result;
+    }
+      
+    /**
+     * Attempts to marshal a DOM4j element (for a part) into an instance of a JAXB object.  The element
+     * is fed to the unmarshaller as SAX events straight from the DOM4j tree, so we avoid serializing it
+     * to text and re-parsing it.
      *
      * @param elementInput the element input
      * @return the object
@@ -246,10 +334,15 @@ public abstract class PoxPayload<PT extends PayloadPart> {
     	try {
     		Namespace namespace = elementInput.getNamespace();    		
     		String thePackage = getPackage(namespace);
-	    	JAXBContext jc = JAXBContext.newInstance(thePackage);
-	    	Unmarshaller um = jc.createUnmarshaller();
-	    	result = um.unmarshal(
-	    			new StreamSource(new StringReader(elementInput.asXML())));	    			
+	    	Unmarshaller um = getUnmarshaller(thePackage);
+	    	if (um != null) {
+	    		UnmarshallerHandler handler = um.getUnmarshallerHandler();
+	    		SAXWriter saxWriter = new SAXWriter(handler);
+	    		handler.startDocument();
+	    		saxWriter.write(elementInput);
+	    		handler.endDocument();
+	    		result = handler.getResult();
+	    	}
     	} catch (Exception e) {
     		if (logger.isTraceEnabled() == true) {
     			logger.trace(e.getMessage());
@@ -275,23 +368,64 @@ public abstract class PoxPayload<PT extends PayloadPart> {
     			JAXBElement jaxbElement = (JAXBElement)jaxbObject;
     			thePackage = jaxbElement.getValue().getClass().getPackage().getName();
     		}
-	    	JAXBContext jc = JAXBContext.newInstance(thePackage);
-	    	//Create marshaller
-	    	Marshaller m = jc.createMarshaller();
-	    	m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
-	    	//Marshal object into file.
-	    	m.marshal(jaxbObject, outputStream);
-	    	text = outputStream.toString("UTF8");
-
-    		Document doc = DocumentHelper.parseText(text);
-    		result = doc.getRootElement(); //FIXME: REM - call .detach() to free the element
+	    	JAXBContext jc = getJAXBContext(thePackage);
+	    	if (jc != null) {
+		    	//Create marshaller
+		    	Marshaller m = jc.createMarshaller();
+		    	m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+		    	//Marshal object into file.
+		    	m.marshal(jaxbObject, outputStream);
+		    	text = outputStream.toString("UTF8");
+	
+	    		Document doc = DocumentHelper.parseText(text);
+	    		result = doc.getRootElement(); //FIXME: REM - call .detach() to free the element
+	    	} else {
+	    		logger.warn("Could not marshal an object of class " + jaxbObject.getClass().getName()
+	    				+ ": no JAXB context is available for package " + thePackage);
+	    	}
     	} catch (Exception e) {
-    		e.printStackTrace(); //FIXME: REM - Please use proper logger.isWarning() statement
+    		logger.warn("Could not marshal an object of class " + jaxbObject.getClass().getName(), e);
     	}
     	
     	return result;
     }
     
+    /**
+     * Marshals a JAXB object (for a part) straight to an XML stream.  Objects that aren't
+     * JAXB objects are skipped, as toElement() skips them.
+     *
+     * @param jaxbObject the jaxb object
+     * @param writer the stream to write to
+     */
+    static void writeObject(Object jaxbObject, XMLStreamWriter writer) throws XMLStreamException {
+    	String thePackage = jaxbObject.getClass().getPackage().getName();
+    	if (thePackage.equals(JAXBElement.class.getPackage().getName())) {
+    		JAXBElement jaxbElement = (JAXBElement)jaxbObject;
+    		thePackage = jaxbElement.getValue().getClass().getPackage().getName();
+    	}
+
+    	Marshaller m = null;
+    	try {
+    		JAXBContext jc = getJAXBContext(thePackage);
+    		if (jc != null) {
+    			m = jc.createMarshaller();
+    			m.setProperty(Marshaller.JAXB_FRAGMENT, true);
+    		}
+    	} catch (JAXBException e) {
+    		if (logger.isTraceEnabled() == true) {
+    			logger.trace(e.getMessage());
+    		}
+    	}
+
+    	if (m != null) {
+    		try {
+    			m.marshal(jaxbObject, writer);
+    		} catch (JAXBException e) {
+    			throw new XMLStreamException(e);
+    		}
+    	}
+    }
+
     /**
      * Attempts to unmarshal a JAXB object (for a part) to a DOM4j element.
      *
@@ -9,11 +9,17 @@ import org.dom4j.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Iterator;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 // TODO: Auto-generated Javadoc
 /**
  * The Class PoxPayloadOut.
@@ -21,6 +27,9 @@ import java.util.Iterator;
 public class PoxPayloadOut extends PoxPayload<PayloadOutputPart> {
 			
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // Thread-safe once configured, and costly to look up, so we share one
+    private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
 	
 	/**
 	 * Instantiates a new pox payload out.
@@ -174,11 +183,45 @@ public class PoxPayloadOut extends PoxPayload<PayloadOutputPart> {
 	public byte[] getBytes() {
 		byte[] result = null;
 		try {
-			result = toString().getBytes("UTF8");
-		} catch (UnsupportedEncodingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace(); //FIXME: REM - Add proper logging statement here
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			writeTo(outputStream);
+			result = outputStream.toByteArray();
+		} catch (XMLStreamException xse) {
+			logger.error("Could not stream the payload " + getName() + "; building it in memory instead.", xse);
+			try {
+				result = toString().getBytes("UTF8");
+			} catch (UnsupportedEncodingException e) {
+				logger.error("Could not encode the payload " + getName() + " as UTF-8.", e);
+			}
 		}
 		return result;
 	}
+
+	/**
+	 * Writes the same XML as toXML() straight to a stream, part by part, without first building
+	 * a document or string of the whole payload.  Parts created with a PayloadPartWriter are
+	 * written without building a DOM4j element at all.
+	 *
+	 * @param outputStream the stream to write to; it is flushed but not closed
+	 */
+	public void writeTo(OutputStream outputStream) throws XMLStreamException {
+		XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeStartElement("document");
+		if (getName() != null) {
+			writer.writeAttribute("name", getName());
+		}
+		Iterator<PayloadOutputPart> it = getParts().iterator();
+		while (it.hasNext() == true) {
+			it.next().writeTo(writer);
+		}
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close(); // Doesn't close the underlying stream
+	}
+
+	static XMLOutputFactory getXMLOutputFactory() {
+		return xmlOutputFactory;
+	}
 }
@@ -0,0 +1,179 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.client;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.dom4j.Attribute;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that PoxPayloadOut.writeTo() writes the same XML as toXML() builds, for parts held as
+ * DOM4j elements and for parts written by a PayloadPartWriter.
+ */
+public class PoxPayloadOutTest {
+
+    private static final String NAMESPACE_URI = "http://collectionspace.org/services/collectionobject";
+    private static final String XSI_URI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    private static final String PLAIN_PART = "<ns2:collectionobjects_common xmlns:ns2=\"" + NAMESPACE_URI + "\""
+            + " xmlns:xsi=\"" + XSI_URI + "\">"
+            + "<objectNumber>2016.1.1 &lt;a &amp; b&gt;</objectNumber>"
+            + "<numberOfObjects>3</numberOfObjects>"
+            + "<csid>8d7a4b41-3d4e-4e64-a2c1-52d7c1e2d6c1</csid>"
+            + "</ns2:collectionobjects_common>";
+
+    private static final String LIST_PART = "<ns2:collectionobjects_common xmlns:ns2=\"" + NAMESPACE_URI + "\""
+            + " xmlns:xsi=\"" + XSI_URI + "\">"
+            + "<briefDescriptions><briefDescription>First</briefDescription><briefDescription/></briefDescriptions>"
+            + "<titleGroupList>"
+            + "<titleGroup><title>Untitled</title><titleLanguage/></titleGroup>"
+            + "<titleGroup><title>Sans titre</title></titleGroup>"
+            + "</titleGroupList>"
+            + "</ns2:collectionobjects_common>";
+
+    private static final String REFNAME_AND_DATE_PART = "<ns2:collectionobjects_common xmlns:ns2=\"" + NAMESPACE_URI + "\""
+            + " xmlns:xsi=\"" + XSI_URI + "\">"
+            + "<fieldCollector>urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(johndoe1234)"
+            + "'John \"Jack\" Doe &amp; Sons'</fieldCollector>"
+            + "<fieldCollectionDate>2016-02-29T00:00:00.000Z</fieldCollectionDate>"
+            + "</ns2:collectionobjects_common>";
+
+    private static final String CORE_PART = "<ns2:collectionspace_core xmlns:ns2=\"http://collectionspace.org/collectionspace_core/\""
+            + " xmlns:xsi=\"" + XSI_URI + "\">"
+            + "<refName>urn:cspace:core.collectionspace.org:collectionobjects:id(8d7a4b41)'2016.1.1'</refName>"
+            + "<updatedAt>2016-03-01T12:34:56.789Z</updatedAt>"
+            + "</ns2:collectionspace_core>";
+
+    /*
+     * A part writer that writes an element, as DocumentUtils.writeDocument() does.
+     */
+    private static PayloadPartWriter writerFor(final Element element) {
+        return new PayloadPartWriter() {
+            @Override
+            public void write(XMLStreamWriter writer) throws XMLStreamException {
+                writeElement(writer, element, true);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeElement(XMLStreamWriter writer, Element element, boolean root) throws XMLStreamException {
+        if (root == true) {
+            writer.writeStartElement("ns2", element.getName(), element.getNamespaceURI());
+            writer.writeNamespace("ns2", element.getNamespaceURI());
+            writer.writeNamespace("xsi", XSI_URI);
+        } else {
+            writer.writeStartElement(element.getName());
+        }
+        List<Element> children = element.elements();
+        if (children.isEmpty() == true) {
+            writer.writeCharacters(element.getText());
+        }
+        for (Element child : children) {
+            writeElement(writer, child, false);
+        }
+        writer.writeEndElement();
+    }
+
+    private static PoxPayloadOut payload(boolean streamed, String... parts) throws Exception {
+        PoxPayloadOut result = new PoxPayloadOut("collectionobjects");
+        result.addPart("collectionspace_core", DocumentHelper.parseText(CORE_PART).getRootElement());
+        for (String part : parts) {
+            Element element = DocumentHelper.parseText(part).getRootElement();
+            if (streamed == true) {
+                result.getParts().add(new PayloadOutputPart(element.getName(), writerFor(element)));
+            } else {
+                result.addPart(element.getName(), element);
+            }
+        }
+        return result;
+    }
+
+    private static Element written(PoxPayloadOut payload) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        payload.writeTo(outputStream);
+        return DocumentHelper.parseText(outputStream.toString("UTF-8")).getRootElement();
+    }
+
+    private static Element built(PoxPayloadOut payload) throws Exception {
+        return DocumentHelper.parseText(payload.toXML()).getRootElement();
+    }
+
+    private static void assertSameXml(String... parts) throws Exception {
+        // Each payload is only written once, since asElement() keeps the elements of streamed parts
+        assertSameElement(written(payload(false, parts)), built(payload(false, parts)), "document");
+        assertSameElement(written(payload(true, parts)), built(payload(false, parts)), "document");
+        assertSameElement(built(payload(true, parts)), built(payload(false, parts)), "document");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertSameElement(Element actual, Element expected, String path) {
+        Assert.assertEquals(actual.getName(), expected.getName(), path);
+        Assert.assertEquals(actual.getNamespaceURI(), expected.getNamespaceURI(), path);
+        Assert.assertEquals(actual.attributeCount(), expected.attributeCount(), path);
+        for (Iterator<Attribute> it = expected.attributeIterator(); it.hasNext() == true; ) {
+            Attribute attribute = it.next();
+            Assert.assertEquals(actual.attributeValue(attribute.getQName()), attribute.getValue(), path + "/@" + attribute.getName());
+        }
+        List<Element> actualChildren = actual.elements();
+        List<Element> expectedChildren = expected.elements();
+        Assert.assertEquals(actualChildren.size(), expectedChildren.size(), path);
+        if (expectedChildren.isEmpty() == true) {
+            Assert.assertEquals(actual.getText(), expected.getText(), path);
+        }
+        Iterator<Element> it = expectedChildren.iterator();
+        for (Element actualChild : actualChildren) {
+            Element expectedChild = it.next();
+            assertSameElement(actualChild, expectedChild, path + "/" + expectedChild.getName());
+        }
+    }
+
+    @Test
+    public void plainParts() throws Exception {
+        assertSameXml(PLAIN_PART);
+    }
+
+    @Test
+    public void listParts() throws Exception {
+        assertSameXml(LIST_PART);
+    }
+
+    @Test
+    public void refNameAndDateParts() throws Exception {
+        assertSameXml(REFNAME_AND_DATE_PART);
+    }
+
+    @Test
+    public void severalParts() throws Exception {
+        assertSameXml(PLAIN_PART.replace("collectionobjects_common", "collectionobjects_naturalhistory"),
+                LIST_PART, REFNAME_AND_DATE_PART.replace("collectionobjects_common", "collectionobjects_variablemedia"));
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.collectionspace.services.common.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, thread-safe, size-bounded (LRU) cache whose entries also expire after a fixed time-to-live.
+ *
+ * Callers that load a value and then cache it should read getGeneration() before loading and pass it
+ * to put().  If invalidateAll() was called in the meantime, the (possibly stale) value is dropped.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ExpiringCache<K, V> {
+    private final String name;
+    private final long ttlMillis;
+    private final Map<K, CacheEntry<V>> entries;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public ExpiringCache(String name, final int maxEntries, long ttlMillis) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the cached value, or null if there is no entry or it has expired.
+     */
+    public V get(K key) {
+        V result = null;
+
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > System.currentTimeMillis()) {
+                    result = entry.value;
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+
+        if (result != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, generation.get());
+    }
+
+    /**
+     * Caches the value only if the cache hasn't been invalidated since 'loadedAtGeneration' was read.
+     */
+    public void put(K key, V value, long loadedAtGeneration) {
+        if (value == null) {
+            return;
+        }
+        synchronized (entries) {
+            if (generation.get() == loadedAtGeneration) {
+                entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: size=%d hits=%d misses=%d", name, size(), getHitCount(), getMissCount());
+    }
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long expiresAt;
+
+        CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.common.api.test;
+
+import org.collectionspace.services.common.api.ExpiringCache;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ExpiringCacheTest {
+
+    @Test
+    public void hitsAndMisses() {
+        ExpiringCache<String, String> cache = new ExpiringCache<String, String>("test", 10, 60 * 1000);
+        Assert.assertNull(cache.get("a"));
+        cache.put("a", "1");
+        Assert.assertEquals(cache.get("a"), "1");
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getMissCount(), 1);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ExpiringCache<String, String> cache = new ExpiringCache<String, String>("test", 2, 60 * 1000);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(cache.get("a"), "1");
+    }
+
+    @Test
+    public void expiresEntries() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<String, String>("test", 10, 1);
+        cache.put("a", "1");
+        Thread.sleep(5);
+        Assert.assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void dropsValuesLoadedBeforeInvalidation() {
+        ExpiringCache<String, String> cache = new ExpiringCache<String, String>("test", 10, 60 * 1000);
+        long generation = cache.getGeneration();
+        cache.invalidateAll();
+        cache.put("a", "stale", generation);
+        Assert.assertNull(cache.get("a"));
+        cache.put("a", "fresh", cache.getGeneration());
+        Assert.assertEquals(cache.get("a"), "fresh");
+    }
+}
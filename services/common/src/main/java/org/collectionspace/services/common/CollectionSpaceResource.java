@@ -91,6 +91,9 @@ public interface CollectionSpaceResource<IT, OT> {
      * resources base URL path needs to be declared in the Spring Security config file's 'springSecurityFilterChain' bean.
      * There needs to be a 'filter-chain' element something like the following:
      * See the "applicationContext-security.xml" file for details.
+     *
+     * The answer is asked for once per resource class -when the SecurityInterceptor's route table
+     * is built- and with null arguments, so it can't depend on the request.
      */
 //			<sec:filter-chain pattern="/publicitems/*/*/content"
 //                              filters="none"/>
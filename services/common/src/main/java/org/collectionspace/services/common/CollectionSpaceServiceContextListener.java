@@ -7,6 +7,9 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import org.collectionspace.services.common.imaging.nuxeo.ImageDerivativeTracker;
+import org.collectionspace.services.common.vocabulary.RefNameUpdateJob;
+
 /**
  * CollectionSpaceServiceContextListener is a ServletContextListener that helps initialize
  * the services layer at deployment and undeployment times
@@ -32,6 +35,10 @@ public class CollectionSpaceServiceContextListener implements ServletContextList
             // Typically, these handlers modify column types and add indexes to the Nuxeo db schema.
             //
             svcMain.firePostInitHandlers();
+            //
+            // Restart any background refName updates that were interrupted when the server last stopped.
+            //
+            RefNameUpdateJob.resumeUnfinishedJobs();
                         
         } catch (Throwable e) {
             e.printStackTrace();
@@ -43,6 +50,8 @@ public class CollectionSpaceServiceContextListener implements ServletContextList
 
     @Override
     public void contextDestroyed(ServletContextEvent event) {
+        RefNameUpdateJob.shutdown();
+        ImageDerivativeTracker.shutdown();
         //ServiceMain.getInstance().release();
     }
 }
@@ -23,12 +23,16 @@
  */
 package org.collectionspace.services.common;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
+import javax.xml.stream.XMLStreamException;
 
 import org.collectionspace.services.client.IClientQueryParams;
 import org.collectionspace.services.client.IQueryManager;
@@ -238,10 +242,27 @@ public abstract class NuxeoBasedResource
     //======================= GET ====================================================
     @GET
     @Path("{csid}")
-    public byte[] get(
+    public StreamingOutput get(
             @Context Request request,    		
             @Context UriInfo uriInfo,
             @PathParam("csid") String csid) {
+        PoxPayloadOut payload = getPayload(request, uriInfo, csid);
+        try {
+            return toStreamingOutput(payload);
+        } catch (XMLStreamException e) {
+            throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
+        }
+    }
+
+    /**
+     * Reads a record as a GET of it does.  Resources that read their records differently
+     * override this rather than get(), so that callers within the services -batch jobs,
+     * for example- read records the same way.
+     */
+    public PoxPayloadOut getPayload(
+            Request request,
+            UriInfo uriInfo,
+            String csid) {
         PoxPayloadOut result = null;
         ensureCSID(csid, READ);
         try {
@@ -256,7 +277,23 @@ public abstract class NuxeoBasedResource
             throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
         }
 
-        return result.getBytes();
+        return result;
+    }
+
+    /**
+     * Returns a response entity with the payload's XML -see PoxPayloadOut.writeTo().  The XML is
+     * written to a buffer before the response starts, so that a part that can't be written fails
+     * the request with an error status, rather than cutting short a response already sent as OK.
+     */
+    protected static StreamingOutput toStreamingOutput(PoxPayloadOut payload) throws XMLStreamException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        payload.writeTo(buffer);
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+                buffer.writeTo(outputStream);
+            }
+        };
     }
 
     protected PoxPayloadOut get(@PathParam("csid") String csid,
@@ -31,7 +31,9 @@ import org.collectionspace.services.common.init.AddIndices;
 import org.collectionspace.services.config.service.InitHandler.Params.Field;
 import org.collectionspace.services.common.init.IInitHandler;
 import org.collectionspace.services.common.storage.DatabaseProductType;
+import org.collectionspace.services.common.storage.JDBCDataSourceRegistry;
 import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.common.storage.jpa.JpaStorageUtils;
 import org.collectionspace.services.config.ClientType;
 import org.collectionspace.services.config.ServiceConfig;
 import org.collectionspace.services.config.service.ServiceBindingType;
@@ -174,6 +176,9 @@ public class ServiceMain {
         String[] dataSourceNames = {JDBCTools.NUXEO_DATASOURCE_NAME, JDBCTools.NUXEO_READER_DATASOURCE_NAME};
         updateInitializationScript(getNuxeoDatabasesInitScriptFilename(),
                 dbsCheckedOrCreated, dataSourceNames);
+        
+        // Create a connection pool for each of the Nuxeo-managed databases
+        registerRepositoryConnectionPools(dataSourceNames);
 
         //
         // Start up and initialize our embedded Nuxeo instance.
@@ -227,6 +232,8 @@ public class ServiceMain {
             if (nuxeoConnector != null) {
                 nuxeoConnector.release();
             }
+            JpaStorageUtils.closeEntityManagerFactories();
+            JDBCDataSourceRegistry.closeAll();
             instance = null;
         } catch (Exception e) {
             e.printStackTrace();
@@ -542,6 +549,26 @@ public class ServiceMain {
     	
     }
     
+    /*
+     * Register a JDBC connection pool for every (datasource, repository) pair declared in the
+     * tenant bindings, so that JDBCTools.getConnection() never has to create one on a request thread.
+     */
+    private void registerRepositoryConnectionPools(String[] dataSourceNames) throws Exception {
+        String cspaceInstanceId = getCspaceInstanceId();
+        for (TenantBindingType tenantBinding : tenantBindingConfigReader.getTenantBindings().values()) {
+        	List<String> repositoryNameList = ConfigUtils.getRepositoryNameList(tenantBinding);
+        	if (repositoryNameList != null) {
+        		for (String repositoryName : repositoryNameList) {
+        			for (String dataSourceName : dataSourceNames) {
+        				if (getBasicDataSource(dataSourceName) != null) {
+        					JDBCDataSourceRegistry.register(dataSourceName, repositoryName, cspaceInstanceId);
+        				}
+        			}
+        		}
+        	}
+        }
+    }
+    
         /**
          * Creates a Nuxeo-managed database, sets up an owner for that
          * database, and adds (at least) connection privileges to a reader
@@ -144,6 +144,9 @@ public class XmlSaxFragmenter implements ContentHandler, ErrorHandler {
                                                 buffer.toString());
             }
             inFragment = false;
+            if (!retainFragmentParents){
+                currentElement.detach();
+            }
             currentElement = previousElement;
         }
         if (inFragment){
@@ -209,6 +212,16 @@ public class XmlSaxFragmenter implements ContentHandler, ErrorHandler {
     }
 
 
+    private boolean retainFragmentParents = true;
+    public boolean isRetainFragmentParents() {
+        return retainFragmentParents;
+    }
+    /** If false, the parent element of each fragment is removed from the Document context once its
+     *  onFragmentReady() event has been handled, so that the context doesn't grow with the input. */
+    public void setRetainFragmentParents(boolean retainFragmentParents) {
+        this.retainFragmentParents = retainFragmentParents;
+    }
+
     private IFragmentHandler fragmentHandler;
     public IFragmentHandler getFragmentHandler() {
         return fragmentHandler;
@@ -292,6 +305,19 @@ public class XmlSaxFragmenter implements ContentHandler, ErrorHandler {
         }
     }
 
+    /** Parses a stream of any length: unlike parse(InputSource...), the parent element of each fragment
+     *  is dropped from the Document context after its onFragmentReady() event, and parsing errors, or
+     *  runtime exceptions thrown by the handler, are thrown back to the caller.
+     */
+    public static void parseStream(InputSource inputSource,
+                                   String chopPath,
+                                   IFragmentHandler handler,
+                                   boolean includeParent) throws Exception {
+        XMLReader parser = setupParser(chopPath, handler, includeParent);
+        ((XmlSaxFragmenter) parser.getContentHandler()).setRetainFragmentParents(false);
+        parser.parse(inputSource);
+    }
+
     protected static XMLReader setupParser(String chopPath,
                                       IFragmentHandler handler,
                                       boolean includeParent) throws Exception {
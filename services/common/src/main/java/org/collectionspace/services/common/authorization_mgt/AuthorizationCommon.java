@@ -7,18 +7,26 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.naming.NamingException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
 
 import org.collectionspace.authentication.AuthN;
 import org.collectionspace.services.authorization.AuthZ;
 import org.collectionspace.services.authorization.CSpaceAction;
+import org.collectionspace.services.authorization.CSpaceResource;
 import org.collectionspace.services.authorization.PermissionException;
 import org.collectionspace.services.authorization.PermissionRole;
 import org.collectionspace.services.authorization.PermissionRoleRel;
@@ -60,6 +68,8 @@ import org.springframework.security.acls.model.AlreadyExistsException;
 public class AuthorizationCommon {
 	
 	final public static String REFRESH_AUTZ_PROP = "refreshAuthZOnStartup";
+	// The system property giving the number of tenants whose default permissions may be refreshed at once
+	final public static String REFRESH_AUTHZ_THREADS_PROP = "org.collectionspace.services.refreshAuthZThreads";
     //
     // ActionGroup labels/constants
     //
@@ -1056,59 +1066,133 @@ public class AuthorizationCommon {
 		return result;
 	}
 	
+    /**
+     * Creates the default workflow permissions of each tenant -one for the tenant's administrator role
+     * and one for its reader role, per workflow transition of each service- along with their
+     * permission-role relationships and Spring Security ACL entries.
+     *
+     * Only what is missing is created: each tenant's existing permissions and relationships are read
+     * with one query apiece and compared with those its bindings call for, so a tenant whose bindings
+     * haven't changed since the last startup costs just those queries.  What is missing is created in
+     * a single transaction per tenant.  Set the REFRESH_AUTHZ_THREADS_PROP system property to refresh
+     * that many tenants at once.
+     */
     public static void createDefaultWorkflowPermissions(TenantBindingConfigReaderImpl tenantBindingConfigReader) throws Exception //FIXME: REM - 4/11/2012 - Rename to createWorkflowPermissions
     {
-    	AuthZ.get().login(); //login to Spring Security manager
+        Hashtable<String, TenantBindingType> tenantBindings = tenantBindingConfigReader.getTenantBindings();
+        List<TenantBindingType> tenants = new ArrayList<TenantBindingType>(tenantBindings.values());
+        int nThreads = Math.min(Integer.getInteger(REFRESH_AUTHZ_THREADS_PROP, 1), tenants.size());
+
+        if (nThreads <= 1) {
+            for (TenantBindingType tenantBinding : tenants) {
+                createDefaultWorkflowPermissions(tenantBinding);
+            }
+        } else {
+            //
+            // Do the first tenant on its own, so that the rows all tenants share (e.g., the Spring Security ACL class)
+            // are created by it, rather than by several tenants at once.
+            //
+            createDefaultWorkflowPermissions(tenants.get(0));
+            ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+            try {
+                List<Future<Void>> results = new ArrayList<Future<Void>>();
+                for (final TenantBindingType tenantBinding : tenants.subList(1, tenants.size())) {
+                    results.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            createDefaultWorkflowPermissions(tenantBinding);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Void> result : results) {
+                    try {
+                        result.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof Exception) {
+                            throw (Exception) e.getCause();
+                        }
+                        throw e;
+                    }
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static void createDefaultWorkflowPermissions(TenantBindingType tenantBinding) throws Exception
+    {
+    	AuthZ.get().login(); //login to Spring Security manager -on this thread, since we may be running on several
     	
         EntityManagerFactory emf = JpaStorageUtils.getEntityManagerFactory(JpaStorageUtils.CS_PERSISTENCE_UNIT);
         EntityManager em = null;
+        String tenantId = tenantBinding.getId();
 
         try {
             em = emf.createEntityManager();
 
-	        Hashtable<String, TenantBindingType> tenantBindings =
-	            	tenantBindingConfigReader.getTenantBindings();
-	        for (String tenantId : tenantBindings.keySet()) {
-		        TenantBindingType tenantBinding = tenantBindings.get(tenantId);
-	    		Role adminRole = AuthorizationCommon.getRole(em, tenantBinding.getId(), ROLE_TENANT_ADMINISTRATOR);
-	    		Role readonlyRole = AuthorizationCommon.getRole(em, tenantBinding.getId(), ROLE_TENANT_READER);
-		        for (ServiceBindingType serviceBinding : tenantBinding.getServiceBindings()) {
-		        	String prop = ServiceBindingUtils.getPropertyValue(serviceBinding, REFRESH_AUTZ_PROP);
-		        	if (prop == null ? true : Boolean.parseBoolean(prop)) {
-			        		try {
-			        		em.getTransaction().begin();
-				        	TransitionDefList transitionDefList = getTransitionDefList(tenantBinding, serviceBinding);
-				        	for (TransitionDef transitionDef : transitionDefList.getTransitionDef()) {
-				        		//
-				        		// Create the permission for the admin role
-				        		Permission adminPerm = createWorkflowPermission(tenantBinding, serviceBinding, transitionDef, ACTIONGROUP_CRUDL);
-				        		persist(em, adminPerm, adminRole, true);
-				        		//
-				        		// Create the permission for the read-only role
-				        		Permission readonlyPerm = createWorkflowPermission(tenantBinding, serviceBinding, transitionDef, ACTIONGROUP_RL);
-				        		
-				        		Profiler profiler = new Profiler(AuthorizationCommon.class, 1);
-				        		profiler.start("createDefaultPermissions started:" + readonlyPerm.getCsid());
-				        		persist(em, readonlyPerm, readonlyRole, true); // Persist/store the permission and permrole records and related Spring Security info
-				        		profiler.stop();
-				        		logger.debug("Finished full perm generation for "
-				        				+ ":" + tenantBinding.getId()
-				        				+ ":" + serviceBinding.getName()
-				        				+ ":" + transitionDef.getName()
-				        				+ ":" + ACTIONGROUP_RL
-				        				+ ":" + profiler.getCumulativeTime());			        		
-				        	}
-				        	em.getTransaction().commit();
-			        	} catch (IllegalStateException e) {
-			        		logger.debug(e.getLocalizedMessage(), e); //We end up here if there is no document handler for the service -this is ok for some of the services.
-			        	}
-		        	} else {
-		        		logger.warn("AuthZ refresh service binding property is set to FALSE so default permissions will NOT be refreshed for: "
-		        				+ serviceBinding.getName());
+    		Role adminRole = AuthorizationCommon.getRole(em, tenantId, ROLE_TENANT_ADMINISTRATOR);
+    		Role readonlyRole = AuthorizationCommon.getRole(em, tenantId, ROLE_TENANT_READER);
+    		//
+    		// Work out the permissions the tenant's bindings call for
+    		//
+    		List<Permission> adminPerms = new ArrayList<Permission>();
+    		List<Permission> readonlyPerms = new ArrayList<Permission>();
+	        for (ServiceBindingType serviceBinding : tenantBinding.getServiceBindings()) {
+	        	String prop = ServiceBindingUtils.getPropertyValue(serviceBinding, REFRESH_AUTZ_PROP);
+	        	if (prop == null ? true : Boolean.parseBoolean(prop)) {
+		        	TransitionDefList transitionDefList = getTransitionDefList(tenantBinding, serviceBinding);
+		        	for (TransitionDef transitionDef : transitionDefList.getTransitionDef()) {
+		        		adminPerms.add(createWorkflowPermission(tenantBinding, serviceBinding, transitionDef, ACTIONGROUP_CRUDL));
+		        		readonlyPerms.add(createWorkflowPermission(tenantBinding, serviceBinding, transitionDef, ACTIONGROUP_RL));
 		        	}
-		        }
+	        	} else {
+	        		logger.warn("AuthZ refresh service binding property is set to FALSE so default permissions will NOT be refreshed for: "
+	        				+ serviceBinding.getName());
+	        	}
+	        }
+	        //
+	        // ...and compare them with the ones it has
+	        //
+	        Set<String> existingPermIds = findPermissionIds(em, tenantId);
+	        List<Permission> newPerms = new ArrayList<Permission>();
+	        List<Permission> allPerms = new ArrayList<Permission>(adminPerms);
+	        allPerms.addAll(readonlyPerms);
+	        for (Permission perm : allPerms) {
+	        	if (existingPermIds.add(perm.getCsid()) == true) { // i.e., it's neither in the database nor already on our list
+	        		newPerms.add(perm);
+	        	}
+	        }
+	        List<Permission> newAdminPerms = findUnrelatedPermissions(em, adminPerms, adminRole, tenantId);
+	        List<Permission> newReadonlyPerms = findUnrelatedPermissions(em, readonlyPerms, readonlyRole, tenantId);
+
+	        if (newPerms.isEmpty() && newAdminPerms.isEmpty() && newReadonlyPerms.isEmpty()) {
+	        	if (logger.isDebugEnabled() == true) {
+	        		logger.debug("The default workflow permissions of tenant " + tenantId + " are up to date.");
+	        	}
+	        	return;
+	        }
+	        //
+	        // Create what's missing -the Spring Security ACL entries before we commit, so if they fail the rest is rolled back
+	        //
+    		Profiler profiler = new Profiler(AuthorizationCommon.class, 1);
+    		profiler.start("createDefaultWorkflowPermissions started for tenant " + tenantId);
+	        em.getTransaction().begin();
+	        for (Permission perm : newPerms) {
+	        	em.persist(perm);
 	        }
-            em.close();
+	        persistPermRoleRels(em, newAdminPerms, adminRole);
+	        persistPermRoleRels(em, newReadonlyPerms, readonlyRole);
+	        em.flush();
+	        addPermissionsForUris(newAdminPerms, adminRole);
+	        addPermissionsForUris(newReadonlyPerms, readonlyRole);
+	        em.getTransaction().commit();
+	        profiler.stop();
+	        logger.debug("Finished default workflow permission generation for tenant " + tenantId
+	        		+ ": " + newPerms.size() + " permissions and "
+	        		+ (newAdminPerms.size() + newReadonlyPerms.size()) + " permission-role relationships created in "
+	        		+ profiler.getCumulativeTime());
     	} catch (Exception e) {
             if (em != null && em.getTransaction().isActive()) {
                 em.getTransaction().rollback();
@@ -1119,59 +1203,75 @@ public class AuthorizationCommon {
             throw e;
         } finally {
             if (em != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
     
-    private static PermissionRoleRel findPermRoleRel(EntityManager em, String permissionId, String RoleId) {
-    	PermissionRoleRel result = null;
-    	
-    	try {
-	        String whereClause = "where permissionId = :id and roleId = :roleId";
-	        HashMap<String, Object> params = new HashMap<String, Object>();
-	        params.put("id", permissionId);
-	        params.put("roleId", RoleId);        
-	
-	        result = (PermissionRoleRel) JpaStorageUtils.getEntity(em,
-	        		PermissionRoleRel.class.getCanonicalName(), whereClause, params);
-    	} catch (Exception e) {
-    		//Do nothing. Will return null;
-    	}
-    	    	
-    	return result;
+    /*
+     * Returns the CSIDs of all the tenant's permissions.
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<String> findPermissionIds(EntityManager em, String tenantId) {
+    	Query q = em.createQuery("SELECT p.csid FROM " + Permission.class.getName() + " p WHERE p.tenantId = :tenantId");
+    	q.setParameter("tenantId", tenantId);
+    	return new HashSet<String>(q.getResultList());
     }
     
     /*
-     * Persists the Permission, PermissionRoleRel, and Spring Security table entries all in one transaction
+     * Returns those of the given permissions that aren't related to the role.
      */
-    private static void persist(EntityManager em, Permission permission, Role role, boolean enforceTenancy) throws Exception {
-		AuthorizationStore authzStore = new AuthorizationStore();
-		// First persist the Permission record
-		authzStore.store(em, permission);
-		
-		// If the PermRoleRel doesn't already exists then relate the permission and the role in a new PermissionRole (the service payload)
-		// Create a PermissionRoleRel (the database relation table for the permission and role)
-		PermissionRoleRel permRoleRel = findPermRoleRel(em, permission.getCsid(), role.getCsid());
-		if (permRoleRel == null) {
-			PermissionRole permRole = createPermissionRole(em, permission, role, enforceTenancy);
+    @SuppressWarnings("unchecked")
+    private static List<Permission> findUnrelatedPermissions(EntityManager em, List<Permission> permissions, Role role,
+    		String tenantId) {
+    	List<Permission> result = new ArrayList<Permission>();
+    	if (permissions.isEmpty() == false) {
+	    	if (role == null) {
+	    		logger.warn("Tenant " + tenantId + " is missing a default role, so it can't be given the default workflow permissions: "
+	    				+ permissions.get(0).getActionGroup());
+	    		return result;
+	    	}
+	    	Query q = em.createQuery("SELECT r.permissionId FROM " + PermissionRoleRel.class.getName() + " r WHERE r.roleId = :roleId");
+	    	q.setParameter("roleId", role.getCsid());
+	    	Set<String> relatedPermIds = new HashSet<String>(q.getResultList());
+	    	for (Permission perm : permissions) {
+	    		if (relatedPermIds.add(perm.getCsid()) == true) {
+	    			result.add(perm);
+	    		}
+	    	}
+    	}
+    	return result;
+    }
+    
+    private static void persistPermRoleRels(EntityManager em, List<Permission> permissions, Role role) throws Exception {
+    	for (Permission permission : permissions) {
+			PermissionRole permRole = createPermissionRole(em, permission, role, true);
 	        List<PermissionRoleRel> permRoleRels = new ArrayList<PermissionRoleRel>();
 	        PermissionRoleUtil.buildPermissionRoleRel(em, permRole, SubjectType.ROLE, permRoleRels, false /*not for delete*/);
 	        for (PermissionRoleRel prr : permRoleRels) {
-	            authzStore.store(em, prr);
+	            if (prr.getCreatedAt() == null) {
+	            	prr.setCreatedAtItem(new Date());
+	            }
+	            em.persist(prr);
 	        }
-			Profiler profiler = new Profiler(AuthorizationCommon.class, 2);
-			profiler.start();
-			// Add a corresponding entry in the Spring Security Tables
-			addPermissionsForUri(permission, permRole);
-			profiler.stop();
-			logger.debug("Finished full perm generation for "
-					+ ":" + permission.getTenantId()
-					+ ":" + permission.getResourceName()
-					+ ":" + ACTIONGROUP_RL
-					+ ":" + profiler.getCumulativeTime());
-		}
-        
+    	}
+    }
+    
+    /*
+     * Adds the Spring Security ACL entries for the permissions and the role, in one go.
+     */
+    private static void addPermissionsForUris(List<Permission> permissions, Role role) throws PermissionException {
+    	List<CSpaceResource> resources = new ArrayList<CSpaceResource>();
+    	for (Permission perm : permissions) {
+    		// The default permissions all PERMIT, so we needn't group them by their effects
+	        for (PermissionAction permAction : perm.getAction()) {
+	            CSpaceAction action = URIResourceImpl.getAction(permAction.getName()); 
+	            resources.add(new URIResourceImpl(perm.getTenantId(), perm.getResourceName(), action));
+	        }
+    	}
+    	if (resources.isEmpty() == false) {
+    		AuthZ.get().addPermissions(resources, new String[] {role.getRoleName()}, true);
+    	}
     }
 
 }
@@ -149,7 +149,7 @@ public class AuthorizationStore {
             if (em != null) {
             	em.clear();
             	em.close();
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -149,7 +149,7 @@ public class PermissionRoleUtil {
             throw e;
         } finally {
             if (em != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }    
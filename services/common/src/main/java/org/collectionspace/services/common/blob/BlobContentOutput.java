@@ -0,0 +1,106 @@
+package org.collectionspace.services.common.blob;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Writes the content of a blob -or a range of its bytes- to a response.  If the content is in a file, the bytes
+ * are moved with FileChannel.transferTo(), which lets the JVM/OS copy them without going through the Java heap.
+ * Otherwise they're copied from the content stream.  Either way, the file or stream is closed when we're done.
+ */
+public class BlobContentOutput implements StreamingOutput {
+	private static final Logger logger = LoggerFactory.getLogger(BlobContentOutput.class);
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private BlobInput blobInput;
+	private long offset;
+	private long length;		// -1 means "to the end of the content"
+
+	/*
+	 * Writes all of the content.
+	 */
+	public BlobContentOutput(BlobInput blobInput) {
+		this(blobInput, 0, -1);
+	}
+
+	/*
+	 * Writes 'length' bytes of the content, starting at 'offset'.
+	 */
+	public BlobContentOutput(BlobInput blobInput, long offset, long length) {
+		this.blobInput = blobInput;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		if (blobInput.getContentFile() != null) {
+			writeFile(output);
+		} else {
+			writeStream(output);
+		}
+	}
+
+	private void writeFile(OutputStream output) throws IOException {
+		FileInputStream fileStream = new FileInputStream(blobInput.getContentFile());
+		try {
+			FileChannel fileChannel = fileStream.getChannel();
+			WritableByteChannel outputChannel = Channels.newChannel(output);
+			long position = offset;
+			long end = length < 0 ? fileChannel.size() : offset + length;
+			while (position < end) {
+				long transferred = fileChannel.transferTo(position, end - position, outputChannel);
+				if (transferred <= 0) {
+					break; // The file got shorter
+				}
+				position += transferred;
+			}
+		} finally {
+			fileStream.close();
+		}
+	}
+
+	private void writeStream(OutputStream output) throws IOException {
+		InputStream contentStream = blobInput.getContentStream();
+		if (contentStream == null) {
+			logger.error("There is no content to write for the blob: " + blobInput.getContentName());
+			return;
+		}
+		try {
+			long skipped = 0;
+			while (skipped < offset) {
+				long n = contentStream.skip(offset - skipped);
+				if (n <= 0) {
+					return; // The content is shorter than we were told
+				}
+				skipped += n;
+			}
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long remaining = length;
+			while (remaining != 0) {
+				int toRead = (remaining < 0 || remaining > buffer.length) ? buffer.length : (int) remaining;
+				int n = contentStream.read(buffer, 0, toRead);
+				if (n < 0) {
+					break;
+				}
+				output.write(buffer, 0, n);
+				if (remaining > 0) {
+					remaining -= n;
+				}
+			}
+		} finally {
+			contentStream.close();
+		}
+	}
+}
@@ -1,9 +1,12 @@
 package org.collectionspace.services.common.blob;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Date;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +37,15 @@ public class BlobInput {
 	
 	private boolean contentRequested = false;
 	private InputStream contentStream;
+	//
+	// What the doc handler found out about the content, for the Content-* and caching headers of a response.
+	// If the content is in a file, 'contentFile' is set instead of 'contentStream' so the file can be read directly.
+	//
+	private File contentFile;
+	private String contentName;
+	private long contentLength = -1;
+	private String contentDigest;
+	private Date contentLastModified;
 	
 	private boolean schemaRequested = false;
 	
@@ -151,7 +163,17 @@ public class BlobInput {
 		this.derivativeList = derivativeList;
 	}
 
+	/*
+	 * If the content is in a file, opens a stream on it.  The caller must close the stream.
+	 */
 	public InputStream getContentStream() {
+		if (contentStream == null && contentFile != null) {
+			try {
+				contentStream = new FileInputStream(contentFile);
+			} catch (FileNotFoundException e) {
+				logger.error("Could not open the content file: " + contentFile.getAbsolutePath(), e);
+			}
+		}
 		return contentStream;
 	}
 
@@ -165,7 +187,50 @@ public class BlobInput {
 
 	public void setContentRequested(boolean contentRequested) {
 		this.contentRequested = contentRequested;
-	}	
+	}
+
+	public File getContentFile() {
+		return contentFile;
+	}
+
+	public void setContentFile(File contentFile) {
+		this.contentFile = contentFile;
+	}
+
+	public String getContentName() {
+		return contentName;
+	}
+
+	public void setContentName(String contentName) {
+		this.contentName = contentName;
+	}
+
+	/*
+	 * Returns the length of the content in bytes, or -1 if it isn't known.
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	public void setContentLength(long contentLength) {
+		this.contentLength = contentLength;
+	}
+
+	public String getContentDigest() {
+		return contentDigest;
+	}
+
+	public void setContentDigest(String contentDigest) {
+		this.contentDigest = contentDigest;
+	}
+
+	public Date getContentLastModified() {
+		return contentLastModified;
+	}
+
+	public void setContentLastModified(Date contentLastModified) {
+		this.contentLastModified = contentLastModified;
+	}
 	/*
 	 * End of setters and getters
 	 */
@@ -1,12 +1,20 @@
 package org.collectionspace.services.common.blob;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.Date;
+
 import org.collectionspace.services.blob.BlobsCommon;
 
 public class BlobOutput {
 	private String mimeType;
 	private BlobsCommon blobsCommon;
 	private InputStream blobInputStream;
+	private File blobFile;			// The file holding the content, if there is one -in which case there's no input stream
+	private String digest;
+	private Date lastModified;
 
 	public BlobsCommon getBlobsCommon() {
 		return blobsCommon;
@@ -14,7 +22,13 @@ public class BlobOutput {
 	public void setBlobsCommon(BlobsCommon blobsCommon) {
 		this.blobsCommon = blobsCommon;
 	}
-	public InputStream getBlobInputStream() {
+	/*
+	 * If the content is in a file, opens a stream on it.  The caller must close the stream.
+	 */
+	public InputStream getBlobInputStream() throws FileNotFoundException {
+		if (blobInputStream == null && blobFile != null) {
+			blobInputStream = new FileInputStream(blobFile);
+		}
 		return blobInputStream;
 	}
 	public void setBlobInputStream(InputStream blobInputStream) {
@@ -26,4 +40,22 @@ public class BlobOutput {
 	public void setMimeType(String mimeType) {
 		this.mimeType = mimeType;
 	}
+	public File getBlobFile() {
+		return blobFile;
+	}
+	public void setBlobFile(File blobFile) {
+		this.blobFile = blobFile;
+	}
+	public String getDigest() {
+		return digest;
+	}
+	public void setDigest(String digest) {
+		this.digest = digest;
+	}
+	public Date getLastModified() {
+		return lastModified;
+	}
+	public void setLastModified(Date lastModified) {
+		this.lastModified = lastModified;
+	}
 }
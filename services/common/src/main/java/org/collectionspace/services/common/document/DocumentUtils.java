@@ -45,6 +45,9 @@ import java.util.StringTokenizer;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.Result;
@@ -52,10 +55,10 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 
-import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.api.GregorianCalendarDateTimeUtils;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.datetime.DateTimeFormatUtils;
@@ -200,43 +203,37 @@ public class DocumentUtils {
 		return result;
 	}
 
-	/**
-	 * Gets the xML schema.
-	 *
-	 * @param partMeta
-	 *            the part meta
-	 * @return the xML schema
-	 * @throws Exception
-	 *             the exception
-	 */
-	private static File getXMLSchema(ObjectPartType partMeta) throws Exception {
-		final String FILE_SEPARATOR = System.getProperty("file.separator");
-		final String XML_SCHEMA_EXTENSION = ".xsd";
-		final String SCHEMAS_DIR = "schemas";
-
-		File schemaFile = null;
+	// DocumentBuilders aren't thread-safe, so each thread keeps its own; they are reset after each parse.
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			return newDocumentBuilder(false);
+		}
+	};
+	private static final ThreadLocal<DocumentBuilder> namespaceAwareDocumentBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			return newDocumentBuilder(true);
+		}
+	};
 
+	private static DocumentBuilder newDocumentBuilder(boolean namespaceAware) {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 		//
-		// Look for an XML Schema (.xsd) file for the incoming part payload
-		//
-		String serverRoot = ServiceMain.getInstance().getServerRootDir();
-		String schemasDir = serverRoot + FILE_SEPARATOR + SCHEMAS_DIR
-				+ FILE_SEPARATOR;
-		//
-		// Send a warning to the log file if the XML Schema file is missing
+		// Lexical Control Settings that focus on content
 		//
-		String schemaName = schemasDir + partMeta.getLabel()
-				+ XML_SCHEMA_EXTENSION;
+		factory.setCoalescing(true);
+		factory.setExpandEntityReferences(true);
+		factory.setIgnoringComments(true);
+		factory.setIgnoringElementContentWhitespace(true);
+		factory.setNamespaceAware(namespaceAware);
 		try {
-			schemaFile = new File(schemaName);
-		} catch (Exception e) {
-			if (logger.isWarnEnabled() == true) {
-				logger.warn("Missing schema file for incoming payload: "
-						+ schemaName);
-			}
+			DocumentBuilder result = factory.newDocumentBuilder();
+			result.setErrorHandler(null);
+			return result;
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("Could not create an XML document builder.", e);
 		}
-
-		return schemaFile;
 	}
 
 	/**
@@ -247,16 +244,15 @@ public class DocumentUtils {
 	 *            stream
 	 * @param partMeta
 	 * @param validate
-	 *            - whether or not to validate the payload with an XML Schema
+	 *            - whether or not to validate the payload with the part's XML Schema,
+	 *            compiled once and kept by XmlSchemaCache
 	 * @return parsed Document
+	 * @throws InvalidDocumentException
+	 *             if the payload is validated and isn't valid
 	 * @throws Exception
 	 */
 	public static Document parseDocument(InputStream payload,
 			ObjectPartType partMeta, Boolean validate) throws Exception {
-		final String JAXP_SCHEMA_SOURCE = "http://java.sun.com/xml/jaxp/properties/schemaSource";
-		final String JAXP_SCHEMA_LANGUAGE = "http://java.sun.com/xml/jaxp/properties/schemaLanguage";
-		final String W3C_XML_SCHEMA = "http://www.w3.org/2001/XMLSchema";
-
 		Document result = null;
 		// Log the incoming unprocessed payload
 		if (logger.isDebugEnabled() == true) {
@@ -265,64 +261,53 @@ public class DocumentUtils {
 			}
 		}
 
-		File schemaFile = null;
-		if (validate == true) {
-			schemaFile = getXMLSchema(partMeta);
-		}
-
 		//
-		// Create and setup a DOMBuilder factory.
+		// Parse the payload, with a namespace aware builder if we're going to validate it
 		//
+		DocumentBuilder db = (validate == true) ? namespaceAwareDocumentBuilder.get() : documentBuilder.get();
 		try {
-			// Create a builder factory
-			DocumentBuilderFactory factory = DocumentBuilderFactory
-					.newInstance();
-			//
-			// Lexical Control Settings that focus on content
-			//
-			factory.setCoalescing(true);
-			factory.setExpandEntityReferences(true);
-			factory.setIgnoringComments(true);
-			factory.setIgnoringElementContentWhitespace(true);
-			//
-			// Enable XML validation if we found an XML Schema for the payload
-			//
-			try {
-				if (schemaFile != null) {
-					factory.setValidating(true);
-					factory.setNamespaceAware(true);
-					factory.setAttribute(JAXP_SCHEMA_LANGUAGE, W3C_XML_SCHEMA);
-					factory.setAttribute(JAXP_SCHEMA_SOURCE, schemaFile);
-				}
-			} catch (IllegalArgumentException e) {
-				String msg = "Error: JAXP DocumentBuilderFactory attribute not recognized: "
-						+ JAXP_SCHEMA_LANGUAGE
-						+ ". Check to see if parser conforms to JAXP 1.2 spec.";
-				if (logger.isWarnEnabled() == true) {
-					logger.warn(msg);
-				}
-				throw e;
-			}
-			//
-			// Create the builder and parse the file
-			//
-			DocumentBuilder db = factory.newDocumentBuilder();
-			db.setErrorHandler(null);
 			result = db.parse(payload);
-
-			// Write it to the log so we can see what we've created.
-			if (logger.isTraceEnabled() == true) {
-				logger.trace(xmlToString(result));
-			}
 		} finally {
+			db.reset();
+			db.setErrorHandler(null);
 			if (payload != null) {
 				payload.close();
 			}
 		}
 
+		if (validate == true) {
+			XmlSchemaCache.validate(partMeta, new DOMSource(result));
+		}
+
+		// Write it to the log so we can see what we've created.
+		if (logger.isTraceEnabled() == true) {
+			logger.trace(xmlToString(result));
+		}
+
 		return result;
 	}
 
+	/**
+	 * Validates a payload with the part's XML Schema in streaming mode, i.e. as it is read,
+	 * without building a DOM -for when the payload only needs checking, or should be
+	 * checked before parseDocument() is asked to build a DOM from it.  This method
+	 * closes the given stream.
+	 *
+	 * @return false if the part has no XML Schema to validate against
+	 * @throws InvalidDocumentException
+	 *             if the payload isn't valid
+	 */
+	public static boolean validateDocument(InputStream payload,
+			ObjectPartType partMeta) throws Exception {
+		try {
+			return XmlSchemaCache.validate(partMeta, new StreamSource(payload));
+		} finally {
+			if (payload != null) {
+				payload.close();
+			}
+		}
+	}
+
 	/**
 	 * parseProperties extract given payload (XML) into Name-Value properties.
 	 * this
@@ -566,7 +551,6 @@ public class DocumentUtils {
 		Schema schema = getSchemaFromName(partMeta.getLabel());
 
 		buildDocument(document, root, objectProps, schema);
-		String w3cDocumentStr = xmlToString(document);
 
 		DOMReader reader = new DOMReader();
 		org.dom4j.Document dom4jDoc = reader.read(document);
@@ -756,6 +740,113 @@ public class DocumentUtils {
 		}
 	}
 
+	/**
+	 * Writes the same XML for a part as buildDocument() builds, but straight to an XML stream,
+	 * without building a DOM.
+	 *
+	 * @param writer
+	 *            the stream to write to
+	 * @param partMeta
+	 *            the part's metadata
+	 * @param rootElementName
+	 *            the part's root element name; its schema name
+	 * @param objectProps
+	 *            the part's properties, as from DocumentModel.getProperties(); the
+	 *            property names may be schema-qualified
+	 * @return false, with nothing written, if the part isn't an XML part
+	 */
+	public static boolean writeDocument(XMLStreamWriter writer, ObjectPartType partMeta,
+			String rootElementName, Map<String, Object> objectProps)
+			throws XMLStreamException {
+		XmlContentType xc = partMeta.getContent().getXmlContent();
+		if (xc == null) {
+			return false;
+		}
+
+		writeDocument(writer, xc.getNamespaceURI(), rootElementName, objectProps,
+				getSchemaFromName(partMeta.getLabel()));
+		return true;
+	}
+
+	/**
+	 * Writes a part's XML to a stream, given its namespace and schema -see
+	 * writeDocument(XMLStreamWriter, ObjectPartType, String, Map).
+	 */
+	public static void writeDocument(XMLStreamWriter writer, String namespaceURI,
+			String rootElementName, Map<String, Object> objectProps, Schema schema)
+			throws XMLStreamException {
+		// The same namespace declarations as buildDocument() makes
+		String ns = "ns2";
+		writer.writeStartElement(ns, rootElementName, namespaceURI);
+		writer.writeNamespace(ns, namespaceURI);
+		writer.writeNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+
+		for (Map.Entry<String, Object> entry : objectProps.entrySet()) {
+			Object value = entry.getValue();
+			if (value != null) {
+				String prop = entry.getKey();
+				prop = prop.substring(prop.indexOf(SCHEMA_FIELD_DELIMITER) + 1); // unqualify
+				Field field = schema.getField(prop);
+				if (field == null) {
+					field = new FieldImpl(new QName(prop), schema,
+							StringType.INSTANCE);
+				}
+				writeProperty(writer, field, value);
+			}
+		}
+
+		writer.writeEndElement();
+	}
+
+	/*
+	 * The streaming counterpart of buildProperty().
+	 */
+	private static void writeProperty(XMLStreamWriter writer, Field field,
+			Object value) throws XMLStreamException {
+		Type type = field.getType();
+		writer.writeStartElement(field.getName().getLocalName());
+		if (value == null) {
+			// buildProperty() gives us an empty element
+		} else if (type.isSimpleType()) {
+			String encodedVal = null;
+			if (isNuxeoDecimalType(type) && valueMatchesNuxeoType(type, value)) {
+				encodedVal = nuxeoDecimalValueToDecimalString(value);
+			} else {
+				encodedVal = encodeValue(type, value);
+			}
+			if (encodedVal != null) {
+				writer.writeCharacters(encodedVal);
+			}
+		} else if (type.isComplexType()) {
+			ComplexType ctype = (ComplexType) type;
+			if (ctype.getName().equals(TypeConstants.CONTENT)) {
+				throw new RuntimeException(
+						"Unexpected schema type: BLOB for field: " + field.getName().getLocalName());
+			}
+			Iterator<Map.Entry> it = ((Map) value).entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry entry = it.next();
+				writeProperty(writer, ctype.getField(entry.getKey().toString()), entry.getValue());
+			}
+		} else if (type.isListType()) {
+			List list = null;
+			if (value instanceof List) {
+				list = (List) value;
+			} else if (value.getClass().getComponentType() != null) {
+				list = PrimitiveArrays.toList(value);
+			} else {
+				throw new IllegalArgumentException(
+						"A value of list type is neither list neither array: "
+								+ value);
+			}
+			Field itemField = ((ListType) type).getField();
+			for (Object obj : list) {
+				writeProperty(writer, itemField, obj);
+			}
+		}
+		writer.writeEndElement();
+	}
+
 	/**
 	 * Returns a schema, given the name of a schema.
 	 *
@@ -24,181 +24,522 @@
 
 package org.collectionspace.services.common.document;
 
-import org.collectionspace.services.client.IRelationsManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
-import org.collectionspace.services.common.XmlTools;
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.common.config.TenantBindingConfigReaderImpl;
+import org.collectionspace.services.common.context.ServiceBindingUtils;
 import org.collectionspace.services.common.context.ServiceContext;
-import org.collectionspace.services.common.relation.RelationResource;
-import org.collectionspace.services.relation.RelationsCommonList;
-import org.collectionspace.services.relation.RelationsDocListItem;
+import org.collectionspace.services.common.repository.RepositoryClientFactory;
+import org.collectionspace.services.common.storage.DatabaseProductType;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.config.service.ServiceBindingType;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.client.java.RepositoryJavaClientImpl;
+import org.collectionspace.services.nuxeo.util.DocumentModelCache;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 import org.collectionspace.services.relation.RelationshipType;
-
-import javax.ws.rs.core.MultivaluedMap;
-import java.util.List;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
+ * Reports the broader/narrower hierarchy around an authority item.
+ *
+ * All of the hasBroader relations in the hierarchy are read from the relations table up front
+ * -with a single recursive query on PostgreSQL, or one query per level of the hierarchy
+ * otherwise- and the names and numbers of the items in it are then fetched in bulk.
+ * The hierarchy is built in memory and written out as a stream of XML.
+ *
+ * The depth of the hierarchy and the number of items in it can be limited by the "depth" and
+ * "maxNodes" query parameters.  If either limit is reached, the hierarchy ends with a
+ * &lt;truncated&gt;true&lt;/truncated&gt; element.
+ *
  * @author Laramie Crocker
  */
 public class Hierarchy {
+    private static final Logger logger = LoggerFactory.getLogger(Hierarchy.class);
 
     public static final String directionQP = "direction";
     public static final String direction_parents = "parents";
+    public static final String depthQP = "depth";
+    public static final String maxNodesQP = "maxNodes";
+
+    public static final int DEFAULT_MAX_DEPTH = 100;
+    public static final int DEFAULT_MAX_NODES = 50000;
+    // Bounds the recursion while writing the hierarchy out
+    private static final int MAX_DEPTH_LIMIT = 1000;
+    // Bounds the relations read into memory
+    static final int MAX_NODES_LIMIT = 100000;
+    // The most CSIDs we put in the IN clause of each per-level query
+    private static final int MAX_CSIDS_PER_QUERY = NuxeoUtils.MAX_IDS_PER_QUERY;
 
+    private static final String RELATIONS_TABLE = "relations_common";
+    private static final String EDGE_COLUMNS = "subjectcsid, subjecturi, subjectdocumenttype, objectcsid, objecturi, objectdocumenttype";
 
     /**Call with the URI and CSID of the root element of the tree you wish to inspect.  The uri can be a blank string.
      * @param uri informational, optional - if not known, pass an empty String.
-     * @return String of XML document, including xml processing instruction, root node is "&lt;hierarchy&gt;".
+     * @return the XML document, including xml processing instruction, root node is "&lt;hierarchy&gt;".
      */
-    public static String dive(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri) {
-        String result = dive(ctx, itemcsid, uri, true);
-        result =  "<?xml version='1.0' ?><hierarchy>"+result+"</hierarchy>";
-        try {
-            result = XmlTools.prettyPrint(result);
-        } catch (Exception e){
-        	// Do nothing
-        }
-        return result;
+    public static StreamingOutput dive(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri) throws Exception {
+        final Tree tree = loadTree(ctx, itemcsid, uri, true);
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+                try {
+                    XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+                    writer.writeStartDocument("UTF-8", "1.0");
+                    writer.writeStartElement("hierarchy");
+                    tree.writeChildren(writer);
+                    tree.writeTruncated(writer);
+                    writer.writeEndElement();
+                    writer.writeEndDocument();
+                    writer.flush();
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
     }
 
-    private static String dive(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri, boolean lookupFirstName) {
-        MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
-        //Run getList() once as sent to get childListOuter:
-        queryParams.putSingle(IRelationsManager.PREDICATE_QP, RelationshipType.HAS_BROADER.value());
-        queryParams.putSingle(IRelationsManager.SUBJECT_QP, null);
-        queryParams.putSingle(IRelationsManager.SUBJECT_TYPE_QP, null);
-        queryParams.putSingle(IRelationsManager.OBJECT_QP, itemcsid);
-        queryParams.putSingle(IRelationsManager.OBJECT_TYPE_QP, null);
-        
-        RelationResource relationResource = new RelationResource();
-        RelationsCommonList childListOuter = relationResource.getList(ctx);    // Knows all query params because they are in the context.
-        List<RelationsCommonList.RelationListItem> childList = childListOuter.getRelationListItem();
-
-        StringBuffer sb = new StringBuffer();
-
-        if (lookupFirstName && childList.size() > 0) {
-            RelationsCommonList.RelationListItem firstItem = childList.get(0);
-            sb.append("<uri>" + firstItem.getObject().getUri() + "</uri>\r\n");
-            sb.append("<uri-called>" + uri + "</uri-called>\r\n");
-            sb.append("<name>" + firstItem.getObject().getName() + "</name><number>" + firstItem.getObject().getNumber() + "</number>\r\n");
-        } else {
-            sb.append("<uri>" + uri + "</uri>\r\n");
-        }
-        
-        sb.append("<csid>" + itemcsid + "</csid>\r\n");
-        sb.append("<children>\r\n");
-        
-        for (RelationsCommonList.RelationListItem item : childList) {
-            RelationsDocListItem parent = item.getObject();
-            RelationsDocListItem child = item.getSubject();
-            String childCSID = child.getCsid();
-            String childURI = child.getUri();
-            sb.append("<child>\r\n");
-            sb.append("<parent-uri>" +parent.getUri() + "</parent-uri>\r\n");
-            sb.append("  <name>" + child.getName() + "</name><number>" + child.getNumber() + "</number>\r\n");
-            String s = dive(ctx, childCSID, childURI, false);
-            sb.append(s);
-            sb.append("</child>\r\n");
-        }
-        sb.append("</children>\r\n");
-        return sb.toString();
+    public static StreamingOutput surface(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri) throws Exception {
+        final Tree tree = loadTree(ctx, itemcsid, uri, false);
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+                try {
+                    XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+                    writer.writeStartDocument("UTF-8", "1.0");
+                    writer.writeStartElement("hierarchy");
+                    writer.writeAttribute(directionQP, direction_parents);
+                    tree.writeParents(writer);
+                    tree.writeTruncated(writer);
+                    writer.writeEndElement();
+                    writer.writeEndDocument();
+                    writer.flush();
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
     }
 
-    public static String surface(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri) {
-        String result = surface(ctx, itemcsid, uri, true).resultBuffer.toString();
-        result =  "<?xml version='1.0' ?><hierarchy direction='"+direction_parents+"'>"+result+"</hierarchy>";
-        try {
-            result = XmlTools.prettyPrint(result);
-        } catch (Exception e){
-        	// Do nothing
+    /*
+     * A hasBroader relation: the subject is the narrower (child) item and the object the broader (parent) one.
+     */
+    static class Edge {
+        String childCsid;
+        String childUri;
+        String childDocType;
+        String parentCsid;
+        String parentUri;
+        String parentDocType;
+
+        String getKey() {
+            return childCsid + "|" + parentCsid;
         }
-        return result;
     }
-    
-    private static class SurfaceResultStruct {
-        public StringBuffer resultBuffer;
-        public boolean noParents = false;
-    }
-    
-    private static SurfaceResultStruct surface(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri, boolean first) {
-        MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
-        //Run getList() once as sent to get parentListOuter:
-        queryParams.putSingle(IRelationsManager.PREDICATE_QP, RelationshipType.HAS_BROADER.value());
-        queryParams.putSingle(IRelationsManager.SUBJECT_QP, itemcsid);
-        queryParams.putSingle(IRelationsManager.SUBJECT_TYPE_QP, null);
-        queryParams.putSingle(IRelationsManager.OBJECT_QP, null);
-        queryParams.putSingle(IRelationsManager.OBJECT_TYPE_QP, null);
-        
-        RelationResource relationResource = new RelationResource();
-        RelationsCommonList parentListOuter = relationResource.getList(ctx);    // Knows all query params because they are in the context.
-        List<RelationsCommonList.RelationListItem> parentList = parentListOuter.getRelationListItem();
-
-        StringBuffer sbOuter = new StringBuffer();
-        SurfaceResultStruct resultStruct = new SurfaceResultStruct();
-        resultStruct.resultBuffer = sbOuter;
-
-
-        sbOuter.append("<uri>" + uri + "</uri>\r\n");
-        sbOuter.append("<csid>" + itemcsid + "</csid>\r\n");
-
-        StringBuffer sb = new StringBuffer();
-
-        String name = "";
-        String otherNames="";
-        String number = "";
-        String otherNumbers = "";
-
-        sb.append("<parents>\r\n");
-        if (parentList.size()==0){
-            resultStruct.noParents = true;
-        }
-        
-        for (RelationsCommonList.RelationListItem item : parentList) {
-            resultStruct.noParents = false;
-            RelationsDocListItem parent = item.getObject();
-            RelationsDocListItem child = item.getSubject();
-            String parentCSID =parent.getCsid();
-            String parentURI = parent.getUri();
-
-            String aName = child.getName();
-            String aNumber = child.getNumber();
-            if (name.length()>0 && (!name.equals(aName))){
-                otherNames = otherNames+";"+aName;
-            } else {
-                name = aName;
+
+    /*
+     * The relations around the root item, and the names and numbers of the items they relate.
+     */
+    private static class Tree {
+        String rootCsid;
+        String rootUri;
+        boolean down;
+        int maxDepth;
+        int maxNodes;
+        boolean truncated = false;
+        int nodesWritten = 0;
+        // Going down, the edges from each parent to its children; going up, from each child to its parents
+        Map<String, List<Edge>> edgesByCsid = new HashMap<String, List<Edge>>();
+        Map<String, String> names = new HashMap<String, String>();
+        Map<String, String> numbers = new HashMap<String, String>();
+
+        void addEdge(Edge edge) {
+            String key = down ? edge.parentCsid : edge.childCsid;
+            List<Edge> edges = edgesByCsid.get(key);
+            if (edges == null) {
+                edges = new ArrayList<Edge>();
+                edgesByCsid.put(key, edges);
             }
-            if (number.length()>0 && (!number.equals(aNumber))){
-                otherNumbers = otherNumbers+";"+aNumber;
+            edges.add(edge);
+        }
+
+        List<Edge> getEdges(String csid) {
+            List<Edge> result = edgesByCsid.get(csid);
+            return result != null ? result : Collections.<Edge>emptyList();
+        }
+
+        String getName(String csid) {
+            return Tools.notBlank(names.get(csid)) ? names.get(csid) : "";
+        }
+
+        String getNumber(String csid) {
+            return Tools.notBlank(numbers.get(csid)) ? numbers.get(csid) : "";
+        }
+
+        /*
+         * Whether the edges from a node may be followed, counting the nodes they lead to.
+         */
+        boolean canExpand(List<Edge> edges, int depth) {
+            if (edges.isEmpty() == true) {
+                return true;
+            }
+            if (depth >= maxDepth || nodesWritten >= maxNodes) {
+                truncated = true;
+                return false;
+            }
+            return true;
+        }
+
+        void writeChildren(XMLStreamWriter writer) throws XMLStreamException {
+            List<Edge> childList = getEdges(rootCsid);
+            if (childList.isEmpty() == false) {
+                writeElement(writer, "uri", childList.get(0).parentUri);
+                writeElement(writer, "uri-called", rootUri);
+                writeElement(writer, "name", getName(rootCsid));
+                writeElement(writer, "number", getNumber(rootCsid));
             } else {
-                number = aName;
+                writeElement(writer, "uri", rootUri);
+            }
+            Set<String> path = new HashSet<String>();
+            path.add(rootCsid);
+            writeChildren(writer, rootCsid, path, 0);
+        }
+
+        private void writeChildren(XMLStreamWriter writer, String csid, Set<String> path, int depth) throws XMLStreamException {
+            writeElement(writer, "csid", csid);
+            writer.writeStartElement("children");
+            List<Edge> childList = getEdges(csid);
+            if (canExpand(childList, depth) == true) {
+                for (Edge edge : childList) {
+                    if (nodesWritten >= maxNodes) {
+                        truncated = true;
+                        break;
+                    }
+                    if (path.add(edge.childCsid) == false) {
+                        continue; // A cycle in the relations
+                    }
+                    nodesWritten++;
+                    writer.writeStartElement("child");
+                    writeElement(writer, "parent-uri", edge.parentUri);
+                    writeElement(writer, "name", getName(edge.childCsid));
+                    writeElement(writer, "number", getNumber(edge.childCsid));
+                    writeElement(writer, "uri", edge.childUri);
+                    writeChildren(writer, edge.childCsid, path, depth + 1);
+                    writer.writeEndElement();
+                    path.remove(edge.childCsid);
+                }
+            }
+            writer.writeEndElement();
+        }
+
+        void writeParents(XMLStreamWriter writer) throws XMLStreamException {
+            Set<String> path = new HashSet<String>();
+            path.add(rootCsid);
+            writeParents(writer, rootCsid, rootUri, path, 0);
+        }
+
+        private void writeParents(XMLStreamWriter writer, String csid, String uri, Set<String> path, int depth) throws XMLStreamException {
+            writeElement(writer, "uri", uri);
+            writeElement(writer, "csid", csid);
+            List<Edge> parentList = getEdges(csid);
+            if (parentList.isEmpty() == false) {
+                // Without parents, an item's name and number are written by its child -see below
+                writeElement(writer, "name", getName(csid));
+                writeElement(writer, "number", getNumber(csid));
             }
+            writer.writeStartElement("parents");
+            if (canExpand(parentList, depth) == true) {
+                for (Edge edge : parentList) {
+                    if (nodesWritten >= maxNodes) {
+                        truncated = true;
+                        break;
+                    }
+                    if (path.add(edge.parentCsid) == false) {
+                        continue; // A cycle in the relations
+                    }
+                    nodesWritten++;
+                    writer.writeStartElement("parent");
+                    if (getEdges(edge.parentCsid).isEmpty() == true) {
+                        writeElement(writer, "name", getName(edge.parentCsid));
+                        writeElement(writer, "number", getNumber(edge.parentCsid));
+                    }
+                    writeParents(writer, edge.parentCsid, edge.parentUri, path, depth + 1);
+                    writer.writeEndElement();
+                    path.remove(edge.parentCsid);
+                }
+            }
+            writer.writeEndElement();
+        }
 
-            sb.append("<parent>\r\n");
-            //sb.append("<parent-uri>" +parentURI + "</parent-uri>\r\n");
+        void writeTruncated(XMLStreamWriter writer) throws XMLStreamException {
+            if (truncated == true) {
+                writeElement(writer, "truncated", Boolean.TRUE.toString());
+            }
+        }
+    }
 
-            SurfaceResultStruct struct = surface(ctx, parentCSID, parentURI, false);
-            StringBuffer surfaceResult = struct.resultBuffer;
+    private static void writeElement(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        writer.writeStartElement(name);
+        writer.writeCharacters(value != null ? value : "");
+        writer.writeEndElement();
+    }
 
-            if (struct.noParents){
-                //when there are no more parents, there is no way to look up the name and number, so use this trick:
-                sb.append("<name>" + parent.getName() + "</name><number>" + parent.getNumber() + "</number>\r\n");
+    /*
+     * Reads the relations in the hierarchy, then the names and numbers of the items in it.
+     */
+    private static Tree loadTree(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid, String uri,
+            boolean down) throws Exception {
+        MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
+        Tree tree = new Tree();
+        tree.rootCsid = itemcsid;
+        tree.rootUri = uri;
+        tree.down = down;
+        tree.maxDepth = getMaxDepth(queryParams);
+        tree.maxNodes = getMaxNodes(queryParams);
+
+        String includeDeleted = queryParams.getFirst(WorkflowClient.WORKFLOW_QUERY_NONDELETED);
+        boolean excludesDeleted = includeDeleted != null && includeDeleted.equalsIgnoreCase(Boolean.FALSE.toString());
+
+        // One more than we can use, so that we can tell whether there were more
+        List<Edge> edges = loadEdges(ctx, itemcsid, down, tree.maxDepth, tree.maxNodes + 1, excludesDeleted);
+        if (edges.size() > tree.maxNodes) {
+            tree.truncated = true;
+            edges = edges.subList(0, tree.maxNodes);
+        }
+
+        // The item types are as recorded in the relations; DocumentModelCache copes if they're wrong.
+        Map<String, String> docTypesByCsid = new HashMap<String, String>();
+        for (Edge edge : edges) {
+            tree.addEdge(edge);
+            docTypesByCsid.put(edge.childCsid, edge.childDocType);
+            docTypesByCsid.put(edge.parentCsid, edge.parentDocType);
+        }
+        if (docTypesByCsid.isEmpty() == false) {
+            loadNamesAndNumbers(ctx, docTypesByCsid, tree);
+        }
+
+        return tree;
+    }
+
+    private static void loadNamesAndNumbers(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            Map<String, String> docTypesByCsid, Tree tree) throws Exception {
+        TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+        RepositoryJavaClientImpl repoClient = (RepositoryJavaClientImpl) RepositoryClientFactory.getInstance().getClient(ctx.getRepositoryClientName());
+        CoreSessionInterface repoSession = repoClient.getRepositorySession(ctx);
+        try {
+            DocumentModelCache docModelCache = DocumentModelCache.get(ctx);
+            docModelCache.prefetch(ctx, repoSession, docTypesByCsid);
+            for (String csid : docTypesByCsid.keySet()) {
+                DocumentModel docModel = docModelCache.getDocFromCsid(ctx, repoSession, csid);
+                if (docModel == null) {
+                    continue;
+                }
+                String docType = ServiceBindingUtils.getUnqualifiedTenantDocType(docModel.getDocumentType().getName());
+                ServiceBindingType sb = tReader.getServiceBindingForDocType(ctx.getTenantId(), docType);
+                if (sb == null) {
+                    continue;
+                }
+                try {
+                    tree.names.put(csid, ServiceBindingUtils.getMappedFieldInDoc(sb, ServiceBindingUtils.OBJ_NAME_PROP, docModel));
+                    tree.numbers.put(csid, ServiceBindingUtils.getMappedFieldInDoc(sb, ServiceBindingUtils.OBJ_NUMBER_PROP, docModel));
+                } catch (Throwable t) {
+                    logger.error("Could not get the name or number of hierarchy item " + csid + ": " + t.getMessage());
+                }
             }
+        } finally {
+            repoClient.releaseRepositorySession(ctx, repoSession);
+        }
+    }
 
-            sb.append(surfaceResult);
-            sb.append("</parent>\r\n");
+    static int getMaxDepth(MultivaluedMap<String, String> queryParams) {
+        return Math.min(getIntQueryParam(queryParams, depthQP, DEFAULT_MAX_DEPTH), MAX_DEPTH_LIMIT);
+    }
+
+    static int getMaxNodes(MultivaluedMap<String, String> queryParams) {
+        return Math.min(getIntQueryParam(queryParams, maxNodesQP, DEFAULT_MAX_NODES), MAX_NODES_LIMIT);
+    }
+
+    private static List<Edge> loadEdges(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemcsid,
+            boolean down, int maxDepth, int maxEdges, boolean excludesDeleted) throws Exception {
+        String repositoryName = ctx.getRepositoryName();
+        String cspaceInstanceId = ServiceMain.getInstance().getCspaceInstanceId();
+        Connection conn = JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId);
+        try {
+            boolean recursive = JDBCTools.getDatabaseProductType(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId)
+                    == DatabaseProductType.POSTGRESQL;
+            return loadEdges(conn, recursive, ctx.getTenantId(), itemcsid, down, maxDepth, maxEdges, excludesDeleted);
+        } finally {
+            conn.close();
+        }
+    }
+
+    /*
+     * Reads up to maxEdges distinct hasBroader relations, at most maxDepth levels below (or above)
+     * the item, nearest levels first, with a recursive query if 'recursive' is set.
+     */
+    static List<Edge> loadEdges(Connection conn, boolean recursive, String tenantId, String itemcsid,
+            boolean down, int maxDepth, int maxEdges, boolean excludesDeleted) throws Exception {
+        // Going down, we start from relations whose object is the item and follow their subjects.
+        String startColumn = down ? "objectcsid" : "subjectcsid";
+        String nextColumn = down ? "subjectcsid" : "objectcsid";
+
+        String joinClauses = " INNER JOIN collectionspace_core core ON core.id = r.id";
+        String whereClause = " WHERE r.relationshiptype = ? AND core.tenantid = ?";
+        if (excludesDeleted == true) {
+            joinClauses = joinClauses + " INNER JOIN misc ON misc.id = r.id";
+            whereClause = whereClause + " AND misc.lifecyclestate <> '" + WorkflowClient.WORKFLOWSTATE_DELETED + "'";
         }
-        sb.append("</parents>\r\n");
 
+        Map<String, Edge> edges = new LinkedHashMap<String, Edge>();
+        if (recursive == true) {
+            // UNION drops the rows already found at the same depth, so cycles and shared
+            // ancestors can't make the result grow beyond (relations x depth).  A relation
+            // reached at several depths is only counted once, at the nearest, before the
+            // limit, so the limit is a count of distinct relations.
+            String sql = "WITH RECURSIVE edges(" + EDGE_COLUMNS + ", depth) AS ("
+                    + " SELECT " + prefixColumns("r.") + ", 1"
+                    + "  FROM " + RELATIONS_TABLE + " r" + joinClauses
+                    + whereClause + " AND r." + startColumn + " = ?"
+                    + " UNION"
+                    + " SELECT " + prefixColumns("r.") + ", e.depth + 1"
+                    + "  FROM " + RELATIONS_TABLE + " r"
+                    + "  INNER JOIN edges e ON r." + startColumn + " = e." + nextColumn
+                    + joinClauses
+                    + whereClause + " AND e.depth < ?"
+                    + ")"
+                    + " SELECT " + EDGE_COLUMNS + " FROM edges"
+                    + " GROUP BY " + EDGE_COLUMNS
+                    + " ORDER BY MIN(depth) LIMIT ?";
+            PreparedStatement ps = conn.prepareStatement(sql);
+            try {
+                int i = 1;
+                ps.setString(i++, RelationshipType.HAS_BROADER.value());
+                ps.setString(i++, tenantId);
+                ps.setString(i++, itemcsid);
+                ps.setString(i++, RelationshipType.HAS_BROADER.value());
+                ps.setString(i++, tenantId);
+                ps.setInt(i++, maxDepth);
+                ps.setInt(i++, maxEdges);
+                readEdges(ps, edges, maxEdges);
+            } finally {
+                ps.close();
+            }
+        } else {
+            Set<String> visited = new HashSet<String>();
+            Set<String> level = new LinkedHashSet<String>();
+            level.add(itemcsid);
+            for (int depth = 0; depth < maxDepth && level.isEmpty() == false && edges.size() < maxEdges; depth++) {
+                visited.addAll(level);
+                List<String> csids = new ArrayList<String>(level);
+                int nBefore = edges.size();
+                for (int start = 0; start < csids.size() && edges.size() < maxEdges; start += MAX_CSIDS_PER_QUERY) {
+                    List<String> chunk = csids.subList(start, Math.min(start + MAX_CSIDS_PER_QUERY, csids.size()));
+                    StringBuilder placeholders = new StringBuilder();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        placeholders.append(i == 0 ? "?" : ", ?");
+                    }
+                    String sql = "SELECT " + prefixColumns("r.")
+                            + " FROM " + RELATIONS_TABLE + " r" + joinClauses
+                            + whereClause + " AND r." + startColumn + " IN (" + placeholders + ")";
+                    PreparedStatement ps = conn.prepareStatement(sql);
+                    try {
+                        int i = 1;
+                        ps.setString(i++, RelationshipType.HAS_BROADER.value());
+                        ps.setString(i++, tenantId);
+                        for (String csid : chunk) {
+                            ps.setString(i++, csid);
+                        }
+                        readEdges(ps, edges, maxEdges);
+                    } finally {
+                        ps.close();
+                    }
+                }
+                // The edges map keeps the order they were found in, so the new ones come last.
+                List<Edge> found = new ArrayList<Edge>(edges.values());
+                level = new LinkedHashSet<String>();
+                for (Edge edge : found.subList(nBefore, found.size())) {
+                    String next = down ? edge.childCsid : edge.parentCsid;
+                    if (visited.contains(next) == false) {
+                        level.add(next);
+                    }
+                }
+            }
+        }
 
-        if (Tools.notBlank(name))sbOuter.append("  <name>" +name + "</name>\r\n");
-        if (Tools.notBlank(otherNames))    sbOuter.append("  <name-mismatches-by-parents>" +otherNames + "</name-mismatches-by-parents>\r\n");
+        return new ArrayList<Edge>(edges.values());
+    }
 
-        if (Tools.notBlank(number)) sbOuter.append("<number>" +number + "</number>\r\n");
-        if (Tools.notBlank(otherNumbers)) sbOuter.append("  <number-mismatches-by-parents>" +otherNumbers + "</number-mismatches-by-parents>\r\n");
+    private static void readEdges(PreparedStatement ps, Map<String, Edge> edges, int maxEdges) throws Exception {
+        ResultSet rs = ps.executeQuery();
+        try {
+            while (edges.size() < maxEdges && rs.next() == true) {
+                Edge edge = new Edge();
+                edge.childCsid = rs.getString(1);
+                edge.childUri = rs.getString(2);
+                edge.childDocType = rs.getString(3);
+                edge.parentCsid = rs.getString(4);
+                edge.parentUri = rs.getString(5);
+                edge.parentDocType = rs.getString(6);
+                if (edges.containsKey(edge.getKey()) == false) {
+                    edges.put(edge.getKey(), edge);
+                }
+            }
+        } finally {
+            rs.close();
+        }
+    }
 
-        sbOuter.append(sb);
+    private static String prefixColumns(String prefix) {
+        StringBuilder result = new StringBuilder();
+        for (String column : EDGE_COLUMNS.split(", ")) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(prefix).append(column);
+        }
+        return result.toString();
+    }
 
-        return resultStruct;
+    private static int getIntQueryParam(MultivaluedMap<String, String> queryParams, String name, int defaultValue) {
+        String value = queryParams.getFirst(name);
+        if (Tools.notBlank(value)) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // Fall through to the default
+            }
+            logger.warn("Ignoring invalid value '" + value + "' for the " + name + " query parameter.");
+        }
+        return defaultValue;
     }
 }
@@ -0,0 +1,142 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.document;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Source;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.config.service.ObjectPartType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Holds the compiled XML Schema for each payload part, so that validating a part doesn't
+ * mean reading and compiling its .xsd file again.  Each schema is compiled the first time a
+ * part with its label is validated, and a missing .xsd file is only reported then, once.  A
+ * compiled Schema can be shared by all threads, but the Validators made from it can't, so
+ * each thread keeps its own for each part.
+ */
+public class XmlSchemaCache {
+    private static final Logger logger = LoggerFactory.getLogger(XmlSchemaCache.class);
+
+    private static final String SCHEMAS_DIR = "schemas";
+    private static final String XML_SCHEMA_EXTENSION = ".xsd";
+
+    // Part labels map to NO_SCHEMA if the part has no (usable) .xsd file.
+    private static final Object NO_SCHEMA = new Object();
+    private static final ConcurrentMap<String, Object> schemas = new ConcurrentHashMap<String, Object>();
+
+    private static final ThreadLocal<Map<String, Validator>> validators = new ThreadLocal<Map<String, Validator>>() {
+        @Override
+        protected Map<String, Validator> initialValue() {
+            return new HashMap<String, Validator>();
+        }
+    };
+
+    /**
+     * Returns the compiled schema for a part, or null if it doesn't have one.
+     */
+    public static Schema getSchema(ObjectPartType partMeta) {
+        String label = partMeta.getLabel();
+        Object result = schemas.get(label);
+        if (result == null) {
+            result = compileSchema(label);
+            Object existing = schemas.putIfAbsent(label, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result != NO_SCHEMA ? (Schema) result : null;
+    }
+
+    /**
+     * Validates a part's payload against its schema, if it has one.  A StreamSource is validated
+     * as it is read (with SAX) without building a DOM; a DOMSource validates a DOM already built.
+     *
+     * @return false if the part has no schema to validate against
+     * @throws InvalidDocumentException if the payload isn't valid
+     */
+    public static boolean validate(ObjectPartType partMeta, Source source) throws Exception {
+        Validator validator = getValidator(partMeta);
+        if (validator == null) {
+            return false;
+        }
+        try {
+            validator.validate(source);
+        } catch (SAXException e) {
+            throw new InvalidDocumentException("The " + partMeta.getLabel() + " part is not valid: " + e.getMessage(), e);
+        } finally {
+            validator.reset();
+        }
+        return true;
+    }
+
+    private static Validator getValidator(ObjectPartType partMeta) {
+        Map<String, Validator> threadValidators = validators.get();
+        Validator result = threadValidators.get(partMeta.getLabel());
+        if (result == null) {
+            Schema schema = getSchema(partMeta);
+            if (schema != null) {
+                result = schema.newValidator();
+                threadValidators.put(partMeta.getLabel(), result);
+            }
+        }
+        return result;
+    }
+
+    private static Object compileSchema(String label) {
+        File schemasDir = new File(ServiceMain.getInstance().getServerRootDir(), SCHEMAS_DIR);
+        File schemaFile = new File(schemasDir, label + XML_SCHEMA_EXTENSION);
+        String schemaName = schemaFile.getPath();
+        if (schemaFile.isFile() == false) {
+            if (schemasDir.isDirectory() == false) {
+                // Schemas aren't deployed at all, so there's nothing to validate against
+                logger.debug("No schemas directory, so no schema for payload part: " + schemaName);
+            } else if (logger.isWarnEnabled() == true) {
+                logger.warn("Missing schema file for payload part: " + schemaName);
+            }
+            return NO_SCHEMA;
+        }
+
+        try {
+            // SchemaFactory isn't thread-safe, and we only compile each schema once, so we needn't share one.
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            return schemaFactory.newSchema(schemaFile);
+        } catch (SAXException e) {
+            logger.error("Could not compile the schema file for payload part: " + schemaName, e);
+            return NO_SCHEMA;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright © 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.collectionspace.services.common.imaging.nuxeo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.ecm.platform.picture.PictureViewsGenerationWork;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the image derivatives (Nuxeo picture views) that are being generated.  Nuxeo generates the
+ * derivatives of a new image on its "pictureViewsGeneration" work queue after the upload commits, so an upload
+ * doesn't wait for them.  Until they're ready, the Picture document has placeholder views.
+ *
+ * An image is pending from when its Picture document is created until the UpdateImageDerivatives listener hears
+ * that its views are done; if the transaction that created it rolls back, it's forgotten.  It's tracked before the
+ * commit, rather than after, so that views generated as soon as the transaction commits can't be reported ready
+ * before the image is tracked, and then be pending for good.  Every SWEEP_INTERVAL_MILLIS a sweeper thread schedules the generation again for the images whose views
+ * aren't done RETRY_INTERVAL_MILLIS after they were last scheduled, up to MAX_ATTEMPTS times, after which their
+ * derivatives are marked failed.  Getting the status of an image never schedules anything.  Images we don't know
+ * about -e.g., those uploaded before a restart, or forgotten to make room for newer ones- are assumed to be ready.
+ */
+public class ImageDerivativeTracker {
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeTracker.class);
+
+    public enum Status { PENDING, READY, FAILED }
+
+    // The Nuxeo property that holds the image the views are made from
+    private static final String PICTURE_CONTENT_XPATH = "file:content";
+    static final long RETRY_INTERVAL_MILLIS = 5 * 60 * 1000;
+    private static final long SWEEP_INTERVAL_MILLIS = 60 * 1000;
+    static final int MAX_ATTEMPTS = 3;
+    // Failed entries are kept so they can be reported; past this many, the oldest entries are forgotten.
+    static final int MAX_ENTRIES = 10000;
+
+    // By repository ID, oldest first.  All access must be synchronized on the map.
+    private static final Map<String, Generation> generations = new LinkedHashMap<String, Generation>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Generation> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static ScheduledExecutorService sweeper = null;
+
+    static class Generation {
+        final String repositoryName;
+        Status status = Status.PENDING;
+        int attempts = 1;
+        long scheduledAt;
+
+        Generation(String repositoryName, long scheduledAt) {
+            this.repositoryName = repositoryName;
+            this.scheduledAt = scheduledAt;
+        }
+    }
+
+    /**
+     * Notes that the derivatives of a new Picture document will be generated once the current transaction
+     * commits, or right away if there's no transaction.
+     */
+    public static void setPending(final String repositoryName, final String repositoryId) {
+        final Generation generation = addPending(repositoryName, repositoryId, System.currentTimeMillis());
+        startSweeper();
+        try {
+            Transaction transaction = TransactionHelper.lookupTransactionManager().getTransaction();
+            if (transaction != null && transaction.getStatus() == javax.transaction.Status.STATUS_ACTIVE) {
+                transaction.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == javax.transaction.Status.STATUS_COMMITTED) {
+                            committed(repositoryId, generation, System.currentTimeMillis());
+                        } else {
+                            rolledBack(repositoryId, generation);
+                        }
+                    }
+                });
+            }
+        } catch (Exception e) {
+            logger.debug("Could not wait for the current transaction to commit before tracking image derivatives: " + e.getMessage());
+        }
+    }
+
+    static Generation addPending(String repositoryName, String repositoryId, long now) {
+        Generation result = new Generation(repositoryName, now);
+        synchronized (generations) {
+            // Re-inserted, so it's the newest
+            generations.remove(repositoryId);
+            generations.put(repositoryId, result);
+        }
+        return result;
+    }
+
+    /*
+     * The generation only starts once the Picture document is committed, so the first retry is timed from then.
+     * If the views are already done, or the image has been pending again since, there's nothing to do.
+     */
+    static void committed(String repositoryId, Generation generation, long now) {
+        synchronized (generations) {
+            if (generations.get(repositoryId) == generation) {
+                generation.scheduledAt = now;
+            }
+        }
+    }
+
+    static void rolledBack(String repositoryId, Generation generation) {
+        synchronized (generations) {
+            if (generations.get(repositoryId) == generation) {
+                generations.remove(repositoryId);
+            }
+        }
+    }
+
+    /**
+     * Notes that the derivatives of a Picture document are ready.
+     */
+    public static void setReady(String repositoryId) {
+        synchronized (generations) {
+            generations.remove(repositoryId);
+        }
+    }
+
+    /**
+     * Returns the status of a Picture document's derivatives.
+     */
+    public static Status getStatus(String repositoryId) {
+        synchronized (generations) {
+            Generation generation = generations.get(repositoryId);
+            return generation != null ? generation.status : Status.READY;
+        }
+    }
+
+    /**
+     * Stops the sweeper thread.
+     */
+    public static synchronized void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    private static synchronized void startSweeper() {
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "image-derivative-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sweeper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Map<String, String> retries = sweep(System.currentTimeMillis());
+                        for (Map.Entry<String, String> retry : retries.entrySet()) {
+                            retry(retry.getValue(), retry.getKey());
+                        }
+                    } catch (Throwable t) {
+                        // Don't let one bad sweep cancel the ones after it
+                        logger.error("Could not sweep the pending image derivatives.", t);
+                    }
+                }
+            }, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Marks the pending generations that have been waiting too long as rescheduled, or as failed if they've been
+     * tried MAX_ATTEMPTS times, and returns the repository names of the rescheduled ones by repository ID.
+     */
+    static Map<String, String> sweep(long now) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        List<String> failed = new ArrayList<String>();
+        synchronized (generations) {
+            for (Map.Entry<String, Generation> entry : generations.entrySet()) {
+                Generation generation = entry.getValue();
+                if (generation.status == Status.PENDING && now - generation.scheduledAt > RETRY_INTERVAL_MILLIS) {
+                    if (generation.attempts < MAX_ATTEMPTS) {
+                        generation.attempts++;
+                        generation.scheduledAt = now;
+                        result.put(entry.getKey(), generation.repositoryName);
+                    } else {
+                        generation.status = Status.FAILED;
+                        failed.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        for (String repositoryId : failed) {
+            logger.error(String.format("Gave up generating the derivatives of image document '%s' after %d attempts.",
+                    repositoryId, MAX_ATTEMPTS));
+        }
+        return result;
+    }
+
+    /*
+     * Forgets every image, for tests.
+     */
+    static void clear() {
+        synchronized (generations) {
+            generations.clear();
+        }
+    }
+
+    private static void retry(String repositoryName, String repositoryId) {
+        try {
+            WorkManager workManager = Framework.getLocalService(WorkManager.class);
+            workManager.schedule(new PictureViewsGenerationWork(repositoryName, repositoryId, PICTURE_CONTENT_XPATH),
+                    WorkManager.Scheduling.IF_NOT_SCHEDULED, true);
+            logger.warn(String.format("The derivatives of image document '%s' weren't ready; scheduled their generation again.",
+                    repositoryId));
+        } catch (Exception e) {
+            logger.error(String.format("Could not schedule the generation of derivatives for image document '%s'.", repositoryId), e);
+        }
+    }
+}
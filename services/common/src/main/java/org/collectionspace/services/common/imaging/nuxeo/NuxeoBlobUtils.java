@@ -33,6 +33,8 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -102,6 +104,10 @@ public class NuxeoBlobUtils {
 	// be returned as FileInputStreams rather than ByteArrayInputStreams
 	//
 	private static final int MAX_IMAGE_BUFFER = 256 * 1024; // REM: 11/26/2013 - This should be set in a config/property file.
+
+	// The Dublin Core properties of a Nuxeo blob document that tell when it was last changed
+	private static final String DC_MODIFIED_PROPERTY = "dc:modified";
+	private static final String DC_CREATED_PROPERTY = "dc:created";
 	
 
 	
@@ -126,6 +132,9 @@ public class NuxeoBlobUtils {
 	public static final String DOCUMENT_PLACEHOLDER_XLSX = "documentXLS.jpg";
 	public static final String DOCUMENT_PLACEHOLDER_ZIP  = "documentZIP.jpg";
 
+	// The field of a derivative list item that tells whether the derivative has been generated yet
+	public static final String DERIVATIVE_STATUS_FIELD = "derivativeStatus";
+
 	public static final String MIME_CSV  = "text/csv";
 	public static final String MIME_DOC  = "application/msword";
 	public static final String MIME_DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
@@ -279,14 +288,15 @@ public class NuxeoBlobUtils {
 			String repositoryId, List<ListResultField> resultsFields, String uri)
 			throws Exception {
 		CommonList commonList = new CommonList();
-		int nFields = resultsFields.size() + 2;
+		int nFields = resultsFields.size() + 3;
 		String fields[] = new String[nFields];// FIXME: REM - Patrick needs to fix this hack.  It is a "common list" issue
 		fields[0] = "csid";
 		fields[1] = "uri";
-		for (int i = 2; i < nFields; i++) {
+		for (int i = 2; i < nFields - 1; i++) {
 			ListResultField field = resultsFields.get(i - 2);
 			fields[i] = field.getElement();
 		}
+		fields[nFields - 1] = DERIVATIVE_STATUS_FIELD;
 		commonList.setFieldsReturned(fields);
 
 		IdRef documentRef = new IdRef(repositoryId);
@@ -294,11 +304,15 @@ public class NuxeoBlobUtils {
 		DocumentBlobHolder docBlobHolder = (DocumentBlobHolder) documentModel
 				.getAdapter(BlobHolder.class);
 		List<Blob> docBlobs = docBlobHolder.getBlobs();
+		// The original is always there, but until the derivatives are generated, Nuxeo has placeholders for them
+		ImageDerivativeTracker.Status derivativeStatus = ImageDerivativeTracker.getStatus(repositoryId);
 		// List<BlobListItem> blobListItems = result.getBlobListItem();
 		HashMap<String, Object> item = null;
 		for (Blob blob : docBlobs) {
 			if (blob != null) {
 				item = createBlobListItem(blob, uri);
+				boolean isOriginal = blob.getFilename() != null && blob.getFilename().startsWith(DERIVATIVE_ORIGINAL_TAG);
+				item.put(DERIVATIVE_STATUS_FIELD, isOriginal ? ImageDerivativeTracker.Status.READY.toString() : derivativeStatus.toString());
 				commonList.addItem(item);
 			}
 		}
@@ -625,6 +639,16 @@ public class NuxeoBlobUtils {
 		return result;
 	}
 	
+	/*
+	 * If Nuxeo made a Picture document, it will generate the image derivatives once the document is committed.  We
+	 * keep track of them so we can serve placeholders until they're ready.
+	 */
+	static private void trackDerivatives(DocumentModel documentModel, boolean useNuxeoAdaptors) {
+		if (useNuxeoAdaptors == true && documentModel.hasFacet(ImagingDocumentConstants.PICTURE_FACET)) {
+			ImageDerivativeTracker.setPending(documentModel.getRepositoryName(), documentModel.getId());
+		}
+	}
+	
 	static public BlobsCommon createBlobInRepository(
 			ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
 			RepositoryClient<PoxPayloadIn, PoxPayloadOut> repositoryClient,
@@ -654,6 +678,7 @@ public class NuxeoBlobUtils {
 		            false, 
 		            blobName,
 		            useNuxeoAdaptors);
+			trackDerivatives(documentModel, useNuxeoAdaptors);
 			result = createBlobsCommon(documentModel, inputStreamBlob); // Now create the metadata about the Nuxeo blob document
 		} catch (Exception e) {
 			result = null;
@@ -783,6 +808,7 @@ public class NuxeoBlobUtils {
 					false,
 					file.getName(),
 					useNuxeoAdaptors);
+			trackDerivatives(documentModel, useNuxeoAdaptors);
 
 			result = createBlobsCommon(documentModel, fileBlob); // Now create our metadata resource document
 
@@ -903,6 +929,27 @@ public class NuxeoBlobUtils {
 		return result;
 	}
 	
+	//
+	// Returns when a Nuxeo blob document was last modified, or null if we can't tell.
+	//
+	static private Date getLastModified(DocumentModel documentModel) {
+		Date result = null;
+		
+		try {
+			Calendar modified = (Calendar) documentModel.getPropertyValue(DC_MODIFIED_PROPERTY);
+			if (modified == null) {
+				modified = (Calendar) documentModel.getPropertyValue(DC_CREATED_PROPERTY);
+			}
+			if (modified != null) {
+				result = modified.getTime();
+			}
+		} catch (Exception e) {
+			logger.debug("Could not get the modification date of blob document " + documentModel.getId(), e);
+		}
+		
+		return result;
+	}
+	
 	//
 	//  If the blob is not too big, we return a ByteArrayInputStream.  Otherwise, we return Nuxeo's InputStream
 	//  which is usually a FileInputStream.
@@ -954,6 +1001,7 @@ public class NuxeoBlobUtils {
 			StringBuffer outMimeType) {
 		BlobOutput result = new BlobOutput();
 		boolean isNonImageDerivative = false;
+		boolean isPendingDerivative = false;
 
 		if (repositoryId != null && repositoryId.isEmpty() == false)
 			try {
@@ -975,6 +1023,10 @@ public class NuxeoBlobUtils {
 						docBlob = pictureBlobHolder.getBlob(derivativeTerm);
 						// Nuxeo derivatives are all JPEG
 						outMimeType.append(MIME_JPEG); // All Nuxeo image derivatives are JPEG images.
+						if (derivativeTerm.equals(DERIVATIVE_ORIGINAL) == false
+								&& ImageDerivativeTracker.getStatus(repositoryId) != ImageDerivativeTracker.Status.READY) {
+							isPendingDerivative = true; // Until the derivative is generated, we return a placeholder image
+						}
 					} else {
 						docBlob = pictureBlobHolder.getBlob();
 					}
@@ -994,9 +1046,23 @@ public class NuxeoBlobUtils {
 				result.setBlobsCommon(blobsCommon);
 				if (getContentFlag == true) {
 					InputStream remoteStream = null;
-					if (isNonImageDerivative == false) {
-						//remoteStream = docBlob.getStream();
-						remoteStream = getInputStream(blobsCommon, docBlob); // CSPACE-6110 - For small files, return a byte array instead of a file stream
+					if (isPendingDerivative == true) {
+						remoteStream = getResource(DOCUMENT_PLACEHOLDER_IMAGE); // No digest, so clients won't cache it
+					} else if (isNonImageDerivative == false) {
+						// The digest and modification date of the content, for the ETag and Last-Modified response headers
+						result.setDigest(docBlob.getDigest());
+						result.setLastModified(getLastModified(documentModel));
+						//
+						// If the bits are in a file, the caller can read them from it directly -e.g., with FileChannel.transferTo().
+						// Otherwise, we open a stream on them.
+						//
+						File blobFile = NuxeoUtils.getReadableFileOfBlob(docBlob);
+						if (blobFile != null) {
+							result.setBlobFile(blobFile);
+						} else {
+							//remoteStream = docBlob.getStream();
+							remoteStream = getInputStream(blobsCommon, docBlob); // CSPACE-6110 - For small files, return a byte array instead of a file stream
+						}
 					} else {
 						String docBlobMimetype = docBlob.getMimeType();
 						switch(docBlobMimetype) {
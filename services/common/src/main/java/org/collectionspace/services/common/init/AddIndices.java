@@ -21,6 +21,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.sql.DataSource;
@@ -74,6 +75,22 @@ import org.slf4j.LoggerFactory;
                 &lt;/s:params>
             &lt;/s:initHandler>
  *
+ * A field whose type is "trigram" gets a PostgreSQL trigram (pg_trgm) index instead, which partial term
+ * searches with a leading wildcard ('%x%') can use -see the tenant's "ptTrigramIndex" property:
+ *
+ *                    &lt;s:field>
+ *                        &lt;s:table>persontermgroup&lt;/s:table>
+ *                        &lt;s:col>termdisplayname&lt;/s:col>
+ *                        &lt;s:type>trigram&lt;/s:type>
+ *                    &lt;/s:field>
+ *
+ * Trigram indexes are built with CREATE INDEX CONCURRENTLY, which doesn't block writes to the table, in
+ * the background, so startup doesn't wait for them.  Creating the pg_trgm extension, if it isn't already,
+ * requires a database user with sufficient privileges; otherwise, a DBA can create the extension and indexes:
+ *
+ *   CREATE EXTENSION IF NOT EXISTS pg_trgm;
+ *   CREATE INDEX CONCURRENTLY persontermgroup_termdisplayname_trgm_idx ON persontermgroup USING gin (termdisplayname gin_trgm_ops);
+ *
  * $LastChangedRevision$
  * $LastChangedDate$
  */
@@ -82,6 +99,8 @@ public class AddIndices extends InitHandler implements IInitHandler {
     final Logger logger = LoggerFactory.getLogger(AddIndices.class);
     private final static String INDEX_SEP = "_";
     private final static String INDEX_SUFFIX = INDEX_SEP + "idx";
+    public final static String TRIGRAM_INDEX_TYPE = "trigram";
+    public final static String TRIGRAM_INDEX_SUFFIX = INDEX_SEP + "trgm" + INDEX_SUFFIX;
 
 
     /** See the class javadoc for this class: it shows the syntax supported in the configuration params.
@@ -101,11 +120,14 @@ public class AddIndices extends InitHandler implements IInitHandler {
                     + " for repository domain " + sbt.getRepositoryDomain().trim() + "...");
         }
 
+        List<Field> trigramFields = new ArrayList<Field>();
         for (Field field : fields) {
             String tableName = field.getTable();
             String fieldName = field.getCol();
             String param = field.getParam();
-            if(Tools.notEmpty(param) && (param.indexOf(',')>-1)){
+            if (TRIGRAM_INDEX_TYPE.equalsIgnoreCase(field.getType())) {
+                trigramFields.add(field);
+            } else if(Tools.notEmpty(param) && (param.indexOf(',')>-1)){
                 String[] fieldNames = param.split(",");
                 for (String fn: fieldNames){
                     rows = addOneIndex(dataSourceName, repositoryName, cspaceInstanceId, tableName, fn);
@@ -114,6 +136,66 @@ public class AddIndices extends InitHandler implements IInitHandler {
                 rows = addOneIndex(dataSourceName, repositoryName, cspaceInstanceId, tableName, fieldName);
             }
         }
+        if (trigramFields.isEmpty() == false) {
+            addTrigramIndexesInBackground(dataSourceName, repositoryName, cspaceInstanceId, trigramFields);
+        }
+    }
+
+    /**
+     * Returns the name of the trigram index that a "trigram" field creates on a column.
+     */
+    public static String getTrigramIndexName(String tableName, String columnName) {
+        return (tableName + INDEX_SEP + columnName + TRIGRAM_INDEX_SUFFIX).toLowerCase();
+    }
+
+    private void addTrigramIndexesInBackground(final String dataSourceName,
+    		final String repositoryName,
+    		final String cspaceInstanceId,
+    		final List<Field> trigramFields) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                addTrigramIndexes(dataSourceName, repositoryName, cspaceInstanceId, trigramFields);
+            }
+        }, "add-trigram-indices-" + repositoryName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void addTrigramIndexes(String dataSourceName,
+    		String repositoryName,
+    		String cspaceInstanceId,
+    		List<Field> trigramFields) {
+        try {
+            DatabaseProductType databaseProductType = JDBCTools.getDatabaseProductType(dataSourceName, repositoryName);
+            if (databaseProductType != DatabaseProductType.POSTGRESQL) {
+                logger.warn("Trigram indexes are only supported on PostgreSQL; not creating them in repository " + repositoryName);
+                return;
+            }
+            JDBCTools.executeUpdate(dataSourceName, repositoryName, cspaceInstanceId,
+                    "CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        } catch (Throwable e) {
+            logger.warn("Could not create the pg_trgm extension in repository " + repositoryName
+                    + "; trigram indexes were not created: " + e.getMessage());
+            return;
+        }
+        for (Field field : trigramFields) {
+            String tableName = field.getTable();
+            String columnName = field.getCol();
+            String indexName = getTrigramIndexName(tableName, columnName);
+            String sql = "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName + " ON "
+                    + tableName + " USING gin (" + columnName + " gin_trgm_ops)";
+            try {
+                long start = System.currentTimeMillis();
+                JDBCTools.executeUpdate(dataSourceName, repositoryName, cspaceInstanceId, sql);
+                logger.info(String.format("Trigram index %s on %s(%s) is ready (%d ms).",
+                        indexName, tableName, columnName, System.currentTimeMillis() - start));
+            } catch (Throwable e) {
+                // An interrupted concurrent build leaves an invalid index behind, which must be dropped by hand
+                logger.warn("Trigram index NOT added to column (" + columnName + ") on table (" + tableName + ") SQL: "
+                        + sql + " ERROR: " + e.getMessage());
+            }
+        }
     }
 
     private int addOneIndex(String dataSourceName,
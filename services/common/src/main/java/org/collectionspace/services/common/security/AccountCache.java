@@ -0,0 +1,108 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.security;
+
+import org.collectionspace.services.authorization.AccountPermission;
+import org.collectionspace.services.common.api.ExpiringCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the account status looked up by SecurityInterceptor.checkActive() and the current user's
+ * AccountPermission list added to single-record GET responses.  Both are read on nearly every request
+ * but only change when an account, role, permission or one of their relationships is written -see
+ * JpaStorageClientImpl, which calls invalidateAll() after each of those writes.  Entries also expire
+ * after a short TTL to pick up changes made directly in the database.
+ */
+public class AccountCache {
+	private static final Logger logger = LoggerFactory.getLogger(AccountCache.class);
+
+	private static final int MAX_ENTRIES = 10000;
+	private static final long TTL_MILLIS = 5 * 60 * 1000;
+	private static final String KEY_SEPARATOR = "|";
+
+	// (tenantId, userId) -> the account's status value.  An empty string means the account has no status.
+	private static final ExpiringCache<String, String> accountStatusCache =
+			new ExpiringCache<String, String>("accountStatus", MAX_ENTRIES, TTL_MILLIS);
+
+	// (tenantId, userId, resource, permission resource) -> the account's permissions
+	private static final ExpiringCache<String, AccountPermission> accountPermissionCache =
+			new ExpiringCache<String, AccountPermission>("accountPermission", MAX_ENTRIES, TTL_MILLIS);
+
+	private static String key(String... parts) {
+		StringBuilder result = new StringBuilder();
+		for (String part : parts) {
+			if (result.length() > 0) {
+				result.append(KEY_SEPARATOR);
+			}
+			result.append(part);
+		}
+		return result.toString();
+	}
+
+	public static String getAccountStatus(String tenantId, String userId) {
+		return accountStatusCache.get(key(tenantId, userId));
+	}
+
+	public static void putAccountStatus(String tenantId, String userId, String status, long generation) {
+		accountStatusCache.put(key(tenantId, userId), status != null ? status : "", generation);
+	}
+
+	public static AccountPermission getAccountPermission(String tenantId, String userId,
+			String currentResource, String permissionResource) {
+		return accountPermissionCache.get(key(tenantId, userId, currentResource, permissionResource));
+	}
+
+	public static void putAccountPermission(String tenantId, String userId,
+			String currentResource, String permissionResource, AccountPermission accountPermission, long generation) {
+		accountPermissionCache.put(key(tenantId, userId, currentResource, permissionResource), accountPermission, generation);
+	}
+
+	/**
+	 * Read this before looking up a value that will be cached -see ExpiringCache.put().  Both caches are
+	 * only ever invalidated together, so they share the same generation number.
+	 */
+	public static long getGeneration() {
+		return accountStatusCache.getGeneration();
+	}
+
+	/**
+	 * Called whenever an account, role, permission or account-role/permission-role relationship changes.
+	 */
+	public static void invalidateAll() {
+		accountStatusCache.invalidateAll();
+		accountPermissionCache.invalidateAll();
+		if (logger.isDebugEnabled() == true) {
+			logger.debug("Account cache invalidated. " + accountStatusCache + "; " + accountPermissionCache);
+		}
+	}
+
+	public static long getHitCount() {
+		return accountStatusCache.getHitCount() + accountPermissionCache.getHitCount();
+	}
+
+	public static long getMissCount() {
+		return accountStatusCache.getMissCount() + accountPermissionCache.getMissCount();
+	}
+}
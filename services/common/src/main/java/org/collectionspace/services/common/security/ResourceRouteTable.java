@@ -0,0 +1,357 @@
+/**
+ * This document is a part of the source code and related artifacts
+ * for CollectionSpace, an open source collections management system
+ * for museums and related institutions:
+ *
+ * http://www.collectionspace.org
+ * http://wiki.collectionspace.org
+ *
+ * Copyright © 2009 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0.
+ * You may not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.collectionspace.services.common.security;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.CollectionSpaceResource;
+import org.jboss.resteasy.core.ResourceMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The routes of the JAX-RS resources, for the SecurityInterceptor: for each resource method,
+ * whether it allows anonymous access and the name of the resource that permissions are
+ * checked against.  The names are worked out from the methods' path templates -e.g.,
+ * "/collectionobjects/{csid}/workflow" names "/collectionobjects/&#42;/workflow"- rather than
+ * by searching each request's path for the values of its path parameters.
+ *
+ * The routes of the registered resources are built by register() at deployment.  Others,
+ * such as those of sub-resources, are built the first time they are requested.
+ */
+public class ResourceRouteTable {
+    private static final Logger logger = LoggerFactory.getLogger(ResourceRouteTable.class);
+
+    private static final String URI_PATH_SEPARATOR = "/";
+    private static final String WILDCARD = "*";
+
+    private static final ConcurrentMap<Class<?>, Boolean> anonymousAccess = new ConcurrentHashMap<Class<?>, Boolean>();
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, Route>> routes =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, Route>>();
+
+    /**
+     * Builds the routes of the resource methods of the given JAX-RS singletons.
+     */
+    public static void register(Collection<Object> singletons) {
+        int nRoutes = 0;
+        for (Object singleton : singletons) {
+            if (singleton instanceof CollectionSpaceResource) {
+                Class<?> resourceClass = singleton.getClass();
+                anonymousAccess.put(resourceClass, ((CollectionSpaceResource) singleton).allowAnonymousAccess(null, null));
+                Map<Method, Route> classRoutes = buildRoutes(resourceClass);
+                getRoutes(resourceClass).putAll(classRoutes);
+                nRoutes += classRoutes.size();
+            }
+        }
+        if (logger.isDebugEnabled() == true) {
+            logger.debug("Built " + nRoutes + " resource routes for " + anonymousAccess.size() + " resources.");
+        }
+    }
+
+    /**
+     * Builds the routes of the resource methods of a resource class, without registering them.
+     */
+    public static Map<Method, Route> buildRoutes(Class<?> resourceClass) {
+        Map<Method, Route> result = new LinkedHashMap<Method, Route>();
+        for (Method method : resourceClass.getMethods()) {
+            if (isResourceMethod(method) == true) {
+                result.put(method, new Route(resourceClass, method));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the resource class of the method allows anonymous access.
+     */
+    public static boolean isAnonymous(ResourceMethod resourceMethod) {
+        Class<?> resourceClass = resourceMethod.getResourceClass();
+        Boolean result = anonymousAccess.get(resourceClass);
+        if (result == null) {
+            // Not one of the registered resources, so we have to make one to ask it, but only the once.
+            result = Boolean.FALSE;
+            try {
+                CollectionSpaceResource resourceInstance = (CollectionSpaceResource) resourceClass.newInstance();
+                result = resourceInstance.allowAnonymousAccess(null, resourceMethod);
+            } catch (Exception e) {
+                logger.error("isAnonymous: ", e);
+            }
+            anonymousAccess.put(resourceClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the route of a resource method.
+     */
+    public static Route getRoute(ResourceMethod resourceMethod) {
+        Class<?> resourceClass = resourceMethod.getResourceClass();
+        Method method = resourceMethod.getMethod();
+        ConcurrentMap<Method, Route> classRoutes = getRoutes(resourceClass);
+        Route result = classRoutes.get(method);
+        if (result == null) {
+            result = new Route(resourceClass, method);
+            classRoutes.put(method, result);
+        }
+        return result;
+    }
+
+    private static ConcurrentMap<Method, Route> getRoutes(Class<?> resourceClass) {
+        ConcurrentMap<Method, Route> result = routes.get(resourceClass);
+        if (result == null) {
+            result = new ConcurrentHashMap<Method, Route>();
+            ConcurrentMap<Method, Route> existing = routes.putIfAbsent(resourceClass, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Path parameters whose values are replaced by wildcards in resource names -the same ones
+     * as SecurityUtils.getResourceName(): CSIDs, predicates, short ID specifiers, and ids.
+     */
+    private static boolean isWildcardParam(String paramName) {
+        String name = paramName.toLowerCase();
+        return name.indexOf("csid") > -1 || name.indexOf("predicate") > -1
+                || name.indexOf("specifier") > -1 || name.indexOf("ms") > -1
+                || name.equals("id");
+    }
+
+    private static boolean isResourceMethod(Method method) {
+        for (Class<?> clazz = method.getDeclaringClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                for (Annotation annotation : clazz.getDeclaredMethod(method.getName(), method.getParameterTypes()).getAnnotations()) {
+                    if (annotation instanceof Path || annotation.annotationType().isAnnotationPresent(HttpMethod.class)) {
+                        return true;
+                    }
+                }
+            } catch (NoSuchMethodException e) {
+                // Not declared here, so look further up
+            }
+        }
+        return false;
+    }
+
+    private static String findClassPath(Class<?> resourceClass) {
+        for (Class<?> clazz = resourceClass; clazz != null; clazz = clazz.getSuperclass()) {
+            Path path = clazz.getAnnotation(Path.class);
+            if (path != null) {
+                return path.value();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * JAX-RS annotations may be on the method that an overriding method overrides.
+     */
+    private static String findMethodPath(Method method) {
+        for (Class<?> clazz = method.getDeclaringClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Path path = clazz.getDeclaredMethod(method.getName(), method.getParameterTypes()).getAnnotation(Path.class);
+                if (path != null) {
+                    return path.value();
+                }
+            } catch (NoSuchMethodException e) {
+                // Not declared here, so look further up
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The route of one resource method.
+     */
+    public static class Route {
+        // The path template in pieces: literal text, and (in 'paramNames') the names of the path parameters between them.
+        private final List<String> literals = new ArrayList<String>();
+        private final List<String> paramNames = new ArrayList<String>();
+        // The resource name and entity, if they don't depend on the values of any path parameters
+        private String resourceName = null;
+        private String resourceEntity = null;
+        private final boolean workflow;
+        private final boolean knownPath;
+        private final String template;
+
+        Route(Class<?> resourceClass, Method method) {
+            String classPath = findClassPath(resourceClass);
+            String methodPath = findMethodPath(method);
+            knownPath = classPath != null;
+            if (knownPath == true) {
+                String path = URI_PATH_SEPARATOR + classPath;
+                if (methodPath != null) {
+                    path = path + URI_PATH_SEPARATOR + methodPath;
+                }
+                parseTemplate(path);
+                template = path;
+            } else {
+                template = null;
+            }
+
+            boolean dynamic = false;
+            for (String paramName : paramNames) {
+                if (isWildcardParam(paramName) == false) {
+                    dynamic = true;
+                }
+            }
+            if (knownPath == true && dynamic == false) {
+                resourceName = buildResourceName(null);
+                resourceEntity = SecurityUtils.getResourceEntity(resourceName);
+            }
+            boolean isWorkflow = false;
+            for (String literal : literals) {
+                if (literal.contains(WorkflowClient.SERVICE_PATH) == true) {
+                    isWorkflow = true;
+                }
+            }
+            workflow = isWorkflow;
+        }
+
+        /*
+         * Splits a path template into literal text and parameters, dropping any regular
+         * expressions from the parameters -e.g. "{csid: [0-9a-f\\-]+}".
+         */
+        private void parseTemplate(String template) {
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while (i < template.length()) {
+                char c = template.charAt(i);
+                if (c == '{') {
+                    int depth = 1;
+                    int end = i + 1;
+                    while (end < template.length() && depth > 0) {
+                        if (template.charAt(end) == '{') {
+                            depth++;
+                        } else if (template.charAt(end) == '}') {
+                            depth--;
+                        }
+                        end++;
+                    }
+                    String param = template.substring(i + 1, end - 1);
+                    int regexIdx = param.indexOf(':');
+                    if (regexIdx > -1) {
+                        param = param.substring(0, regexIdx);
+                    }
+                    literals.add(literal.toString());
+                    paramNames.add(param.trim());
+                    literal.setLength(0);
+                    i = end;
+                } else {
+                    // Collapse repeated separators, as SecurityUtils.getResourceName() does
+                    if (c != '/' || literal.length() == 0 || literal.charAt(literal.length() - 1) != '/') {
+                        literal.append(c);
+                    }
+                    i++;
+                }
+            }
+            literals.add(literal.toString());
+        }
+
+        private String buildResourceName(MultivaluedMap<String, String> pathParams) {
+            StringBuilder result = new StringBuilder(literals.get(0));
+            for (int i = 0; i < paramNames.size(); i++) {
+                String paramName = paramNames.get(i);
+                if (isWildcardParam(paramName) == true) {
+                    result.append(WILDCARD);
+                } else {
+                    String value = pathParams.getFirst(paramName);
+                    result.append(value != null ? value : "");
+                }
+                result.append(literals.get(i + 1));
+            }
+            String name = result.toString().replace("//", "/");
+            // Requests may or may not end with a '/', but names never do.
+            if (name.length() > 1 && name.endsWith(URI_PATH_SEPARATOR)) {
+                name = name.substring(0, name.length() - 1);
+            }
+            return name;
+        }
+
+        /**
+         * Returns the path template of the route -its class's and method's @Path values- or null
+         * if its class has no @Path.
+         */
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * Returns the name of the resource requested, with wildcards for its CSIDs etc.
+         */
+        public String getResourceName(UriInfo uriInfo) {
+            if (resourceName != null) {
+                return resourceName;
+            }
+            if (knownPath == false) {
+                return SecurityUtils.getResourceName(uriInfo);
+            }
+            return buildResourceName(uriInfo.getPathParameters());
+        }
+
+        /**
+         * Returns the resource entity (the part of the name before its first wildcard)
+         * of the resource name returned by getResourceName().
+         */
+        public String getResourceEntity(String resName) {
+            return resourceEntity != null ? resourceEntity : SecurityUtils.getResourceEntity(resName);
+        }
+
+        /**
+         * Returns true if the request is for (a transition of) a workflow sub-resource.
+         */
+        public boolean isWorkflow(UriInfo uriInfo) {
+            if (knownPath == false) {
+                return uriInfo.getPath().contains(WorkflowClient.SERVICE_PATH);
+            }
+            return workflow;
+        }
+
+        /**
+         * Returns the name of the workflow resource to check permissions on -see
+         * SecurityUtils.getWorkflowResourceName().
+         */
+        public String getWorkflowResourceName(UriInfo uriInfo, String resEntity) {
+            String workflowTransition = uriInfo.getPathParameters().getFirst(WorkflowClient.TRANSITION_PARAM_JAXRS);
+            if (workflowTransition != null) {
+                return resEntity + "/*/" + WorkflowClient.SERVICE_NAME + "/" + workflowTransition;
+            }
+            return resEntity;
+        }
+    }
+}
@@ -52,9 +52,7 @@ import org.collectionspace.authentication.AuthN;
 import org.collectionspace.services.authorization.AuthZ;
 import org.collectionspace.services.authorization.CSpaceResource;
 import org.collectionspace.services.authorization.URIResourceImpl;
-import org.collectionspace.services.client.workflow.WorkflowClient;
 import org.collectionspace.services.common.CSWebApplicationException;
-import org.collectionspace.services.common.CollectionSpaceResource;
 import org.collectionspace.services.common.document.JaxbUtils;
 import org.collectionspace.services.common.storage.jpa.JpaStorageUtils;
 import org.collectionspace.services.common.security.SecurityUtils;
@@ -89,20 +87,12 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
     private static final String ERROR_NUXEO_LOGOUT = "Attempt to logout when Nuxeo login context was null";
     private static final String ERROR_UNBALANCED_LOGINS = "The number of Logins vs Logouts to the Nuxeo framework was unbalanced.";    
 	    
+    /*
+     * Whether the resource allows anonymous access is looked up in the route table, rather than asked
+     * of a new instance of the resource class each time -the resource constructors do too much work.
+     */
     private boolean isAnonymousRequest(HttpRequest request, ResourceMethod resourceMethod) {
-    	boolean result = false;
-    	
-		Class<?> resourceClass = resourceMethod.getResourceClass();
-		try {
-			CollectionSpaceResource resourceInstance = (CollectionSpaceResource)resourceClass.newInstance();
-			result = resourceInstance.allowAnonymousAccess(request, resourceMethod);
-		} catch (InstantiationException e) {
-			logger.error("isAnonymousRequest: ", e);
-		} catch (IllegalAccessException e) {
-			logger.error("isAnonymousRequest: ", e);
-		}
-
-    	return result;
+    	return ResourceRouteTable.isAnonymous(resourceMethod);
     }
     
 	/* (non-Javadoc)
@@ -135,8 +125,9 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
 				logger.debug("received " + httpMethod + " on " + relativeRequest);
 			}
 			
-			String resName = SecurityUtils.getResourceName(request.getUri());
-			String resEntity = SecurityUtils.getResourceEntity(resName);
+			ResourceRouteTable.Route route = ResourceRouteTable.getRoute(resourceMethod);
+			String resName = route.getResourceName(request.getUri());
+			String resEntity = route.getResourceEntity(resName);
 			
 			//
 			// If the resource entity is acting as a proxy then all sub-resource will map to the resource itself.
@@ -168,8 +159,8 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
 					// They passed the first round of security checks, so now let's check to see if they're trying
 					// to perform a workflow state change and make sure they are allowed to to this.
 					//
-					if (uriPath.contains(WorkflowClient.SERVICE_PATH) == true) {
-						String workflowProxyResource = SecurityUtils.getWorkflowResourceName(request);
+					if (route.isWorkflow(request.getUri()) == true) {
+						String workflowProxyResource = route.getWorkflowResourceName(request.getUri(), resEntity);
 						res = new URIResourceImpl(AuthN.get().getCurrentTenantId(), workflowProxyResource, httpMethod);
 						if (authZ.isAccessAllowed(res) == false) {
 							logger.error("Access to " + resName + ":" + res.getId() + " is NOT allowed to "
@@ -218,10 +209,11 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
 	 */
 	private void checkActive() throws CSWebApplicationException {
 		String userId = AuthN.get().getUserId();
+		String tenantId = null;
 				
 		try {
 			// Need to ensure that user is associated to a tenant
-			String tenantId = AuthN.get().getCurrentTenantId();
+			tenantId = AuthN.get().getCurrentTenantId();
 		} catch (IllegalStateException ise) {
 			String msg = "User's account is not associated to any active tenants, userId=" + userId;
 			// Note the RFC on return types:
@@ -232,6 +224,26 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
 			throw new CSWebApplicationException(ise, response);
 		}
 		
+		String value = AccountCache.getAccountStatus(tenantId, userId);
+		if (value == null) {
+			value = getAccountStatus(tenantId, userId);
+		}
+		
+		if ("INACTIVE".equalsIgnoreCase(value)) {
+			String msg = "User's account is inactive, userId=" + userId;
+			Response response = Response.status(
+					Response.Status.FORBIDDEN).entity(msg).type("text/plain").build();
+			throw new CSWebApplicationException(response);
+		}
+	}
+	
+	/*
+	 * Looks up the account's status value in the database and caches it.
+	 */
+	private String getAccountStatus(String tenantId, String userId) throws CSWebApplicationException {
+		String result = null;
+		long generation = AccountCache.getGeneration();
+		
 		try {
 			//can't use JAXB here as this runs from the common jar which cannot
 			//depend upon the account service
@@ -249,21 +261,17 @@ public class SecurityInterceptor implements PreProcessInterceptor, PostProcessIn
 			}
 			Object status = JaxbUtils.getValue(account, "getStatus");
 			if (status != null) {
-				String value = (String) JaxbUtils.getValue(status, "value");
-				if ("INACTIVE".equalsIgnoreCase(value)) {
-					String msg = "User's account is inactive, userId=" + userId;
-					Response response = Response.status(
-							Response.Status.FORBIDDEN).entity(msg).type("text/plain").build();
-					throw new CSWebApplicationException(response);
-				}
+				result = (String) JaxbUtils.getValue(status, "value");
 			}
-
 		} catch (Exception e) {
 			String msg = "User's account is in invalid state, userId=" + userId;
 			Response response = Response.status(
 					Response.Status.FORBIDDEN).entity(msg).type("text/plain").build();
 			throw new CSWebApplicationException(e, response);
 		}
+		
+		AccountCache.putAccountStatus(tenantId, userId, result, generation);
+		return result;
 	}
 	//
 	// Nuxeo login support
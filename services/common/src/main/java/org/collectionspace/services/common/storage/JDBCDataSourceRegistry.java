@@ -0,0 +1,302 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.common.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+
+import org.apache.tomcat.dbcp.dbcp.BasicDataSource;
+import org.collectionspace.services.common.api.Tools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds one bounded, validated connection pool per (datasource, database) pair.
+ *
+ * The JNDI datasources declared in the webapp's context.xml are only templates -their
+ * URLs contain a ${DatabaseName} placeholder.  Rather than rewriting the template's URL
+ * under a lock and opening a raw DriverManager connection for every call, we build a
+ * separate pooled DataSource for each concrete database URL.  Pools are normally
+ * registered at start-up from the tenant bindings (see ServiceMain), but are also created
+ * on demand for any repository we haven't seen yet.
+ *
+ * The statistics of the pools -active and idle connections, and how long callers wait for
+ * one- can be read with getPoolStatistics().  They're logged at debug level every
+ * STATISTICS_LOG_INTERVAL connections borrowed, and a borrow that waits longer than
+ * SLOW_BORROW_MILLIS logs its pool's statistics as a warning.
+ */
+public class JDBCDataSourceRegistry {
+    final static Logger logger = LoggerFactory.getLogger(JDBCDataSourceRegistry.class);
+
+    private static final CharSequence URL_DATABASE_NAME = "${DatabaseName}";
+    private static final String POOL_KEY_SEPARATOR = ":";
+
+    // Defaults applied when the template datasource leaves the setting unbounded or unset
+    private static final int DEFAULT_MAX_ACTIVE = 8;
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 30 * 1000;
+    private static final long DEFAULT_EVICTION_RUN_MILLIS = 60 * 1000;
+    private static final String DEFAULT_VALIDATION_QUERY = "SELECT 1";
+    private static final int DEFAULT_MAX_OPEN_PREPARED_STATEMENTS = 50;
+    private static final long STATISTICS_LOG_INTERVAL = 10000;
+    private static final long SLOW_BORROW_MILLIS = 1000;
+
+    private static final ConcurrentMap<String, PooledDataSource> pools = new ConcurrentHashMap<String, PooledDataSource>();
+    private static final AtomicLong totalBorrowCount = new AtomicLong();
+
+    /**
+     * Returns a pooled connection to the database backing 'repositoryName'.  Closing the connection
+     * returns it to its pool.
+     */
+    public static Connection getConnection(String dataSourceName,
+    		String repositoryName,
+    		String cspaceInstanceId) throws NamingException, SQLException {
+    	PooledDataSource pool = getPool(dataSourceName, repositoryName, cspaceInstanceId);
+    	Connection result = pool.getConnection();
+    	if (logger.isDebugEnabled() == true && totalBorrowCount.incrementAndGet() % STATISTICS_LOG_INTERVAL == 0) {
+    		logger.debug("Connection pools: " + getPoolStatistics());
+    	}
+    	return result;
+    }
+
+    /**
+     * Creates (if needed) the pool for the (datasource, repository) pair.  Called at start-up
+     * so that the first requests don't pay for pool creation.
+     */
+    public static void register(String dataSourceName,
+    		String repositoryName,
+    		String cspaceInstanceId) throws NamingException {
+    	PooledDataSource pool = getPool(dataSourceName, repositoryName, cspaceInstanceId);
+    	if (logger.isDebugEnabled() == true) {
+    		logger.debug(String.format("Registered connection pool '%s' with maxActive=%d",
+    				pool.getName(), pool.getDataSource().getMaxActive()));
+    	}
+    }
+
+    /**
+     * Returns a snapshot of the statistics for every registered pool.
+     */
+    public static List<PoolStatistics> getPoolStatistics() {
+    	List<PoolStatistics> result = new ArrayList<PoolStatistics>();
+    	for (PooledDataSource pool : pools.values()) {
+    		result.add(pool.getStatistics());
+    	}
+    	return result;
+    }
+
+    /**
+     * Closes every pool.  Called when the services layer is released.
+     */
+    public static void closeAll() {
+    	Collection<PooledDataSource> poolList = new ArrayList<PooledDataSource>(pools.values());
+    	pools.clear();
+    	for (PooledDataSource pool : poolList) {
+    		if (logger.isDebugEnabled() == true) {
+    			logger.debug("Closing connection pool: " + pool.getStatistics());
+    		}
+    		pool.close();
+    	}
+    }
+
+    private static PooledDataSource getPool(String dataSourceName,
+    		String repositoryName,
+    		String cspaceInstanceId) throws NamingException {
+    	if (Tools.isEmpty(dataSourceName) || Tools.isEmpty(repositoryName)) {
+    		String errMsg = String.format(
+    				"A connection pool was requested with an empty or null data source name = '%s' and/or repository name = '%s'.",
+    				dataSourceName, repositoryName);
+            logger.error(errMsg);
+            throw new NamingException(errMsg);
+        }
+
+    	String databaseName = JDBCTools.getDatabaseName(repositoryName, cspaceInstanceId);
+    	String key = dataSourceName + POOL_KEY_SEPARATOR + databaseName;
+    	PooledDataSource result = pools.get(key);
+    	if (result == null) {
+    		PooledDataSource newPool = createPool(key, dataSourceName, databaseName);
+    		result = pools.putIfAbsent(key, newPool);
+    		if (result == null) {
+    			result = newPool;
+    		} else {
+    			newPool.close(); // Another thread beat us to it.  No physical connections were opened yet.
+    		}
+    	}
+
+    	return result;
+    }
+
+    private static PooledDataSource createPool(String key, String dataSourceName, String databaseName) throws NamingException {
+    	BasicDataSource template = (BasicDataSource)JDBCTools.getDataSource(dataSourceName);
+    	String connectionUrl = template.getUrl().replace(URL_DATABASE_NAME, databaseName);
+
+    	BasicDataSource dataSource = new BasicDataSource();
+    	dataSource.setDriverClassName(template.getDriverClassName());
+    	dataSource.setUrl(connectionUrl);
+    	dataSource.setUsername(template.getUsername());
+    	dataSource.setPassword(template.getPassword());
+
+    	int maxActive = template.getMaxActive() > 0 ? template.getMaxActive() : DEFAULT_MAX_ACTIVE;
+    	dataSource.setMaxActive(maxActive);
+    	dataSource.setMaxIdle(Math.min(template.getMaxIdle(), maxActive));
+    	dataSource.setMinIdle(Math.min(template.getMinIdle(), maxActive));
+    	dataSource.setMaxWait(template.getMaxWait() > 0 ? template.getMaxWait() : DEFAULT_MAX_WAIT_MILLIS);
+
+    	String validationQuery = template.getValidationQuery();
+    	dataSource.setValidationQuery(Tools.isBlank(validationQuery) ? DEFAULT_VALIDATION_QUERY : validationQuery);
+    	dataSource.setTestOnBorrow(true);
+    	dataSource.setTestWhileIdle(template.getTestWhileIdle());
+    	dataSource.setTimeBetweenEvictionRunsMillis(template.getTimeBetweenEvictionRunsMillis() > 0 ?
+    			template.getTimeBetweenEvictionRunsMillis() : DEFAULT_EVICTION_RUN_MILLIS);
+
+    	// Keep each connection's prepared statements open for reuse, so that queries built from a
+    	// fixed SQL string (e.g. JDBCPartialTermQuery) get a server-side prepared statement -the
+    	// PostgreSQL driver only switches to one after a statement has been executed a few times.
+    	dataSource.setPoolPreparedStatements(true);
+    	dataSource.setMaxOpenPreparedStatements(template.getMaxOpenPreparedStatements() > 0 ?
+    			template.getMaxOpenPreparedStatements() : DEFAULT_MAX_OPEN_PREPARED_STATEMENTS);
+
+    	return new PooledDataSource(key, dataSource);
+    }
+
+    /*
+     * A pool plus the counters we keep for it.  DBCP tracks active/idle counts itself but not
+     * how long callers wait to borrow a connection.
+     */
+    private static class PooledDataSource {
+    	private final String name;
+    	private final BasicDataSource dataSource;
+    	private final AtomicLong borrowCount = new AtomicLong();
+    	private final AtomicLong totalWaitNanos = new AtomicLong();
+    	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    	PooledDataSource(String name, BasicDataSource dataSource) {
+    		this.name = name;
+    		this.dataSource = dataSource;
+    	}
+
+    	String getName() {
+    		return name;
+    	}
+
+    	BasicDataSource getDataSource() {
+    		return dataSource;
+    	}
+
+    	Connection getConnection() throws SQLException {
+    		long start = System.nanoTime();
+    		Connection result = dataSource.getConnection();
+    		long waited = System.nanoTime() - start;
+
+    		borrowCount.incrementAndGet();
+    		totalWaitNanos.addAndGet(waited);
+    		long currentMax = maxWaitNanos.get();
+    		while (waited > currentMax && maxWaitNanos.compareAndSet(currentMax, waited) == false) {
+    			currentMax = maxWaitNanos.get();
+    		}
+
+        	if (waited / 1000000 >= SLOW_BORROW_MILLIS) {
+        		logger.warn(String.format("Waited %d ms for a connection from pool %s", waited / 1000000, getStatistics()));
+        	} else if (logger.isTraceEnabled() == true) {
+        		logger.trace(String.format("Connection borrowed from pool '%s' after %d microseconds", name, waited / 1000));
+        	}
+    		return result;
+    	}
+
+    	PoolStatistics getStatistics() {
+    		return new PoolStatistics(name, dataSource.getMaxActive(), dataSource.getNumActive(), dataSource.getNumIdle(),
+    				borrowCount.get(), totalWaitNanos.get() / 1000000, maxWaitNanos.get() / 1000000);
+    	}
+
+    	void close() {
+    		try {
+    			dataSource.close();
+    		} catch (SQLException e) {
+    			logger.warn(String.format("Error closing connection pool '%s': %s", name, e.getLocalizedMessage()));
+    		}
+    	}
+    }
+
+    /**
+     * An immutable snapshot of a single pool's metrics.
+     */
+    public static class PoolStatistics {
+    	private final String name;
+    	private final int maxActive;
+    	private final int numActive;
+    	private final int numIdle;
+    	private final long borrowCount;
+    	private final long totalWaitMillis;
+    	private final long maxWaitMillis;
+
+    	PoolStatistics(String name, int maxActive, int numActive, int numIdle,
+    			long borrowCount, long totalWaitMillis, long maxWaitMillis) {
+    		this.name = name;
+    		this.maxActive = maxActive;
+    		this.numActive = numActive;
+    		this.numIdle = numIdle;
+    		this.borrowCount = borrowCount;
+    		this.totalWaitMillis = totalWaitMillis;
+    		this.maxWaitMillis = maxWaitMillis;
+    	}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getMaxActive() {
+			return maxActive;
+		}
+
+		public int getNumActive() {
+			return numActive;
+		}
+
+		public int getNumIdle() {
+			return numIdle;
+		}
+
+		public long getBorrowCount() {
+			return borrowCount;
+		}
+
+		public long getTotalWaitMillis() {
+			return totalWaitMillis;
+		}
+
+		public long getMaxWaitMillis() {
+			return maxWaitMillis;
+		}
+
+		public double getAverageWaitMillis() {
+			return borrowCount > 0 ? (double)totalWaitMillis / borrowCount : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: active=%d/%d idle=%d borrowed=%d avgWait=%.2fms maxWait=%dms",
+					name, numActive, maxActive, numIdle, borrowCount, getAverageWaitMillis(), maxWaitMillis);
+		}
+    }
+}
@@ -29,29 +29,27 @@ import javax.sql.DataSource;
 
 import java.sql.DatabaseMetaData;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.rowset.CachedRowSet;
 import javax.sql.rowset.RowSetFactory;
 import javax.sql.rowset.RowSetProvider;
 
-import org.apache.tomcat.dbcp.dbcp.BasicDataSource;
-
 /**
  * User: laramie
  * $LastChangedRevision:  $
  * $LastChangedDate:  $
  */
 public class JDBCTools {
-    public static HashMap<String, DataSource> cachedDataSources = new HashMap<String, DataSource>();
+    public static Map<String, DataSource> cachedDataSources = new ConcurrentHashMap<String, DataSource>();
     public static String CSPACE_DATASOURCE_NAME = "CspaceDS";
     public static String NUXEO_DATASOURCE_NAME = "NuxeoDS_CS"; // Starting with v4.2 release we renamed this from NuxeoDS to NuxeoDS_CS to void namespace conflict with Nuxeo EP
     // Default database names
@@ -72,7 +70,6 @@ public class JDBCTools {
 
     //todo: make sure this will get instantiated in the right order
     final static Logger logger = LoggerFactory.getLogger(JDBCTools.class);
-	private static final CharSequence URL_DATABASE_NAME = "${DatabaseName}";
     private static String JDBC_URL_DATABASE_SEPARATOR = "\\/";
         
 	//
@@ -139,6 +136,10 @@ public class JDBCTools {
     	return getConnection(dataSourceName, databaseName, null);
     }
     
+    /*
+     * Connections come from a pool dedicated to the repository's database -see JDBCDataSourceRegistry.
+     * Closing the returned connection hands it back to that pool.
+     */
     public static Connection getConnection(String dataSourceName,
     		String repositoryName,
     		String cspaceInstanceId) throws NamingException, SQLException {
@@ -151,43 +152,10 @@ public class JDBCTools {
             logger.error(errMsg);
             throw new NamingException(errMsg);
         }
-    	        
-    	/*
-    	 * We synch this block as a workaround to not have separate DataSource instances for
-    	 * each Nuxeo repo/DB.  Ideally, we should replace the need for this synch block by
-    	 * registering a separate DataSource for each repo/db at init/start-up time.
-    	 * 
-    	 * We need to sync because we're changing the URL of the datasource inorder to get the correct
-    	 * connection.  The synch prevents different threads from getting the incorrect connection -i.e., one pointing
-    	 * to the wrong URL.
-    	 */
-    	Connection conn = null;
-    	synchronized (JDBCTools.class) {
-    		BasicDataSource dataSource = (BasicDataSource)getDataSource(dataSourceName);
-    		// Get the template URL value from the JNDI datasource and substitute the databaseName
-	        String urlTemplate = dataSource.getUrl();
-	        String databaseName = getDatabaseName(repositoryName, cspaceInstanceId);
-	        String connectionUrl = urlTemplate.replace(URL_DATABASE_NAME, databaseName);
-
-	        // ATTENTION!
-	        // Turns out the Tomcat BasicDataSource used a connection pool, so changing the url does not
-	        // get you a corresponding connection. Use the more basic implementation for now, unless
-	        // and until we do things right by creating additional JNDI data sources.
-	        
-        	//dataSource.setUrl(connectionUrl);
-	        String user = dataSource.getUsername();
-	        String password = dataSource.getPassword();
-	        
-	        try {
-	        	//conn = dataSource.getConnection();
-	        	conn = DriverManager.getConnection(connectionUrl, user, password);
-	        	result = conn;
-	        	if (logger.isTraceEnabled() == true && conn != null) {
-	        		logger.trace(String.format("Connection made to repository = '%s' using datasource = '%s'", repositoryName, dataSourceName));
-	        	}
-	        } finally {
-	        	dataSource.setUrl(urlTemplate); // Reset the data source URL value back to the template value
-	        }
+    	
+    	result = JDBCDataSourceRegistry.getConnection(dataSourceName, repositoryName, cspaceInstanceId);
+    	if (logger.isTraceEnabled() == true && result != null) {
+    		logger.trace(String.format("Connection made to repository = '%s' using datasource = '%s'", repositoryName, dataSourceName));
     	}
     	        
         return result;
@@ -128,6 +128,7 @@ public class JpaRelationshipStorageClient<T> extends JpaStorageClientImpl {
                 em.persist(r);
             }
             em.getTransaction().commit();
+            invalidateAccountCache();
             handler.complete(Action.CREATE, wrapDoc);
             return UUID.randomUUID().toString(); //filler, not useful
         } catch (BadRequestException bre) {
@@ -147,7 +148,7 @@ public class JpaRelationshipStorageClient<T> extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (em != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -250,7 +251,7 @@ public class JpaRelationshipStorageClient<T> extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -356,6 +357,7 @@ public class JpaRelationshipStorageClient<T> extends JpaStorageClientImpl {
                         + " with objectId=" + objectId);
             }
             em.getTransaction().commit();
+            invalidateAccountCache();
 
         } catch (Exception e) {
             if (logger.isDebugEnabled()) {
@@ -367,7 +369,7 @@ public class JpaRelationshipStorageClient<T> extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -412,6 +414,7 @@ public class JpaRelationshipStorageClient<T> extends JpaStorageClientImpl {
             	em.remove(getRelationship(em, r));
             }
             em.getTransaction().commit();
+            invalidateAccountCache();
             handler.complete(Action.DELETE, wrapDoc);
         } catch (DocumentException de) {
             if (em != null && em.getTransaction().isActive()) {
@@ -428,7 +431,7 @@ public class JpaRelationshipStorageClient<T> extends JpaStorageClientImpl {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -36,6 +36,7 @@ import org.collectionspace.services.common.document.DocumentWrapper;
 import org.collectionspace.services.common.document.DocumentWrapperImpl;
 import org.collectionspace.services.common.document.JaxbUtils;
 
+import org.collectionspace.services.common.security.AccountCache;
 import org.collectionspace.services.common.storage.StorageClient;
 import org.collectionspace.services.common.context.ServiceContextProperties;
 import org.collectionspace.services.common.context.ServiceContext;
@@ -125,6 +126,7 @@ public class JpaStorageClientImpl implements StorageClient {
             	em.persist(entity);
             }
             em.getTransaction().commit();
+            invalidateAccountCache();
             handler.complete(Action.CREATE, wrapDoc);
             return (String) JaxbUtils.getValue(entity, "getCsid");
         } catch (BadRequestException bre) {
@@ -147,12 +149,20 @@ public class JpaStorageClientImpl implements StorageClient {
             		}
             	}
             	// Don't call this unless "em" is not null -hence the check above.
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
 
     }
 
+    /**
+     * Accounts, roles, permissions and their relationships are all persisted through this class (or its
+     * subclasses), so any committed write may change a cached account status or permission list.
+     */
+    protected void invalidateAccountCache() {
+    	AccountCache.invalidateAll();
+    }
+
     /* (non-Javadoc)
      * @see org.collectionspace.services.common.storage.StorageClient#get(org.collectionspace.services.common.context.ServiceContext, java.util.List, org.collectionspace.services.common.document.DocumentHandler)
      */
@@ -202,7 +212,7 @@ public class JpaStorageClientImpl implements StorageClient {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -268,7 +278,7 @@ public class JpaStorageClientImpl implements StorageClient {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -301,6 +311,7 @@ public class JpaStorageClientImpl implements StorageClient {
             handler.handle(Action.UPDATE, wrapDoc);
             JaxbUtils.setValue(entityFound, "setUpdatedAtItem", Date.class, new Date());
             em.getTransaction().commit();
+            invalidateAccountCache();
             handler.complete(Action.UPDATE, wrapDoc);
         } catch (BadRequestException bre) {
             if (em != null && em.getTransaction().isActive()) {
@@ -319,7 +330,7 @@ public class JpaStorageClientImpl implements StorageClient {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -361,6 +372,7 @@ public class JpaStorageClientImpl implements StorageClient {
             }
             em.remove(entityFound);
             em.getTransaction().commit();
+            invalidateAccountCache();
 
         } catch (DocumentException de) {
             if (em != null && em.getTransaction().isActive()) {
@@ -377,7 +389,7 @@ public class JpaStorageClientImpl implements StorageClient {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -428,6 +440,7 @@ public class JpaStorageClientImpl implements StorageClient {
                 throw new DocumentNotFoundException(msg);
             }
             em.getTransaction().commit();
+            invalidateAccountCache();
 
         } catch (DocumentException de) {
             if (em != null && em.getTransaction().isActive()) {
@@ -444,7 +457,7 @@ public class JpaStorageClientImpl implements StorageClient {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
@@ -487,6 +500,7 @@ public class JpaStorageClientImpl implements StorageClient {
             handler.handle(Action.DELETE, wrapDoc);
             em.remove(entityFound);
             em.getTransaction().commit();
+            invalidateAccountCache();
 
             handler.complete(Action.DELETE, wrapDoc);
         } catch (DocumentException de) {
@@ -504,7 +518,7 @@ public class JpaStorageClientImpl implements StorageClient {
             throw new DocumentException(e);
         } finally {
             if (emf != null) {
-                JpaStorageUtils.releaseEntityManagerFactory(emf);
+                JpaStorageUtils.releaseEntityManager(em);
             }
         }
     }
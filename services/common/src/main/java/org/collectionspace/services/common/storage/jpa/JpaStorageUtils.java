@@ -27,10 +27,14 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.PersistenceException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
 import javax.persistence.NoResultException;
 import javax.persistence.Persistence;
 import javax.persistence.Query;
@@ -46,6 +50,7 @@ import org.collectionspace.services.authorization.PermissionValue;
 import org.collectionspace.services.authorization.URIResourceImpl;
 import org.collectionspace.services.common.authorization_mgt.AuthorizationRoleRel;
 import org.collectionspace.services.common.document.DocumentNotFoundException;
+import org.collectionspace.services.common.security.AccountCache;
 import org.collectionspace.services.common.security.UnauthorizedException;
 import org.collectionspace.services.common.document.JaxbUtils;
 import org.collectionspace.services.common.security.SecurityUtils;
@@ -69,6 +74,15 @@ public class JpaStorageUtils {
     // This is the column name for ID field of all the JPA objects
     public static final String CSID_LABEL = "csid";
     
+    // One shared EntityManagerFactory per persistence unit -they are expensive to create and thread-safe
+    private static final ConcurrentMap<String, EntityManagerFactory> entityManagerFactories = new ConcurrentHashMap<String, EntityManagerFactory>();
+    // Persistence units whose factory couldn't be created, with when we may next try, and how long we
+    // waited last time -we back off, doubling the wait after each failure, up to a limit
+    private static final Map<String, Long> unavailablePersistenceUnits = new HashMap<String, Long>();
+    private static final Map<String, Long> persistenceUnitRetryDelays = new HashMap<String, Long>();
+    private static final long MIN_PERSISTENCE_UNIT_RETRY_MILLIS = 1000;
+    private static final long MAX_PERSISTENCE_UNIT_RETRY_MILLIS = 5 * 60 * 1000;
+    
     private static boolean useTenantId(String tenantId) {
     	boolean result = true;
     	
@@ -91,9 +105,7 @@ public class JpaStorageUtils {
             //FIXME: it would be nice to verify tenantid as well
             entityFound = em.find(entityClazz, id);
         } finally {
-            if (em != null) {
-                releaseEntityManagerFactory(emf);
-            }
+            releaseEntityManager(em);
         }
         return entityFound;
     }
@@ -110,9 +122,7 @@ public class JpaStorageUtils {
             //FIXME: it would be nice to verify tenantid as well
             entityFound = em.find(entityClazz, id);
         } finally {
-            if (em != null) {
-                releaseEntityManagerFactory(emf);
-            }
+            releaseEntityManager(em);
         }
         return entityFound;
     }
@@ -223,6 +233,27 @@ public class JpaStorageUtils {
      * This is a prototype for the /accounts/{csid}/permissions GET service call.
      */
     public static AccountPermission getAccountPermissions(String csid, String currentResource, String permissionResource)
+    	throws UnauthorizedException, DocumentNotFoundException {
+    	//
+    	// A user can always see their own permissions, so for the current user we can skip the access
+    	// check and serve the result from the cache.
+    	//
+    	if (csid.equals(CS_CURRENT_USER) == true) {
+    		String tenantId = AuthN.get().getCurrentTenantId();
+    		String userId = AuthN.get().getUserId();
+    		AccountPermission result = AccountCache.getAccountPermission(tenantId, userId, currentResource, permissionResource);
+    		if (result == null) {
+    			long generation = AccountCache.getGeneration();
+    			result = getAccountPermissionsFromStore(csid, currentResource, permissionResource);
+    			AccountCache.putAccountPermission(tenantId, userId, currentResource, permissionResource, result, generation);
+    		}
+    		return result;
+    	}
+    	
+    	return getAccountPermissionsFromStore(csid, currentResource, permissionResource);
+    }
+    
+    private static AccountPermission getAccountPermissionsFromStore(String csid, String currentResource, String permissionResource)
     	throws UnauthorizedException, DocumentNotFoundException {
         //
         // Make sure the user asking for this list has the correct
@@ -295,9 +326,7 @@ public class JpaStorageUtils {
                 logger.debug("could not find entity(2) with id=" + userId, e);
             }
         } finally {
-            if (em != null) {
-                releaseEntityManagerFactory(emf);
-            }
+            releaseEntityManager(em);
         }
         return result;
     }
@@ -402,9 +431,7 @@ public class JpaStorageUtils {
             }
             //returns null
         } finally {
-            if (em != null) {
-                releaseEntityManagerFactory(emf);
-            }
+            releaseEntityManager(em);
         }
         
         return o;
@@ -473,9 +500,7 @@ public class JpaStorageUtils {
             }
             //returns null
         } finally {
-            if (em != null) {
-                releaseEntityManagerFactory(emf);
-            }
+            releaseEntityManager(em);
         }
         return o;
     }
@@ -544,9 +569,7 @@ public class JpaStorageUtils {
             }
             throw e;
         } finally {
-            if (em != null) {
-                releaseEntityManagerFactory(emf);
-            }
+            releaseEntityManager(em);
         }
         return o;
     }
@@ -557,37 +580,23 @@ public class JpaStorageUtils {
      * @return the entity manager factory
      */
     public static EntityManagerFactory getEntityManagerFactory() {
-    	EntityManagerFactory result = null;
-    	PersistenceException persistenceException = null;
-    	
-    	try {
-    		result = getEntityManagerFactory(CS_PERSISTENCE_UNIT);
-    	} catch (PersistenceException e) {
-    		persistenceException = e;
-    	}
     	//
     	// If the CS_PERSISTENCE_UNIT does not exist, our caller may be from
-    	// the import utility.
+    	// the import utility -in which case we'll fall back to the CS_AUTHZ_PERSISTENCE_UNIT.
     	// FIXME: REM - EntityManagerFactory should be passed in from the Import utility.
     	//
-    	if (result == null) {
-	    	try {
-	    		result = getEntityManagerFactory(CS_AUTHZ_PERSISTENCE_UNIT);
-	    		return result;
-	    	} catch (PersistenceException e) {
-	    		persistenceException = e;
-	    	}
-    	}
-    	        
+    	EntityManagerFactory result = getEntityManagerFactory(CS_PERSISTENCE_UNIT);
         if (result == null) {
-        	throw persistenceException;
+        	throw new PersistenceException("Could not create an EntityManagerFactory for persistence units: "
+        			+ CS_PERSISTENCE_UNIT + " or " + CS_AUTHZ_PERSISTENCE_UNIT);
         }
         
         return result;
     }
 
     /**
-     * Gets the entity manager factory.
+     * Gets the entity manager factory.  Factories are created once per persistence unit and shared
+     * for the life of the process -see closeEntityManagerFactories().
      *
      * @param persistenceUnit the persistence unit
      *
@@ -595,45 +604,139 @@ public class JpaStorageUtils {
      */
     public static EntityManagerFactory getEntityManagerFactory(
             String persistenceUnit) {
-    	EntityManagerFactory result = null;
+    	EntityManagerFactory result = getOrCreateEntityManagerFactory(persistenceUnit);
     	
-    	try {
-    		result = Persistence.createEntityManagerFactory(persistenceUnit);
-    	} catch (javax.persistence.PersistenceException e) {
+    	if (result == null) {
     		logger.warn("Could not find a persistence unit for: " + persistenceUnit);
     	}
     	
 		//
 		// Try using a backup persistence unit if the specified one is not available and log a warning
 		//
-    	if (result == null && !persistenceUnit.equalsIgnoreCase(CS_PERSISTENCE_UNIT)) try {
-    		result = Persistence.createEntityManagerFactory(CS_PERSISTENCE_UNIT);
-    	} catch (javax.persistence.PersistenceException e) {
-    		logger.warn("Could not find a persistence unit for: " + CS_PERSISTENCE_UNIT);
+    	if (result == null && !persistenceUnit.equalsIgnoreCase(CS_PERSISTENCE_UNIT)) {
+    		result = getOrCreateEntityManagerFactory(CS_PERSISTENCE_UNIT);
+    		if (result == null) {
+    			logger.warn("Could not find a persistence unit for: " + CS_PERSISTENCE_UNIT);
+    		}
     	}
     	
     	//
     	// One more try.
     	//
-    	if (result == null && !persistenceUnit.equalsIgnoreCase(CS_AUTHZ_PERSISTENCE_UNIT)) try {
-    		result = Persistence.createEntityManagerFactory(CS_AUTHZ_PERSISTENCE_UNIT);
-    	} catch (javax.persistence.PersistenceException e) {
-    		logger.warn("Problem with the persistence unit for: " + CS_AUTHZ_PERSISTENCE_UNIT, e);
+    	if (result == null && !persistenceUnit.equalsIgnoreCase(CS_AUTHZ_PERSISTENCE_UNIT)) {
+    		result = getOrCreateEntityManagerFactory(CS_AUTHZ_PERSISTENCE_UNIT);
+    		if (result == null) {
+    			logger.warn("Problem with the persistence unit for: " + CS_AUTHZ_PERSISTENCE_UNIT);
+    		}
     	}
 
         return result;
     }
+    
+    /*
+     * Returns the shared factory for exactly this persistence unit, creating it on first use.  Returns
+     * null if the unit can't be created, or if it recently failed to be.  Creation is rare, so we just
+     * serialize it.
+     */
+    private static EntityManagerFactory getOrCreateEntityManagerFactory(String persistenceUnit) {
+    	EntityManagerFactory result = entityManagerFactories.get(persistenceUnit);
+    	
+    	if (result == null || result.isOpen() == false) {
+    		synchronized (entityManagerFactories) {
+    			result = entityManagerFactories.get(persistenceUnit);
+    			if ((result == null || result.isOpen() == false) && isRetryDue(persistenceUnit) == true) {
+    				try {
+    					result = Persistence.createEntityManagerFactory(persistenceUnit);
+    					entityManagerFactories.put(persistenceUnit, result);
+    					unavailablePersistenceUnits.remove(persistenceUnit);
+    					persistenceUnitRetryDelays.remove(persistenceUnit);
+    					if (logger.isDebugEnabled() == true) {
+    						logger.debug("Created the shared EntityManagerFactory for persistence unit: " + persistenceUnit);
+    					}
+    				} catch (PersistenceException e) {
+    					Long lastDelay = persistenceUnitRetryDelays.get(persistenceUnit);
+    					long delay = lastDelay == null ? MIN_PERSISTENCE_UNIT_RETRY_MILLIS
+    							: Math.min(lastDelay * 2, MAX_PERSISTENCE_UNIT_RETRY_MILLIS);
+    					persistenceUnitRetryDelays.put(persistenceUnit, delay);
+    					unavailablePersistenceUnits.put(persistenceUnit, System.currentTimeMillis() + delay);
+    					if (logger.isDebugEnabled() == true) {
+    						logger.debug("Could not create an EntityManagerFactory for persistence unit: " + persistenceUnit
+    								+ "; will try again in " + delay + "ms", e);
+    					}
+    					result = null;
+    				}
+    			}
+    		}
+    	}
+    	
+    	return result;
+    }
+    
+    /*
+     * Must be called while synchronized on entityManagerFactories.
+     */
+    private static boolean isRetryDue(String persistenceUnit) {
+    	Long retryAt = unavailablePersistenceUnits.get(persistenceUnit);
+    	return retryAt == null || System.currentTimeMillis() >= retryAt;
+    }
+    
+    /**
+     * Closes all the shared entity manager factories.  Called once, when the services layer shuts down.
+     */
+    public static void closeEntityManagerFactories() {
+    	synchronized (entityManagerFactories) {
+    		for (String persistenceUnit : entityManagerFactories.keySet()) {
+    			EntityManagerFactory emf = entityManagerFactories.get(persistenceUnit);
+    			try {
+    				if (emf.isOpen() == true) {
+    					emf.close();
+    				}
+    			} catch (Exception e) {
+    				logger.warn("Error closing the EntityManagerFactory for persistence unit: " + persistenceUnit, e);
+    			}
+    		}
+    		entityManagerFactories.clear();
+    		unavailablePersistenceUnits.clear();
+    		persistenceUnitRetryDelays.clear();
+    	}
+    }
 
     /**
-     * Release entity manager factory.
+     * Release an entity manager obtained from one of the shared factories.  A transaction the caller
+     * left active -e.g. because it threw before committing- is rolled back first; the shared factory
+     * stays open, so otherwise the transaction, and its pooled JDBC connection, would never be released.
+     *
+     * @param em the entity manager
+     */
+    public static void releaseEntityManager(EntityManager em) {
+        if (em != null && em.isOpen()) {
+            try {
+                EntityTransaction transaction = em.getTransaction();
+                if (transaction != null && transaction.isActive() == true) {
+                    if (logger.isDebugEnabled() == true) {
+                        logger.debug("Rolling back a transaction left active on an entity manager being released.");
+                    }
+                    transaction.rollback();
+                }
+            } catch (Exception e) {
+                logger.error("Could not roll back the transaction of an entity manager being released: " + e.getMessage(), e);
+            } finally {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Release entity manager factory.  The factories returned by getEntityManagerFactory() are shared, so
+     * this only closes factories that were created elsewhere.  Use releaseEntityManager() to release the
+     * per-call EntityManager instead.
      *
      * @param emf the emf
      */
+    @Deprecated
     public static void releaseEntityManagerFactory(EntityManagerFactory emf) {
-        if (emf != null) {
+        if (emf != null && !entityManagerFactories.containsValue(emf)) {
             emf.close();
         }
-
     }
 }
-
@@ -22,7 +22,8 @@ import com.google.common.collect.AbstractIterator;
 
 /**
  * A DocumentModelList representing all of the documents that potentially reference an
- * authority item, found via full text search. This list must be post-processed to
+ * authority item, found via the refObjs index if it is enabled and built for the tenant
+ * (see RefObjsIndex), or otherwise via full text search. This list must be post-processed to
  * eliminate false positives.
  *
  * Documents in this list are lazily fetched one page at a time, as they are accessed through
@@ -45,6 +46,7 @@ public class LazyAuthorityRefDocList extends DocumentModelListImpl {
 	private String whereClauseAdditions;
 	private String orderByClause;
 	private int pageSize;
+	private List<String> indexedDocIds;	// null if the refObjs index is not in use
 	
 	private DocumentModelList firstPageDocList;
 	
@@ -91,6 +93,7 @@ public class LazyAuthorityRefDocList extends DocumentModelListImpl {
 		this.whereClauseAdditions = whereClauseAdditions;
 		this.orderByClause = orderByClause;
 		this.pageSize = pageSize;
+		this.indexedDocIds = RefObjsIndex.findReferencingDocIds(ctx, refName, refPropName);
 
 		// Fetch the first page immediately. This is necessary so that calls
 		// to totalSize() will work immediately. The computeTotal flag is passed
@@ -100,6 +103,30 @@ public class LazyAuthorityRefDocList extends DocumentModelListImpl {
 		firstPageDocList = fetchPage(0, computeTotal);
 	}
 
+	/**
+	 * Creates a LazyAuthorityRefDocList over the given indexed documents, for tests, which
+	 * override fetchPage().
+	 */
+	LazyAuthorityRefDocList(List<String> indexedDocIds, String orderByClause, int pageSize, boolean computeTotal)
+	        throws DocumentException, DocumentNotFoundException {
+		this.orderByClause = orderByClause;
+		this.pageSize = pageSize;
+		this.indexedDocIds = indexedDocIds;
+		firstPageDocList = fetchPage(0, computeTotal);
+	}
+
+	List<String> getIndexedDocIds() {
+		return indexedDocIds;
+	}
+
+	String getOrderByClause() {
+		return orderByClause;
+	}
+
+	int getPageSize() {
+		return pageSize;
+	}
+
 	/**
 	 * Retrieves a page of authority references.
 	 * 
@@ -109,12 +136,14 @@ public class LazyAuthorityRefDocList extends DocumentModelListImpl {
 	 * @throws DocumentNotFoundException
 	 * @throws DocumentException
 	 */
-	private DocumentModelList fetchPage(int pageNum, boolean computeTotal) throws DocumentNotFoundException, DocumentException {
+	DocumentModelList fetchPage(int pageNum, boolean computeTotal) throws DocumentNotFoundException, DocumentException {
+		// With the refObjs index, the query is for the indexed documents, rather than a keyword
+		// search, but it's filtered, sorted and paged the same way.
 		return RefNameServiceUtils.findAuthorityRefDocs(ctx, repoClient, repoSession,
 		        serviceTypes, refName, refPropName, queriedServiceBindings, authRefFieldsByService,
-		        whereClauseAdditions, orderByClause, pageSize, pageNum, computeTotal);
+		        indexedDocIds, whereClauseAdditions, orderByClause, pageSize, pageNum, computeTotal);
 	}
-		
+
 	@Override
 	public long totalSize() {
 		// Return the totalSize from the first page of documents.
@@ -173,22 +202,28 @@ public class LazyAuthorityRefDocList extends DocumentModelListImpl {
 			
 			// The current page is exhausted.
 			
-			if (pageSize == 0 || (currentPageDocList.size() < pageSize)) { 
+			// There may be more pages. Try to fetch the next one.
+			
+			if (pageSize == 0 || currentPageDocList.size() < pageSize) {
 				// There are no more pages.
 				return endOfData();
 			}
 			
-			// There may be more pages. Try to fetch the next one.
-			
 			int nextPageNum = currentPageNum + 1;
-			DocumentModelList nextPageDocList = null;
+			DocumentModelList nextPageDocList;
 			
 			try {
 				nextPageDocList = fetchPage(nextPageNum, false);
 			}
-			catch(DocumentException e) {}
+			catch(DocumentException e) {
+				nextPageDocList = null;
+			}
+			
+			if (nextPageDocList == null) {
+				return endOfData();
+			}
 			
-			if (nextPageDocList == null || nextPageDocList.size() == 0) {
+			if (nextPageDocList.size() == 0) {
 				// There are no more pages.
 				return endOfData();
 			}
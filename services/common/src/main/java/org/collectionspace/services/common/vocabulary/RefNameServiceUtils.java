@@ -31,6 +31,7 @@ import java.util.Map;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.api.model.Property;
 import org.nuxeo.ecm.core.api.model.PropertyException;
 import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
@@ -387,7 +388,7 @@ public class RefNameServiceUtils {
         return wrapperList;
     }
 
-    private static ArrayList<String> getRefNameServiceTypes() {
+    static ArrayList<String> getRefNameServiceTypes() {
         if (refNameServiceTypes == null) {
             refNameServiceTypes = new ArrayList<String>();
             refNameServiceTypes.add(ServiceBindingUtils.SERVICE_TYPE_AUTHORITY);
@@ -397,84 +398,6 @@ public class RefNameServiceUtils {
         return refNameServiceTypes;
     }
     
-    // Seems like a good value - no real data to set this well.
-    // Note: can set this value lower during debugging; e.g. to 3 - ADR 2012-07-10
-    private static final int N_OBJS_TO_UPDATE_PER_LOOP = 100;
-
-    public static int updateAuthorityRefDocs(
-            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
-            RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient,
-            CoreSessionInterface repoSession,
-            String oldRefName,
-            String newRefName,
-            String refPropName) throws Exception {
-        Map<String, ServiceBindingType> queriedServiceBindings = new HashMap<String, ServiceBindingType>();
-        Map<String, List<AuthRefConfigInfo>> authRefFieldsByService = new HashMap<String, List<AuthRefConfigInfo>>();
-
-        int docsScanned = 0;
-        int nRefsFound = 0;
-        int currentPage = 0;
-        int docsInCurrentPage = 0;
-        final String WHERE_CLAUSE_ADDITIONS_VALUE = null;
-        final String ORDER_BY_VALUE = CollectionSpaceClient.CORE_CREATED_AT  // "collectionspace_core:createdAt";
-                                          + ", " + IQueryManager.NUXEO_UUID; // CSPACE-6333: Add secondary sort on uuid, in case records have the same createdAt timestamp.
-
-        if (repoClient instanceof RepositoryJavaClientImpl == false) {
-            throw new InternalError("updateAuthorityRefDocs() called with unknown repoClient type!");
-        }
-        
-        try { // REM - How can we deal with transaction and timeout issues here?
-            final int pageSize = N_OBJS_TO_UPDATE_PER_LOOP;
-            DocumentModelList docList;
-            boolean morePages = true;
-            while (morePages) {
-
-                docList = findAuthorityRefDocs(ctx, repoClient, repoSession,
-                        getRefNameServiceTypes(), oldRefName, refPropName,
-                        queriedServiceBindings, authRefFieldsByService, WHERE_CLAUSE_ADDITIONS_VALUE, ORDER_BY_VALUE, pageSize, currentPage, false);
-
-                if (docList == null) {
-                    logger.debug("updateAuthorityRefDocs: no documents could be found that referenced the old refName");
-                    break;
-                }
-                docsInCurrentPage = docList.size();
-                logger.debug("updateAuthorityRefDocs: current page=" + currentPage + " documents included in page=" + docsInCurrentPage);
-                if (docsInCurrentPage == 0) {
-                    logger.debug("updateAuthorityRefDocs: no more documents requiring refName updates could be found");
-                    break;
-                }
-                if (docsInCurrentPage < pageSize) {
-                    logger.debug("updateAuthorityRefDocs: assuming no more documents requiring refName updates will be found, as docsInCurrentPage < pageSize");
-                    morePages = false;
-                }
-
-                // Only match complete refNames - unless and until we decide how to resolve changes
-                // to NPTs we will defer that and only change PTs or refNames as passed in.
-                int nRefsFoundThisPage = processRefObjsDocListForUpdate(docList, ctx.getTenantId(), oldRefName, 
-                		queriedServiceBindings, authRefFieldsByService, // Perform the refName updates on the list of document models
-                        newRefName);
-                if (nRefsFoundThisPage > 0) {
-                    ((RepositoryJavaClientImpl) repoClient).saveDocListWithoutHandlerProcessing(ctx, repoSession, docList, true); // Flush the document model list out to Nuxeo storage
-                    nRefsFound += nRefsFoundThisPage;
-                }
-
-                // FIXME: Per REM, set a limit of num objects - something like
-                // 1000K objects - and also add a log Warning after some threshold
-                docsScanned += docsInCurrentPage;
-                if (morePages) {
-                    currentPage++;
-                }
-
-            }
-        } catch (Exception e) {
-            logger.error("Internal error updating the AuthorityRefDocs: " + e.getLocalizedMessage());
-            logger.debug(Tools.errorToString(e, true));
-            throw e;
-        }
-        logger.debug("updateAuthorityRefDocs replaced a total of " + nRefsFound + " authority references, within as many as " + docsScanned + " scanned document(s)");
-        return nRefsFound;
-    }
-
     private static DocumentModelList findAllAuthorityRefDocs(
             ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
             RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient,
@@ -506,6 +429,31 @@ public class RefNameServiceUtils {
             int pageSize,
             int pageNum,
             boolean computeTotal) throws DocumentException, DocumentNotFoundException {
+        return findAuthorityRefDocs(ctx, repoClient, repoSession, serviceTypes, refName, refPropName,
+                queriedServiceBindings, authRefFieldsByService, null, whereClauseAdditions, orderByClause,
+                pageSize, pageNum, computeTotal);
+    }
+
+    /*
+     * If 'docIds' is non-null, only those documents are fetched, rather than the documents matching
+     * a keyword search for the refName.  The list comes from the refObjs index (see RefObjsIndex).
+     * The documents are filtered, sorted and paged by the same query either way, so pages and totals
+     * only count the documents that pass the filters.
+     */
+    protected static DocumentModelList findAuthorityRefDocs(
+            ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            RepositoryClient<PoxPayloadIn, PoxPayloadOut> repoClient,
+            CoreSessionInterface repoSession, List<String> serviceTypes,
+            String refName,
+            String refPropName,
+            Map<String, ServiceBindingType> queriedServiceBindings,
+            Map<String, List<AuthRefConfigInfo>> authRefFieldsByService,
+            List<String> docIds,
+            String whereClauseAdditions,
+            String orderByClause,
+            int pageSize,
+            int pageNum,
+            boolean computeTotal) throws DocumentException, DocumentNotFoundException {
 
         // Get the service bindings for this tenant
         TenantBindingConfigReaderImpl tReader =
@@ -526,6 +474,19 @@ public class RefNameServiceUtils {
         if (query == null) { // found no authRef fields - nothing to query
             return null;
         }
+        if (docIds != null) {
+            if (docIds.isEmpty()) {
+                return new DocumentModelListImpl();
+            }
+            StringBuilder inList = new StringBuilder();
+            for (String docId : docIds) {
+                if (inList.length() > 0) {
+                    inList.append(",");
+                }
+                inList.append(NuxeoUtils.prepareStringLiteral(docId));
+            }
+            query = IQueryManager.NUXEO_UUID + " IN (" + inList + ")";
+        }
         // Additional qualifications, like workflow state
         if (Tools.notBlank(whereClauseAdditions)) {
             query += " AND " + whereClauseAdditions;
@@ -540,7 +501,7 @@ public class RefNameServiceUtils {
     }
     private static final boolean READY_FOR_COMPLEX_QUERY = true;
 
-    private static String computeWhereClauseForAuthorityRefDocs(
+    static String computeWhereClauseForAuthorityRefDocs(
             String refName,
             String refPropName,
             ArrayList<String> docTypes,
@@ -602,7 +563,7 @@ public class RefNameServiceUtils {
 		return result;
 	}
 
-    private static int processRefObjsDocListForUpdate(
+    static int processRefObjsDocListForUpdate(
             DocumentModelList docList,
             String tenantId,
             String refName,
@@ -0,0 +1,674 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.vocabulary;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.client.IQueryManager;
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.api.GregorianCalendarDateTimeUtils;
+import org.collectionspace.services.common.config.ConfigUtils;
+import org.collectionspace.services.common.config.TenantBindingConfigReaderImpl;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthRefConfigInfo;
+import org.collectionspace.services.config.service.ServiceBindingType;
+import org.collectionspace.services.config.tenant.RepositoryDomainType;
+import org.collectionspace.services.config.tenant.TenantBindingType;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.client.java.NuxeoClientEmbedded;
+import org.collectionspace.services.nuxeo.client.java.NuxeoConnectorEmbedded;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replaces references to an authority or vocabulary term's old refName with its new one, after
+ * the term's display name has changed, in the background rather than during the term's update.
+ *
+ * Each job is recorded in a table in the repository's database, along with its progress.  The
+ * documents that may hold the old refName are visited in (createdAt, uuid) order, a batch at a
+ * time, each batch in its own transaction; after each batch, the job records the last document
+ * it visited, and the next batch starts after it.  Jobs left unfinished by a restart resume from
+ * there (see resumeUnfinishedJobs).  If the server stops between a batch's commit and the update
+ * of the job's progress, that batch is visited again, but its documents no longer hold the old
+ * refName, so nothing is changed twice.
+ *
+ * A job is only queued once the transaction that renamed the term has committed; until then it is
+ * recorded as SUBMITTED, and if the transaction rolls back, it is deleted.  (The jobs table is
+ * written on its own connection, which doesn't take part in the repository's transaction, so this
+ * is as close as we get to recording the job in the same transaction.)  A SUBMITTED job found at
+ * startup was submitted by a transaction whose outcome we missed, and is resumed if the term's
+ * refName has changed since, or deleted otherwise.
+ *
+ * Each tenant's jobs run one at a time, on a thread of their own, in the order they were
+ * submitted, so that successive renames of the same term are applied in order.  The threads
+ * end when they have been idle for a while, and are stopped when the webapp stops (see
+ * shutdown); jobs they were running are resumed at the next startup.
+ */
+public class RefNameUpdateJob {
+    private static final Logger logger = LoggerFactory.getLogger(RefNameUpdateJob.class);
+
+    public enum State { SUBMITTED, PENDING, RUNNING, COMPLETED, FAILED }
+
+    private static final String JOBS_TABLE = "cs_refname_update_jobs";
+    private static final int BATCH_SIZE = 100;
+    private static final int MAX_LISTED_JOBS = 20;
+    private static final int MAX_ERROR_LENGTH = 2000;
+    private static final String ORDER_BY_CURSOR = CollectionSpaceClient.CORE_CREATED_AT + ", " + IQueryManager.NUXEO_UUID;
+
+    // Repositories in which we've created, or found, the jobs table
+    private static final Set<String> initializedRepositories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static final long IDLE_THREAD_SECONDS = 60;
+
+    // One single-threaded executor per tenant, created when a job is first queued
+    private static final ConcurrentMap<String, ThreadPoolExecutor> runners = new ConcurrentHashMap<String, ThreadPoolExecutor>();
+    private static volatile boolean shutDown = false;
+
+    private final String id;
+    private final String repositoryName;
+    private final String tenantId;
+    private final String itemCsid;
+    private final String refPropName;
+    private final String oldRefName;
+    private final String newRefName;
+    private State state;
+    private String cursorCreatedAt;
+    private String cursorUuid;
+    private int docsTotal = -1;
+    private int docsScanned;
+    private int refsUpdated;
+    private long createdAt;
+    private long updatedAt;
+    private long finishedAt;
+    private String error;
+
+    private RefNameUpdateJob(String id, String repositoryName, String tenantId, String itemCsid,
+            String refPropName, String oldRefName, String newRefName) {
+        this.id = id;
+        this.repositoryName = repositoryName;
+        this.tenantId = tenantId;
+        this.itemCsid = itemCsid;
+        this.refPropName = refPropName;
+        this.oldRefName = oldRefName;
+        this.newRefName = newRefName;
+    }
+
+    /**
+     * Records a job to replace the references to an authority item's old refName, and queues it.
+     *
+     * @param ctx the context of the authority item's update.
+     * @param itemCsid the CSID of the authority item.
+     * @param refPropName authRef or termRef, for authority items or vocabulary terms.
+     * @return the job's ID.
+     */
+    public static String submit(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemCsid,
+            String oldRefName, String newRefName, String refPropName) throws Exception {
+        RefNameUpdateJob job = new RefNameUpdateJob(UUID.randomUUID().toString(), ctx.getRepositoryName(),
+                ctx.getTenantId(), itemCsid, refPropName, oldRefName, newRefName);
+        job.createdAt = System.currentTimeMillis();
+        job.updatedAt = job.createdAt;
+
+        Transaction transaction = null;
+        try {
+            transaction = TransactionHelper.lookupTransactionManager().getTransaction();
+            if (transaction != null && transaction.getStatus() != Status.STATUS_ACTIVE) {
+                transaction = null;
+            }
+        } catch (Exception e) {
+            logger.debug("Could not look up the transaction of refName update job " + job.id + ": " + e.getMessage());
+        }
+        if (transaction != null) {
+            job.state = State.SUBMITTED;
+            job.insert();
+            try {
+                transaction.registerSynchronization(job.new AfterRename());
+            } catch (Exception e) {
+                job.delete();
+                throw e;
+            }
+        } else {
+            job.state = State.PENDING;
+            job.insert();
+            job.queue();
+        }
+        return job.id;
+    }
+
+    /**
+     * Queues the job once the transaction that renamed the term commits, or deletes it if the
+     * transaction rolls back.
+     */
+    private class AfterRename implements Synchronization {
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            try {
+                if (status == Status.STATUS_COMMITTED) {
+                    state = State.PENDING;
+                    updatedAt = System.currentTimeMillis();
+                    saveProgress();
+                    queue();
+                } else {
+                    delete();
+                }
+            } catch (Exception e) {
+                // Resolved at the next startup
+                logger.error("Could not " + (status == Status.STATUS_COMMITTED ? "queue" : "delete")
+                        + " refName update job " + id + " after its transaction ended", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the jobs' threads, when the webapp stops.  Jobs that are running, or queued, are
+     * resumed at the next startup.
+     */
+    public static void shutdown() {
+        shutDown = true;
+        for (ThreadPoolExecutor runner : runners.values()) {
+            runner.shutdownNow();
+        }
+        runners.clear();
+    }
+
+    /**
+     * Queues the jobs that were pending, or running, when the server last stopped, along with
+     * submitted ones whose rename turns out to have been committed.  Called once, at startup.
+     */
+    public static void resumeUnfinishedJobs() {
+        TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+        Set<String> repositoryNames = new LinkedHashSet<String>();
+        for (TenantBindingType tenantBinding : tReader.getTenantBindings().values()) {
+            for (RepositoryDomainType repositoryDomain : tenantBinding.getRepositoryDomain()) {
+                repositoryNames.add(ConfigUtils.getRepositoryName(tenantBinding, repositoryDomain.getName()));
+            }
+        }
+
+        for (String repositoryName : repositoryNames) {
+            List<RefNameUpdateJob> jobs = new ArrayList<RefNameUpdateJob>();
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = getConnection(repositoryName);
+                ps = conn.prepareStatement("SELECT * FROM " + JOBS_TABLE
+                        + " WHERE state IN (?, ?, ?) ORDER BY createdat");
+                ps.setString(1, State.SUBMITTED.name());
+                ps.setString(2, State.PENDING.name());
+                ps.setString(3, State.RUNNING.name());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        jobs.add(fromResultSet(repositoryName, rs));
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Could not read the unfinished refName update jobs in repository " + repositoryName, e);
+            } finally {
+                close(ps, conn);
+            }
+            for (RefNameUpdateJob job : jobs) {
+                if (job.state == State.SUBMITTED && job.resolveSubmitted() == false) {
+                    continue;
+                }
+                logger.info(String.format("Resuming refName update job %s, from '%s' to '%s', after %d documents.",
+                        job.id, job.oldRefName, job.newRefName, job.docsScanned));
+                job.queue();
+            }
+        }
+    }
+
+    /**
+     * Returns the status of the most recent jobs for an authority item, most recent first, as
+     * the content of a <refNameUpdates> element.
+     */
+    public static String getStatusXml(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String itemCsid) throws Exception {
+        StringBuilder result = new StringBuilder("<?xml version=\"1.0\"?><refNameUpdates>");
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(ctx.getRepositoryName());
+            ps = conn.prepareStatement("SELECT * FROM " + JOBS_TABLE
+                    + " WHERE tenantid = ? AND itemcsid = ? ORDER BY createdat DESC");
+            ps.setString(1, ctx.getTenantId());
+            ps.setString(2, itemCsid);
+            ps.setMaxRows(MAX_LISTED_JOBS);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    fromResultSet(ctx.getRepositoryName(), rs).toXml(result);
+                }
+            }
+        } finally {
+            close(ps, conn);
+        }
+        result.append("</refNameUpdates>");
+        return result.toString();
+    }
+
+    /*
+     * Finds out whether the transaction that submitted the job committed, by checking whether the
+     * term's refName has changed since; queues it if so, and deletes it otherwise.  Returns true
+     * if the job should be resumed.
+     */
+    private boolean resolveSubmitted() {
+        boolean committed = false;
+        try {
+            NuxeoClientEmbedded client = NuxeoConnectorEmbedded.getInstance().getClient();
+            CoreSessionInterface repoSession = client.openRepository(repositoryName);
+            try {
+                String query = "SELECT * FROM Document WHERE " + NuxeoUtils.getByNameWhereClause(itemCsid)
+                        + IQueryManager.SEARCH_QUALIFIER_AND + CollectionSpaceClient.CORE_TENANTID + " = " + NuxeoUtils.prepareStringLiteral(tenantId)
+                        + IQueryManager.SEARCH_QUALIFIER_AND + IQueryManager.NUXEO_IS_PROXY_FILTER
+                        + IQueryManager.SEARCH_QUALIFIER_AND + IQueryManager.NUXEO_IS_VERSION_FILTER;
+                DocumentModelList docList = repoSession.query(query, null, 1, 0, false);
+                if (docList.isEmpty() == false) {
+                    String refName = (String) docList.get(0).getPropertyValue(CollectionSpaceClient.CORE_REFNAME);
+                    committed = oldRefName.equals(refName) == false;
+                }
+            } finally {
+                client.releaseRepository(repoSession);
+            }
+
+            if (committed == true) {
+                state = State.PENDING;
+                updatedAt = System.currentTimeMillis();
+                saveProgress();
+            } else {
+                logger.info(String.format("Deleting refName update job %s, from '%s' to '%s', whose rename was not committed.",
+                        id, oldRefName, newRefName));
+                delete();
+            }
+        } catch (Exception e) {
+            logger.error("Could not resolve the submitted refName update job " + id, e);
+            committed = false;
+        }
+        return committed;
+    }
+
+    private void queue() {
+        if (shutDown == true) {
+            return; // Resumed at the next startup
+        }
+        getRunner(tenantId).execute(new Runnable() {
+            @Override
+            public void run() {
+                RefNameUpdateJob.this.run();
+            }
+        });
+    }
+
+    private static ThreadPoolExecutor getRunner(final String tenantId) {
+        ThreadPoolExecutor result = runners.get(tenantId);
+        if (result == null) {
+            ThreadPoolExecutor runner = new ThreadPoolExecutor(1, 1, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "refname-update-jobs-" + tenantId);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            runner.allowCoreThreadTimeOut(true);
+            result = runners.putIfAbsent(tenantId, runner);
+            if (result == null) {
+                result = runner;
+            }
+        }
+        return result;
+    }
+
+    private void run() {
+        long start = System.currentTimeMillis();
+        int docsScannedAtStart = docsScanned;
+        try {
+            state = State.RUNNING;
+            Map<String, ServiceBindingType> queriedServiceBindings = new HashMap<String, ServiceBindingType>();
+            Map<String, List<AuthRefConfigInfo>> authRefFieldsByService = new HashMap<String, List<AuthRefConfigInfo>>();
+            ArrayList<String> docTypes = new ArrayList<String>();
+            TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+            List<ServiceBindingType> serviceBindings = tReader.getServiceBindingsByType(tenantId,
+                    RefNameServiceUtils.getRefNameServiceTypes());
+            String whereClause = RefNameServiceUtils.computeWhereClauseForAuthorityRefDocs(oldRefName, refPropName,
+                    docTypes, serviceBindings, queriedServiceBindings, authRefFieldsByService);
+            if (whereClause == null) { // found no authRef fields - nothing to update
+                finish(State.COMPLETED, null);
+                return;
+            }
+
+            NuxeoClientEmbedded client = NuxeoConnectorEmbedded.getInstance().getClient();
+            boolean moreDocs = true;
+            while (moreDocs) {
+                int nRefsFoundThisBatch = 0;
+                DocumentModelList docList;
+                CoreSessionInterface repoSession = client.openRepository(repositoryName);
+                try {
+                    if (docsTotal < 0) {
+                        docsTotal = (int) repoSession.query(buildQuery(docTypes, whereClause, false), null, 1, 0, true).totalSize();
+                    }
+                    docList = repoSession.query(buildQuery(docTypes, whereClause, true), null, BATCH_SIZE, 0, false);
+                    if (docList.isEmpty() == false) {
+                        // Only match complete refNames - unless and until we decide how to resolve changes
+                        // to NPTs we will defer that and only change PTs or refNames as passed in.
+                        nRefsFoundThisBatch = RefNameServiceUtils.processRefObjsDocListForUpdate(docList, tenantId, oldRefName,
+                                queriedServiceBindings, authRefFieldsByService, newRefName);
+                        if (nRefsFoundThisBatch > 0) {
+                            DocumentModel[] docModelArray = new DocumentModel[docList.size()];
+                            repoSession.saveDocuments(docList.toArray(docModelArray));
+                            repoSession.save();
+                            // Moves the documents' index rows to the new refName once the batch commits
+                            for (DocumentModel docModel : docList) {
+                                RefObjsIndex.update(tenantId, repositoryName, docModel);
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    if (TransactionHelper.isTransactionActiveOrMarkedRollback() == true) {
+                        TransactionHelper.setTransactionRollbackOnly();
+                    }
+                    throw e;
+                } finally {
+                    client.releaseRepository(repoSession); // Commits, or rolls back, the batch
+                }
+
+                if (docList.isEmpty() == false) {
+                    DocumentModel lastDoc = docList.get(docList.size() - 1);
+                    cursorCreatedAt = GregorianCalendarDateTimeUtils.formatAsISO8601Timestamp(
+                            (GregorianCalendar) lastDoc.getPropertyValue(CollectionSpaceClient.CORE_CREATED_AT));
+                    cursorUuid = lastDoc.getId();
+                    docsScanned += docList.size();
+                    refsUpdated += nRefsFoundThisBatch;
+                }
+                moreDocs = docList.size() == BATCH_SIZE;
+                updatedAt = System.currentTimeMillis();
+                saveProgress();
+                if (logger.isDebugEnabled() == true) {
+                    logger.debug(String.format("refName update job %s: %d of about %d documents scanned, %d references updated.",
+                            id, docsScanned, docsTotal, refsUpdated));
+                }
+                if (shutDown == true) {
+                    logger.info(String.format("Stopped refName update job %s after %d documents; it resumes at the next startup.",
+                            id, docsScanned));
+                    return;
+                }
+            }
+            finish(State.COMPLETED, null);
+            logger.info(String.format("refName update job %s replaced %d references to '%s' in %d documents, in %d ms.",
+                    id, refsUpdated, oldRefName, docsScanned - docsScannedAtStart, System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            if (shutDown == true) {
+                logger.info(String.format("refName update job %s was interrupted by the shutdown; it resumes at the next startup.", id));
+                return;
+            }
+            logger.error(String.format("refName update job %s, from '%s' to '%s', failed after %d documents.",
+                    id, oldRefName, newRefName, docsScanned), e);
+            finish(State.FAILED, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    /*
+     * The documents that may reference the old refName, after the job's cursor if 'fromCursor' is set.
+     */
+    private String buildQuery(List<String> docTypes, String whereClause, boolean fromCursor) {
+        StringBuilder query = new StringBuilder("SELECT * FROM ");
+        boolean fFirst = true;
+        for (String docType : docTypes) {
+            if (fFirst) {
+                fFirst = false;
+            } else {
+                query.append(",");
+            }
+            query.append(docType);
+        }
+        query.append(" WHERE " + CollectionSpaceClient.CORE_TENANTID + " = " + NuxeoUtils.prepareStringLiteral(tenantId));
+        query.append(IQueryManager.SEARCH_QUALIFIER_AND + "(" + whereClause + ")");
+        query.append(IQueryManager.SEARCH_QUALIFIER_AND + IQueryManager.NUXEO_IS_PROXY_FILTER);
+        query.append(IQueryManager.SEARCH_QUALIFIER_AND + IQueryManager.NUXEO_IS_VERSION_FILTER);
+        if (fromCursor == true) {
+            if (cursorUuid != null) {
+                String createdAt = "TIMESTAMP " + NuxeoUtils.prepareStringLiteral(cursorCreatedAt);
+                query.append(IQueryManager.SEARCH_QUALIFIER_AND + "(" + CollectionSpaceClient.CORE_CREATED_AT + " > " + createdAt
+                        + " OR (" + CollectionSpaceClient.CORE_CREATED_AT + " = " + createdAt
+                        + IQueryManager.SEARCH_QUALIFIER_AND + IQueryManager.NUXEO_UUID + " > " + NuxeoUtils.prepareStringLiteral(cursorUuid) + "))");
+            }
+            query.append(" ORDER BY " + ORDER_BY_CURSOR);
+        }
+        return query.toString();
+    }
+
+    private void finish(State finalState, String finalError) {
+        state = finalState;
+        error = finalError != null && finalError.length() > MAX_ERROR_LENGTH ? finalError.substring(0, MAX_ERROR_LENGTH) : finalError;
+        updatedAt = System.currentTimeMillis();
+        finishedAt = updatedAt;
+        try {
+            saveProgress();
+        } catch (Exception e) {
+            logger.error("Could not record the end of refName update job " + id, e);
+        }
+    }
+
+    private void insert() throws Exception {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(repositoryName);
+            ps = conn.prepareStatement("INSERT INTO " + JOBS_TABLE
+                    + " (id, tenantid, itemcsid, refprop, oldrefname, newrefname, state, docstotal, docsscanned, refsupdated, createdat, updatedat, finishedat)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0, 0, ?, ?, 0)");
+            ps.setString(1, id);
+            ps.setString(2, tenantId);
+            ps.setString(3, itemCsid);
+            ps.setString(4, refPropName);
+            ps.setString(5, oldRefName);
+            ps.setString(6, newRefName);
+            ps.setString(7, state.name());
+            ps.setInt(8, docsTotal);
+            ps.setLong(9, createdAt);
+            ps.setLong(10, updatedAt);
+            ps.executeUpdate();
+        } finally {
+            close(ps, conn);
+        }
+    }
+
+    private void delete() throws Exception {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(repositoryName);
+            ps = conn.prepareStatement("DELETE FROM " + JOBS_TABLE + " WHERE id = ?");
+            ps.setString(1, id);
+            ps.executeUpdate();
+        } finally {
+            close(ps, conn);
+        }
+    }
+
+    private void saveProgress() throws Exception {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = getConnection(repositoryName);
+            ps = conn.prepareStatement("UPDATE " + JOBS_TABLE
+                    + " SET state = ?, cursorcreatedat = ?, cursoruuid = ?, docstotal = ?, docsscanned = ?, refsupdated = ?,"
+                    + " updatedat = ?, finishedat = ?, error = ? WHERE id = ?");
+            ps.setString(1, state.name());
+            ps.setString(2, cursorCreatedAt);
+            ps.setString(3, cursorUuid);
+            ps.setInt(4, docsTotal);
+            ps.setInt(5, docsScanned);
+            ps.setInt(6, refsUpdated);
+            ps.setLong(7, updatedAt);
+            ps.setLong(8, finishedAt);
+            ps.setString(9, error);
+            ps.setString(10, id);
+            ps.executeUpdate();
+        } finally {
+            close(ps, conn);
+        }
+    }
+
+    private static RefNameUpdateJob fromResultSet(String repositoryName, ResultSet rs) throws SQLException {
+        RefNameUpdateJob result = new RefNameUpdateJob(rs.getString("id"), repositoryName, rs.getString("tenantid"),
+                rs.getString("itemcsid"), rs.getString("refprop"), rs.getString("oldrefname"), rs.getString("newrefname"));
+        result.state = State.valueOf(rs.getString("state"));
+        result.cursorCreatedAt = rs.getString("cursorcreatedat");
+        result.cursorUuid = rs.getString("cursoruuid");
+        result.docsTotal = rs.getInt("docstotal");
+        result.docsScanned = rs.getInt("docsscanned");
+        result.refsUpdated = rs.getInt("refsupdated");
+        result.createdAt = rs.getLong("createdat");
+        result.updatedAt = rs.getLong("updatedat");
+        result.finishedAt = rs.getLong("finishedat");
+        result.error = rs.getString("error");
+        return result;
+    }
+
+    private void toXml(StringBuilder dump) {
+        dump.append("<refNameUpdate>");
+        dump.append("<jobId>" + id + "</jobId>");
+        dump.append("<state>" + state + "</state>");
+        dump.append("<oldRefName>" + escape(oldRefName) + "</oldRefName>");
+        dump.append("<newRefName>" + escape(newRefName) + "</newRefName>");
+        if (docsTotal >= 0) {
+            dump.append("<docsTotal>" + docsTotal + "</docsTotal>");
+        }
+        dump.append("<docsScanned>" + docsScanned + "</docsScanned>");
+        dump.append("<refsUpdated>" + refsUpdated + "</refsUpdated>");
+        dump.append("<createdAt>" + formatTime(createdAt) + "</createdAt>");
+        dump.append("<updatedAt>" + formatTime(updatedAt) + "</updatedAt>");
+        if (finishedAt > 0) {
+            dump.append("<finishedAt>" + formatTime(finishedAt) + "</finishedAt>");
+        } else if (state == State.RUNNING && docsScanned > 0 && docsTotal > docsScanned) {
+            // A rough estimate: the documents scanned so far, at the rate they've been scanned
+            long elapsed = updatedAt - createdAt;
+            long remainingMillis = elapsed * (docsTotal - docsScanned) / docsScanned;
+            dump.append("<estimatedSecondsRemaining>" + (remainingMillis / 1000) + "</estimatedSecondsRemaining>");
+        }
+        if (error != null) {
+            dump.append("<error>" + escape(error) + "</error>");
+        }
+        dump.append("</refNameUpdate>");
+    }
+
+    private static String formatTime(long millis) {
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(millis);
+        return GregorianCalendarDateTimeUtils.formatAsISO8601Timestamp(calendar);
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static Connection getConnection(String repositoryName) throws Exception {
+        String cspaceInstanceId = ServiceMain.getInstance().getCspaceInstanceId();
+        Connection result = JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId);
+        if (initializedRepositories.contains(repositoryName) == false) {
+            createTable(result);
+            initializedRepositories.add(repositoryName);
+        }
+        return result;
+    }
+
+    private static void createTable(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getTables(null, null, JOBS_TABLE, null)) {
+            if (rs.next() == true) {
+                return;
+            }
+        }
+        logger.info("Creating the refName update jobs table.");
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("CREATE TABLE " + JOBS_TABLE + " ("
+                    + "id VARCHAR(36) NOT NULL PRIMARY KEY, "
+                    + "tenantid VARCHAR(255) NOT NULL, "
+                    + "itemcsid VARCHAR(36) NOT NULL, "
+                    + "refprop VARCHAR(32) NOT NULL, "
+                    + "oldrefname VARCHAR(1000) NOT NULL, "
+                    + "newrefname VARCHAR(1000) NOT NULL, "
+                    + "state VARCHAR(16) NOT NULL, "
+                    + "cursorcreatedat VARCHAR(32), "
+                    + "cursoruuid VARCHAR(36), "
+                    + "docstotal INTEGER NOT NULL, "
+                    + "docsscanned INTEGER NOT NULL, "
+                    + "refsupdated INTEGER NOT NULL, "
+                    + "createdat BIGINT NOT NULL, "
+                    + "updatedat BIGINT NOT NULL, "
+                    + "finishedat BIGINT NOT NULL, "
+                    + "error VARCHAR(" + MAX_ERROR_LENGTH + "))");
+            stmt.executeUpdate("CREATE INDEX " + JOBS_TABLE + "_item_idx ON " + JOBS_TABLE + " (tenantid, itemcsid)");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static void close(Statement stmt, Connection conn) {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+            if (conn != null) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            logger.debug("SQL Exception closing statement/connection in RefNameUpdateJob: " + e.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,801 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.common.vocabulary;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.collectionspace.services.client.CollectionSpaceClient;
+import org.collectionspace.services.client.IQueryManager;
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.api.RefNameUtils;
+import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.common.config.ConfigUtils;
+import org.collectionspace.services.common.config.TenantBindingConfigReaderImpl;
+import org.collectionspace.services.common.config.TenantBindingUtils;
+import org.collectionspace.services.common.context.ServiceBindingUtils;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthRefConfigInfo;
+import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthRefInfo;
+import org.collectionspace.services.config.service.ServiceBindingType;
+import org.collectionspace.services.config.tenant.TenantBindingType;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.collectionspace.services.nuxeo.client.java.NuxeoClientEmbedded;
+import org.collectionspace.services.nuxeo.client.java.NuxeoConnectorEmbedded;
+import org.collectionspace.services.nuxeo.util.NuxeoUtils;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A reverse index of authority and vocabulary term references: for each refName (without its
+ * display name), the documents that reference it, and in which field.  It lets the refObjs
+ * ("used by") lists find the referencing documents directly, rather than via a full text
+ * keyword search over every object and procedure, followed by a scan of each matching
+ * document's properties to weed out the false positives.
+ *
+ * The index is kept in tables in the repository's database, and is only used for tenants
+ * whose bindings set the 'refObjsIndex' property to true.  The document handlers replace a
+ * document's rows each time it is created or updated, and remove them when it is deleted.
+ * The first time the index is needed for a tenant, or after an import, it is built in the
+ * background from the existing documents; until then, lookups return null and callers fall
+ * back to the keyword search.
+ *
+ * Code that saves authRef or termRef fields without going through the document handlers
+ * (batch jobs, the refName update jobs, etc.) must call update(tenantId, repositoryName, docModel)
+ * for each document it saves, or invalidate(tenantId, repositoryName) after writing documents
+ * in bulk.  Otherwise lookups miss, or keep returning, the references it changed.
+ *
+ * A document's rows are written once the repository transaction that saved it commits, and
+ * not at all if it rolls back.  If they can't be written then, the index is marked out of date,
+ * and rebuilt, rather than left missing the document's references.  Each document's rows are
+ * stamped with the document's updatedAt time, so that rows read by a rebuild can't replace
+ * newer ones written since, and each build of the index with the generation it started from,
+ * so that a build that overlapped an invalidation doesn't mark the index as up to date.
+ */
+public class RefObjsIndex {
+    private static final Logger logger = LoggerFactory.getLogger(RefObjsIndex.class);
+
+    public static final String REFOBJS_INDEX_PROPERTY = "refObjsIndex";
+
+    static final String INDEX_TABLE = "cs_refobjs_index";
+    static final String DOCS_TABLE = "cs_refobjs_index_docs";
+    static final String BUILDS_TABLE = "cs_refobjs_index_builds";
+    private static final String KEY_SEPARATOR = "|";
+    private static final int REBUILD_PAGE_SIZE = 200;
+    private static final int MAX_WRITE_ATTEMPTS = 2;
+    // Lookups of more documents than this fall back to the keyword search, since the IDs are
+    // passed to the repository in the query
+    static final int MAX_INDEXED_DOC_IDS = 5000;
+    // How long we trust our note that an index is built, before checking again (another server may have invalidated it)
+    private static final long BUILT_CHECK_MILLIS = 60 * 1000;
+    // The version of a deleted document's rows, so that a rebuild that read it before it was deleted can't put them back
+    static final long DELETED_VERSION = Long.MAX_VALUE;
+    private static final String[] REF_PROP_NAMES = {ServiceBindingUtils.AUTH_REF_PROP, ServiceBindingUtils.TERM_REF_PROP};
+
+    // Repositories in which we've created, or found, the index tables
+    private static final Set<String> initializedRepositories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // (tenant, repository) pairs whose index has been completely built, and when we last checked
+    private static final ConcurrentMap<String, Long> builtIndexes = new ConcurrentHashMap<String, Long>();
+    // (tenant, repository) pairs whose index is being built
+    private static final Set<String> rebuildingIndexes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * A row of the index: a reference, from a field of a document, to a term.
+     */
+    static class Entry {
+        final String refName;
+        final String refPropName;
+        final String docType;
+        final String field;
+
+        Entry(String refName, String refPropName, String docType, String field) {
+            this.refName = refName;
+            this.refPropName = refPropName;
+            this.docType = docType;
+            this.field = field;
+        }
+    }
+
+    /**
+     * Whether the tenant's bindings ask for the index.
+     */
+    public static boolean isEnabled(String tenantId) {
+        TenantBindingType tenantBinding = ServiceMain.getInstance().getTenantBindingConfigReader().getTenantBinding(tenantId);
+        return tenantBinding != null
+                && Tools.isTrue(TenantBindingUtils.getPropertyValue(tenantBinding, REFOBJS_INDEX_PROPERTY));
+    }
+
+    /**
+     * Returns the Nuxeo IDs of the documents referencing the authority or vocabulary term.  Returns
+     * null if the index is disabled for the tenant, or has not been built yet, or if more than
+     * MAX_INDEXED_DOC_IDS documents reference the term.
+     *
+     * The IDs may include those of documents that have since been deleted, or whose save was
+     * rolled back, so callers fetch the documents through the repository, with the usual filters.
+     *
+     * @param refName the refName of the term, with or without its display name.
+     * @param refPropName authRef or termRef, for authority items or vocabulary terms.
+     */
+    public static List<String> findReferencingDocIds(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            String refName, String refPropName) {
+        String tenantId = ctx.getTenantId();
+        String repositoryName = ctx.getRepositoryName();
+        if (isEnabled(tenantId) == false || isBuilt(tenantId, repositoryName) == false) {
+            return null;
+        }
+
+        List<String> result = null;
+        Connection conn = null;
+        try {
+            conn = getConnection(repositoryName);
+            result = readDocIds(conn, tenantId, RefNameUtils.stripAuthorityTermDisplayName(refName), refPropName);
+        } catch (Exception e) {
+            logger.warn("Could not read the refObjs index; falling back to a keyword search: " + e.getMessage());
+        } finally {
+            close(null, conn);
+        }
+
+        return result;
+    }
+
+    /**
+     * Replaces the index entries for a document that has been created or updated, once the
+     * current transaction commits.
+     */
+    public static void update(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, DocumentModel docModel) {
+        String tenantId = ctx.getTenantId();
+        if (isEnabled(tenantId) == false) {
+            return;
+        }
+        update(tenantId, ctx.getRepositoryName(), ctx.getServiceBinding(), docModel);
+    }
+
+    /**
+     * Replaces the index entries for a document saved outside the document handlers, once the
+     * current transaction commits.  Call it while the document's repository session is still
+     * open, for each document saved in that session.
+     */
+    public static void update(String tenantId, String repositoryName, DocumentModel docModel) {
+        if (isEnabled(tenantId) == false) {
+            return;
+        }
+        TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+        String docType = ServiceBindingUtils.getUnqualifiedTenantDocType(docModel.getDocumentType().getName());
+        ServiceBindingType sb = tReader.getServiceBindingForDocType(tenantId, docType);
+        if (sb == null) {
+            logger.warn(String.format("Could not find the service binding of document %s, of type %s, for the refObjs index.",
+                    docModel.getId(), docType));
+            invalidate(tenantId, repositoryName);
+            return;
+        }
+        update(tenantId, repositoryName, sb, docModel);
+    }
+
+    private static void update(String tenantId, String repositoryName, ServiceBindingType sb, DocumentModel docModel) {
+        // Read the references now, while the document's session is open
+        List<Entry> entries;
+        try {
+            entries = getEntries(sb, docModel);
+        } catch (Exception e) {
+            logger.warn(String.format("Could not read the references of document %s for the refObjs index: %s",
+                    docModel.getId(), e.getMessage()));
+            invalidate(tenantId, repositoryName);
+            return;
+        }
+        afterCommit(new IndexWrite(tenantId, repositoryName, docModel.getId(), entries, getVersion(docModel)));
+    }
+
+    /**
+     * Removes the index entries for a document that is being deleted, once the current
+     * transaction commits.
+     */
+    public static void remove(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String docId) {
+        String tenantId = ctx.getTenantId();
+        if (isEnabled(tenantId) == false) {
+            return;
+        }
+        afterCommit(new IndexWrite(tenantId, ctx.getRepositoryName(), docId, null, DELETED_VERSION));
+    }
+
+    /**
+     * Marks the tenant's index as out of date, after documents have been written in bulk without
+     * going through the document handlers (e.g. by an import), so that it's rebuilt before
+     * it is next used.
+     */
+    public static void invalidate(String tenantId, String repositoryName) {
+        if (isEnabled(tenantId) == false) {
+            return;
+        }
+        Connection conn = null;
+        try {
+            conn = getConnection(repositoryName);
+            markOutOfDate(conn, tenantId);
+        } catch (Exception e) {
+            logger.warn("Could not mark the refObjs index as out of date: " + e.getMessage());
+        } finally {
+            builtIndexes.remove(tenantId + KEY_SEPARATOR + repositoryName);
+            close(null, conn);
+        }
+    }
+
+    /*
+     * Writes the index entries of a document when the transaction that saved it commits, or
+     * right away if there's no transaction.
+     */
+    private static void afterCommit(IndexWrite write) {
+        try {
+            Transaction transaction = TransactionHelper.lookupTransactionManager().getTransaction();
+            if (transaction != null && transaction.getStatus() == Status.STATUS_ACTIVE) {
+                transaction.registerSynchronization(write);
+                return;
+            }
+        } catch (Exception e) {
+            logger.debug("Could not wait for the current transaction to commit before updating the refObjs index: " + e.getMessage());
+        }
+        write.apply();
+    }
+
+    /**
+     * Replaces, or removes, the index entries of a document once the transaction that saved it
+     * has committed.  If that fails, the index is marked out of date.
+     */
+    static class IndexWrite implements Synchronization {
+        final String tenantId;
+        final String repositoryName;
+        final String docId;
+        final List<Entry> entries; // null to remove the document
+        final long version;
+
+        IndexWrite(String tenantId, String repositoryName, String docId, List<Entry> entries, long version) {
+            this.tenantId = tenantId;
+            this.repositoryName = repositoryName;
+            this.docId = docId;
+            this.entries = entries;
+            this.version = version;
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+                apply();
+            } else if (logger.isTraceEnabled() == true) {
+                logger.trace("Skipped the refObjs index update of document " + docId + " after a rollback.");
+            }
+        }
+
+        void apply() {
+            Connection conn = null;
+            try {
+                conn = openConnection();
+                conn.setAutoCommit(false);
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        writeEntries(conn, tenantId, docId, entries, version);
+                        conn.commit();
+                        break;
+                    } catch (SQLException e) {
+                        rollback(conn);
+                        if (attempt >= MAX_WRITE_ATTEMPTS) {
+                            throw e;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn(String.format("Could not update the refObjs index for document %s, so it will be rebuilt: %s",
+                        docId, e.getMessage()));
+                rollback(conn);
+                close(null, conn);
+                conn = null;
+                markOutOfDate();
+            } finally {
+                close(null, conn);
+            }
+        }
+
+        Connection openConnection() throws Exception {
+            return getConnection(repositoryName);
+        }
+
+        private void markOutOfDate() {
+            builtIndexes.remove(tenantId + KEY_SEPARATOR + repositoryName);
+            Connection conn = null;
+            try {
+                conn = openConnection();
+                RefObjsIndex.markOutOfDate(conn, tenantId);
+            } catch (Exception e) {
+                logger.error("Could not mark the refObjs index as out of date, after failing to update it: " + e.getMessage());
+            } finally {
+                close(null, conn);
+            }
+        }
+    }
+
+    private static boolean isBuilt(String tenantId, String repositoryName) {
+        String key = tenantId + KEY_SEPARATOR + repositoryName;
+        Long checkedAt = builtIndexes.get(key);
+        long now = System.currentTimeMillis();
+        if (checkedAt != null && now - checkedAt < BUILT_CHECK_MILLIS) {
+            return true;
+        }
+
+        Connection conn = null;
+        boolean built = false;
+        try {
+            conn = getConnection(repositoryName);
+            built = readBuilt(conn, tenantId);
+        } catch (Exception e) {
+            logger.warn("Could not read the refObjs index state: " + e.getMessage());
+            return false;
+        } finally {
+            close(null, conn);
+        }
+
+        if (built == true) {
+            builtIndexes.put(key, now);
+        } else {
+            builtIndexes.remove(key);
+            if (rebuildingIndexes.add(key) == true) {
+                startRebuild(tenantId, repositoryName);
+            }
+        }
+        return built;
+    }
+
+    private static void startRebuild(final String tenantId, final String repositoryName) {
+        Thread rebuildThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuild(tenantId, repositoryName);
+                } catch (Exception e) {
+                    logger.error(String.format("Could not build the refObjs index for tenant %s in repository %s",
+                            tenantId, repositoryName), e);
+                } finally {
+                    rebuildingIndexes.remove(tenantId + KEY_SEPARATOR + repositoryName);
+                }
+            }
+        }, "refobjs-index-" + tenantId);
+        rebuildThread.setDaemon(true);
+        rebuildThread.start();
+    }
+
+    /*
+     * Indexes every document, in every service with authRef or termRef fields, that the tenant
+     * keeps in the repository.  Each page of documents is read in its own repository session,
+     * so that a large repository doesn't run into the transaction timeout.
+     */
+    private static void rebuild(String tenantId, String repositoryName) throws Exception {
+        logger.info(String.format("Building the refObjs index for tenant %s in repository %s...", tenantId, repositoryName));
+        long start = System.currentTimeMillis();
+        int docCount = 0;
+
+        long generation;
+        Connection conn = null;
+        try {
+            conn = getConnection(repositoryName);
+            generation = startBuild(conn, tenantId);
+        } finally {
+            close(null, conn);
+        }
+
+        TenantBindingConfigReaderImpl tReader = ServiceMain.getInstance().getTenantBindingConfigReader();
+        TenantBindingType tenantBinding = tReader.getTenantBinding(tenantId);
+        List<ServiceBindingType> serviceBindings = tReader.getServiceBindingsByType(tenantId,
+                ServiceBindingUtils.getCommonServiceTypes(true));
+        NuxeoClientEmbedded client = NuxeoConnectorEmbedded.getInstance().getClient();
+        for (ServiceBindingType sb : serviceBindings) {
+            if (repositoryName.equals(ConfigUtils.getRepositoryName(tenantBinding, sb.getRepositoryDomain())) == false
+                    || getConfiguredRefs(sb).isEmpty() == true) {
+                continue;
+            }
+            String docType = NuxeoUtils.getTenantQualifiedDocType(tenantId, sb.getObject().getName());
+            String query = "SELECT * FROM " + docType
+                    + " WHERE " + CollectionSpaceClient.CORE_TENANTID + " = " + NuxeoUtils.prepareStringLiteral(tenantId)
+                    + " AND " + IQueryManager.NUXEO_IS_PROXY_FILTER
+                    + " AND " + IQueryManager.NUXEO_IS_VERSION_FILTER
+                    + " ORDER BY " + IQueryManager.NUXEO_UUID;
+            for (int offset = 0; ; offset += REBUILD_PAGE_SIZE) {
+                List<String> docIds = new ArrayList<String>();
+                List<List<Entry>> docEntries = new ArrayList<List<Entry>>();
+                List<Long> docVersions = new ArrayList<Long>();
+                int pageDocCount;
+                CoreSessionInterface repoSession = client.openRepository(repositoryName);
+                try {
+                    DocumentModelList docList = repoSession.query(query, null, REBUILD_PAGE_SIZE, offset, false);
+                    for (DocumentModel docModel : docList) {
+                        docIds.add(docModel.getId());
+                        docEntries.add(getEntries(sb, docModel));
+                        docVersions.add(getVersion(docModel));
+                    }
+                    pageDocCount = docList.size();
+                } finally {
+                    client.releaseRepository(repoSession);
+                }
+
+                conn = null;
+                try {
+                    conn = getConnection(repositoryName);
+                    conn.setAutoCommit(false);
+                    for (int attempt = 1; ; attempt++) {
+                        try {
+                            for (int i = 0; i < docIds.size(); i++) {
+                                // Documents saved since we read them keep their newer rows
+                                writeEntries(conn, tenantId, docIds.get(i), docEntries.get(i), docVersions.get(i));
+                            }
+                            conn.commit();
+                            break;
+                        } catch (SQLException e) {
+                            rollback(conn);
+                            if (attempt >= MAX_WRITE_ATTEMPTS) {
+                                throw e;
+                            }
+                        }
+                    }
+                } finally {
+                    close(null, conn);
+                }
+                docCount += pageDocCount;
+                if (pageDocCount < REBUILD_PAGE_SIZE) {
+                    break;
+                }
+            }
+        }
+
+        boolean built;
+        conn = null;
+        try {
+            conn = getConnection(repositoryName);
+            built = finishBuild(conn, tenantId, generation);
+        } finally {
+            close(null, conn);
+        }
+        if (built == true) {
+            builtIndexes.put(tenantId + KEY_SEPARATOR + repositoryName, System.currentTimeMillis());
+            logger.info(String.format("Built the refObjs index for tenant %s in repository %s from %d documents in %d ms.",
+                    tenantId, repositoryName, docCount, System.currentTimeMillis() - start));
+        } else {
+            // The next lookup starts another build
+            logger.info(String.format("The refObjs index for tenant %s in repository %s was invalidated while it was being built.",
+                    tenantId, repositoryName));
+        }
+    }
+
+    private static List<AuthRefConfigInfo> getConfiguredRefs(ServiceBindingType sb) {
+        List<AuthRefConfigInfo> result = new ArrayList<AuthRefConfigInfo>();
+        for (String refPropName : REF_PROP_NAMES) {
+            for (String spec : ServiceBindingUtils.getAllPartsPropertyValues(sb, refPropName, ServiceBindingUtils.QUALIFIED_PROP_NAMES)) {
+                result.add(new AuthRefConfigInfo(spec));
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The references held by a document, in the fields its service binding lists.
+     */
+    private static List<Entry> getEntries(ServiceBindingType sb, DocumentModel docModel) {
+        List<Entry> result = new ArrayList<Entry>();
+        String docType = sb.getObject().getName();
+        for (String refPropName : REF_PROP_NAMES) {
+            List<AuthRefConfigInfo> refsInfo = new ArrayList<AuthRefConfigInfo>();
+            for (String spec : ServiceBindingUtils.getAllPartsPropertyValues(sb, refPropName, ServiceBindingUtils.QUALIFIED_PROP_NAMES)) {
+                refsInfo.add(new AuthRefConfigInfo(spec));
+            }
+            if (refsInfo.isEmpty()) {
+                continue;
+            }
+            List<AuthRefInfo> foundProps = new ArrayList<AuthRefInfo>();
+            RefNameServiceUtils.findAuthRefPropertiesInDoc(docModel, refsInfo, null, foundProps);
+            for (AuthRefInfo ari : foundProps) {
+                String refName;
+                try {
+                    refName = RefNameUtils.stripAuthorityTermDisplayName((String) ari.getProperty().getValue());
+                } catch (Exception e) {
+                    continue; // Not a valid refName, so it can't be looked up
+                }
+                result.add(new Entry(refName, refPropName, docType, ari.getQualifiedDisplayName()));
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The version of a document's rows: its updatedAt time, or 0 if it has none.
+     */
+    private static long getVersion(DocumentModel docModel) {
+        long result = 0;
+        try {
+            Calendar updatedAt = (Calendar) docModel.getPropertyValue(CollectionSpaceClient.CORE_UPDATED_AT);
+            if (updatedAt != null) {
+                result = updatedAt.getTimeInMillis();
+            }
+        } catch (Exception e) {
+            logger.trace("Could not read the updatedAt time of document " + docModel.getId());
+        }
+        return result;
+    }
+
+    static List<String> readDocIds(Connection conn, String tenantId, String strippedRefName, String refPropName)
+            throws SQLException {
+        List<String> result = new ArrayList<String>();
+        PreparedStatement ps = conn.prepareStatement("SELECT DISTINCT docid FROM " + INDEX_TABLE
+                + " WHERE tenantid = ? AND refname = ? AND refprop = ? ORDER BY docid");
+        try {
+            ps.setString(1, tenantId);
+            ps.setString(2, strippedRefName);
+            ps.setString(3, refPropName);
+            ps.setMaxRows(MAX_INDEXED_DOC_IDS + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString(1));
+                }
+            }
+        } finally {
+            ps.close();
+        }
+        return result.size() > MAX_INDEXED_DOC_IDS ? null : result;
+    }
+
+    /*
+     * Replaces a document's rows with the given ones, or removes them if 'entries' is null,
+     * unless the rows already there are from a newer version of the document.  Returns false
+     * in that case.  The caller commits.
+     */
+    static boolean writeEntries(Connection conn, String tenantId, String docId, List<Entry> entries, long version)
+            throws SQLException {
+        // Claim the document's row first, which also locks it until we commit
+        PreparedStatement ps = conn.prepareStatement("UPDATE " + DOCS_TABLE
+                + " SET version = ? WHERE tenantid = ? AND docid = ? AND version <= ?");
+        try {
+            ps.setLong(1, version);
+            ps.setString(2, tenantId);
+            ps.setString(3, docId);
+            ps.setLong(4, version);
+            if (ps.executeUpdate() == 0) {
+                ps.close();
+                ps = conn.prepareStatement("SELECT version FROM " + DOCS_TABLE + " WHERE tenantid = ? AND docid = ?");
+                ps.setString(1, tenantId);
+                ps.setString(2, docId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next() == true) {
+                        return false; // Newer rows are already there
+                    }
+                }
+                ps.close();
+                // If another writer inserts it first, this fails, and the caller tries again
+                ps = conn.prepareStatement("INSERT INTO " + DOCS_TABLE + " (tenantid, docid, version) VALUES (?, ?, ?)");
+                ps.setString(1, tenantId);
+                ps.setString(2, docId);
+                ps.setLong(3, version);
+                ps.executeUpdate();
+            }
+        } finally {
+            ps.close();
+        }
+
+        ps = conn.prepareStatement("DELETE FROM " + INDEX_TABLE + " WHERE tenantid = ? AND docid = ?");
+        try {
+            ps.setString(1, tenantId);
+            ps.setString(2, docId);
+            ps.executeUpdate();
+        } finally {
+            ps.close();
+        }
+
+        if (entries != null && entries.isEmpty() == false) {
+            ps = conn.prepareStatement("INSERT INTO " + INDEX_TABLE
+                    + " (tenantid, refname, refprop, docid, doctype, field) VALUES (?, ?, ?, ?, ?, ?)");
+            try {
+                for (Entry entry : entries) {
+                    ps.setString(1, tenantId);
+                    ps.setString(2, entry.refName);
+                    ps.setString(3, entry.refPropName);
+                    ps.setString(4, docId);
+                    ps.setString(5, entry.docType);
+                    ps.setString(6, entry.field);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            } finally {
+                ps.close();
+            }
+        }
+        return true;
+    }
+
+    static boolean readBuilt(Connection conn, String tenantId) throws SQLException {
+        boolean result = false;
+        PreparedStatement ps = conn.prepareStatement("SELECT built FROM " + BUILDS_TABLE + " WHERE tenantid = ?");
+        try {
+            ps.setString(1, tenantId);
+            try (ResultSet rs = ps.executeQuery()) {
+                result = rs.next() && rs.getInt(1) == 1;
+            }
+        } finally {
+            ps.close();
+        }
+        return result;
+    }
+
+    /*
+     * Records the start of a build, and returns the generation of the index it builds.
+     */
+    static long startBuild(Connection conn, String tenantId) throws SQLException {
+        Long result = null;
+        PreparedStatement ps = conn.prepareStatement("SELECT generation FROM " + BUILDS_TABLE + " WHERE tenantid = ?");
+        try {
+            ps.setString(1, tenantId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() == true) {
+                    result = rs.getLong(1);
+                }
+            }
+        } finally {
+            ps.close();
+        }
+        if (result == null) {
+            result = 0L;
+            ps = conn.prepareStatement("INSERT INTO " + BUILDS_TABLE + " (tenantid, generation, built) VALUES (?, ?, 0)");
+            try {
+                ps.setString(1, tenantId);
+                ps.setLong(2, result);
+                ps.executeUpdate();
+            } finally {
+                ps.close();
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Marks the index as built, unless it has been invalidated since the build started.
+     */
+    static boolean finishBuild(Connection conn, String tenantId, long generation) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("UPDATE " + BUILDS_TABLE
+                + " SET built = 1 WHERE tenantid = ? AND generation = ?");
+        try {
+            ps.setString(1, tenantId);
+            ps.setLong(2, generation);
+            return ps.executeUpdate() == 1;
+        } finally {
+            ps.close();
+        }
+    }
+
+    static void markOutOfDate(Connection conn, String tenantId) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("UPDATE " + BUILDS_TABLE
+                + " SET generation = generation + 1, built = 0 WHERE tenantid = ?");
+        try {
+            ps.setString(1, tenantId);
+            ps.executeUpdate();
+        } finally {
+            ps.close();
+        }
+    }
+
+    private static Connection getConnection(String repositoryName) throws Exception {
+        String cspaceInstanceId = ServiceMain.getInstance().getCspaceInstanceId();
+        Connection result = JDBCTools.getConnection(JDBCTools.NUXEO_DATASOURCE_NAME, repositoryName, cspaceInstanceId);
+        if (initializedRepositories.contains(repositoryName) == false) {
+            createTables(result);
+            initializedRepositories.add(repositoryName);
+        }
+        return result;
+    }
+
+    static void createTables(Connection conn) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            if (tableExists(conn, INDEX_TABLE) == false) {
+                logger.info("Creating the refObjs index table.");
+                stmt.executeUpdate("CREATE TABLE " + INDEX_TABLE + " ("
+                        + "tenantid VARCHAR(255) NOT NULL, "
+                        + "refname VARCHAR(1000) NOT NULL, "
+                        + "refprop VARCHAR(32) NOT NULL, "
+                        + "docid VARCHAR(36) NOT NULL, "
+                        + "doctype VARCHAR(255) NOT NULL, "
+                        + "field VARCHAR(1000) NOT NULL)");
+                stmt.executeUpdate("CREATE INDEX " + INDEX_TABLE + "_refname_idx ON " + INDEX_TABLE + " (tenantid, refname)");
+                stmt.executeUpdate("CREATE INDEX " + INDEX_TABLE + "_docid_idx ON " + INDEX_TABLE + " (docid)");
+            }
+            if (tableExists(conn, DOCS_TABLE) == false) {
+                stmt.executeUpdate("CREATE TABLE " + DOCS_TABLE + " ("
+                        + "tenantid VARCHAR(255) NOT NULL, "
+                        + "docid VARCHAR(36) NOT NULL, "
+                        + "version BIGINT NOT NULL, "
+                        + "PRIMARY KEY (tenantid, docid))");
+            }
+            if (tableExists(conn, BUILDS_TABLE) == false) {
+                stmt.executeUpdate("CREATE TABLE " + BUILDS_TABLE + " ("
+                        + "tenantid VARCHAR(255) NOT NULL PRIMARY KEY, "
+                        + "generation BIGINT NOT NULL, "
+                        + "built INTEGER NOT NULL)");
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String tableName) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getTables(null, null, tableName, null)) {
+            if (rs.next() == true) {
+                return true;
+            }
+        }
+        // Some databases report unquoted names in upper case
+        try (ResultSet rs = metaData.getTables(null, null, tableName.toUpperCase(), null)) {
+            return rs.next();
+        }
+    }
+
+    private static void rollback(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException e) {
+                logger.debug("Could not roll back a refObjs index update: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void close(Statement stmt, Connection conn) {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+            if (conn != null) {
+                conn.setAutoCommit(true);
+                conn.close();
+            }
+        } catch (SQLException e) {
+            logger.debug("SQL Exception closing statement/connection in RefObjsIndex: " + e.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright 2009 University of California at Berkeley
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ *
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.services.nuxeo.client.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.sql.rowset.CachedRowSet;
+
+import org.collectionspace.services.client.IQueryManager;
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.ServiceMain;
+import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.common.config.ConfigUtils;
+import org.collectionspace.services.common.config.TenantBindingUtils;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.common.init.AddIndices;
+import org.collectionspace.services.common.storage.DatabaseProductType;
+import org.collectionspace.services.common.storage.JDBCTools;
+import org.collectionspace.services.common.storage.PreparedStatementSimpleBuilder;
+import org.collectionspace.services.config.tenant.TenantBindingType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The compiled form of the hand-tuned SQL query used for partial term matching
+ * on authority items / terms -see RepositoryJavaClientImpl.getFilteredJDBC().
+ *
+ * Autocomplete issues this query on every keystroke, but its SQL only varies with
+ * the tenant, the authority item's tables, and which optional restrictions apply.
+ * So the SQL, and the tenant binding settings it depends upon, are worked out once
+ * per distinct query shape and kept here.  Because the SQL text of each shape is
+ * always the same, the pooled connections can reuse their prepared statements -and
+ * PostgreSQL its server-side plans- across requests (see JDBCDataSourceRegistry).
+ *
+ * Values that vary per request -the partial term, the authority's CSID and the
+ * tenant ID- are only ever passed as replaceable parameters, in that order.
+ */
+public class JDBCPartialTermQuery {
+    private static final Logger logger = LoggerFactory.getLogger(JDBCPartialTermQuery.class);
+
+    private static final String KEY_SEPARATOR = "|";
+    private static final int DEFAULT_ITEMS_LIMIT = 40;
+    private static final String TERM_DISPLAY_NAME_COLUMN = "termdisplayname";
+
+    // Query shape key -> compiled query
+    private static final ConcurrentMap<String, JDBCPartialTermQuery> queries =
+            new ConcurrentHashMap<String, JDBCPartialTermQuery>();
+    // (repository, term group table) pairs for which we've checked for a trigram index
+    private static final Set<String> trigramIndexedTables =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final String sql;
+    private final String usesStartingWildcard;
+    private final boolean restrictedByTenantId;
+
+    private JDBCPartialTermQuery(String sql, String usesStartingWildcard, boolean restrictedByTenantId) {
+        this.sql = sql;
+        this.usesStartingWildcard = usesStartingWildcard;
+        this.restrictedByTenantId = restrictedByTenantId;
+    }
+
+    /**
+     * Returns the compiled query for the given shape, compiling it if this is the first
+     * request for that shape.
+     *
+     * @param ctx the service context.
+     * @param commonPartTableName the authority item's common part table.
+     * @param termGroupTableName the authority item's term group table.
+     * @param matchesPartialTerm whether the query restricts the results to those matching a partial term.
+     * @param excludesDeleted whether the query filters out soft-deleted records.
+     * @param restrictedByAuthority whether the query restricts the results to a single authority.
+     */
+    public static JDBCPartialTermQuery get(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            String commonPartTableName, String termGroupTableName,
+            boolean matchesPartialTerm, boolean excludesDeleted, boolean restrictedByAuthority) throws Exception {
+        String key = ctx.getTenantId() + KEY_SEPARATOR + ctx.getRepositoryDomainName()
+                + KEY_SEPARATOR + commonPartTableName + KEY_SEPARATOR + termGroupTableName
+                + KEY_SEPARATOR + matchesPartialTerm + KEY_SEPARATOR + excludesDeleted
+                + KEY_SEPARATOR + restrictedByAuthority;
+        JDBCPartialTermQuery result = queries.get(key);
+        if (result == null) {
+            result = compile(ctx, commonPartTableName, termGroupTableName,
+                    matchesPartialTerm, excludesDeleted, restrictedByAuthority);
+            JDBCPartialTermQuery existing = queries.putIfAbsent(key, result);
+            if (existing != null) {
+                result = existing;
+            } else if (logger.isDebugEnabled() == true) {
+                logger.debug("Compiled partial term query " + key + ": " + result.getSql());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The SQL for this query shape.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * The tenant's TENANT_USES_STARTING_WILDCARD_FOR_PARTIAL_TERM setting; may be null.
+     */
+    public String getUsesStartingWildcard() {
+        return usesStartingWildcard;
+    }
+
+    /**
+     * Whether the query takes the tenant ID as its last replaceable parameter.
+     */
+    public boolean isRestrictedByTenantId() {
+        return restrictedByTenantId;
+    }
+
+    private static JDBCPartialTermQuery compile(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+            String commonPartTableName, String termGroupTableName,
+            boolean matchesPartialTerm, boolean excludesDeleted, boolean restrictedByAuthority) throws Exception {
+        TenantBindingType tenantBinding =
+                ServiceMain.getInstance().getTenantBindingConfigReader().getTenantBinding(ctx.getTenantId());
+
+        // Build two SQL statements, to be executed within a single transaction:
+        // the first statement to control join order, and the second statement
+        // representing the actual 'get filtered' query
+
+        // Build the join control statement
+        //
+        // Per http://www.postgresql.org/docs/9.2/static/runtime-config-query.html#GUC-JOIN-COLLAPSE-LIMIT
+        // "Setting [this value] to 1 prevents any reordering of explicit JOINs.
+        // Thus, the explicit join order specified in the query will be the
+        // actual order in which the relations are joined."
+        // See CSPACE-5945 for further discussion of why this setting is needed.
+        //
+        // Adding this statement is commented out here for now.  It significantly
+        // improved query performance for authority item / term queries where
+        // large numbers of rows were retrieved, but appears to have resulted
+        // in consistently slower-than-desired query performance where zero or
+        // very few records were retrieved. See notes on CSPACE-5945. - ADR 2013-04-09
+        // String joinControlSql = "SET LOCAL join_collapse_limit TO 1;";
+
+        // Build the query statement
+        //
+        // Start with the default query.  Along with each record's ID, return
+        // the display name of its preferred (first) term, by which the results
+        // are ordered.  The sort key must be in the select list when using DISTINCT.
+        String selectStatement =
+                "SELECT DISTINCT commonschema.id, preferredtermgroup.termdisplayname,"
+                + " LOWER(preferredtermgroup.termdisplayname) AS sortname"
+                + " FROM " + commonPartTableName + " commonschema";
+
+        String joinClauses =
+                " INNER JOIN misc"
+                + "  ON misc.id = commonschema.id"
+                + " INNER JOIN hierarchy hierarchy_termgroup"
+                + "  ON hierarchy_termgroup.parentid = misc.id"
+                + " INNER JOIN "  + termGroupTableName + " termgroup"
+                + "  ON termgroup.id = hierarchy_termgroup.id "
+                + " INNER JOIN hierarchy hierarchy_preferredtermgroup"
+                + "  ON hierarchy_preferredtermgroup.parentid = misc.id"
+                + "  AND hierarchy_preferredtermgroup.pos = 0"
+                + " INNER JOIN "  + termGroupTableName + " preferredtermgroup"
+                + "  ON preferredtermgroup.id = hierarchy_preferredtermgroup.id ";
+
+        // If there's no partial term to match ('pt='), return all records,
+        // subject to restriction by any limit clause
+        String whereClause = "";
+        String usesStartingWildcard = null;
+        if (matchesPartialTerm == true) {
+            // Otherwise, return records that match the supplied partial term (parameter 1)
+            whereClause = " WHERE (termgroup.termdisplayname ILIKE ?)";
+            // Read tenant bindings configuration to determine whether
+            // to automatically insert leading, as well as trailing, wildcards
+            // into the term matching string.
+            usesStartingWildcard = TenantBindingUtils.getPropertyValue(tenantBinding,
+                    IQueryManager.TENANT_USES_STARTING_WILDCARD_FOR_PARTIAL_TERM);
+            if (Tools.isTrue(TenantBindingUtils.getPropertyValue(tenantBinding,
+                    IQueryManager.TENANT_USES_TRIGRAM_INDEX_FOR_PARTIAL_TERM)) == true) {
+                checkTrigramIndex(ctx.getRepositoryName(), termGroupTableName);
+            }
+        }
+
+        // Optionally add restrictions to the default query, based on variables
+        // in the current request
+
+        // Restrict the query to filter out deleted records, if requested
+        if (excludesDeleted == true) {
+            whereClause = whereClause
+                + "  AND (misc.lifecyclestate <> '" + WorkflowClient.WORKFLOWSTATE_DELETED + "')";
+        }
+
+        // If a particular authority is specified, restrict the query further
+        // to return only records within that authority (parameter 2)
+        if (restrictedByAuthority == true) {
+            whereClause = whereClause
+                + "  AND (commonschema.inauthority = ?)";
+        }
+
+        // Restrict the query further to return only records pertaining to
+        // the current tenant (parameter 3) -see restrictJDBCQueryByTenantID()
+        boolean restrictedByTenantId = restrictJDBCQueryByTenantID(tenantBinding, ctx);
+        if (restrictedByTenantId == true) {
+            joinClauses = joinClauses
+                + " INNER JOIN collectionspace_core core"
+                + "  ON core.id = hierarchy_termgroup.parentid";
+            whereClause = whereClause
+                + "  AND (core.tenantid = ?)";
+        }
+
+        // Order the results by the preferred term's display name, ignoring case,
+        // so that the limit below returns the first matches in that order.
+        // The record ID breaks ties, so that the order is stable across requests.
+        String orderByClause = " ORDER BY sortname, commonschema.id";
+
+        String maxListItemsLimit = TenantBindingUtils.getPropertyValue(tenantBinding,
+                IQueryManager.MAX_LIST_ITEMS_RETURNED_LIMIT_ON_JDBC_QUERIES);
+        String limitClause =
+                " LIMIT " + getMaxItemsLimitOnJdbcQueries(maxListItemsLimit); // implicit int-to-String conversion
+
+        // The where clause's restrictions all start with AND, so it must start with
+        // WHERE when there's no partial term to match.
+        if (matchesPartialTerm == false && whereClause.length() > 0) {
+            whereClause = " WHERE" + whereClause.replaceFirst("^\\s+AND", "");
+        }
+
+        // Piece together the SQL query from its parts
+        String sql = selectStatement + joinClauses + whereClause + orderByClause + limitClause;
+
+        return new JDBCPartialTermQuery(sql, usesStartingWildcard, restrictedByTenantId);
+    }
+
+    private static int getMaxItemsLimitOnJdbcQueries(String maxListItemsLimit) {
+        if (maxListItemsLimit == null) {
+            return DEFAULT_ITEMS_LIMIT;
+        }
+        int itemsLimit;
+        try {
+            itemsLimit = Integer.parseInt(maxListItemsLimit);
+            if (itemsLimit < 1) {
+                logger.warn("Value of configuration setting "
+                        + IQueryManager.MAX_LIST_ITEMS_RETURNED_LIMIT_ON_JDBC_QUERIES
+                        + " must be a positive integer; invalid current value is " + maxListItemsLimit);
+                logger.warn("Reverting to default value of " + DEFAULT_ITEMS_LIMIT);
+                itemsLimit = DEFAULT_ITEMS_LIMIT;
+            }
+        } catch (NumberFormatException nfe) {
+            logger.warn("Value of configuration setting "
+                        + IQueryManager.MAX_LIST_ITEMS_RETURNED_LIMIT_ON_JDBC_QUERIES
+                        + " must be a positive integer; invalid current value is " + maxListItemsLimit);
+            logger.warn("Reverting to default value of " + DEFAULT_ITEMS_LIMIT);
+            itemsLimit = DEFAULT_ITEMS_LIMIT;
+        }
+        return itemsLimit;
+    }
+
+    /**
+     * Identifies whether a restriction on tenant ID - to return only records
+     * pertaining to the current tenant - is required in a JDBC query.
+     *
+     * @param tenantBinding a tenant binding configuration.
+     * @param ctx a service context.
+     * @return true if a restriction on tenant ID is required in the query;
+     * false if a restriction is not required.
+     */
+    private static boolean restrictJDBCQueryByTenantID(TenantBindingType tenantBinding, ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) {
+        boolean restrict = true;
+        // If data for the current service, in the current tenant, is isolated
+        // within its own separate, per-tenant repository, as contrasted with
+        // being intermingled with other tenants' data in the default repository,
+        // no restriction on Tenant ID is required in the query.
+        String repositoryDomainName = ConfigUtils.getRepositoryName(tenantBinding, ctx.getRepositoryDomainName());
+        if (!(repositoryDomainName.equals(ConfigUtils.DEFAULT_NUXEO_REPOSITORY_NAME))) {
+            restrict = false;
+        }
+        // If a configuration setting for this tenant identifies that JDBC
+        // queries should not be restricted by tenant ID (perhaps because
+        // there is always expected to be only one tenant's data present in
+        // the system), no restriction on Tenant ID is required in the query.
+        String queriesRestrictedByTenantId = TenantBindingUtils.getPropertyValue(tenantBinding,
+                IQueryManager.JDBC_QUERIES_ARE_TENANT_ID_RESTRICTED);
+        if (Tools.notBlank(queriesRestrictedByTenantId) &&
+                queriesRestrictedByTenantId.equalsIgnoreCase(Boolean.FALSE.toString())) {
+            restrict = false;
+        }
+        return restrict;
+    }
+
+    /*
+     * For tenants that match partial terms anywhere within a term -that is, with a leading
+     * wildcard- a btree index on the display name can't help, and every match is a sequential
+     * scan of the term group table.  PostgreSQL's pg_trgm extension provides a GIN index that
+     * ILIKE '%x%' can use.  Building one on a large table takes a while, and DDL rights, so it's
+     * created at startup (see AddIndices' "trigram" fields) or by a DBA, not here: we only
+     * check, once per table, that it exists, and warn if it doesn't.
+     */
+    private static void checkTrigramIndex(String repositoryName, String termGroupTableName) {
+        if (trigramIndexedTables.add(repositoryName + KEY_SEPARATOR + termGroupTableName) == false) {
+            return; // Already checked
+        }
+
+        String dataSourceName = JDBCTools.NUXEO_DATASOURCE_NAME;
+        String cspaceInstanceId = ServiceMain.getInstance().getCspaceInstanceId();
+        try {
+            if (JDBCTools.getDatabaseProductType(dataSourceName, repositoryName, cspaceInstanceId) != DatabaseProductType.POSTGRESQL) {
+                logger.warn("Trigram indexes for partial term matching are only supported on PostgreSQL; ignoring the "
+                        + IQueryManager.TENANT_USES_TRIGRAM_INDEX_FOR_PARTIAL_TERM + " setting.");
+                return;
+            }
+
+            List<String> params = new ArrayList<String>();
+            params.add(termGroupTableName);
+            CachedRowSet existing = JDBCTools.executePreparedQuery(new PreparedStatementSimpleBuilder(
+                    "SELECT indexname FROM pg_catalog.pg_indexes WHERE tablename = ? AND indexdef ILIKE '%gin_trgm_ops%'", params),
+                    dataSourceName, repositoryName, cspaceInstanceId);
+            if (existing == null || existing.next() == false) {
+                logger.warn(String.format("There is no trigram index on %s.termdisplayname, so partial term searches with a leading"
+                        + " wildcard will scan the whole table.  Add a \"%s\" field for it to the authority's AddIndices init handler,"
+                        + " or create it with: CREATE INDEX CONCURRENTLY %s ON %s USING gin (termdisplayname gin_trgm_ops)",
+                        termGroupTableName, AddIndices.TRIGRAM_INDEX_TYPE,
+                        AddIndices.getTrigramIndexName(termGroupTableName, TERM_DISPLAY_NAME_COLUMN), termGroupTableName));
+            }
+        } catch (Exception e) {
+            logger.warn(String.format("Could not check for a trigram index on table %s: %s",
+                    termGroupTableName, e.getMessage()));
+        }
+    }
+}
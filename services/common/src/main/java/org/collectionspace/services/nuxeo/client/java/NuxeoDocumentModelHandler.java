@@ -27,8 +27,10 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.ws.rs.core.MultivaluedMap;
 
@@ -46,6 +48,8 @@ import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.document.DocumentException;
 import org.collectionspace.services.common.document.DocumentWrapper;
 import org.collectionspace.services.common.query.QueryContext;
+import org.collectionspace.services.common.relation.RelationJAXBSchema;
+import org.collectionspace.services.common.relation.nuxeo.RelationConstants;
 import org.collectionspace.services.common.relation.nuxeo.RelationsUtils;
 import org.collectionspace.services.config.service.DocHandlerParams;
 import org.collectionspace.services.config.service.ListResultField;
@@ -228,6 +232,10 @@ public abstract class NuxeoDocumentModelHandler<T> extends RemoteDocumentModelHa
 				fields[i] = field.getElement();
 			}
 			commonList.setFieldsReturned(fields);
+			Set<String> relatedCsids = null;
+			if (markRtSbj != null) {
+				relatedCsids = getCsidsRelatedToSubject(ctx, repoSession, markRtSbj, wrapDoc.getWrappedObject());
+			}
 			Iterator<DocumentModel> iter = wrapDoc.getWrappedObject().iterator();
 			HashMap<String, Object> item = new HashMap<String, Object>();
 			while (iter.hasNext()) {
@@ -235,16 +243,7 @@ public abstract class NuxeoDocumentModelHandler<T> extends RemoteDocumentModelHa
 				String id = NuxeoUtils.getCsid(docModel);
 				item.put(STANDARD_LIST_CSID_FIELD, id);
 				if (markRtSbj != null) {
-					String relationClause = RelationsUtils.buildWhereClause(markRtSbj, null, null, id, null);
-					String whereClause = relationClause + IQueryManager.SEARCH_QUALIFIER_AND
-							+ NuxeoUtils.buildWorkflowNotDeletedWhereClause();
-					QueryContext queryContext = new QueryContext(ctx, whereClause);
-					queryContext.setDocType(IRelationsManager.DOC_TYPE);
-					String query = NuxeoUtils.buildNXQLQuery(ctx, queryContext);
-					// Search for 1 relation that matches. 1 is enough to fail
-					// the filter
-					DocumentModelList docList = repoSession.query(query, null, 1, 0, false);
-					item.put(STANDARD_LIST_MARK_RT_FIELD, docList.isEmpty() ? "false" : "true");
+					item.put(STANDARD_LIST_MARK_RT_FIELD, relatedCsids.contains(id) ? "true" : "false");
 				}
 				String uri = getUri(docModel);
 				item.put(STANDARD_LIST_URI_FIELD, uri);
@@ -286,6 +285,44 @@ public abstract class NuxeoDocumentModelHandler<T> extends RemoteDocumentModelHa
 		return commonList;
 	}
 
+	/*
+	 * Returns the CSIDs of those documents in the list that are the objects of (non-deleted)
+	 * relations with the given subject.  One relation query per MAX_IDS_PER_QUERY documents
+	 * does the work, rather than one query per document.
+	 */
+	private Set<String> getCsidsRelatedToSubject(AbstractServiceContextImpl ctx, CoreSessionInterface repoSession,
+			String subjectCsid, DocumentModelList docModelList) throws Exception {
+		Set<String> result = new HashSet<String>();
+		List<String> csids = new ArrayList<String>();
+		for (DocumentModel docModel : docModelList) {
+			csids.add(NuxeoUtils.getCsid(docModel));
+		}
+
+		String objectCsidProp = RelationConstants.NUXEO_SCHEMA_NAME + ":" + RelationJAXBSchema.OBJECT_CSID;
+		for (int start = 0; start < csids.size(); start += NuxeoUtils.MAX_IDS_PER_QUERY) {
+			List<String> batch = csids.subList(start, Math.min(start + NuxeoUtils.MAX_IDS_PER_QUERY, csids.size()));
+			StringBuilder objectClause = new StringBuilder(objectCsidProp + " IN (");
+			for (int i = 0; i < batch.size(); i++) {
+				if (i > 0) {
+					objectClause.append(", ");
+				}
+				objectClause.append(NuxeoUtils.prepareStringLiteral(batch.get(i)));
+			}
+			objectClause.append(")");
+			String whereClause = RelationsUtils.buildWhereClause(subjectCsid, null, null, null, null)
+					+ IQueryManager.SEARCH_QUALIFIER_AND + objectClause
+					+ IQueryManager.SEARCH_QUALIFIER_AND + NuxeoUtils.buildWorkflowNotDeletedWhereClause();
+			QueryContext queryContext = new QueryContext(ctx, whereClause);
+			queryContext.setDocType(IRelationsManager.DOC_TYPE);
+			String query = NuxeoUtils.buildNXQLQuery(ctx, queryContext);
+			for (DocumentModel relation : repoSession.query(query)) {
+				result.add((String) relation.getProperty(RelationConstants.NUXEO_SCHEMA_NAME, RelationJAXBSchema.OBJECT_CSID));
+			}
+		}
+
+		return result;
+	}
+
 	// TODO - get rid of this if we can - appears to be unused.
 	@Override
 	public String getQProperty(String prop) throws DocumentException {
@@ -35,6 +35,8 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.xml.bind.JAXBElement;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.collectionspace.authentication.spi.AuthNContext;
 import org.collectionspace.services.authorization.AccountPermission;
@@ -43,6 +45,7 @@ import org.collectionspace.services.lifecycle.TransitionDef;
 import org.collectionspace.services.client.CollectionSpaceClient;
 import org.collectionspace.services.client.PayloadInputPart;
 import org.collectionspace.services.client.PayloadOutputPart;
+import org.collectionspace.services.client.PayloadPartWriter;
 import org.collectionspace.services.client.PoxPayloadIn;
 import org.collectionspace.services.client.PoxPayloadOut;
 import org.collectionspace.services.client.Profiler;
@@ -71,6 +74,7 @@ import org.collectionspace.services.common.api.RefNameUtils;
 import org.collectionspace.services.common.api.Tools;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils;
 import org.collectionspace.services.common.vocabulary.RefNameServiceUtils.AuthRefConfigInfo;
+import org.collectionspace.services.common.vocabulary.RefObjsIndex;
 import org.collectionspace.services.config.service.DocHandlerParams;
 import org.collectionspace.services.config.service.ListResultField;
 import org.collectionspace.services.config.service.ObjectPartType;
@@ -206,6 +210,7 @@ public abstract class   RemoteDocumentModelHandlerImpl<T, TL>
         if (supportsHierarchy() == true) {
         	handleRelationsPayload(wrapDoc, false);
         }
+        RefObjsIndex.update(getServiceContext(), wrapDoc.getWrappedObject());
     }
 	
     /* NOTE: The authority item doc handler overrides (after calling) this method.  It performs refName updates.  In this
@@ -253,6 +258,13 @@ public abstract class   RemoteDocumentModelHandlerImpl<T, TL>
             handleRelationsPayload(wrapDoc, true); // refNames in relations payload should refer to pre-updated record refName value
             handleRefNameReferencesUpdate(); // if our refName changed, we need to update any and all relationship records that used the old one
         }
+        RefObjsIndex.update(getServiceContext(), docModel);
+    }
+
+    @Override
+    public void completeDelete(DocumentWrapper<DocumentModel> wrapDoc) throws Exception {
+        super.completeDelete(wrapDoc);
+        RefObjsIndex.remove(getServiceContext(), wrapDoc.getWrappedObject().getId());
     }
 
     /**
@@ -311,11 +323,18 @@ public abstract class   RemoteDocumentModelHandlerImpl<T, TL>
         DocumentModel docModel = wrapDoc.getWrappedObject();
         String[] schemas = docModel.getDeclaredSchemas();
         Map<String, ObjectPartType> partsMetaMap = getServiceContext().getPartsMetadata();
+        boolean streamParts = canStreamParts();
         for (String schema : schemas) {
             ObjectPartType partMeta = partsMetaMap.get(schema);
             if (partMeta == null) {
                 continue; // unknown part, ignore
             }
+            if (streamParts == true
+            		&& CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA.equals(schema) == false
+            		&& partMeta.getContent().getXmlContent() != null) {
+            	addStreamingOutputPart(docModel, schema, partMeta);
+            	continue;
+            }
             Map<String, Object> unQObjectProperties = extractPart(docModel, schema, partMeta);
             if(CollectionSpaceClient.COLLECTIONSPACE_CORE_SCHEMA.equals(schema)) {
             	addExtraCoreValues(docModel, unQObjectProperties);
@@ -351,6 +370,37 @@ public abstract class   RemoteDocumentModelHandlerImpl<T, TL>
         }
     }
     
+    /**
+     * Adds an output part whose XML is written straight from the document's properties to the
+     * response, rather than via extractPart() and a DOM built by addOutputPart().
+     */
+    protected void addStreamingOutputPart(DocumentModel docModel, final String schema, final ObjectPartType partMeta)
+            throws Exception {
+        // Read the properties now, while we have a repository session; the part is written later.
+        final Map<String, Object> objectProps = docModel.getProperties(schema);
+        if (objectProps == null) {
+            return;
+        }
+        PayloadOutputPart part = new PayloadOutputPart(schema, new PayloadPartWriter() {
+            @Override
+            public void write(XMLStreamWriter writer) throws XMLStreamException {
+                DocumentUtils.writeDocument(writer, partMeta, schema, objectProps);
+            }
+        });
+        MultipartServiceContext ctx = (MultipartServiceContext) getServiceContext();
+        ctx.addOutputPart(part);
+    }
+
+    /**
+     * Whether extractAllParts() can stream the document's parts -see addStreamingOutputPart().
+     * Handlers opt in by overriding this to return true; those that change how parts are
+     * extracted, by overriding extractPart() or addOutputPart(), or that otherwise need the
+     * parts' DOM, must not.
+     */
+    protected boolean canStreamParts() {
+        return false;
+    }
+
     private void addExtraCoreValues(DocumentModel docModel, Map<String, Object> unQObjectProperties)
     		throws Exception {
         unQObjectProperties.put(CollectionSpaceClient.COLLECTIONSPACE_CORE_WORKFLOWSTATE, docModel.getCurrentLifeCycleState());
@@ -19,11 +19,9 @@ package org.collectionspace.services.nuxeo.client.java;
 import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -57,11 +55,8 @@ import org.collectionspace.services.common.document.TransactionException;
 import org.collectionspace.services.common.CSWebApplicationException;
 import org.collectionspace.services.common.ServiceMain;
 import org.collectionspace.services.common.api.Tools;
-import org.collectionspace.services.common.config.ConfigUtils;
-import org.collectionspace.services.common.config.TenantBindingConfigReaderImpl;
-import org.collectionspace.services.common.config.TenantBindingUtils;
 import org.collectionspace.services.common.storage.PreparedStatementBuilder;
-import org.collectionspace.services.config.tenant.TenantBindingType;
+import org.collectionspace.services.common.vocabulary.RefObjsIndex;
 import org.collectionspace.services.config.tenant.RepositoryDomainType;
 
 //
@@ -956,90 +951,42 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
         //
         // At present, the two constants below are duplicated in both RepositoryJavaClientImpl
         // and in AuthorityItemDocumentModelHandler.
-        final String TERM_GROUP_LIST_NAME = "TERM_GROUP_LIST_NAME";
         final String TERM_GROUP_TABLE_NAME_PARAM = "TERM_GROUP_TABLE_NAME";
         final String IN_AUTHORITY_PARAM = "IN_AUTHORITY";
         // Get this from a constant in AuthorityResource or equivalent
         final String PARENT_WILDCARD = "_ALL_";
         
-        // Build two SQL statements, to be executed within a single transaction:
-        // the first statement to control join order, and the second statement
-        // representing the actual 'get filtered' query
-        
-        // Build the join control statement
-        //
-        // Per http://www.postgresql.org/docs/9.2/static/runtime-config-query.html#GUC-JOIN-COLLAPSE-LIMIT
-        // "Setting [this value] to 1 prevents any reordering of explicit JOINs.
-        // Thus, the explicit join order specified in the query will be the
-        // actual order in which the relations are joined."
-        // See CSPACE-5945 for further discussion of why this setting is needed.
-        //
-        // Adding this statement is commented out here for now.  It significantly
-        // improved query performance for authority item / term queries where
-        // large numbers of rows were retrieved, but appears to have resulted
-        // in consistently slower-than-desired query performance where zero or
-        // very few records were retrieved. See notes on CSPACE-5945. - ADR 2013-04-09
-        // String joinControlSql = "SET LOCAL join_collapse_limit TO 1;";
-        
-        // Build the query statement
-        //
-        // Start with the default query
-        String selectStatement =
-                "SELECT DISTINCT commonschema.id"
-                + " FROM " + handler.getServiceContext().getCommonPartLabel() + " commonschema";
-        
-        String joinClauses =
-                " INNER JOIN misc"
-                + "  ON misc.id = commonschema.id"
-                + " INNER JOIN hierarchy hierarchy_termgroup"
-                + "  ON hierarchy_termgroup.parentid = misc.id"
-                + " INNER JOIN "  + handler.getJDBCQueryParams().get(TERM_GROUP_TABLE_NAME_PARAM) + " termgroup"
-                + "  ON termgroup.id = hierarchy_termgroup.id ";
-
-        String whereClause;
         MultivaluedMap<String, String> queryParams = ctx.getQueryParams();
-        // Value for replaceable parameter 1 in the query
+        // Value for replaceable parameter 1 in the query.  If the value of the
+        // partial term query parameter is blank ('pt='), return all records,
+        // subject to restriction by any limit clause
         String partialTerm = queryParams.getFirst(IQueryManager.SEARCH_TYPE_PARTIALTERM);
-        // If the value of the partial term query parameter is blank ('pt='),
-        // return all records, subject to restriction by any limit clause
-        if (Tools.isBlank(partialTerm)) {
-           whereClause = "";
-        } else {
-           // Otherwise, return records that match the supplied partial term
-           whereClause =
-                " WHERE (termgroup.termdisplayname ILIKE ?)";
-        }
-        
-        // At present, results are ordered in code, below, rather than in SQL,
-        // and the orderByClause below is thus intentionally blank.
-        //
-        // To implement the orderByClause below in SQL; e.g. via
-        // 'ORDER BY termgroup.termdisplayname', the relevant column
-        // must be returned by the SELECT statement.
-        String orderByClause = "";
-        
-        String limitClause;
-        TenantBindingConfigReaderImpl tReader =
-                ServiceMain.getInstance().getTenantBindingConfigReader();
-        TenantBindingType tenantBinding = tReader.getTenantBinding(ctx.getTenantId());
-        String maxListItemsLimit = TenantBindingUtils.getPropertyValue(tenantBinding,
-                IQueryManager.MAX_LIST_ITEMS_RETURNED_LIMIT_ON_JDBC_QUERIES);
-        limitClause =
-                " LIMIT " + getMaxItemsLimitOnJdbcQueries(maxListItemsLimit); // implicit int-to-String conversion
-        
-        // After building the individual parts of the query, set the values
-        // of replaceable parameters that will be inserted into that query
-        // and optionally add restrictions
+        boolean matchesPartialTerm = Tools.notBlank(partialTerm);
+        // Filter out deleted records, if requested
+        String includeDeleted = queryParams.getFirst(WorkflowClient.WORKFLOW_QUERY_NONDELETED);
+        boolean excludesDeleted = includeDeleted != null && includeDeleted.equalsIgnoreCase(Boolean.FALSE.toString());
+        // If a particular authority is specified, return only records within
+        // that authority, unless it's the '_ALL_' wildcard
+        String inAuthorityValue = (String) handler.getJDBCQueryParams().get(IN_AUTHORITY_PARAM);
+        boolean restrictedByAuthority = Tools.notBlank(inAuthorityValue) && inAuthorityValue.equals(PARENT_WILDCARD) == false;
+
+        // Get the SQL for this shape of query -see JDBCPartialTermQuery
+        JDBCPartialTermQuery query = JDBCPartialTermQuery.get(ctx,
+                handler.getServiceContext().getCommonPartLabel(),
+                (String) handler.getJDBCQueryParams().get(TERM_GROUP_TABLE_NAME_PARAM),
+                matchesPartialTerm, excludesDeleted, restrictedByAuthority);
+        String querySql = query.getSql();
+
+        // Set the values of replaceable parameters that will be inserted into that query
         
         List<String> params = new ArrayList<>();
         
-        if (Tools.notBlank(whereClause)) {
+        if (matchesPartialTerm == true) {
                         
-            // Read tenant bindings configuration to determine whether
+            // The tenant bindings configuration determines whether
             // to automatically insert leading, as well as trailing, wildcards
             // into the term matching string.
-            String usesStartingWildcard = TenantBindingUtils.getPropertyValue(tenantBinding,
-                    IQueryManager.TENANT_USES_STARTING_WILDCARD_FOR_PARTIAL_TERM);
+            String usesStartingWildcard = query.getUsesStartingWildcard();
             // Handle user-provided leading wildcard characters, in the
             // configuration where a leading wildcard is not automatically inserted.
             // (The user-provided wildcard must be in the first, or "starting"
@@ -1079,54 +1026,19 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
             params.add(partialTerm);
         }
         
-        // Optionally add restrictions to the default query, based on variables
-        // in the current request
-        
-        // Restrict the query to filter out deleted records, if requested
-        String includeDeleted = queryParams.getFirst(WorkflowClient.WORKFLOW_QUERY_NONDELETED);
-        if (includeDeleted != null && includeDeleted.equalsIgnoreCase(Boolean.FALSE.toString())) {
-            whereClause = whereClause
-                + "  AND (misc.lifecyclestate <> '" + WorkflowClient.WORKFLOWSTATE_DELETED + "')";
-        }
-
-        // If a particular authority is specified, restrict the query further
-        // to return only records within that authority
-        String inAuthorityValue = (String) handler.getJDBCQueryParams().get(IN_AUTHORITY_PARAM);
-        if (Tools.notBlank(inAuthorityValue)) {
-            // Handle the '_ALL_' case for inAuthority
-            if (inAuthorityValue.equals(PARENT_WILDCARD)) {
-                // Add nothing to the query here if it should match within all authorities
-            } else {
-                whereClause = whereClause
-                    + "  AND (commonschema.inauthority = ?)";
-                params.add(inAuthorityValue); // Value for replaceable parameter 2 in the query
-            }
+        if (restrictedByAuthority == true) {
+            params.add(inAuthorityValue); // Value for replaceable parameter 2 in the query
         }
         
-        // Restrict the query further to return only records pertaining to
-        // the current tenant, unless:
-        // * Data for this service, in this tenant, is stored in its own,
-        //   separate repository, rather than being intermingled with other
-        //   tenants' data in the default repository; or
-        // * Restriction by tenant ID in JDBC queries has been disabled,
-        //   via configuration for this tenant, 
-        if (restrictJDBCQueryByTenantID(tenantBinding, ctx)) {
-                joinClauses = joinClauses
-                    + " INNER JOIN collectionspace_core core"
-                    + "  ON core.id = hierarchy_termgroup.parentid";
-                whereClause = whereClause
-                    + "  AND (core.tenantid = ?)";
-                params.add(ctx.getTenantId()); // Value for replaceable parameter 3 in the query
+        if (query.isRestrictedByTenantId() == true) {
+            params.add(ctx.getTenantId()); // Value for replaceable parameter 3 in the query
         }
         
-        // Piece together the SQL query from its parts
-        String querySql = selectStatement + joinClauses + whereClause + orderByClause + limitClause;
-        
         // Note: PostgreSQL 9.2 introduced a change that may improve performance
         // of certain queries using JDBC PreparedStatements.  See comments on
         // CSPACE-5943 for details.
         //
-        // See a comment above for the reason that the joinControl SQL statement,
+        // See a comment in JDBCPartialTermQuery for the reason that the joinControl SQL statement,
         // along with its corresponding prepared statement builder, is commented out for now.
         // PreparedStatementBuilder joinControlBuilder = new PreparedStatementBuilder(joinControlSql);
         PreparedStatementSimpleBuilder queryBuilder = new PreparedStatementSimpleBuilder(querySql, params);
@@ -1136,7 +1048,7 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
         String dataSourceName = JDBCTools.NUXEO_DATASOURCE_NAME;
         String repositoryName = ctx.getRepositoryName();
         final Boolean EXECUTE_WITHIN_TRANSACTION = true;
-        Set<String> docIds = new HashSet<>();
+        Set<String> docIds = new LinkedHashSet<>();
         try {
         	String cspaceInstanceId = ServiceMain.getInstance().getCspaceInstanceId();
             List<CachedRowSet> resultsList = JDBCTools.executePreparedQueries(builders,
@@ -1163,7 +1075,8 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
                 return result; // return an empty list of document models
             }
 
-            // Otherwise, get the document IDs from the results of the query
+            // Otherwise, get the document IDs from the results of the query,
+            // in the order in which they were returned
             String id;
             queryResults.beforeFirst();
             while (queryResults.next()) {
@@ -1177,39 +1090,12 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
             return result; // return an empty list of document models
         } 
 
-        // Get a list of document models, using the list of IDs obtained from the query
-        //
-        // FIXME: Check whether we have a 'get document models from list of CSIDs'
-        // utility method like this, and if not, add this to the appropriate
-        // framework class
-        DocumentModel docModel;
-        for (String docId : docIds) {
-            docModel = NuxeoUtils.getDocumentModel(repoSession, docId);
-            if (docModel == null) {
-                logger.warn("Could not obtain document model for document with ID " + docId);
-            } else {
-                result.add(docModel);
-            }
+        // Get the document models, in the order of the list of IDs obtained from the query
+        result = NuxeoUtils.getDocumentModels(repoSession, new ArrayList<String>(docIds));
+        if (result.size() < docIds.size()) {
+            logger.warn(String.format("Could only obtain %d of the %d document models matching the SQL query '%s'.",
+                    result.size(), docIds.size(), querySql));
         }
-        
-        // Order the results
-        final String COMMON_PART_SCHEMA = handler.getServiceContext().getCommonPartLabel();
-        final String DISPLAY_NAME_XPATH =
-                "//" + handler.getJDBCQueryParams().get(TERM_GROUP_LIST_NAME) + "/[0]/termDisplayName";
-        Collections.sort(result, new Comparator<DocumentModel>() {
-            @Override
-            public int compare(DocumentModel doc1, DocumentModel doc2) {
-            	String termDisplayName1 = null;
-            	String termDisplayName2 = null;
-            	try {
-	                termDisplayName1 = (String) NuxeoUtils.getXPathValue(doc1, COMMON_PART_SCHEMA, DISPLAY_NAME_XPATH);
-	                termDisplayName2 = (String) NuxeoUtils.getXPathValue(doc2, COMMON_PART_SCHEMA, DISPLAY_NAME_XPATH);
-            	} catch (NuxeoDocumentException e) {
-            		throw new RuntimeException(e);  // We need to throw a RuntimeException because the compare() method of the Comparator interface does not support throwing an Exception
-            	}
-                return termDisplayName1.compareToIgnoreCase(termDisplayName2);
-            }
-        });
 
         return result;
     }
@@ -1408,6 +1294,7 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
 
         try {
             repoSession.saveDocument(docModel);
+            RefObjsIndex.update(ctx.getTenantId(), ctx.getRepositoryName(), docModel);
             if (fSaveSession) {
                 repoSession.save();
             }
@@ -1441,6 +1328,9 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
         try {
             DocumentModel[] docModelArray = new DocumentModel[docList.size()];
             repoSession.saveDocuments(docList.toArray(docModelArray));
+            for (DocumentModel docModel : docList) {
+                RefObjsIndex.update(ctx.getTenantId(), ctx.getRepositoryName(), docModel);
+            }
             if (fSaveSession) {
                 repoSession.save();
             }
@@ -1864,61 +1754,4 @@ public class RepositoryJavaClientImpl implements RepositoryClient<PoxPayloadIn,
                 + partialTerm.substring(1, len).replaceAll(USER_SUPPLIED_WILDCARD_REGEX, JDBCTools.SQL_WILDCARD);
 
     }
-
-    private int getMaxItemsLimitOnJdbcQueries(String maxListItemsLimit) {
-        final int DEFAULT_ITEMS_LIMIT = 40;
-        if (maxListItemsLimit == null) {
-            return DEFAULT_ITEMS_LIMIT;
-        }
-        int itemsLimit;
-        try {
-            itemsLimit = Integer.parseInt(maxListItemsLimit);
-            if (itemsLimit < 1) {
-                logger.warn("Value of configuration setting "
-                        + IQueryManager.MAX_LIST_ITEMS_RETURNED_LIMIT_ON_JDBC_QUERIES
-                        + " must be a positive integer; invalid current value is " + maxListItemsLimit);
-                logger.warn("Reverting to default value of " + DEFAULT_ITEMS_LIMIT);
-                itemsLimit = DEFAULT_ITEMS_LIMIT;
-            }
-        } catch (NumberFormatException nfe) {
-            logger.warn("Value of configuration setting "
-                        + IQueryManager.MAX_LIST_ITEMS_RETURNED_LIMIT_ON_JDBC_QUERIES
-                        + " must be a positive integer; invalid current value is " + maxListItemsLimit);
-            logger.warn("Reverting to default value of " + DEFAULT_ITEMS_LIMIT);
-            itemsLimit = DEFAULT_ITEMS_LIMIT;
-        }
-        return itemsLimit;
-    }
-
-    /**
-     * Identifies whether a restriction on tenant ID - to return only records
-     * pertaining to the current tenant - is required in a JDBC query.
-     * 
-     * @param tenantBinding a tenant binding configuration.
-     * @param ctx a service context.
-     * @return true if a restriction on tenant ID is required in the query;
-     * false if a restriction is not required.
-     */
-    private boolean restrictJDBCQueryByTenantID(TenantBindingType tenantBinding, ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) {
-        boolean restrict = true;
-        // If data for the current service, in the current tenant, is isolated
-        // within its own separate, per-tenant repository, as contrasted with
-        // being intermingled with other tenants' data in the default repository,
-        // no restriction on Tenant ID is required in the query.
-        String repositoryDomainName = ConfigUtils.getRepositoryName(tenantBinding, ctx.getRepositoryDomainName());
-        if (!(repositoryDomainName.equals(ConfigUtils.DEFAULT_NUXEO_REPOSITORY_NAME))) {
-            restrict = false;
-        }
-        // If a configuration setting for this tenant identifies that JDBC
-        // queries should not be restricted by tenant ID (perhaps because
-        // there is always expected to be only one tenant's data present in
-        // the system), no restriction on Tenant ID is required in the query.
-        String queriesRestrictedByTenantId = TenantBindingUtils.getPropertyValue(tenantBinding,
-                IQueryManager.JDBC_QUERIES_ARE_TENANT_ID_RESTRICTED);
-        if (Tools.notBlank(queriesRestrictedByTenantId) &&
-                queriesRestrictedByTenantId.equalsIgnoreCase(Boolean.FALSE.toString())) {
-            restrict = false;
-        }
-        return restrict;
-    }
 }
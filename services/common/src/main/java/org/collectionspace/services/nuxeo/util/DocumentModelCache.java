@@ -0,0 +1,132 @@
+/**
+ *  This document is a part of the source code and related artifacts
+ *  for CollectionSpace, an open source collections management system
+ *  for museums and related institutions:
+
+ *  http://www.collectionspace.org
+ *  http://wiki.collectionspace.org
+
+ *  Copyright 2009 University of California at Berkeley
+
+ *  Licensed under the Educational Community License (ECL), Version 2.0.
+ *  You may not use this file except in compliance with this License.
+
+ *  You may obtain a copy of the ECL 2.0 License at
+
+ *  https://source.collectionspace.org/collection-space/LICENSE.txt
+
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.collectionspace.services.nuxeo.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.collectionspace.services.client.PoxPayloadIn;
+import org.collectionspace.services.client.PoxPayloadOut;
+import org.collectionspace.services.common.api.Tools;
+import org.collectionspace.services.common.context.ServiceContext;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+/**
+ * A per-request cache of documents looked up by CSID, kept in the service context, so that
+ * the documents referenced from a page of list results (e.g. the subjects and objects of
+ * relations) can be fetched with a few bulk queries via prefetch(), rather than one query each.
+ *
+ * The cached documents are only for reading.  They belong to the repository session they
+ * were fetched with, so the cache is emptied if a different session is used.
+ */
+public class DocumentModelCache {
+
+    private static final String CONTEXT_PROPERTY = DocumentModelCache.class.getName();
+
+    private CoreSessionInterface repoSession;
+    // CSIDs map to null if there is no such document
+    private final Map<String, DocumentModel> docModels = new HashMap<String, DocumentModel>();
+
+    /**
+     * Returns the cache for the request, creating it if need be.
+     */
+    public static DocumentModelCache get(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) {
+        DocumentModelCache result = (DocumentModelCache) ctx.getProperty(CONTEXT_PROPERTY);
+        if (result == null) {
+            result = new DocumentModelCache();
+            ctx.setProperty(CONTEXT_PROPERTY, result);
+        }
+        return result;
+    }
+
+    /**
+     * Fetches the documents that aren't already cached, grouped by document type.
+     *
+     * @param docTypesByCsid the CSIDs of the documents to fetch, and their (unqualified)
+     *        document types, or null if unknown.
+     */
+    public void prefetch(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, CoreSessionInterface repoSession,
+            Map<String, String> docTypesByCsid) throws Exception {
+        useSession(repoSession);
+
+        Map<String, List<String>> csidsByDocType = new HashMap<String, List<String>>();
+        for (Map.Entry<String, String> entry : docTypesByCsid.entrySet()) {
+            String csid = entry.getKey();
+            if (Tools.isBlank(csid) || docModels.containsKey(csid)) {
+                continue;
+            }
+            String docType = Tools.isBlank(entry.getValue()) ? null : entry.getValue();
+            List<String> csids = csidsByDocType.get(docType);
+            if (csids == null) {
+                csids = new ArrayList<String>();
+                csidsByDocType.put(docType, csids);
+            }
+            csids.add(csid);
+        }
+
+        List<String> notFound = new ArrayList<String>();
+        for (Map.Entry<String, List<String>> entry : csidsByDocType.entrySet()) {
+            Map<String, DocumentModel> found = NuxeoUtils.getDocsFromCsids(ctx, repoSession, entry.getValue(), entry.getKey());
+            docModels.putAll(found);
+            for (String csid : entry.getValue()) {
+                if (found.containsKey(csid) == false) {
+                    notFound.add(csid);
+                }
+            }
+        }
+
+        // A document may not be of the type we were told, so look for the rest across all types.
+        if (notFound.isEmpty() == false) {
+            Map<String, DocumentModel> found = NuxeoUtils.getDocsFromCsids(ctx, repoSession, notFound, null);
+            for (String csid : notFound) {
+                docModels.put(csid, found.get(csid));
+            }
+        }
+    }
+
+    /**
+     * Returns the document with the given CSID, or null if there is none; from the cache,
+     * or else via NuxeoUtils.getDocFromCsid().
+     */
+    public DocumentModel getDocFromCsid(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, CoreSessionInterface repoSession,
+            String csid) throws Exception {
+        useSession(repoSession);
+        if (docModels.containsKey(csid)) {
+            return docModels.get(csid);
+        }
+        DocumentModel result = NuxeoUtils.getDocFromCsid(ctx, repoSession, csid);
+        docModels.put(csid, result);
+        return result;
+    }
+
+    private void useSession(CoreSessionInterface repoSession) {
+        if (this.repoSession != repoSession) {
+            docModels.clear();
+            this.repoSession = repoSession;
+        }
+    }
+}
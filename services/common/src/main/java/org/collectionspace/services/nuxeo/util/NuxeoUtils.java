@@ -22,7 +22,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.File;
 import java.lang.reflect.Field;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
@@ -53,7 +55,9 @@ import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.api.impl.blob.BlobWrapper;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
 import org.nuxeo.ecm.core.api.model.PropertyException;
 import org.nuxeo.ecm.core.io.DocumentPipe;
 import org.nuxeo.ecm.core.io.DocumentReader;
@@ -84,6 +88,9 @@ public class NuxeoUtils {
     
     public static final String Workspaces = "Workspaces";
     public static final String workspaces = "workspaces"; // to make it easier to migrate older versions of the CollectionSpace services -i.e., pre v2.0.
+
+    // The most IDs to include in a single "ecm:uuid IN (...)" query -see getDocumentModels()
+    public static final int MAX_IDS_PER_QUERY = 500;
         
     // Regular expressions pattern for identifying valid ORDER BY clauses.
     // FIXME: Currently supports only USASCII word characters in field names.
@@ -189,6 +196,26 @@ public class NuxeoUtils {
     	File fileToDelete = getFileOfBlob(blob);
     	return deleteFile(fileToDelete);
     }
+
+    /**
+     * Returns the file that holds the bits of a blob, so that they can be read straight from the file -e.g.,
+     * with a FileChannel- or null if the blob isn't kept in a readable file.
+     */
+    static public File getReadableFileOfBlob(Blob blob) {
+    	File result = null;
+
+    	if (blob instanceof FileBlob) {
+    		result = ((FileBlob)blob).getFile();
+    	} else {
+    		result = getFileOfBlob(blob);
+    	}
+
+    	if (result != null && (result.isFile() == false || result.canRead() == false)) {
+    		result = null;
+    	}
+
+    	return result;
+    }
     
     static public boolean deleteFile(File fileToDelete) {
     	boolean result = true;
@@ -424,6 +451,56 @@ public class NuxeoUtils {
         return result;
     }
     
+    /**
+     * Gets the document models corresponding to a list of Nuxeo IDs, with one
+     * NXQL query per MAX_IDS_PER_QUERY IDs, rather than one request per document.
+     * 
+     * WARNING: As with getDocumentModel(), this bypasses our tenant and security filters.
+     *
+     * @param repoSession the repo session
+     * @param nuxeoIds the Nuxeo IDs
+     *
+     * @return the document models, in the order of the list of IDs.  IDs for which
+     *         there's no document are skipped.
+     *
+     * @throws DocumentException the document exception
+     */
+    public static DocumentModelList getDocumentModels(
+    		CoreSessionInterface repoSession, List<String> nuxeoIds)
+            throws DocumentException {
+        DocumentModelList result = new DocumentModelListImpl();
+
+        Map<String, DocumentModel> docModels = new HashMap<String, DocumentModel>();
+        try {
+            for (int start = 0; start < nuxeoIds.size(); start += MAX_IDS_PER_QUERY) {
+                List<String> ids = nuxeoIds.subList(start, Math.min(start + MAX_IDS_PER_QUERY, nuxeoIds.size()));
+                StringBuilder query = new StringBuilder("SELECT * FROM " + BASE_DOCUMENT_TYPE
+                		+ " WHERE " + IQueryManager.NUXEO_UUID + " IN (");
+                for (int i = 0; i < ids.size(); i++) {
+                    if (i > 0) {
+                        query.append(", ");
+                    }
+                    query.append(prepareStringLiteral(ids.get(i)));
+                }
+                query.append(")");
+                for (DocumentModel docModel : repoSession.query(query.toString())) {
+                    docModels.put(docModel.getId(), docModel);
+                }
+            }
+        } catch (ClientException e) {
+            throw new NuxeoDocumentException(e);
+        }
+
+        for (String nuxeoId : nuxeoIds) {
+            DocumentModel docModel = docModels.get(nuxeoId);
+            if (docModel != null) {
+                result.add(docModel);
+            }
+        }
+
+        return result;
+    }
+    
     static public String getByNameWhereClause(String csid) {
     	String result = null;
     	
@@ -642,6 +719,82 @@ public class NuxeoUtils {
         return result;
     }    
 
+    /**
+     * Gets the documents with the given CSIDs, with one NXQL query per MAX_IDS_PER_QUERY
+     * CSIDs, rather than one per document.  Like getDocFromCsid(), only the current
+     * tenant's documents are found.
+     *
+     * @param docType the (unqualified) document type of the documents, if known; otherwise null,
+     *        to look for them across all document types.  If the repository doesn't know the
+     *        type, or the query for it fails, the documents are looked for across all types.
+     * @return the documents, keyed by CSID.  CSIDs for which there's no document are skipped.
+     */
+    static public Map<String, DocumentModel> getDocsFromCsids(
+    		ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		CoreSessionInterface repoSession,
+    		List<String> csids,
+    		String docType) throws Exception {
+        Map<String, DocumentModel> result = new HashMap<String, DocumentModel>();
+
+        if (docType != null) {
+            boolean known = false;
+            try {
+                known = docTypeExists(docType);
+            } catch (Exception e) {
+                logger.debug("Could not check the document type '" + docType + "': " + e.getMessage());
+            }
+            if (known == false) {
+                logger.debug("Unknown document type '" + docType + "'; looking for the documents across all types.");
+                docType = null;
+            }
+        }
+
+        for (int start = 0; start < csids.size(); start += MAX_IDS_PER_QUERY) {
+            List<String> batch = csids.subList(start, Math.min(start + MAX_IDS_PER_QUERY, csids.size()));
+            StringBuilder whereClause = new StringBuilder("ecm:name IN (");
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) {
+                    whereClause.append(", ");
+                }
+                whereClause.append(prepareStringLiteral(batch.get(i)));
+            }
+            whereClause.append(")");
+            DocumentModelList docModelList = null;
+            if (docType != null) {
+                try {
+                    docModelList = queryDocsFromCsids(ctx, repoSession, whereClause.toString(), docType);
+                } catch (Exception e) {
+                    logger.debug("Could not query the documents of type '" + docType
+                            + "' by CSID; looking for them across all types: " + e.getMessage());
+                    docType = null;
+                }
+            }
+            if (docModelList == null) {
+                docModelList = queryDocsFromCsids(ctx, repoSession, whereClause.toString(), NuxeoUtils.BASE_DOCUMENT_TYPE);
+            }
+            for (DocumentModel docModel : docModelList) {
+                String csid = docModel.getName();
+                if (result.containsKey(csid)) {
+                    throw new DocumentException("Found more than 1 document with CSID = " + csid);
+                }
+                result.put(csid, docModel);
+            }
+        }
+
+        return result;
+    }
+
+    static private DocumentModelList queryDocsFromCsids(
+    		ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		CoreSessionInterface repoSession,
+    		String whereClause,
+    		String docType) throws Exception {
+        QueryContext queryContext = new QueryContext(ctx, whereClause);
+        queryContext.setDocType(docType);
+        String query = buildNXQLQuery(ctx, queryContext);
+        return repoSession.query(query);
+    }
+
     /*
     public static void printDocumentModel(DocumentModel docModel) throws Exception {
         String[] schemas = docModel.getDeclaredSchemas();
@@ -0,0 +1,182 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.common.document;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.DOMReader;
+import org.nuxeo.ecm.core.schema.Namespace;
+import org.nuxeo.ecm.core.schema.types.ComplexTypeImpl;
+import org.nuxeo.ecm.core.schema.types.ListTypeImpl;
+import org.nuxeo.ecm.core.schema.types.SchemaImpl;
+import org.nuxeo.ecm.core.schema.types.primitives.DateType;
+import org.nuxeo.ecm.core.schema.types.primitives.DoubleType;
+import org.nuxeo.ecm.core.schema.types.primitives.LongType;
+import org.nuxeo.ecm.core.schema.types.primitives.StringType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the XML DocumentUtils.writeDocument() streams for a part is the same as the XML
+ * DocumentUtils.buildDocument() builds for it, for each kind of property.
+ */
+public class DocumentUtilsStreamingTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentUtilsStreamingTest.class);
+    private static final String SCHEMA_NAME = "collectionobjects_common";
+    private static final String NAMESPACE_URI = "http://collectionspace.org/services/collectionobject";
+
+    private SchemaImpl schema;
+
+    @BeforeClass
+    public void createSchema() {
+        schema = new SchemaImpl(SCHEMA_NAME, new Namespace(NAMESPACE_URI, "ns2"));
+        schema.addField("objectNumber", StringType.INSTANCE, null, 0);
+        schema.addField("numberOfObjects", LongType.INSTANCE, null, 0);
+        schema.addField("ageValue", DoubleType.INSTANCE, null, 0);
+        schema.addField("fieldCollector", StringType.INSTANCE, null, 0);
+        schema.addField("fieldCollectionDate", DateType.INSTANCE, null, 0);
+
+        ListTypeImpl briefDescriptions = new ListTypeImpl(SCHEMA_NAME, "briefDescriptionList", StringType.INSTANCE,
+                "briefDescription", null, 0, -1);
+        schema.addField("briefDescriptions", briefDescriptions, null, 0);
+
+        ComplexTypeImpl titleGroup = new ComplexTypeImpl(null, SCHEMA_NAME, "titleGroup");
+        titleGroup.addField("title", StringType.INSTANCE, null, 0);
+        titleGroup.addField("titleLanguage", StringType.INSTANCE, null, 0);
+        titleGroup.addField("titleDate", DateType.INSTANCE, null, 0);
+        ListTypeImpl titleGroupList = new ListTypeImpl(SCHEMA_NAME, "titleGroupList", titleGroup,
+                "titleGroup", null, 0, -1);
+        schema.addField("titleGroupList", titleGroupList, null, 0);
+    }
+
+    /*
+     * The part as buildDocument() builds it, the way DocumentUtils.buildDocument(ObjectPartType, ...) does.
+     */
+    private Element build(Map<String, Object> objectProps) throws Exception {
+        org.w3c.dom.Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        org.w3c.dom.Element root = document.createElementNS(NAMESPACE_URI, "ns2:" + SCHEMA_NAME);
+        root.setAttribute("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
+        root.setAttribute("xmlns:ns2", NAMESPACE_URI);
+        document.appendChild(root);
+        DocumentUtils.buildDocument(document, root, objectProps, schema);
+        return new DOMReader().read(document).getRootElement();
+    }
+
+    private Element write(Map<String, Object> objectProps) throws Exception {
+        StringWriter stringWriter = new StringWriter();
+        XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(stringWriter);
+        DocumentUtils.writeDocument(writer, NAMESPACE_URI, SCHEMA_NAME, objectProps, schema);
+        writer.flush();
+        logger.debug("Streamed part: " + stringWriter);
+        return DocumentHelper.parseText(stringWriter.toString()).getRootElement();
+    }
+
+    private void assertSameXml(Map<String, Object> objectProps) throws Exception {
+        assertSameElement(write(objectProps), build(objectProps), SCHEMA_NAME);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertSameElement(Element actual, Element expected, String path) {
+        Assert.assertEquals(actual.getName(), expected.getName(), path);
+        Assert.assertEquals(actual.getNamespaceURI(), expected.getNamespaceURI(), path);
+        List<Element> actualChildren = actual.elements();
+        List<Element> expectedChildren = expected.elements();
+        Assert.assertEquals(actualChildren.size(), expectedChildren.size(), path);
+        if (expectedChildren.isEmpty() == true) {
+            Assert.assertEquals(actual.getText(), expected.getText(), path);
+        }
+        Iterator<Element> it = expectedChildren.iterator();
+        for (Element actualChild : actualChildren) {
+            Element expectedChild = it.next();
+            assertSameElement(actualChild, expectedChild, path + "/" + expectedChild.getName());
+        }
+    }
+
+    private static GregorianCalendar date(int year, int month, int day) {
+        GregorianCalendar result = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        result.clear();
+        result.set(year, month - 1, day);
+        return result;
+    }
+
+    @Test
+    public void plainProperties() throws Exception {
+        Map<String, Object> objectProps = new LinkedHashMap<String, Object>();
+        objectProps.put("objectNumber", "2016.1.1 <a & b>");
+        objectProps.put("numberOfObjects", Long.valueOf(3));
+        objectProps.put("ageValue", Double.valueOf(0.000001));
+        objectProps.put("csid", "8d7a4b41-3d4e-4e64-a2c1-52d7c1e2d6c1"); // Not in the schema
+        assertSameXml(objectProps);
+    }
+
+    @Test
+    public void listProperties() throws Exception {
+        Map<String, Object> firstTitle = new LinkedHashMap<String, Object>();
+        firstTitle.put("title", "Untitled");
+        firstTitle.put("titleLanguage", "urn:cspace:core.collectionspace.org:vocabularies:name(languages):item:name(eng)'English'");
+        Map<String, Object> secondTitle = new LinkedHashMap<String, Object>();
+        secondTitle.put("title", "Sans titre");
+        secondTitle.put("titleLanguage", null);
+
+        Map<String, Object> objectProps = new LinkedHashMap<String, Object>();
+        objectProps.put("briefDescriptions", Arrays.asList("First", "", "Third"));
+        objectProps.put("titleGroupList", Arrays.asList(firstTitle, secondTitle));
+        assertSameXml(objectProps);
+
+        objectProps.put("briefDescriptions", new String[] {"As an array"});
+        assertSameXml(objectProps);
+    }
+
+    @Test
+    public void refNameAndDateProperties() throws Exception {
+        Map<String, Object> title = new LinkedHashMap<String, Object>();
+        title.put("title", "Dated");
+        title.put("titleDate", date(1999, 12, 31));
+
+        Map<String, Object> objectProps = new LinkedHashMap<String, Object>();
+        objectProps.put("fieldCollector",
+                "urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(johndoe1234)'John \"Jack\" Doe & Sons'");
+        objectProps.put("fieldCollectionDate", date(2016, 2, 29));
+        objectProps.put("titleGroupList", Arrays.asList(title));
+        assertSameXml(objectProps);
+
+        objectProps.put("fieldCollectionDate", date(2016, 2, 29).getTime()); // A Date, rather than a Calendar
+        assertSameXml(objectProps);
+    }
+}
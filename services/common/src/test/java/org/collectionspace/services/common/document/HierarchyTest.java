@@ -0,0 +1,205 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.common.document;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.collectionspace.services.client.workflow.WorkflowClient;
+import org.collectionspace.services.common.document.Hierarchy.Edge;
+import org.collectionspace.services.relation.RelationshipType;
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the reading of the relations in a hierarchy, level by level, against an in-memory
+ * database, and the limits on its size.
+ */
+public class HierarchyTest {
+
+    private static final String DB_URL = "jdbc:h2:mem:hierarchy;DB_CLOSE_DELAY=-1";
+    private static final String TENANT_ID = "1";
+
+    private Connection conn;
+    private int relationCount = 0;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        conn = DriverManager.getConnection(DB_URL);
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("CREATE TABLE relations_common (id VARCHAR(36), relationshiptype VARCHAR(32),"
+                    + " subjectcsid VARCHAR(36), subjecturi VARCHAR(255), subjectdocumenttype VARCHAR(64),"
+                    + " objectcsid VARCHAR(36), objecturi VARCHAR(255), objectdocumenttype VARCHAR(64))");
+            stmt.executeUpdate("CREATE TABLE collectionspace_core (id VARCHAR(36), tenantid VARCHAR(255))");
+            stmt.executeUpdate("CREATE TABLE misc (id VARCHAR(36), lifecyclestate VARCHAR(32))");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("DROP ALL OBJECTS");
+        } finally {
+            stmt.close();
+            conn.close();
+        }
+    }
+
+    /*
+     * Records that 'child' has the broader item 'parent'.
+     */
+    private void relate(String child, String parent, String lifecycleState) throws Exception {
+        String id = "relation" + (relationCount++);
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO relations_common VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+            ps.setString(1, id);
+            ps.setString(2, RelationshipType.HAS_BROADER.value());
+            ps.setString(3, child);
+            ps.setString(4, "/items/" + child);
+            ps.setString(5, "Placeitem");
+            ps.setString(6, parent);
+            ps.setString(7, "/items/" + parent);
+            ps.setString(8, "Placeitem");
+            ps.executeUpdate();
+        } finally {
+            ps.close();
+        }
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("INSERT INTO collectionspace_core VALUES ('" + id + "', '" + TENANT_ID + "')");
+            stmt.executeUpdate("INSERT INTO misc VALUES ('" + id + "', '" + lifecycleState + "')");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private void relate(String child, String parent) throws Exception {
+        relate(child, parent, "project");
+    }
+
+    private List<Edge> loadEdges(String itemcsid, boolean down, int maxDepth, int maxEdges) throws Exception {
+        return Hierarchy.loadEdges(conn, false, TENANT_ID, itemcsid, down, maxDepth, maxEdges, true);
+    }
+
+    private static List<String> keys(List<Edge> edges) {
+        List<String> result = new ArrayList<String>();
+        for (Edge edge : edges) {
+            result.add(edge.getKey());
+        }
+        return result;
+    }
+
+    private void relateTree() throws Exception {
+        relate("a", "root");
+        relate("b", "root");
+        relate("a1", "a");
+        relate("a2", "a");
+        relate("a1x", "a1");
+    }
+
+    @Test
+    public void nearestLevelsComeFirst() throws Exception {
+        relateTree();
+        List<String> keys = keys(loadEdges("root", true, 100, 100));
+        Assert.assertEquals(keys.size(), 5);
+        Assert.assertEquals(keys.subList(0, 2), Arrays.asList("a|root", "b|root"));
+        Assert.assertEquals(keys.subList(2, 4), Arrays.asList("a1|a", "a2|a"));
+        Assert.assertEquals(keys.get(4), "a1x|a1");
+
+        Assert.assertEquals(keys(loadEdges("a1x", false, 100, 100)), Arrays.asList("a1x|a1", "a1|a", "a|root"));
+    }
+
+    @Test
+    public void limitsAreKept() throws Exception {
+        relateTree();
+        Assert.assertEquals(keys(loadEdges("root", true, 1, 100)), Arrays.asList("a|root", "b|root"));
+        Assert.assertEquals(loadEdges("root", true, 100, 3).size(), 3);
+    }
+
+    @Test
+    public void oneExtraEdgeShowsTruncation() throws Exception {
+        relateTree();
+        // Hierarchy asks for one more edge than maxNodes
+        Assert.assertEquals(loadEdges("root", true, 100, 4 + 1).size(), 5); // maxNodes = 4: truncated
+        Assert.assertEquals(loadEdges("root", true, 100, 5 + 1).size(), 5); // maxNodes = 5: complete
+    }
+
+    @Test
+    public void duplicateRelationsAreCountedOnce() throws Exception {
+        relate("a", "root");
+        relate("a", "root");
+        relate("b", "root");
+        Assert.assertEquals(keys(loadEdges("root", true, 100, 2)), Arrays.asList("a|root", "b|root"));
+    }
+
+    @Test
+    public void sharedItemsAndCyclesEnd() throws Exception {
+        relate("a", "root");
+        relate("b", "root");
+        relate("shared", "a");
+        relate("shared", "b");
+        relate("root", "shared"); // A cycle
+        List<String> keys = keys(loadEdges("root", true, 100, 100));
+        Assert.assertEquals(keys.size(), 5);
+        Assert.assertTrue(keys.containsAll(Arrays.asList("shared|a", "shared|b", "root|shared")));
+    }
+
+    @Test
+    public void deletedRelationsAreSkipped() throws Exception {
+        relate("a", "root");
+        relate("b", "root", WorkflowClient.WORKFLOWSTATE_DELETED);
+        Assert.assertEquals(keys(loadEdges("root", true, 100, 100)), Arrays.asList("a|root"));
+        Assert.assertEquals(Hierarchy.loadEdges(conn, false, TENANT_ID, "root", true, 100, 100, false).size(), 2);
+    }
+
+    @Test
+    public void maxNodesAndDepthAreClamped() {
+        MultivaluedMap<String, String> queryParams = new MultivaluedMapImpl<String, String>();
+        Assert.assertEquals(Hierarchy.getMaxNodes(queryParams), Hierarchy.DEFAULT_MAX_NODES);
+        Assert.assertEquals(Hierarchy.getMaxDepth(queryParams), Hierarchy.DEFAULT_MAX_DEPTH);
+
+        queryParams.putSingle(Hierarchy.maxNodesQP, "10");
+        Assert.assertEquals(Hierarchy.getMaxNodes(queryParams), 10);
+        queryParams.putSingle(Hierarchy.maxNodesQP, String.valueOf(Integer.MAX_VALUE));
+        Assert.assertEquals(Hierarchy.getMaxNodes(queryParams), Hierarchy.MAX_NODES_LIMIT);
+        queryParams.putSingle(Hierarchy.maxNodesQP, "-1");
+        Assert.assertEquals(Hierarchy.getMaxNodes(queryParams), Hierarchy.DEFAULT_MAX_NODES);
+
+        queryParams.putSingle(Hierarchy.depthQP, "100000");
+        Assert.assertTrue(Hierarchy.getMaxDepth(queryParams) < 100000);
+    }
+}
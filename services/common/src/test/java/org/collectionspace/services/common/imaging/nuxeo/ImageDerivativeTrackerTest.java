@@ -0,0 +1,158 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.common.imaging.nuxeo;
+
+import java.util.Map;
+
+import org.collectionspace.services.common.imaging.nuxeo.ImageDerivativeTracker.Status;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the states an image's derivatives go through in the ImageDerivativeTracker, driving its sweeps with
+ * made-up times.
+ */
+public class ImageDerivativeTrackerTest {
+
+    private static final String REPOSITORY = "default";
+    private static final long START = 1000000L;
+    private static final long LATER = ImageDerivativeTracker.RETRY_INTERVAL_MILLIS + 1;
+
+    @BeforeMethod
+    public void clear() {
+        ImageDerivativeTracker.clear();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        ImageDerivativeTracker.shutdown();
+    }
+
+    @Test
+    public void testUnknownImagesAreReady() {
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("unknown"), Status.READY);
+    }
+
+    @Test
+    public void testPendingUntilReady() {
+        // There's no transaction to wait for, so the image is pending right away
+        ImageDerivativeTracker.setPending(REPOSITORY, "image1");
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.PENDING);
+        ImageDerivativeTracker.setReady("image1");
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.READY);
+    }
+
+    @Test
+    public void testReadyBeforeCommitStaysReady() {
+        // The views are done as soon as the Picture document commits, before we hear that it committed
+        ImageDerivativeTracker.Generation generation = ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        ImageDerivativeTracker.setReady("image1");
+        ImageDerivativeTracker.committed("image1", generation, START + 1);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.READY);
+        Assert.assertTrue(ImageDerivativeTracker.sweep(START + 1 + LATER).isEmpty());
+    }
+
+    @Test
+    public void testRetryTimedFromCommit() {
+        ImageDerivativeTracker.Generation generation = ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        ImageDerivativeTracker.committed("image1", generation, START + LATER);
+        Assert.assertTrue(ImageDerivativeTracker.sweep(START + LATER).isEmpty());
+        Assert.assertEquals(ImageDerivativeTracker.sweep(START + 2 * LATER).size(), 1);
+    }
+
+    @Test
+    public void testRolledBackImagesAreForgotten() {
+        ImageDerivativeTracker.Generation generation = ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        ImageDerivativeTracker.rolledBack("image1", generation);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.READY);
+
+        // A rollback doesn't forget a later upload of the same image
+        generation = ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        ImageDerivativeTracker.addPending(REPOSITORY, "image1", START + 1);
+        ImageDerivativeTracker.rolledBack("image1", generation);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.PENDING);
+    }
+
+    @Test
+    public void testNothingRescheduledBeforeRetryInterval() {
+        ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        Map<String, String> retries = ImageDerivativeTracker.sweep(START + ImageDerivativeTracker.RETRY_INTERVAL_MILLIS);
+        Assert.assertTrue(retries.isEmpty());
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.PENDING);
+    }
+
+    @Test
+    public void testRescheduledThenFailed() {
+        ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        long now = START;
+        for (int attempt = 2; attempt <= ImageDerivativeTracker.MAX_ATTEMPTS; attempt++) {
+            now += LATER;
+            Map<String, String> retries = ImageDerivativeTracker.sweep(now);
+            Assert.assertEquals(retries.size(), 1, "attempt " + attempt);
+            Assert.assertEquals(retries.get("image1"), REPOSITORY);
+            Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.PENDING);
+            // A sweep right after a retry leaves it alone
+            Assert.assertTrue(ImageDerivativeTracker.sweep(now + 1).isEmpty());
+        }
+        now += LATER;
+        Assert.assertTrue(ImageDerivativeTracker.sweep(now).isEmpty());
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.FAILED);
+        // Failed images stay failed, and aren't tried again
+        Assert.assertTrue(ImageDerivativeTracker.sweep(now + LATER).isEmpty());
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.FAILED);
+    }
+
+    @Test
+    public void testReadyAfterRetry() {
+        ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        Assert.assertEquals(ImageDerivativeTracker.sweep(START + LATER).size(), 1);
+        ImageDerivativeTracker.setReady("image1");
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.READY);
+        Assert.assertTrue(ImageDerivativeTracker.sweep(START + 2 * LATER).isEmpty());
+    }
+
+    @Test
+    public void testGettingStatusReschedulesNothing() {
+        ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.PENDING);
+        // Still due, since looking at the status didn't retry it
+        Assert.assertEquals(ImageDerivativeTracker.sweep(START + LATER).size(), 1);
+    }
+
+    @Test
+    public void testOnlyOldestForgottenWhenFull() {
+        for (int i = 0; i <= ImageDerivativeTracker.MAX_ENTRIES; i++) {
+            ImageDerivativeTracker.addPending(REPOSITORY, "image" + i, START);
+        }
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image0"), Status.READY);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.PENDING);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image" + ImageDerivativeTracker.MAX_ENTRIES), Status.PENDING);
+
+        // Pending again makes an image the newest
+        ImageDerivativeTracker.addPending(REPOSITORY, "image1", START);
+        ImageDerivativeTracker.addPending(REPOSITORY, "new", START);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image1"), Status.PENDING);
+        Assert.assertEquals(ImageDerivativeTracker.getStatus("image2"), Status.READY);
+    }
+}
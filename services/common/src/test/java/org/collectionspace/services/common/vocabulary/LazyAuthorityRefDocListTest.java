@@ -0,0 +1,175 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.common.vocabulary;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.collectionspace.services.common.document.DocumentException;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the paging of a LazyAuthorityRefDocList over documents found with the refObjs index,
+ * against a fake repository that filters, sorts and pages them the way the repository query does.
+ */
+public class LazyAuthorityRefDocListTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LazyAuthorityRefDocListTest.class);
+    private static final String ORDER_BY = "collectionspace_core:updatedAt DESC";
+
+    // The fake repository the lists are fetched from
+    private static Map<String, Integer> currentRepository;
+
+    /*
+     * The documents in the fake repository: their sort keys, by ID.  Deleted documents,
+     * and those the user can't read, aren't in it.
+     */
+    private static Map<String, Integer> repository(String... docIdsAndKeys) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (int i = 0; i < docIdsAndKeys.length; i += 2) {
+            result.put(docIdsAndKeys[i], Integer.valueOf(docIdsAndKeys[i + 1]));
+        }
+        return result;
+    }
+
+    private static DocumentModel document(final String docId) {
+        return (DocumentModel) Proxy.newProxyInstance(DocumentModel.class.getClassLoader(),
+                new Class<?>[] {DocumentModel.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getId")) {
+                            return docId;
+                        }
+                        if (method.getName().equals("toString")) {
+                            return docId;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static class IndexedDocList extends LazyAuthorityRefDocList {
+        private static final long serialVersionUID = 1L;
+
+        List<Integer> fetchedPages;
+
+        IndexedDocList(List<String> indexedDocIds, int pageSize)
+                throws DocumentException {
+            super(indexedDocIds, ORDER_BY, pageSize, true);
+        }
+
+        @Override
+        DocumentModelList fetchPage(int pageNum, boolean computeTotal) {
+            // Created here, since the superclass constructor fetches the first page
+            if (fetchedPages == null) {
+                fetchedPages = new ArrayList<Integer>();
+            }
+            final Map<String, Integer> repository = currentRepository;
+            fetchedPages.add(pageNum);
+            Assert.assertEquals(getOrderByClause(), ORDER_BY);
+
+            List<String> found = new ArrayList<String>();
+            for (String docId : getIndexedDocIds()) {
+                if (repository.containsKey(docId)) {
+                    found.add(docId);
+                }
+            }
+            Collections.sort(found, new Comparator<String>() {
+                @Override
+                public int compare(String docId1, String docId2) {
+                    return repository.get(docId2).compareTo(repository.get(docId1));
+                }
+            });
+            int pageSize = getPageSize();
+            int start = pageSize > 0 ? Math.min(pageNum * pageSize, found.size()) : 0;
+            int end = pageSize > 0 ? Math.min(start + pageSize, found.size()) : found.size();
+            DocumentModelListImpl result = new DocumentModelListImpl();
+            for (String docId : found.subList(start, end)) {
+                result.add(document(docId));
+            }
+            if (computeTotal == true) {
+                result.setTotalSize(found.size());
+            }
+            return result;
+        }
+    }
+
+    private static List<String> iterate(LazyAuthorityRefDocList docList) {
+        List<String> result = new ArrayList<String>();
+        for (DocumentModel docModel : docList) {
+            result.add(docModel.getId());
+        }
+        return result;
+    }
+
+    @Test
+    public void pagesFollowTheOrderAcrossPages() throws Exception {
+        // Indexed in ID order, but sorted by the query
+        currentRepository = repository("a", "1", "b", "5", "c", "3", "d", "4", "e", "2");
+        IndexedDocList docList = new IndexedDocList(Arrays.asList("a", "b", "c", "d", "e"), 2);
+        Assert.assertEquals(iterate(docList), Arrays.asList("b", "d", "c", "e", "a"));
+        Assert.assertEquals(docList.fetchedPages, Arrays.asList(0, 1, 2));
+        Assert.assertEquals(docList.totalSize(), 5);
+    }
+
+    @Test
+    public void totalsLeaveOutFilteredDocuments() throws Exception {
+        // "b" and "d" have been deleted since they were indexed
+        currentRepository = repository("a", "1", "c", "3", "e", "2");
+        IndexedDocList docList = new IndexedDocList(Arrays.asList("a", "b", "c", "d", "e"), 2);
+        logger.debug("Found " + docList.totalSize() + " of 5 indexed documents");
+        Assert.assertEquals(docList.totalSize(), 3);
+        Assert.assertEquals(iterate(docList), Arrays.asList("c", "e", "a"));
+        Assert.assertEquals(docList.fetchedPages, Arrays.asList(0, 1));
+    }
+
+    @Test
+    public void fullLastPageEndsWithAnEmptyPage() throws Exception {
+        currentRepository = repository("a", "1", "b", "2", "c", "3", "d", "4");
+        IndexedDocList docList = new IndexedDocList(Arrays.asList("a", "b", "c", "d"), 2);
+        Assert.assertEquals(iterate(docList), Arrays.asList("d", "c", "b", "a"));
+        Assert.assertEquals(docList.fetchedPages, Arrays.asList(0, 1, 2));
+    }
+
+    @Test
+    public void unpagedListsAreFetchedOnce() throws Exception {
+        currentRepository = repository("a", "1", "b", "2", "c", "3");
+        IndexedDocList docList = new IndexedDocList(Arrays.asList("a", "b", "c"), 0);
+        Assert.assertEquals(iterate(docList), Arrays.asList("c", "b", "a"));
+        Assert.assertEquals(docList.fetchedPages, Arrays.asList(0));
+        Assert.assertEquals(docList.totalSize(), 3);
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.common.vocabulary;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.transaction.Status;
+
+import org.collectionspace.services.common.vocabulary.RefObjsIndex.Entry;
+import org.collectionspace.services.common.vocabulary.RefObjsIndex.IndexWrite;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the refObjs index tables against an in-memory database.
+ */
+public class RefObjsIndexTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefObjsIndexTest.class);
+    private static final String DB_URL = "jdbc:h2:mem:refobjs;DB_CLOSE_DELAY=-1";
+    private static final String TENANT_ID = "1";
+    private static final String REF_NAME = "urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(johndoe)";
+    private static final String AUTH_REF = "authRef";
+
+    private Connection conn;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        conn = openConnection();
+        RefObjsIndex.createTables(conn);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("DROP ALL OBJECTS");
+        } finally {
+            stmt.close();
+            conn.close();
+        }
+    }
+
+    private static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(DB_URL);
+    }
+
+    private static List<Entry> entries(String refName) {
+        return Collections.singletonList(new Entry(refName, AUTH_REF, "CollectionObject",
+                "collectionobjects_common:fieldCollector"));
+    }
+
+    private List<String> readDocIds() throws SQLException {
+        return RefObjsIndex.readDocIds(conn, TENANT_ID, REF_NAME, AUTH_REF);
+    }
+
+    @Test
+    public void newerVersionReplacesRows() throws Exception {
+        Assert.assertTrue(RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", entries(REF_NAME), 100));
+        Assert.assertEquals(readDocIds(), Arrays.asList("doc1"));
+
+        Assert.assertTrue(RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", entries(REF_NAME + "x"), 200));
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+    }
+
+    @Test
+    public void staleRebuildRowsAreSkipped() throws Exception {
+        // A document saved after a rebuild read it
+        Assert.assertTrue(RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", entries(REF_NAME + "x"), 200));
+        // The rebuild's rows, from the older version, don't replace the newer ones
+        Assert.assertFalse(RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", entries(REF_NAME), 100));
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+    }
+
+    @Test
+    public void deletedDocumentsStayDeleted() throws Exception {
+        RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", entries(REF_NAME), 100);
+        Assert.assertTrue(RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", null, RefObjsIndex.DELETED_VERSION));
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+
+        // A rebuild that read the document before it was deleted
+        Assert.assertFalse(RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", entries(REF_NAME), 100));
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+    }
+
+    @Test
+    public void docIdsAreSortedAndCapped() throws Exception {
+        for (String docId : new String[] {"doc3", "doc1", "doc2"}) {
+            RefObjsIndex.writeEntries(conn, TENANT_ID, docId, entries(REF_NAME), 100);
+        }
+        Assert.assertEquals(readDocIds(), Arrays.asList("doc1", "doc2", "doc3"));
+
+        List<Entry> twice = new ArrayList<Entry>(entries(REF_NAME));
+        twice.add(new Entry(REF_NAME, AUTH_REF, "CollectionObject", "collectionobjects_common:owner"));
+        RefObjsIndex.writeEntries(conn, TENANT_ID, "doc4", twice, 100);
+        Assert.assertEquals(readDocIds(), Arrays.asList("doc1", "doc2", "doc3", "doc4"));
+
+        for (int i = 0; i < RefObjsIndex.MAX_INDEXED_DOC_IDS; i++) {
+            RefObjsIndex.writeEntries(conn, TENANT_ID, "many" + i, entries(REF_NAME), 100);
+        }
+        Assert.assertNull(readDocIds());
+    }
+
+    @Test
+    public void buildInvalidatedWhileRunningIsNotMarkedBuilt() throws Exception {
+        long generation = RefObjsIndex.startBuild(conn, TENANT_ID);
+        Assert.assertFalse(RefObjsIndex.readBuilt(conn, TENANT_ID));
+
+        RefObjsIndex.markOutOfDate(conn, TENANT_ID);
+        Assert.assertFalse(RefObjsIndex.finishBuild(conn, TENANT_ID, generation));
+        Assert.assertFalse(RefObjsIndex.readBuilt(conn, TENANT_ID));
+
+        generation = RefObjsIndex.startBuild(conn, TENANT_ID);
+        Assert.assertTrue(RefObjsIndex.finishBuild(conn, TENANT_ID, generation));
+        Assert.assertTrue(RefObjsIndex.readBuilt(conn, TENANT_ID));
+
+        RefObjsIndex.markOutOfDate(conn, TENANT_ID);
+        Assert.assertFalse(RefObjsIndex.readBuilt(conn, TENANT_ID));
+    }
+
+    @Test
+    public void writesWaitForCommit() throws Exception {
+        IndexWrite rolledBack = new TestIndexWrite("doc1", entries(REF_NAME), 100);
+        rolledBack.afterCompletion(Status.STATUS_ROLLEDBACK);
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+
+        IndexWrite committed = new TestIndexWrite("doc1", entries(REF_NAME), 100);
+        committed.afterCompletion(Status.STATUS_COMMITTED);
+        Assert.assertEquals(readDocIds(), Arrays.asList("doc1"));
+
+        IndexWrite removal = new TestIndexWrite("doc1", null, RefObjsIndex.DELETED_VERSION);
+        removal.afterCompletion(Status.STATUS_ROLLEDBACK);
+        Assert.assertEquals(readDocIds(), Arrays.asList("doc1"));
+        removal.afterCompletion(Status.STATUS_COMMITTED);
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+    }
+
+    @Test
+    public void renamedTermIsFoundUnderItsNewRefName() throws Exception {
+        String newRefName = REF_NAME.replace("johndoe", "janedoe");
+        RefObjsIndex.writeEntries(conn, TENANT_ID, "doc1", entries(REF_NAME), 100);
+        RefObjsIndex.writeEntries(conn, TENANT_ID, "doc2", entries(REF_NAME), 100);
+
+        // A refName update job batch that rolled back leaves the old rows
+        new TestIndexWrite("doc1", entries(newRefName), 200).afterCompletion(Status.STATUS_ROLLEDBACK);
+        Assert.assertEquals(readDocIds(), Arrays.asList("doc1", "doc2"));
+
+        // Once the batch commits, the documents are found under the new refName, even if
+        // their updatedAt time didn't change
+        new TestIndexWrite("doc1", entries(newRefName), 200).afterCompletion(Status.STATUS_COMMITTED);
+        new TestIndexWrite("doc2", entries(newRefName), 100).afterCompletion(Status.STATUS_COMMITTED);
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+        Assert.assertEquals(RefObjsIndex.readDocIds(conn, TENANT_ID, newRefName, AUTH_REF), Arrays.asList("doc1", "doc2"));
+    }
+
+    @Test
+    public void failedWritesMarkTheIndexOutOfDate() throws Exception {
+        long generation = RefObjsIndex.startBuild(conn, TENANT_ID);
+        Assert.assertTrue(RefObjsIndex.finishBuild(conn, TENANT_ID, generation));
+
+        IndexWrite failing = new TestIndexWrite("doc1", entries(REF_NAME), 100) {
+            private boolean failed = false;
+
+            @Override
+            Connection openConnection() throws Exception {
+                if (failed == false) {
+                    failed = true;
+                    Connection closed = super.openConnection();
+                    closed.close();
+                    return closed;
+                }
+                return super.openConnection();
+            }
+        };
+        failing.afterCompletion(Status.STATUS_COMMITTED);
+        Assert.assertFalse(RefObjsIndex.readBuilt(conn, TENANT_ID));
+        Assert.assertEquals(readDocIds(), Collections.<String>emptyList());
+    }
+
+    private static class TestIndexWrite extends IndexWrite {
+        TestIndexWrite(String docId, List<Entry> entries, long version) {
+            super(TENANT_ID, "default", docId, entries, version);
+        }
+
+        @Override
+        Connection openConnection() throws Exception {
+            return RefObjsIndexTest.openConnection();
+        }
+    }
+}
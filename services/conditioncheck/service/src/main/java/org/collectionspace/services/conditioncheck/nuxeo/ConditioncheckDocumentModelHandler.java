@@ -30,4 +30,12 @@ import org.collectionspace.services.nuxeo.client.java.NuxeoDocumentModelHandler;
  */
 public class ConditioncheckDocumentModelHandler
         extends NuxeoDocumentModelHandler<ConditionchecksCommon> {
+
+    /**
+     * This handler doesn't change how parts are extracted, so they can be streamed.
+     */
+    @Override
+    protected boolean canStreamParts() {
+        return true;
+    }
 }
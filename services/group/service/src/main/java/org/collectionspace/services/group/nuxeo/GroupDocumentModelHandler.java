@@ -28,5 +28,12 @@ import org.collectionspace.services.group.GroupsCommon;
 
 public class GroupDocumentModelHandler 
 	extends NuxeoDocumentModelHandler<GroupsCommon> {
-}
 
+	/**
+	 * This handler doesn't change how parts are extracted, so they can be streamed.
+	 */
+	@Override
+	protected boolean canStreamParts() {
+		return true;
+	}
+}
@@ -60,6 +60,10 @@ public class IdClient extends AbstractServiceClientImpl<String, String, String,
         return getProxy().createId(csid);
     }
 
+    public ClientResponse<String> createIds(String csid, int count) {
+        return getProxy().createIds(csid, count);
+    }
+
 	@Override
 	public ClientResponse<String> update(String csid, String payload) {
 		throw new UnsupportedOperationException("ID client does not support an update operation.");	}
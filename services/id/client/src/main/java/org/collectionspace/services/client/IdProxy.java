@@ -7,6 +7,7 @@ import javax.ws.rs.DELETE;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 import org.jboss.resteasy.client.ClientResponse;
 
@@ -52,5 +53,10 @@ public interface IdProxy extends CollectionSpaceProxy<String> {
     @POST
     @Path("/{csid}/ids")
     ClientResponse<String> createId(@PathParam("csid") String csid);
+
+    //(C)reate a batch of IDs, returned one per line
+    @POST
+    @Path("/{csid}/ids")
+    ClientResponse<String> createIds(@PathParam("csid") String csid, @QueryParam("count") int count);
  
 }
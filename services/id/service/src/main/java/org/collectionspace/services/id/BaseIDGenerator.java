@@ -110,7 +110,29 @@ public class BaseIDGenerator implements IDGenerator {
         
     }
 
- 
+    /**
+     * Identifies whether the IDs generated by this ID generator depend
+     * only upon its stored state: that is, whether each of its parts
+     * stores its own value, and its last part is an incrementing sequence.
+     *
+     * The IDs from such a generator may safely be generated in advance of
+     * their use; those from a generator with a year or UUID part may not.
+     *
+     * @return  true if each new ID is the next in a predictable sequence;
+     *          false otherwise.
+     */
+    public boolean generatesSequentialIDs() {
+        if (this.parts.isEmpty()) {
+            return false;
+        }
+        for (IDGeneratorPart part : this.parts) {
+            if (! (part instanceof StoredValueIDGeneratorPart)) {
+                return false;
+            }
+        }
+        return this.parts.lastElement() instanceof SequenceIDGeneratorPart;
+    }
+
     @Override
     public boolean isValidID(String id) {
         return isValidID(id, getRegex());
@@ -22,6 +22,7 @@
  */
 package org.collectionspace.services.id;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import javax.ws.rs.Consumes;
@@ -78,6 +79,9 @@ public class IDResource extends AbstractCollectionSpaceResourceImpl<PoxPayloadIn
     final static String LIST_FORMAT_SUMMARY = "summary";
     final static String LIST_FORMAT_FULL = "full";
     final static String QUERY_PARAM_ID_GENERATOR_ROLE = "role";
+    final static String QUERY_PARAM_ID_COUNT = "count";
+    // Separator between IDs returned in a batch.
+    final static String ID_SEPARATOR = "\n";
     // XML namespace for the ID Service.
     final static String ID_SERVICE_NAMESPACE =
             "http://collectionspace.org/services/id";
@@ -105,13 +109,19 @@ public class IDResource extends AbstractCollectionSpaceResourceImpl<PoxPayloadIn
     /**
      * Generates and returns a new ID, from the specified ID generator.
      *
+     * If a count is supplied, generates and returns that number of
+     * new IDs, one per line, in the order in which they were generated.
+     *
      * @param  csid  An identifier for an ID generator.
      *
+     * @param  count  The number of IDs to generate (optional).
+     *
      * @return  A new ID created ("generated") by the specified ID generator.
      */
     @POST
     @Path("/{csid}/ids")
-    public Response newID(@PathParam("csid") String csid) {
+    public Response newID(@PathParam("csid") String csid,
+            @QueryParam(QUERY_PARAM_ID_COUNT) Integer count) {
 
         // @TODO The JavaDoc description reflects an as-yet-to-be-carried out
         // refactoring, in which the highest object type in the ID service
@@ -135,8 +145,13 @@ public class IDResource extends AbstractCollectionSpaceResourceImpl<PoxPayloadIn
         String newId = "";
         try {
         	ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx = createServiceContext();
-            // Obtain a new ID from the specified ID generator instance.
-            newId = service.createID(ctx, csid);
+            // Obtain a new ID, or a batch of new IDs, from the specified
+            // ID generator instance.
+            if (count == null) {
+                newId = service.createID(ctx, csid);
+            } else {
+                newId = joinIDs(service.createIDs(ctx, csid, count));
+            }
 
             // If the new ID is empty, return an error response.
             if (newId == null || newId.trim().isEmpty()) {
@@ -177,6 +192,17 @@ public class IDResource extends AbstractCollectionSpaceResourceImpl<PoxPayloadIn
 
     }
 
+    private String joinIDs(List<String> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (String id : ids) {
+            if (sb.length() > 0) {
+                sb.append(ID_SEPARATOR);
+            }
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+
     //////////////////////////////////////////////////////////////////////
     /**
      * Creates a new ID generator instance.
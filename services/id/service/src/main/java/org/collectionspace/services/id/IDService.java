@@ -16,6 +16,7 @@
  */
 package org.collectionspace.services.id;
 
+import java.util.List;
 import java.util.Map;
 
 import org.collectionspace.services.client.PoxPayloadIn;
@@ -40,7 +41,16 @@ public interface IDService {
     // Generates and returns a new ID from the specified ID generator.
     public String createID(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid) throws Exception;
 
+    // Generates and returns the specified number of new IDs from the specified ID generator.
+    public List<String> createIDs(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid, int count)
+            throws Exception;
+
     // Returns the last-generated ID associated with the specified ID generator.
+    //
+    // When IDs are claimed in blocks (see the "idReservationBlockSize" binding
+    // property), this is the last ID this server has handed out.  Until it has
+    // handed one out since it started, it is the last ID of the last block
+    // claimed, which may not have been issued.
     public String readLastID(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid)
             throws Exception;
 
@@ -68,8 +68,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.naming.NamingException;
 import javax.security.auth.login.LoginException;
@@ -104,6 +109,22 @@ public class IDServiceJdbcImpl implements IDService {
     
     final static String CSPACE_INSTANCE_ID = ServiceMain.getInstance().getCspaceInstanceId();
 
+    // The "idgenerators" service binding property that sets how many IDs to claim
+    // at a time from generators whose IDs are sequential.  0 or 1 disables this.
+    //
+    // IDs claimed in advance are held in memory, so any not handed out are lost
+    // when the server is restarted, leaving gaps in the sequence.  If more than one
+    // server shares a database, each will hand out IDs from its own block.
+    //
+    // The stored last-generated ID is the last ID of the last block claimed;
+    // readLastID() reports the last ID actually handed out, where it knows it.
+    final static String ID_RESERVATION_BLOCK_SIZE_PROPERTY = "idReservationBlockSize";
+    final static int MAX_IDS_PER_REQUEST = 10000;
+
+    // IDs claimed in advance and not yet handed out, keyed by database name and generator csid.
+    final static ConcurrentMap<String, ReservedIDBlock> reservedIDBlocks =
+            new ConcurrentHashMap<String, ReservedIDBlock>();
+
 
     //////////////////////////////////////////////////////////////////////
     /**
@@ -137,81 +158,301 @@ public class IDServiceJdbcImpl implements IDService {
 
         logger.debug("> in createID");
 
+        return createIDs(ctx, csid, 1).get(0);
+
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /**
+     * Generates and returns one or more new IDs associated with a specified
+     * ID generator.
+     *
+     * If the "idgenerators" service binding sets a reservation block size
+     * (see ID_RESERVATION_BLOCK_SIZE_PROPERTY), IDs from generators whose
+     * IDs are sequential are claimed from the database a block at a time,
+     * and handed out from memory until that block is used up.  Otherwise,
+     * the IDs are generated, and the generator's new state is stored, in a
+     * single database transaction.
+     *
+     * @param  csid  An identifier for an ID generator.
+     *
+     * @param  count  The number of IDs to generate.
+     *
+     * @return  The new IDs, in the order in which they were generated.
+     *
+     * @throws  DocumentNotFoundException if the provided csid is null or empty,
+     *          or if the specified ID generator can't be found.
+     *
+     * @throws  BadRequestException if the requested number of IDs is out of range.
+     *
+     * @throws  IllegalStateException if a storage-related error occurred.
+     */
+    @Override
+    public List<String> createIDs(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		String csid, int count) throws Exception {
+
+        logger.debug("> in createIDs");
+
         // @TODO Where relevant, implement logic to check for ID availability,
         // after generating a candidate ID.
 
         // @TODO: Add checks for authorization to perform this operation.
 
-        String newId = "";
-        String lastId = "";
-
         if (csid == null || csid.equals("")) {
             throw new DocumentNotFoundException(
                     "Identifier for ID generator must not be null or empty.");
         }
 
-        String serializedGenerator = "";
-        try {
-            IDGeneratorInstance generator = readIDGenerator(ctx, csid);
-            serializedGenerator = generator.getGeneratorState();
-            // serializedGenerator = readIDGenerator(csid).getGeneratorState();
-        } catch (DocumentNotFoundException e) {
-            throw e;
-        } catch (IllegalArgumentException e) {
-            throw e;
-        } catch (IllegalStateException e) {
-            throw e;
+        if (count < 1 || count > MAX_IDS_PER_REQUEST) {
+            throw new BadRequestException(
+                    "The number of IDs requested must be between 1 and " + MAX_IDS_PER_REQUEST + ".");
         }
 
-        // Guard code - should not be needed.
-        if (serializedGenerator == null || serializedGenerator.equals("")) {
-            throw new BadRequestException(
-                    "ID generator " + "\'" + csid + "\'" + " could not be found.");
+        int blockSize = getReservationBlockSize(ctx);
+        if (blockSize <= 1) {
+            // In case blocks were claimed before the block size was changed
+            discardReservedIDs(ctx, csid);
+            return generateIDs(ctx, csid, count, 0);
         }
 
-        SettableIDGenerator generator;
-        try {
-            generator = IDGeneratorSerializer.deserialize(serializedGenerator);
-        } catch (IllegalArgumentException e) {
-            throw e;
+        // Hand out any IDs left over from the last block claimed for this
+        // generator, then claim a new block if more are needed.
+        List<String> newIds = new ArrayList<String>(count);
+        ReservedIDBlock block = getReservedIDBlock(ctx, csid);
+        synchronized (block) {
+            block.take(newIds, count);
+            int needed = count - newIds.size();
+            if (needed > 0) {
+                List<String> generatedIds = generateIDs(ctx, csid, needed,
+                        Math.max(blockSize - needed, 0));
+                newIds.addAll(generatedIds.subList(0, needed));
+                block.add(generatedIds.subList(needed, generatedIds.size()));
+            }
+            block.lastIssuedId = newIds.get(newIds.size() - 1);
         }
 
+        return newIds;
+
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /**
+     * Generates new IDs from a specified ID generator, and stores the
+     * generator's resulting state and last-generated ID, within a single
+     * database transaction.
+     *
+     * The generator's row is locked for the duration of that transaction,
+     * via a 'SELECT ... FOR UPDATE' statement, so concurrent requests for
+     * IDs from the same generator are serialized.
+     *
+     * @param  csid  An identifier for an ID generator.
+     *
+     * @param  count  The number of IDs required.
+     *
+     * @param  reserveCount  The number of additional IDs to generate, if the
+     *         generator's IDs are sequential, for handing out later.  If the
+     *         generator overflows, fewer additional IDs may be returned.
+     *
+     * @return  The new IDs, in the order in which they were generated.
+     *
+     * @throws  DocumentNotFoundException if the requested ID generator
+     *          could not be found.
+     *
+     * @throws  IllegalStateException if a storage-related error occurred.
+     */
+    private List<String> generateIDs(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
+    		String csid, int count, int reserveCount) throws Exception {
+
+        List<String> newIds = new ArrayList<String>(count);
+
+        Connection conn = null;
+        boolean committed = false;
         try {
+            String repositoryName = ctx.getRepositoryName();
+            conn = getJdbcConnection(getDatabaseName(repositoryName));
+            conn.setAutoCommit(false);
 
-            // Retrieve the last ID associated with this generator
-            // from persistent storage.
-            lastId = readLastID(ctx, csid);
+            PreparedStatement selectStmt = conn.prepareStatement(
+                    "SELECT id_generator_state, last_generated_id "
+                    + "FROM id_generators "
+                    + "WHERE csid = ? FOR UPDATE");
+            selectStmt.setString(1, csid);
+            ResultSet rs = selectStmt.executeQuery();
 
-            // If there was no last generated ID associated with this generator,
-            // get a new ID.
-            if (lastId == null || lastId.equals("")) {
-                newId = generator.newID();
+            boolean moreRows = rs.next();
+            if (!moreRows) {
+                throw new DocumentNotFoundException(
+                        "ID generator " + "\'" + csid + "\'" + " could not be found.");
+            }
+            String serializedGenerator = rs.getString(1);
+            String lastId = rs.getString(2);
+            rs.close();
+            selectStmt.close();
 
-                // Otherwise, generate a new ID, potentially based on the last ID.
-                // (This also sets the current ID of the ID generator's state
-                // to this just-generated 'new' ID.)
-            } else {
-                newId = generator.newID(lastId);
+            // Guard code - should not be needed.
+            if (serializedGenerator == null || serializedGenerator.equals("")) {
+                throw new BadRequestException(
+                        "ID generator " + "\'" + csid + "\'" + " could not be found.");
             }
 
-            // Store the 'new' ID as the last-generated ID for this generator.
-            updateLastID(ctx, csid, newId);
+            SettableIDGenerator generator = IDGeneratorSerializer.deserialize(serializedGenerator);
+            int total = count;
+            if (reserveCount > 0 && generator.generatesSequentialIDs() == true) {
+                total += reserveCount;
+            }
 
-            // Store the new state of this ID generator, reflecting that
-            // one of its parts may possibly have had its value updated as
-            // a result of the generation of this 'new' ID.
-            updateIDGenerator(ctx, csid, generator);
+            for (int i = 0; i < total; i++) {
+                String newId;
+                try {
+                    // If there was no last generated ID associated with this generator,
+                    // get a new ID.  Otherwise, generate a new ID based on the last ID.
+                    // (This also sets the current ID of the ID generator's state
+                    // to this just-generated 'new' ID.)
+                    if (i == 0 && lastId != null && !lastId.equals("")) {
+                        newId = generator.newID(lastId);
+                    } else {
+                        newId = generator.newID();
+                    }
+                } catch (IllegalStateException e) {
+                    // The generator has overflowed.  That's only an error if it
+                    // happened while generating the IDs that were asked for.
+                    if (i < count) {
+                        throw e;
+                    }
+                    break;
+                }
+                newIds.add(newId);
+            }
 
-        } catch (DocumentNotFoundException e) {
-            throw e;
-        } catch (IllegalArgumentException e) {
-            throw e;
-        } catch (IllegalStateException e) {
-            throw e;
+            // Store the new state of this ID generator, and the last of the
+            // just-generated IDs, in the same transaction.
+            final String SQL_STATEMENT_STRING =
+                    "UPDATE id_generators SET "
+                    + "id_generator_state = ?, "
+                    + "last_generated_id = ? "
+                    + "WHERE csid = ?";
+
+            PreparedStatement ps = conn.prepareStatement(SQL_STATEMENT_STRING);
+            ps.setString(1, IDGeneratorSerializer.serialize(generator));
+            ps.setString(2, newIds.get(newIds.size() - 1));
+            ps.setString(3, csid);
+
+            int rowsUpdated = ps.executeUpdate();
+            ps.close();
+
+            if (rowsUpdated != 1) {
+                throw new IllegalStateException(
+                        "Error updating ID generator '" + csid
+                        + "'" + " in the database.");
+            }
+
+            conn.commit();
+            committed = true;
+
+            logger.debug("Generated " + newIds.size() + " IDs from ID generator: " + csid);
+
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error generating new "
+                    + "ID in the database: " + e.getMessage());
+        } finally {
+            try {
+                if (conn != null) {
+                    if (!committed) {
+                        conn.rollback();
+                    }
+                    conn.close();
+                }
+            } catch (SQLException e) {
+            	logger.error("Error closing JDBC connection: ", e);
+                // Do nothing here
+            }
+        }
+
+        return newIds;
+
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /**
+     * Returns the size of the blocks of IDs to claim at a time from
+     * ID generators, as configured in the "idgenerators" service binding.
+     *
+     * @return  The block size, or 0 if IDs are not claimed in blocks.
+     */
+    private int getReservationBlockSize(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx) {
+        int result = 0;
+
+        String blockSize = ctx.getServiceBindingPropertyValue(ID_RESERVATION_BLOCK_SIZE_PROPERTY);
+        if (!Tools.isBlank(blockSize)) {
+            try {
+                result = Math.min(Integer.parseInt(blockSize.trim()), MAX_IDS_PER_REQUEST);
+            } catch (NumberFormatException e) {
+                logger.warn(String.format("Ignoring invalid value '%s' for ID generator property '%s'.",
+                        blockSize, ID_RESERVATION_BLOCK_SIZE_PROPERTY));
+            }
+        }
+
+        return result;
+    }
+
+    private ReservedIDBlock getReservedIDBlock(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid) {
+        String key = getReservedIDBlockKey(ctx, csid);
+        ReservedIDBlock result = reservedIDBlocks.get(key);
+        if (result == null) {
+            ReservedIDBlock newBlock = new ReservedIDBlock();
+            result = reservedIDBlocks.putIfAbsent(key, newBlock);
+            if (result == null) {
+                result = newBlock;
+            }
+        }
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /**
+     * Discards any IDs claimed in advance from a specified ID generator, so
+     * that the next request picks up the generator's stored state.  The
+     * discarded IDs will not be handed out.
+     *
+     * @param  csid  An identifier for an ID generator.
+     */
+    private void discardReservedIDs(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid) {
+        ReservedIDBlock block = reservedIDBlocks.remove(getReservedIDBlockKey(ctx, csid));
+        if (block != null) {
+            synchronized (block) {
+                block.clear();
+            }
+        }
+    }
+
+    private String getReservedIDBlockKey(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, String csid) {
+        return getDatabaseName(ctx.getRepositoryName()) + ":" + csid;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /**
+     * IDs claimed in advance from a single ID generator, and not yet handed
+     * out.  Callers synchronize on the block while using it.
+     */
+    private static class ReservedIDBlock {
+        private final LinkedList<String> ids = new LinkedList<String>();
+        // The last ID handed out, which the database doesn't record
+        String lastIssuedId;
+
+        void take(List<String> result, int count) {
+            while (result.size() < count && !ids.isEmpty()) {
+                result.add(ids.removeFirst());
+            }
         }
 
-        return newId;
+        void add(List<String> newIds) {
+            ids.addAll(newIds);
+        }
 
+        void clear() {
+            ids.clear();
+            lastIssuedId = null;
+        }
     }
 
     //////////////////////////////////////////////////////////////////////
@@ -295,6 +536,7 @@ public class IDServiceJdbcImpl implements IDService {
 
             conn.commit();
             conn.close();
+            discardReservedIDs(ctx, csid);
 
             logger.debug("Successfully updated last-generated ID: " + lastId);
 
@@ -323,6 +565,10 @@ public class IDServiceJdbcImpl implements IDService {
      *
      * @param  csid  An identifier for an ID generator.
      *
+     * If IDs are claimed from the generator in blocks, this is the last ID
+     * handed out from its current block, rather than the last ID of the block
+     * stored in the database, once this server has handed one out.
+     *
      * @return  The last ID generated that corresponds to the requested ID generator.
      *
      * @throws  DocumentNotFoundException if the requested ID generator
@@ -376,6 +622,15 @@ public class IDServiceJdbcImpl implements IDService {
             }
         }
 
+        ReservedIDBlock block = reservedIDBlocks.get(getReservedIDBlockKey(ctx, csid));
+        if (block != null) {
+            synchronized (block) {
+                if (block.lastIssuedId != null) {
+                    lastId = block.lastIssuedId;
+                }
+            }
+        }
+
         logger.debug("> returning ID: " + lastId);
 
         return lastId;
@@ -682,56 +937,6 @@ public class IDServiceJdbcImpl implements IDService {
         return generators;
     }
 
-    //////////////////////////////////////////////////////////////////////
-    /**
-     * Updates an existing ID generator in persistent storage.
-     *
-     * @param  csid     An identifier for an ID generator.
-     *
-     * @param  generator  An ID generator, reflecting its current state,
-     *                  including the values of its constituent parts.
-     *
-     * @throws  DocumentNotFoundException if the requested ID generator could
-     *          not be found.
-     *
-     * @throws  BadRequestException if the provided representation of an
-     *          ID generator instance is not in the correct format, contains
-     *          invalid values, or otherwise cannot be used.
-     *
-     * @throws  IllegalStateException if a storage-related error occurred.
-     */
-    private void updateIDGenerator(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx,
-    		String csid, 
-    		SettableIDGenerator generator) throws Exception {
-
-        logger.debug("> in updateIDGenerator(String, SettableIDGenerator)");
-
-        // @TODO: Add checks for authorization to perform this operation.
-
-        if (generator == null) {
-            throw new BadRequestException(
-                    "ID generator provided in update operation cannot be null.");
-        }
-
-        String serializedGenerator = "";
-        try {
-            serializedGenerator = IDGeneratorSerializer.serialize(generator);
-        } catch (BadRequestException e) {
-            throw e;
-        }
-
-        try {
-            updateIDGenerator(ctx, csid, serializedGenerator);
-        } catch (DocumentNotFoundException e) {
-            throw e;
-        } catch (BadRequestException e) {
-            throw e;
-        } catch (IllegalStateException e) {
-            throw e;
-        }
-
-    }
-
     //////////////////////////////////////////////////////////////////////
     /**
      * Updates an existing ID generator in persistent storage,
@@ -836,6 +1041,7 @@ public class IDServiceJdbcImpl implements IDService {
 
             conn.commit();
             conn.close();
+            discardReservedIDs(ctx, csid);
 
             logger.debug("Successfully updated ID Generator: " + csid);
 
@@ -918,6 +1124,8 @@ public class IDServiceJdbcImpl implements IDService {
                         + "': generator could not be found in the database.");
             } // end if (idGeneratorFound)
 
+            discardReservedIDs(ctx, csid);
+
             logger.debug("Successfully deleted ID generator: " + csid);
 
         } catch (IllegalStateException ise) {
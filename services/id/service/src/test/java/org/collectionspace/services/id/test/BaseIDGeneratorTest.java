@@ -263,7 +263,33 @@ public class BaseIDGeneratorTest extends TestCase {
         assertEquals(CURRENT_YEAR + ".1-", generator.newID());
         assertEquals(CURRENT_YEAR + ".1-", generator.newID());
     }
-    
+
+    // Test identifying generators whose IDs may be generated in advance
+
+    public void testGeneratesSequentialIDs() throws BadRequestException {
+        assertFalse(generator.generatesSequentialIDs());
+
+        generator.clear();
+        generator.add(new StringIDGeneratorPart("E"));
+        generator.add(new NumericIDGeneratorPart("1"));
+        assertTrue(generator.generatesSequentialIDs());
+
+        generator.clear();
+        generator.add(new YearIDGeneratorPart());
+        generator.add(new StringIDGeneratorPart("."));
+        generator.add(new NumericIDGeneratorPart("1"));
+        assertFalse(generator.generatesSequentialIDs());
+
+        generator.clear();
+        generator.add(new NumericIDGeneratorPart("1"));
+        generator.add(new StringIDGeneratorPart("-"));
+        assertFalse(generator.generatesSequentialIDs());
+
+        generator.clear();
+        generator.add(new UUIDGeneratorPart());
+        assertFalse(generator.generatesSequentialIDs());
+    }
+
     // Test validating IDs
 
     public void testValidUUID() {
@@ -38,10 +38,13 @@ import org.collectionspace.services.common.config.TenantBindingConfigReaderImpl;
 import org.collectionspace.services.common.context.MultipartServiceContextFactory;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.common.context.ServiceContextFactory;
+import org.collectionspace.services.common.vocabulary.RefObjsIndex;
 import org.collectionspace.services.config.tenant.RepositoryDomainType;
 import org.collectionspace.services.config.tenant.TenantBindingType;
 import org.collectionspace.services.imports.ImportsCommon;
 import org.collectionspace.services.imports.nuxeo.ImportCommand;
+import org.collectionspace.services.imports.nuxeo.ImportJob;
+import org.collectionspace.services.imports.nuxeo.StreamingImportCommand;
 import org.collectionspace.services.nuxeo.util.NuxeoUtils;
 
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
@@ -52,6 +55,7 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
@@ -60,13 +64,26 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,6 +103,23 @@ public class ImportsResource extends AbstractCollectionSpaceResourceImpl<PoxPayl
 
 	public static final String SERVICE_NAME = "imports";
 	public static final String SERVICE_PATH = "/" + SERVICE_NAME;
+	// Query params, and the service binding property, for streaming imports
+	public static final String IMPORT_MODE_PARAM = "impMode";
+	public static final String IMPORT_MODE_STREAM = "stream";
+	public static final String IMPORT_BATCH_SIZE_PARAM = "impBatchSize";
+	public static final String IMPORT_BATCH_SIZE_PROPERTY = "importBatchSize";
+	public static final String IMPORT_THREADS_PARAM = "impThreads";
+	public static final String IMPORT_THREADS_PROPERTY = "importThreads";
+	public static final String IMPORT_ASYNC_PARAM = "impAsync";
+	public static final String JOBS_PATH = "jobs";
+	// System properties that limit how many background imports run at once, and how many wait
+	public static final String CONCURRENT_IMPORTS_PROP = "org.collectionspace.services.imports.concurrentImports";
+	public static final String QUEUED_IMPORTS_PROP = "org.collectionspace.services.imports.queuedImports";
+	private static final int DEFAULT_CONCURRENT_IMPORTS = 2;
+	private static final int DEFAULT_QUEUED_IMPORTS = 10;
+	private static final String TOO_MANY_IMPORTS_MSG = "Too many imports are waiting to run; try again later.";
+	// Runs the background imports of all tenants; each import also has its own pool of workers
+	private static final ThreadPoolExecutor asyncImports = createAsyncImportsExecutor();
     private static String NUXEO_SPACES_PATH_DELIMITER = "/";
 
 	/*
@@ -201,7 +235,7 @@ public class ImportsResource extends AbstractCollectionSpaceResourceImpl<PoxPayl
 	@Consumes("application/xml")
 	@Produces("application/xml")
 	public Response create(@Context UriInfo ui,
-			String xmlPayload) {
+			InputStream xmlPayload) {
 		String result = null;
 		ResponseBuilder rb = Response.ok();
 		try {
@@ -209,8 +243,29 @@ public class ImportsResource extends AbstractCollectionSpaceResourceImpl<PoxPayl
 			int timeout = ctx.getTimeoutSecs(); // gets it from query param 'impTimout' or uses default if no query param specified
 			// InputSource inputSource = payloadToInputSource(xmlPayload);
 			// result = createFromInputSource(inputSource);
-			String inputFilename = payloadToFilename(xmlPayload);
-			result = createFromFilename(inputFilename, timeout);
+			String importMode = ui.getQueryParameters().getFirst(IMPORT_MODE_PARAM);
+			if (IMPORT_MODE_STREAM.equalsIgnoreCase(importMode)) {
+				int batchSize = getIntSetting(ctx, ui, IMPORT_BATCH_SIZE_PARAM, IMPORT_BATCH_SIZE_PROPERTY,
+						StreamingImportCommand.DEFAULT_BATCH_SIZE);
+				int threads = getIntSetting(ctx, ui, IMPORT_THREADS_PARAM, IMPORT_THREADS_PROPERTY,
+						StreamingImportCommand.DEFAULT_THREADS);
+				if (Tools.isTrue(ui.getQueryParameters().getFirst(IMPORT_ASYNC_PARAM))) {
+					try {
+						ImportJob job = createAsyncFromStream(xmlPayload, timeout, batchSize, threads);
+						result = "<?xml version=\"1.0\"?><import>" + job.toXml(false) + "</import>";
+						rb = Response.status(Response.Status.ACCEPTED)
+								.location(ui.getBaseUriBuilder().path(SERVICE_PATH).path(JOBS_PATH).path(job.getId()).build());
+					} catch (RejectedExecutionException e) {
+						result = e.getMessage();
+						rb = Response.status(Response.Status.SERVICE_UNAVAILABLE);
+					}
+				} else {
+					result = createFromStream(xmlPayload, timeout, batchSize, threads);
+				}
+			} else {
+				String inputFilename = payloadToFilename(FileTools.convertStreamToString(xmlPayload));
+				result = createFromFilename(inputFilename, timeout);
+			}
 		} catch (Exception e) {
                         result = e.getMessage();
                         logger.error(result);
@@ -249,6 +304,137 @@ public class ImportsResource extends AbstractCollectionSpaceResourceImpl<PoxPayl
 			result = "<?xml version=\"1.0\"?><import><msg>ERROR</msg><report>"
 					+ e.getMessage() + "</report></import>";
 		}
+		RefObjsIndex.invalidate(tenantId, repoName);
+		return result;
+	}
+
+	/**
+	 * Imports the request as it is read, without staging it, or the documents
+	 * expanded from it, on disk.  Documents are imported by a pool of 'threads'
+	 * workers, in batches of 'batchSize' that are each committed, or rolled back,
+	 * on their own; see StreamingImportCommand.
+	 */
+	public static String createFromStream(InputStream xmlPayload, int timeOut, int batchSize, int threads)
+			throws Exception {
+		String tenantId = AuthN.get().getCurrentTenantId();
+		InputSource inputSource = new InputSource(new AmpersandEncodingReader(
+				new InputStreamReader(xmlPayload, FileTools.UTF8_ENCODING)));
+		ImportJob job = new ImportJob(tenantId);
+		StreamingImportCommand importCommand = new StreamingImportCommand(job,
+				getRepoName(), getWorkspacesPath(), timeOut, batchSize, threads);
+		importCommand.run(inputSource, tenantId, getTemplateDir());
+		return "<?xml version=\"1.0\"?><import>" + job.toXml(true) + "</import>";
+	}
+
+	/**
+	 * Queues a streaming import to run in the background and returns its job, which can be
+	 * polled via GET /imports/jobs/{jobId}.  The request body is first copied to a
+	 * temp file, since the request's stream is closed once we return.
+	 * 
+	 * Up to CONCURRENT_IMPORTS_PROP imports (2 by default) run at once, across all tenants,
+	 * and up to QUEUED_IMPORTS_PROP (10 by default) wait for them; beyond that, the import
+	 * is refused with a RejectedExecutionException.
+	 */
+	public static ImportJob createAsyncFromStream(InputStream xmlPayload, final int timeOut,
+			int batchSize, int threads) throws Exception {
+		if (asyncImports.getQueue().remainingCapacity() == 0) {
+			throw new RejectedExecutionException(TOO_MANY_IMPORTS_MSG);
+		}
+		final String tenantId = AuthN.get().getCurrentTenantId();
+		final File payloadFile = File.createTempFile("import-", ".xml");
+		try {
+			Files.copy(xmlPayload, payloadFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			payloadFile.delete();
+			throw e;
+		}
+		// The background thread has no security context, so resolve the tenant's settings now.
+		final ImportJob job = ImportJob.register(new ImportJob(tenantId));
+		final StreamingImportCommand importCommand = new StreamingImportCommand(job,
+				getRepoName(), getWorkspacesPath(), timeOut, batchSize, threads);
+		final String templateDir = getTemplateDir();
+		Runnable importTask = new Runnable() {
+			@Override
+			public void run() {
+				InputStream in = null;
+				try {
+					in = new FileInputStream(payloadFile);
+					InputSource inputSource = new InputSource(new AmpersandEncodingReader(
+							new InputStreamReader(in, FileTools.UTF8_ENCODING)));
+					importCommand.run(inputSource, tenantId, templateDir);
+				} catch (Exception e) {
+					logger.error("Could not run import job " + job.getId(), e);
+					job.finish(e.getMessage());
+				} finally {
+					if (in != null) {
+						try {
+							in.close();
+						} catch (IOException e) {
+							// Ignore
+						}
+					}
+					payloadFile.delete();
+				}
+			}
+		};
+		try {
+			asyncImports.execute(importTask);
+		} catch (RejectedExecutionException e) {
+			payloadFile.delete();
+			job.finish(TOO_MANY_IMPORTS_MSG);
+			throw new RejectedExecutionException(TOO_MANY_IMPORTS_MSG, e);
+		}
+		return job;
+	}
+
+	private static ThreadPoolExecutor createAsyncImportsExecutor() {
+		int nThreads = Math.max(1, Integer.getInteger(CONCURRENT_IMPORTS_PROP, DEFAULT_CONCURRENT_IMPORTS));
+		int nQueued = Math.max(1, Integer.getInteger(QUEUED_IMPORTS_PROP, DEFAULT_QUEUED_IMPORTS));
+		ThreadPoolExecutor result = new ThreadPoolExecutor(nThreads, nThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(nQueued), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "imports-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	@GET
+	@Path(JOBS_PATH + "/{jobId}")
+	@Produces("application/xml")
+	public Response getImportJob(@PathParam("jobId") String jobId) {
+		ImportJob job = ImportJob.get(AuthN.get().getCurrentTenantId(), jobId);
+		if (job == null) {
+			return Response.status(Response.Status.NOT_FOUND)
+					.entity("Import job " + jobId + " not found.").type("text/plain").build();
+		}
+		return Response.ok("<?xml version=\"1.0\"?><import>" + job.toXml(true) + "</import>").build();
+	}
+
+	/*
+	 * An integer setting for streaming imports, from the given query param, or else
+	 * the given service binding property, or else the default.
+	 */
+	private static int getIntSetting(ServiceContext<PoxPayloadIn, PoxPayloadOut> ctx, UriInfo ui,
+			String paramName, String propertyName, int defaultValue) {
+		int result = defaultValue;
+		String value = ui.getQueryParameters().getFirst(paramName);
+		if (Tools.isBlank(value)) {
+			value = ctx.getServiceBindingPropertyValue(propertyName);
+		}
+		if (Tools.notBlank(value)) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logger.warn(String.format("Ignoring invalid value '%s' for import setting %s.", value, paramName));
+			}
+		}
 		return result;
 	}
 
@@ -280,6 +466,7 @@ public class ImportsResource extends AbstractCollectionSpaceResourceImpl<PoxPayl
 			result = "<?xml version=\"1.0\"?><import><msg>ERROR</msg><report>"
 					+ e.getMessage() + "</report></import>";
 		}
+		RefObjsIndex.invalidate(tenantId, repoName);
 		return result;
 	}
 
@@ -353,6 +540,56 @@ public class ImportsResource extends AbstractCollectionSpaceResourceImpl<PoxPayl
 		return xmlPayload.replace("&", "&amp;");
 	}
 
+	/*
+	 * Applies the same encoding as encodeAmpersands() to a stream, as it is read.
+	 */
+	private static class AmpersandEncodingReader extends FilterReader {
+		private static final String ENCODED_AMPERSAND = "amp;";
+		private int pending = 0;  // how much of ENCODED_AMPERSAND is still to be returned
+
+		AmpersandEncodingReader(Reader in) {
+			super(new BufferedReader(in));
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (pending > 0) {
+				return ENCODED_AMPERSAND.charAt(ENCODED_AMPERSAND.length() - pending--);
+			}
+			int c = super.read();
+			if (c == '&') {
+				pending = ENCODED_AMPERSAND.length();
+			}
+			return c;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			int count = 0;
+			while (count < len) {
+				if (count > 0 && pending == 0 && in.ready() == false) {
+					break;  // don't block once we have something to return
+				}
+				int c = read();
+				if (c == -1) {
+					break;
+				}
+				cbuf[off + count++] = (char) c;
+			}
+			return (count == 0 && len > 0) ? -1 : count;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			throw new IOException("skip() is not supported.");
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
 	public static void expandXmlPayloadToDir(String tenantId,
 			String inputFilename, String templateDir, String outputDir)
 			throws Exception {
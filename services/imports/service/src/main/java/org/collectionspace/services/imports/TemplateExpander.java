@@ -138,14 +138,35 @@ public class TemplateExpander {
     public static String doOneService(String tenantId, String outDir, String partTmpl, String wrapperTmpl,
             String SERVICE_TYPE, String SERVICE_NAME, Map<String, String> perRecordAttributes,
             String CSID) throws Exception {
-        String docID;
-        // Generate a CSID if one was not provided with the import record.
+        String docID = getDocID(CSID);
+        String document = expandDocument(tenantId, partTmpl, wrapperTmpl, SERVICE_TYPE, SERVICE_NAME,
+                perRecordAttributes, docID);
+
+        String serviceDir = outDir + '/' + docID;
+        FileTools.saveFile(serviceDir, "document.xml", document, FileTools.FORCE_CREATE_PARENT_DIRS);
+        return docID;
+    }
+
+    // Generate a CSID if one was not provided with the import record.
+    private static String getDocID(String CSID) {
         if (Tools.notBlank(CSID)) {
-            docID = CSID;
+            return CSID;
         } else {
-            docID = UUID.randomUUID().toString();
+            return UUID.randomUUID().toString();
         }
+    }
 
+    /**
+     * Expands a single document in memory, in the Nuxeo import format
+     * (the same content that doOneService() writes to a document.xml file).
+     *
+     * @param docID the CollectionSpace ID (CSID) of the document.
+     * @return the expanded document.
+     * @see #doOneService
+     */
+    public static String expandDocument(String tenantId, String partTmpl, String wrapperTmpl,
+            String SERVICE_TYPE, String SERVICE_NAME, Map<String, String> perRecordAttributes,
+            String docID) throws Exception {
         // Expand macro variables within the content to be imported.
         String part = searchAndReplaceVar(partTmpl, "docID", docID);
 
@@ -179,9 +200,7 @@ public class TemplateExpander {
         wrapperTmpl = Tools.searchAndReplace(wrapperTmpl, var("refName"),
                 getRefName(tenantId, SERVICE_TYPE, docID, partTmpl).replace("&", "&amp;").replace("$", "&#x0024;"));
 
-        String serviceDir = outDir + '/' + docID;
-        FileTools.saveFile(serviceDir, "document.xml", wrapperTmpl, FileTools.FORCE_CREATE_PARENT_DIRS);
-        return docID;
+        return wrapperTmpl;
     }
 
     /**
@@ -230,6 +249,32 @@ public class TemplateExpander {
         XmlSaxFragmenter.parse(requestSource, chopPath, callback, false);
     }
 
+    /**
+     * Expands each record in the request as it is parsed, and passes the
+     * expanded document to the supplied handler rather than writing it to disk.
+     * Parsing stops at the first error, which is thrown back to the caller.
+     */
+    public static void expandInputSource(String tenantId, String TEMPLATE_DIR, IExpandedDocumentHandler documentHandler,
+            InputSource requestSource, String chopPath) throws Exception {
+        FragmentHandlerImpl callback = new FragmentHandlerImpl(tenantId, TEMPLATE_DIR, documentHandler);
+        XmlSaxFragmenter.parseStream(requestSource, chopPath, callback, false);
+    }
+
+    /**
+     * The callback target for expandInputSource(), called once for every
+     * record in the request, in document order.
+     */
+    public interface IExpandedDocumentHandler {
+
+        /**
+         * @param serviceName the service name, such as "CollectionObjects".
+         * @param serviceType the tenant-qualified Nuxeo document type.
+         * @param docID the CollectionSpace ID (CSID) of the document.
+         * @param document the expanded document, in the Nuxeo import format.
+         */
+        public void onDocumentReady(String serviceName, String serviceType, String docID, String document) throws Exception;
+    }
+
     // The docType parameter here is matched to the SERVICE_TYPE argument in
     // the calling method doOneService(), above; both refer to a per-service
     // document type name
@@ -476,6 +521,8 @@ public class TemplateExpander {
         public String TEMPLATE_DIR = "";   //You MUST provide a default via constructor.
         public String OUPUT_DIR = "";      //You MUST provide a default via constructor.
         public String TENANT_ID = "";
+        private IExpandedDocumentHandler documentHandler = null;
+        private String wrapperTmpl = null;  // Read once, when expanding documents in memory
 
         //============IFragmentHandler===========================================================
         public void onFragmentReady(Document context, Element fragmentParent, String currentPath, int fragmentIndex, String fragment) {
@@ -486,9 +533,20 @@ public class TemplateExpander {
                 Map<String, String> perRecordAttributes = getPerRecordAttributes(fragmentParent);
                 serviceType = NuxeoUtils.getTenantQualifiedDocType(TENANT_ID, serviceType); //REM - Ensure a tenant qualified Nuxeo doctype
                 String CSID = fragmentParent.attributeValue("CSID");
-                TemplateExpander.createDocInWorkspace(TENANT_ID, fragment, serviceName, serviceType,
-                        perRecordAttributes, TEMPLATE_DIR, OUPUT_DIR, CSID);
+                if (documentHandler != null) {
+                    String docID = getDocID(CSID);
+                    String document = TemplateExpander.expandDocument(TENANT_ID, fragment, getWrapperTemplate(),
+                            serviceType, serviceName, perRecordAttributes, docID);
+                    documentHandler.onDocumentReady(serviceName, serviceType, docID, document);
+                } else {
+                    TemplateExpander.createDocInWorkspace(TENANT_ID, fragment, serviceName, serviceType,
+                            perRecordAttributes, TEMPLATE_DIR, OUPUT_DIR, CSID);
+                }
             } catch (Exception e) {
+                if (documentHandler != null) {
+                    // Stop parsing: the caller has to know which records were not imported.
+                    throw new RuntimeException("Could not import record " + (fragmentIndex + 1) + ": " + e.getMessage(), e);
+                }
                 logger.error("ERROR calling expandXmlPayloadToDir" + e);
                 e.printStackTrace();
             }
@@ -507,6 +565,19 @@ public class TemplateExpander {
             TENANT_ID = tenantId;
         }
 
+        public FragmentHandlerImpl(String tenantId, String templateDir, IExpandedDocumentHandler documentHandler) {
+            TEMPLATE_DIR = templateDir;
+            TENANT_ID = tenantId;
+            this.documentHandler = documentHandler;
+        }
+
+        private String getWrapperTemplate() {
+            if (wrapperTmpl == null) {
+                wrapperTmpl = FileTools.readFile(TEMPLATE_DIR, DEFAULT_WRAPPER_TEMPLATE_FILENAME);
+            }
+            return wrapperTmpl;
+        }
+
         private Map<String, String> getPerRecordAttributes(Element fragmentParent) {
             Map<String, String> perRecordAttributes = new HashMap<String, String>();
             for (Iterator<Attribute> attributesIterator = fragmentParent.attributeIterator(); attributesIterator.hasNext();) {
@@ -0,0 +1,205 @@
+package org.collectionspace.services.imports.nuxeo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The progress of one streaming import: record counts, the result of each batch, and the overall
+ * state.  It is updated by the thread reading the request and by the import workers, and can be
+ * read at any time -async imports are registered here so they can be polled via GET /imports/jobs/{id}.
+ * Running jobs are kept until they finish; of the finished ones, only each tenant's most recent
+ * MAX_FINISHED_JOBS_PER_TENANT are kept.
+ */
+public class ImportJob {
+
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    static final int MAX_FINISHED_JOBS_PER_TENANT = 100;  // most recent finished jobs kept for polling
+
+    // Oldest first
+    private static final Map<String, ImportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<String, ImportJob>());
+
+    private final String id = UUID.randomUUID().toString();
+    private final String tenantId;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime = 0;
+    private volatile State state = State.RUNNING;
+    private volatile String error = null;
+    private final AtomicInteger recordsRead = new AtomicInteger();
+    private final AtomicInteger recordsImported = new AtomicInteger();
+    private final AtomicInteger recordsFailed = new AtomicInteger();
+    private final List<BatchResult> batchResults = new ArrayList<BatchResult>();
+    private final Map<String, Integer> recordsImportedForDocType = new TreeMap<String, Integer>();
+    private final StringBuffer importedRecords = new StringBuffer();
+
+    public ImportJob(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public static ImportJob register(ImportJob job) {
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    /*
+     * Forgets the oldest finished jobs of a tenant that has more than MAX_FINISHED_JOBS_PER_TENANT.
+     */
+    private static void evictFinishedJobs(String tenantId) {
+        synchronized (jobs) {
+            int numFinished = 0;
+            for (ImportJob job : jobs.values()) {
+                if (job.tenantId.equals(tenantId) == true && job.state != State.RUNNING) {
+                    numFinished++;
+                }
+            }
+            Iterator<ImportJob> iterator = jobs.values().iterator();
+            while (numFinished > MAX_FINISHED_JOBS_PER_TENANT && iterator.hasNext() == true) {
+                ImportJob job = iterator.next();
+                if (job.tenantId.equals(tenantId) == true && job.state != State.RUNNING) {
+                    iterator.remove();
+                    numFinished--;
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns null if there's no such job for the tenant.
+     */
+    public static ImportJob get(String tenantId, String id) {
+        ImportJob result = jobs.get(id);
+        if (result != null && result.tenantId.equals(tenantId) == false) {
+            result = null;
+        }
+        return result;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    void recordRead() {
+        recordsRead.incrementAndGet();
+    }
+
+    synchronized void batchSucceeded(String partition, int index, List<String> csids, List<String> docTypes, long elapsedMillis) {
+        for (int i = 0; i < csids.size(); i++) {
+            String docType = docTypes.get(i);
+            importedRecords.append("<importedRecord>");
+            importedRecords.append("<doctype>" + docType + "</doctype>");
+            importedRecords.append("<csid>" + csids.get(i) + "</csid>");
+            importedRecords.append("</importedRecord>");
+            Integer count = recordsImportedForDocType.get(docType);
+            recordsImportedForDocType.put(docType, count == null ? 1 : count + 1);
+        }
+        recordsImported.addAndGet(csids.size());
+        batchResults.add(new BatchResult(partition, index, csids.size(), null, elapsedMillis));
+    }
+
+    synchronized void batchFailed(String partition, int index, int numRecords, String error, long elapsedMillis) {
+        recordsFailed.addAndGet(numRecords);
+        batchResults.add(new BatchResult(partition, index, numRecords, error, elapsedMillis));
+    }
+
+    /*
+     * Called once the request has been read and every batch has finished.  'error' is set
+     * if the request could not be read to the end.
+     */
+    public void finish(String error) {
+        this.error = error;
+        if (error == null && recordsRead.get() == 0) {
+            this.error = "No valid records found in import payload. Check XML markup for elements not matching import or document-specific schema, etc.";
+        }
+        endTime = System.currentTimeMillis();
+        state = this.error == null ? State.COMPLETED : State.FAILED;
+        evictFinishedJobs(tenantId);
+    }
+
+    public boolean hasFailures() {
+        return state == State.FAILED || recordsFailed.get() > 0;
+    }
+
+    /*
+     * The content of the <import> element returned to the client.  The list of imported records
+     * is only included once the job has finished, and only if asked for.
+     */
+    public synchronized String toXml(boolean includeImportedRecords) {
+        StringBuffer dump = new StringBuffer();
+        String msg = state == State.RUNNING ? "RUNNING" : (hasFailures() ? "ERROR" : "SUCCESS");
+        dump.append("<msg>" + msg + "</msg>");
+        dump.append("<jobId>" + id + "</jobId>");
+        dump.append("<state>" + state + "</state>");
+        if (includeImportedRecords == true && state != State.RUNNING) {
+            dump.append("<importedRecords>").append(importedRecords).append("</importedRecords>");
+        }
+        if (state != State.RUNNING) {
+            dump.append("<status>" + (hasFailures() ? "Failed" : "Success") + "</status>");
+        }
+        dump.append("<totalRecordsRead>" + recordsRead.get() + "</totalRecordsRead>");
+        dump.append("<totalRecordsImported>" + recordsImported.get() + "</totalRecordsImported>");
+        dump.append("<totalRecordsFailed>" + recordsFailed.get() + "</totalRecordsFailed>");
+        dump.append("<numRecordsImportedByDocType>");
+        for (Map.Entry<String, Integer> entry : recordsImportedForDocType.entrySet()) {
+            dump.append("<numRecordsImported>");
+            dump.append("<docType>" + entry.getKey() + "</docType>");
+            dump.append("<numRecords>" + entry.getValue().intValue() + "</numRecords>");
+            dump.append("</numRecordsImported>");
+        }
+        dump.append("</numRecordsImportedByDocType>");
+        dump.append("<batches>");
+        for (BatchResult batchResult : batchResults) {
+            batchResult.toXml(dump);
+        }
+        dump.append("</batches>");
+        long elapsed = (state == State.RUNNING ? System.currentTimeMillis() : endTime) - startTime;
+        dump.append("<elapsedMillis>" + elapsed + "</elapsedMillis>");
+        if (error != null) {
+            dump.append("<report>" + escape(error) + "</report>");
+        }
+        return dump.toString();
+    }
+
+    static String escape(String text) {
+        return text == null ? "" : text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static class BatchResult {
+        final String partition;
+        final int index;
+        final int numRecords;
+        final String error;
+        final long elapsedMillis;
+
+        BatchResult(String partition, int index, int numRecords, String error, long elapsedMillis) {
+            this.partition = partition;
+            this.index = index;
+            this.numRecords = numRecords;
+            this.error = error;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        void toXml(StringBuffer dump) {
+            dump.append("<batch>");
+            dump.append("<partition>" + partition + "</partition>");
+            dump.append("<index>" + index + "</index>");
+            dump.append("<numRecords>" + numRecords + "</numRecords>");
+            dump.append("<status>" + (error == null ? "Success" : "Failed") + "</status>");
+            if (error != null) {
+                dump.append("<error>" + escape(error) + "</error>");
+            }
+            dump.append("<elapsedMillis>" + elapsedMillis + "</elapsedMillis>");
+            dump.append("</batch>");
+        }
+    }
+}
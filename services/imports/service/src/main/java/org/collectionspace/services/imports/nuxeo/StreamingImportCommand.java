@@ -0,0 +1,246 @@
+package org.collectionspace.services.imports.nuxeo;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.collectionspace.services.common.vocabulary.RefObjsIndex;
+import org.collectionspace.services.imports.TemplateExpander;
+import org.collectionspace.services.nuxeo.client.java.NuxeoClientEmbedded;
+import org.collectionspace.services.nuxeo.client.java.NuxeoConnectorEmbedded;
+import org.collectionspace.services.nuxeo.client.java.CoreSessionInterface;
+
+import org.dom4j.io.SAXReader;
+import org.nuxeo.common.utils.Path;
+import org.nuxeo.ecm.core.io.DocumentTranslationMap;
+import org.nuxeo.ecm.core.io.ExportedDocument;
+import org.nuxeo.ecm.core.io.impl.ExportedDocumentImpl;
+import org.nuxeo.ecm.core.io.impl.plugins.DocumentModelWriter;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+/*
+ * Imports a request straight into the repository as it is parsed, without staging
+ * the request or the expanded documents on disk (compare ImportCommand).
+ *
+ * The thread reading the request partitions the expanded documents by service, and hands
+ * each full batch of a partition to a pool of import workers.  Each worker imports a batch
+ * in its own session and transaction, so the transaction timeout applies to one batch, and
+ * a failed batch is rolled back and reported without stopping the others.  At most two
+ * batches per worker are queued, so the memory used doesn't grow with the request.
+ */
+public class StreamingImportCommand implements TemplateExpander.IExpandedDocumentHandler {
+
+    private final static Logger logger = LoggerFactory.getLogger(StreamingImportCommand.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    // Each worker holds a repository session and transaction, so we don't allow many more than the processors
+    public static final int MAX_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final String CHOP_PATH = "/imports/import";
+
+    private final ImportJob job;
+    private final String repoName;
+    private final String workspacesPath;
+    private final int timeout;
+    private final int batchSize;
+    private final int threads;
+
+    // Only used by the thread reading the request
+    private final Map<String, ImportBatch> openBatches = new HashMap<String, ImportBatch>();
+    private final Map<String, Integer> batchCounts = new HashMap<String, Integer>();
+    private ExecutorService workers;
+    private Semaphore queuedBatches;
+
+    public StreamingImportCommand(ImportJob job, String repoName, String workspacesPath,
+            int timeout, int batchSize, int threads) {
+        this.job = job;
+        this.repoName = repoName;
+        this.workspacesPath = workspacesPath;
+        this.timeout = timeout;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.threads = threads > 0 ? Math.min(threads, MAX_THREADS) : DEFAULT_THREADS;
+    }
+
+    /*
+     * Returns once every batch has been imported or has failed; the results are in the job.
+     */
+    public void run(InputSource inputSource, String tenantId, String templateDir) {
+        String error = null;
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Start of streaming import %s with %d workers is Local time: %tT",
+                    job.getId(), threads, Calendar.getInstance()));
+        }
+        workers = Executors.newFixedThreadPool(threads, new WorkerThreadFactory(job.getId()));
+        queuedBatches = new Semaphore(threads * 2);
+        try {
+            TemplateExpander.expandInputSource(tenantId, templateDir, this, inputSource, CHOP_PATH);
+            for (ImportBatch batch : openBatches.values()) {
+                submit(batch);
+            }
+        } catch (Exception e) {
+            // The records read before the error are in batches that were already handed to the workers.
+            error = "Could not read the import payload. Check XML markup for not-well-formed errors, elements not matching import schema, etc.: "
+                    + e.getMessage();
+            logger.error(error, e);
+        } finally {
+            openBatches.clear();
+            workers.shutdown();
+            try {
+                while (workers.awaitTermination(1, TimeUnit.MINUTES) == false) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Waiting for import workers: " + job.toXml(false));
+                    }
+                }
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+                error = "The import was interrupted.";
+            }
+            job.finish(error);
+            RefObjsIndex.invalidate(tenantId, repoName);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("End of streaming import %s is Local time: %tT", job.getId(), Calendar.getInstance()));
+        }
+    }
+
+    @Override
+    public void onDocumentReady(String serviceName, String serviceType, String docID, String document) throws Exception {
+        job.recordRead();
+        ImportBatch batch = openBatches.get(serviceName);
+        if (batch == null) {
+            Integer count = batchCounts.get(serviceName);
+            int index = count == null ? 1 : count + 1;
+            batchCounts.put(serviceName, index);
+            batch = new ImportBatch(serviceName, index);
+            openBatches.put(serviceName, batch);
+        }
+        batch.add(docID, document);
+        if (batch.size() >= batchSize) {
+            openBatches.remove(serviceName);
+            submit(batch);
+        }
+    }
+
+    private void submit(final ImportBatch batch) throws InterruptedException {
+        queuedBatches.acquire();
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    importBatch(batch);
+                } finally {
+                    queuedBatches.release();
+                }
+            }
+        });
+    }
+
+    /*
+     * Runs on a worker thread: imports one batch in its own session and transaction.
+     */
+    private void importBatch(ImportBatch batch) {
+        long start = System.currentTimeMillis();
+        List<String> docTypes = new ArrayList<String>(batch.size());
+        String error = null;
+        NuxeoClientEmbedded client = NuxeoConnectorEmbedded.getInstance().getClient();
+        CoreSessionInterface repoSession = null;
+        DocumentModelWriter writer = null;
+        try {
+            repoSession = client.openRepository(repoName, timeout);
+            writer = new DocumentModelWriter(repoSession.getCoreSession(), workspacesPath, batch.size());
+            SAXReader saxReader = new SAXReader();
+            for (int i = 0; i < batch.size(); i++) {
+                String docID = batch.csids.get(i);
+                ExportedDocument xdoc = new ExportedDocumentImpl();
+                xdoc.setDocument(saxReader.read(new StringReader(batch.documents.get(i))));
+                xdoc.setPath(new Path("/" + batch.partition + "/" + docID));
+                DocumentTranslationMap dtm = writer.write(xdoc);
+                if (dtm == null) {
+                    throw new Exception("Could not process import record " + docID + ". Check XML markup for elements not matching import schema, etc.");
+                }
+                docTypes.add(xdoc.getType());
+            }
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+            logger.error(String.format("Import batch %s[%d] failed and was rolled back: %s", batch.partition, batch.index, error), e);
+            if (TransactionHelper.isTransactionActiveOrMarkedRollback() == true) {
+                TransactionHelper.setTransactionRollbackOnly();
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            try {
+                if (repoSession != null) {
+                    client.releaseRepository(repoSession);  // Commits, or rolls back, the batch's transaction
+                } else if (TransactionHelper.isTransactionActiveOrMarkedRollback() == true) {
+                    TransactionHelper.commitOrRollbackTransaction();
+                }
+            } catch (Exception e) {
+                if (error == null) {
+                    error = "Could not commit the batch: " + e.getMessage();
+                }
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (error == null) {
+            job.batchSucceeded(batch.partition, batch.index, batch.csids, docTypes, elapsed);
+        } else {
+            job.batchFailed(batch.partition, batch.index, batch.size(), error, elapsed);
+        }
+    }
+
+    /*
+     * Up to 'batchSize' expanded documents for a single service.
+     */
+    private static class ImportBatch {
+        final String partition;
+        final int index;
+        final List<String> csids = new ArrayList<String>();
+        final List<String> documents = new ArrayList<String>();
+
+        ImportBatch(String partition, int index) {
+            this.partition = partition;
+            this.index = index;
+        }
+
+        void add(String csid, String document) {
+            csids.add(csid);
+            documents.add(document);
+        }
+
+        int size() {
+            return csids.size();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final String jobId;
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerThreadFactory(String jobId) {
+            this.jobId = jobId;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread result = new Thread(runnable, "import-" + jobId + "-worker-" + count.incrementAndGet());
+            result.setDaemon(true);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * This document is a part of the source code and related artifacts for
+ * CollectionSpace, an open source collections management system for museums and
+ * related institutions:
+ *
+ * http://www.collectionspace.org http://wiki.collectionspace.org
+ *
+ * Copyright (c) 2016 Regents of the University of California
+ *
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may
+ * not use this file except in compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at
+ * https://source.collectionspace.org/collection-space/LICENSE.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.collectionspace.services.imports.nuxeo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests which import jobs are kept for polling.
+ */
+public class ImportJobTest {
+
+    @Test
+    public void testRunningJobsAreKept() {
+        ImportJob running = ImportJob.register(new ImportJob("runningTenant"));
+        for (int i = 0; i < ImportJob.MAX_FINISHED_JOBS_PER_TENANT * 2; i++) {
+            ImportJob.register(new ImportJob("runningTenant")).finish(null);
+        }
+        Assert.assertSame(ImportJob.get("runningTenant", running.getId()), running);
+        Assert.assertEquals(running.getState(), ImportJob.State.RUNNING);
+    }
+
+    @Test
+    public void testOldestFinishedJobsAreEvicted() {
+        List<ImportJob> finished = new ArrayList<ImportJob>();
+        for (int i = 0; i <= ImportJob.MAX_FINISHED_JOBS_PER_TENANT; i++) {
+            ImportJob job = ImportJob.register(new ImportJob("finishedTenant"));
+            job.finish(null);
+            finished.add(job);
+        }
+        Assert.assertNull(ImportJob.get("finishedTenant", finished.get(0).getId()));
+        for (int i = 1; i < finished.size(); i++) {
+            Assert.assertNotNull(ImportJob.get("finishedTenant", finished.get(i).getId()));
+        }
+    }
+
+    @Test
+    public void testTenantsAreCappedSeparately() {
+        ImportJob otherTenantJob = ImportJob.register(new ImportJob("quietTenant"));
+        otherTenantJob.finish(null);
+        for (int i = 0; i <= ImportJob.MAX_FINISHED_JOBS_PER_TENANT; i++) {
+            ImportJob.register(new ImportJob("busyTenant")).finish(null);
+        }
+        Assert.assertSame(ImportJob.get("quietTenant", otherTenantJob.getId()), otherTenantJob);
+        Assert.assertNull(ImportJob.get("busyTenant", otherTenantJob.getId()));
+    }
+}
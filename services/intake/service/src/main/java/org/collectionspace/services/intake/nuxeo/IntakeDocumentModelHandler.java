@@ -34,5 +34,12 @@ import org.collectionspace.services.nuxeo.client.java.NuxeoDocumentModelHandler;
  */
 public class IntakeDocumentModelHandler
         extends NuxeoDocumentModelHandler<IntakesCommon> {
-}
 
+    /**
+     * This handler doesn't change how parts are extracted, so they can be streamed.
+     */
+    @Override
+    protected boolean canStreamParts() {
+        return true;
+    }
+}
@@ -32,5 +32,12 @@ import org.collectionspace.services.nuxeo.client.java.NuxeoDocumentModelHandler;
  */
 public class LoaninDocumentModelHandler
         extends NuxeoDocumentModelHandler<LoansinCommon> {
-}
 
+    /**
+     * This handler doesn't change how parts are extracted, so they can be streamed.
+     */
+    @Override
+    protected boolean canStreamParts() {
+        return true;
+    }
+}
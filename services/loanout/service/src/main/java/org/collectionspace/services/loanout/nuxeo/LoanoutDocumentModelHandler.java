@@ -31,6 +31,12 @@ import org.collectionspace.services.nuxeo.client.java.NuxeoDocumentModelHandler;
  */
 public class LoanoutDocumentModelHandler
         extends NuxeoDocumentModelHandler<LoansoutCommon> {
- 
-}
 
+    /**
+     * This handler doesn't change how parts are extracted, so they can be streamed.
+     */
+    @Override
+    protected boolean canStreamParts() {
+        return true;
+    }
+}
@@ -53,7 +53,9 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
@@ -283,13 +285,15 @@ public class MediaResource extends NuxeoBasedResource {
     @GET
     @Path("{csid}/blob/content")
     public Response getBlobContent(
+    		@Context Request request,
+    		@Context HttpHeaders headers,
     		@PathParam("csid") String csid) {
     	Response result = null;
     	
 	    try {
 	    	ensureCSID(csid, READ);
 	        String blobCsid = this.getBlobCsid(csid);
-	    	result = getBlobResource().getBlobContent(blobCsid);	        
+	    	result = getBlobResource().getBlobContent(request, headers, blobCsid);	        
 	    } catch (Exception e) {
 	        throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
 	    }
@@ -300,6 +304,8 @@ public class MediaResource extends NuxeoBasedResource {
     @GET
     @Path("{csid}/blob/derivatives/{derivativeTerm}/content")
     public Response getDerivativeContent(
+    		@Context Request request,
+    		@Context HttpHeaders headers,
     		@PathParam("csid") String csid,
     		@PathParam("derivativeTerm") String derivativeTerm) {
     	Response result = null;
@@ -307,7 +313,7 @@ public class MediaResource extends NuxeoBasedResource {
 	    try {
 	    	ensureCSID(csid, READ);
 	        String blobCsid = this.getBlobCsid(csid);
-	    	result = getBlobResource().getDerivativeContent(blobCsid, derivativeTerm);	        
+	    	result = getBlobResource().getDerivativeContent(request, headers, blobCsid, derivativeTerm);	        
 	    } catch (Exception e) {
 	        throw bigReThrow(e, ServiceMessages.READ_FAILED, csid);
 	    }
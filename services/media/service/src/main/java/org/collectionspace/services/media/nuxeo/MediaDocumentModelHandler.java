@@ -93,7 +93,13 @@ public class MediaDocumentModelHandler
 			DocumentModel documentModel = wrapDoc.getWrappedObject();
 			documentModel.setProperty(ctx.getCommonPartLabel(), MediaJAXBSchema.blobCsid, blobCsid);
 		}
-	}    
-    
-}
+	}
 
+	/**
+	 * This handler doesn't change how parts are extracted, so they can be streamed.
+	 */
+	@Override
+	protected boolean canStreamParts() {
+		return true;
+	}
+}
@@ -38,5 +38,12 @@ public class MovementDocumentModelHandler
         extends NuxeoDocumentModelHandler<MovementsCommon> {
 
     final Logger logger = LoggerFactory.getLogger(MovementDocumentModelHandler.class);
-}
 
+    /**
+     * This handler doesn't change how parts are extracted, so they can be streamed.
+     */
+    @Override
+    protected boolean canStreamParts() {
+        return true;
+    }
+}
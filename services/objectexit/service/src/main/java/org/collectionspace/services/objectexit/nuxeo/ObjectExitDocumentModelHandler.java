@@ -28,5 +28,12 @@ import org.collectionspace.services.objectexit.ObjectexitCommon;
 
 public class ObjectExitDocumentModelHandler 
 	extends NuxeoDocumentModelHandler<ObjectexitCommon> {
-}
 
+	/**
+	 * This handler doesn't change how parts are extracted, so they can be streamed.
+	 */
+	@Override
+	protected boolean canStreamParts() {
+		return true;
+	}
+}
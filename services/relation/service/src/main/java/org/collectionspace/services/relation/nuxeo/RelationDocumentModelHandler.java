@@ -25,6 +25,7 @@ package org.collectionspace.services.relation.nuxeo;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.net.HttpURLConnection;
 
 import org.collectionspace.services.client.PoxPayloadIn;
@@ -42,7 +43,7 @@ import org.collectionspace.services.common.relation.RelationJAXBSchema;
 import org.collectionspace.services.common.relation.nuxeo.RelationConstants;
 import org.collectionspace.services.common.context.ServiceContext;
 import org.collectionspace.services.lifecycle.TransitionDef;
-import org.collectionspace.services.nuxeo.util.NuxeoUtils;
+import org.collectionspace.services.nuxeo.util.DocumentModelCache;
 import org.collectionspace.services.relation.RelationsCommon;
 import org.collectionspace.services.relation.RelationsCommonList;
 import org.collectionspace.services.relation.RelationsCommonList.RelationListItem;
@@ -226,6 +227,17 @@ public class RelationDocumentModelHandler
         String serviceName = getServiceContext().getServiceName().toLowerCase();
         ServiceBindingType sbt = tReader.getServiceBinding(ctx.getTenantId(), serviceName);
 
+        // Fetch the subjects and objects of all the relations in the page up front, with a
+        // few queries grouped by document type, rather than with a query for each.
+        Map<String, String> docTypesByCsid = new HashMap<String, String>();
+        for (DocumentModel docModel : wrapDoc.getWrappedObject()) {
+            docTypesByCsid.put((String) docModel.getProperty(ctx.getCommonPartLabel(), RelationJAXBSchema.SUBJECT_CSID),
+                    (String) docModel.getProperty(ctx.getCommonPartLabel(), RelationJAXBSchema.SUBJECT_DOCTYPE));
+            docTypesByCsid.put((String) docModel.getProperty(ctx.getCommonPartLabel(), RelationJAXBSchema.OBJECT_CSID),
+                    (String) docModel.getProperty(ctx.getCommonPartLabel(), RelationJAXBSchema.OBJECT_DOCTYPE));
+        }
+        DocumentModelCache.get(ctx).prefetch(ctx, this.getRepositorySession(), docTypesByCsid);
+
         Iterator<DocumentModel> iter = wrapDoc.getWrappedObject().iterator();
         while (iter.hasNext()) {
             DocumentModel docModel = iter.next();
@@ -312,7 +324,7 @@ public class RelationDocumentModelHandler
         item.setDocumentType(documentType);//this one comes from the record, as subjectDocumentType, objectDocumentType.
         item.setCsid(itemCsid);
 
-        DocumentModel itemDocModel = NuxeoUtils.getDocFromCsid(ctx, this.getRepositorySession(), itemCsid);    //null if not found.
+        DocumentModel itemDocModel = DocumentModelCache.get(ctx).getDocFromCsid(ctx, this.getRepositorySession(), itemCsid);    //null if not found.
         if (itemDocModel != null) {
             String itemDocType = itemDocModel.getDocumentType().getName();
             itemDocType = ServiceBindingUtils.getUnqualifiedTenantDocType(itemDocType);